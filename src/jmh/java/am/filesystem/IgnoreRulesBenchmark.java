@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compare checking entries against ignore rules: the former exact-name {@link HashSet} lookup, {@link IgnoreRules}
+ * with the same names, {@link IgnoreRules} with typical glob and path rules, and evaluating the same glob rules one by
+ * one with {@link PathMatcher} objects. Results are per entry.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IgnoreRulesBenchmark
+{
+  private static final int NUM_ENTRIES = 1000;
+  private static final List<String> NAMES = Arrays.asList(".DS_Store", "Thumbs.db", "desktop.ini", "@eaDir");
+  private static final List<String> GLOBS = Arrays.asList(".DS_Store", "Thumbs.db", "desktop.ini", "@eaDir", "*.tmp",
+      "*.bak", "*~", ".~lock.*#", "*.part", "*.crdownload", "**/node_modules", "**/.git", "**/target/classes",
+      "/photos/cache", "/backup/*/incomplete");
+  private static final String[] EXTENSIONS =
+  {
+      ".jpg", ".mp4", ".txt", ".pdf", ".tmp", ".NEF", ".mkv", ".odt"
+  };
+  private final String[] paths = new String[NUM_ENTRIES];
+  private final String[] names = new String[NUM_ENTRIES];
+  private final Path[] pathObjects = new Path[NUM_ENTRIES];
+  private Set<String> nameSet;
+  private IgnoreRules nameRules;
+  private IgnoreRules globRules;
+  private List<PathMatcher> matchers;
+
+  @Setup
+  public void setUp()
+  {
+    for (int i = 0; i < NUM_ENTRIES; i++)
+    {
+      names[i] = i % 50 == 0 ? NAMES.get(i / 50 % NAMES.size()) : "file" + i + EXTENSIONS[i % EXTENSIONS.length];
+      paths[i] = "photos/" + (2000 + i % 20) + "/album" + i % 7 + "/" + names[i];
+      pathObjects[i] = Paths.get(paths[i]);
+    }
+    nameSet = new HashSet<>(NAMES);
+    nameRules = IgnoreRules.compile(NAMES);
+    globRules = IgnoreRules.compile(GLOBS);
+    matchers = new ArrayList<>();
+    for (final String glob : GLOBS)
+    {
+      final String pattern = glob.startsWith("/") ? glob.substring(1) : glob;
+      matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ENTRIES)
+  public void hashSetNames(final Blackhole hole)
+  {
+    for (int i = 0; i < NUM_ENTRIES; i++)
+    {
+      hole.consume(nameSet.contains(names[i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ENTRIES)
+  public void ignoreRulesNames(final Blackhole hole)
+  {
+    for (int i = 0; i < NUM_ENTRIES; i++)
+    {
+      hole.consume(nameRules.isIgnored(null, names[i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ENTRIES)
+  public void ignoreRulesGlobs(final Blackhole hole)
+  {
+    for (int i = 0; i < NUM_ENTRIES; i++)
+    {
+      hole.consume(globRules.isIgnored(paths[i], names[i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ENTRIES)
+  public void pathMatcherGlobs(final Blackhole hole)
+  {
+    for (int i = 0; i < NUM_ENTRIES; i++)
+    {
+      final Path path = pathObjects[i];
+      final Path name = path.getFileName();
+      boolean ignored = false;
+      for (final PathMatcher matcher : matchers)
+      {
+        if (matcher.matches(path) || matcher.matches(name))
+        {
+          ignored = true;
+          break;
+        }
+      }
+      hole.consume(ignored);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare walking a directory tree the former way, recursively with the list copies of
+ * {@link Directory#getSubdirectories()} and {@link Directory#getFiles()}, against the read-only views and a
+ * {@link DirectoryVisitor}. Run with {@code ./gradlew jmh} and the {@code gc} profiler to see bytes allocated per walk
+ * ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraversalBenchmark
+{
+  private static final int NUM_DIRECTORIES = 1000;
+  private static final int FILES_PER_DIRECTORY = 50;
+  private Directory root;
+
+  @Setup
+  public void setUp()
+  {
+    root = new Directory();
+    root.setName("");
+    for (int i = 0; i < NUM_DIRECTORIES; i++)
+    {
+      final Directory parent = root.findOrCreateSubdirectory("year" + i % 20);
+      final Directory dir = parent.findOrCreateSubdirectory("album" + i);
+      for (int j = 0; j < FILES_PER_DIRECTORY; j++)
+      {
+        final File file = new File();
+        file.setName("img" + j + ".jpg");
+        file.setByteSize(Long.valueOf(j));
+        dir.add(file);
+      }
+    }
+    // move the tree out of the young generation like a catalog loaded before processing
+    System.gc();
+  }
+
+  private static long sumCopies(final Directory dir)
+  {
+    long result = 0;
+    for (final File file : dir.getFiles())
+    {
+      result += file.getByteSize().longValue();
+    }
+    for (final Directory sub : dir.getSubdirectories())
+    {
+      result += sumCopies(sub);
+    }
+    return result;
+  }
+
+  private static long sumViews(final Directory dir)
+  {
+    long result = 0;
+    for (final File file : dir.getFilesView())
+    {
+      result += file.getByteSize().longValue();
+    }
+    for (final Directory sub : dir.getSubdirectoriesView())
+    {
+      result += sumViews(sub);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public long copies()
+  {
+    return sumCopies(root);
+  }
+
+  @Benchmark
+  public long views()
+  {
+    return sumViews(root);
+  }
+
+  @Benchmark
+  public long visitor()
+  {
+    final long[] sum = new long[1];
+    root.accept(DirectoryVisitor.ofFiles(file -> sum[0] += file.getByteSize().longValue()));
+    return sum[0];
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+
+/**
+ * Merge a flat scanned and loaded directory with many files, as found in dumps of camera memory cards, once with the
+ * sorted merge join of {@link VolumeProcessor#mergeDirectory(Directory, Directory)} and once the former way with a
+ * union of both name sets and a lookup of each name on both sides. {@code sortByName} measures bringing files from
+ * random order, as in directory listings, into name order, which the scanner does once per directory. Add the
+ * {@code gc} profiler to see the bytes allocated.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DirectoryMergeBenchmark
+{
+  @Param({"100000", "1000000"})
+  private int numFiles;
+  private Directory scanned;
+  private Directory loaded;
+  private List<File> shuffled;
+  private Directory unsorted;
+  private final VolumeProcessor processor = new VolumeProcessor();
+
+  private static File createFile(final int index, final long size)
+  {
+    final File file = new File();
+    file.setName(String.format("IMG_%07d.JPG", Integer.valueOf(index)));
+    file.setByteSizeValue(size);
+    file.setLastModifiedMillis(1600000000000L + index * 1000L);
+    return file;
+  }
+
+  @Setup
+  public void setUp()
+  {
+    shuffled = new ArrayList<>(numFiles);
+    loaded = new Directory();
+    loaded.setName("DCIM");
+    for (int i = 0; i < numFiles; i++)
+    {
+      // every hundredth file was deleted, every hundredth file is new
+      if (i % 100 != 1)
+      {
+        loaded.add(createFile(i, 3000000 + i));
+      }
+      if (i % 100 != 2)
+      {
+        shuffled.add(createFile(i, i % 100 == 3 ? 1 : 3000000 + i));
+      }
+    }
+    Collections.shuffle(shuffled, new Random(42));
+    scanned = createDirectory(shuffled);
+    scanned.sortByName();
+    loaded.sortByName();
+  }
+
+  private static Directory createDirectory(final List<File> files)
+  {
+    final Directory dir = new Directory();
+    dir.setName("DCIM");
+    for (final File file : files)
+    {
+      dir.add(file);
+    }
+    return dir;
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpUnsorted()
+  {
+    unsorted = createDirectory(shuffled);
+  }
+
+  @Benchmark
+  public Directory mergeJoin()
+  {
+    return processor.mergeDirectory(scanned, loaded);
+  }
+
+  @Benchmark
+  public Directory hashSetUnion()
+  {
+    final Directory merged = new Directory();
+    merged.setName(scanned.getName());
+    final Set<String> names = new HashSet<>();
+    names.addAll(scanned.getFileNames());
+    names.addAll(loaded.getFileNames());
+    for (final String fileName : names)
+    {
+      merged.add(processor.mergeFile(scanned.getFile(fileName), loaded.getFile(fileName)));
+    }
+    return merged;
+  }
+
+  @Benchmark
+  public Directory sortByName()
+  {
+    unsorted.sortByName();
+    return unsorted;
+  }
+}
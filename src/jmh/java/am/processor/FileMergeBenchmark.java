@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import am.filesystem.model.File;
+import am.processor.hashes.HashFilePriorityComparator;
+
+/**
+ * Sort files for hash computation and merge scanned with loaded files, once with the primitive size and time accessors
+ * used by {@link HashFilePriorityComparator} and {@link VolumeProcessor#mergeFile(File, File)}, once the former way
+ * with {@link Date} and {@link Long} objects. Results are per run over all files; add the {@code gc} profiler to see
+ * the bytes allocated.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileMergeBenchmark
+{
+  private static final Comparator<File> DATE_COMPARATOR = (f1, f2) ->
+  {
+    final boolean hash1 = f1.getHashValue() != null;
+    final boolean hash2 = f2.getHashValue() != null;
+    if (hash1 != hash2)
+    {
+      return hash1 ? 1 : -1;
+    }
+    final Date created1 = f1.getHashCreated();
+    final Date created2 = f2.getHashCreated();
+    if (created1 == null || created2 == null)
+    {
+      return created1 == null ? created2 == null ? 0 : -1 : 1;
+    }
+    return created1.compareTo(created2);
+  };
+  @Param("10000000")
+  private int numFiles;
+  private List<File> scanned;
+  private List<File> loaded;
+  private final VolumeProcessor processor = new VolumeProcessor();
+
+  @Setup
+  public void setUp()
+  {
+    scanned = new ArrayList<>(numFiles);
+    loaded = new ArrayList<>(numFiles);
+    final long now = System.currentTimeMillis();
+    for (int i = 0; i < numFiles; i++)
+    {
+      final String name = "file" + i;
+      final long size = i * 31L % 100000000L;
+      final File file = new File();
+      file.setName(name);
+      file.setByteSize(Long.valueOf(size));
+      file.setLastModifiedMillis(now - i * 1000L);
+      if (i % 10 != 0)
+      {
+        file.setHashValue("0123456789abcdef");
+        file.setHashCreatedMillis(now - i * 7919L % 86400000L);
+      }
+      loaded.add(file);
+      final File copy = new File();
+      copy.setName(name);
+      copy.setByteSize(Long.valueOf(i % 100 == 0 ? size + 1 : size));
+      copy.setLastModifiedMillis(file.getLastModifiedMillis());
+      scanned.add(copy);
+    }
+  }
+
+  private static File mergeBoxed(final File scanned, final File loaded)
+  {
+    final File result = new File();
+    result.setName(scanned.getName());
+    final Date scannedLastMod = scanned.getLastModified();
+    boolean modified = !scannedLastMod.equals(loaded.getLastModified());
+    result.setLastModified(scannedLastMod);
+    final Long scannedSize = scanned.getByteSize();
+    if (!modified)
+    {
+      modified = !scannedSize.equals(loaded.getByteSize());
+    }
+    result.setByteSize(scannedSize);
+    if (!modified)
+    {
+      result.setHashCreated(loaded.getHashCreated());
+      result.setHashValue(loaded.getHashValue());
+    }
+    return result;
+  }
+
+  @Benchmark
+  public List<File> sortPrimitive()
+  {
+    final List<File> files = new ArrayList<>(loaded);
+    files.sort(new HashFilePriorityComparator());
+    return files;
+  }
+
+  @Benchmark
+  public List<File> sortBoxed()
+  {
+    final List<File> files = new ArrayList<>(loaded);
+    files.sort(DATE_COMPARATOR);
+    return files;
+  }
+
+  @Benchmark
+  public void mergePrimitive(final Blackhole hole)
+  {
+    for (int i = 0; i < numFiles; i++)
+    {
+      hole.consume(processor.mergeFile(scanned.get(i), loaded.get(i)));
+    }
+  }
+
+  @Benchmark
+  public void mergeBoxed(final Blackhole hole)
+  {
+    for (int i = 0; i < numFiles; i++)
+    {
+      hole.consume(mergeBoxed(scanned.get(i), loaded.get(i)));
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compute the SHA-256 value of a file, once the former way from an input stream into a 1 MB heap buffer and once with
+ * each of the {@link ChannelHashing} modes, optionally with a checksum computed from the same buffers.
+ * {@code verify} computes the checksum only, as done with {@code verifyChecksum=true}. The file is in the page cache after the first iteration, so the numbers
+ * show the cost of copying and digesting rather than waiting for a disk; how much prefetching saves on a cold cache
+ * depends on the device and the number of cores.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashInputBenchmark
+{
+  @Param({"1048576", "16777216", "268435456"})
+  private int size;
+  @Param({"stream", "Read", "Prefetch", "Map"})
+  private String input;
+  @Param({"none", "CRC32C"})
+  private String checksum;
+  private Path path;
+  private MessageDigest digest;
+  private Checksum sum;
+
+  @Setup
+  public void setUp() throws IOException, NoSuchAlgorithmException
+  {
+    path = Files.createTempFile("hashinput", ".bin");
+    final byte[] data = new byte[1024 * 1024];
+    new Random(42).nextBytes(data);
+    try (java.io.OutputStream out = Files.newOutputStream(path))
+    {
+      for (int i = 0; i < size / data.length; i++)
+      {
+        out.write(data);
+      }
+    }
+    digest = MessageDigest.getInstance(HashConfig.DEFAULT_HASH_ALGORITHM);
+    sum = HashCreation.createChecksum(checksum);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException
+  {
+    Files.delete(path);
+  }
+
+  @Benchmark
+  public byte[] hash() throws IOException
+  {
+    read(digest);
+    return digest.digest();
+  }
+
+  @Benchmark
+  public long verify() throws IOException
+  {
+    read(null);
+    return sum == null ? 0 : sum.getValue();
+  }
+
+  private void read(final MessageDigest md) throws IOException
+  {
+    if (sum != null)
+    {
+      sum.reset();
+    }
+    if ("stream".equals(input))
+    {
+      final byte[] buffer = new byte[Math.min(size, 1024 * 1024)];
+      try (InputStream in = Files.newInputStream(path))
+      {
+        int numRead;
+        while ((numRead = in.read(buffer)) >= 0)
+        {
+          if (sum != null)
+          {
+            sum.update(buffer, 0, numRead);
+          }
+          if (md != null)
+          {
+            md.update(buffer, 0, numRead);
+          }
+        }
+      }
+    }
+    else
+    {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+      {
+        ChannelHashing.update(channel, ChannelHashing.Mode.valueOf(input), md, sum, null, null);
+      }
+    }
+  }
+}
@@ -15,7 +15,7 @@
  */
 package am.app;
 
-import java.io.File;
+import java.io.IOException;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,10 +24,13 @@ import java.util.ResourceBundle;
 import java.util.TimeZone;
 import org.slf4j.LoggerFactory;
 import am.db.JdbcSerialization;
-import am.filesystem.VolumeScanner;
 import am.filesystem.model.Volume;
+import am.processor.CatalogWriter;
+import am.processor.ChangeReport;
 import am.processor.MetadataExtraction;
+import am.processor.StreamingMerge;
 import am.processor.VolumeProcessor;
+import am.processor.hashes.ChunkStore;
 import am.processor.hashes.HashProcessor;
 import am.validators.AbstractValidator;
 import am.validators.MovieValidator;
@@ -98,56 +101,122 @@ public class App
     }
   }
 
-  private void processVolumes(final AppConfig config)
+  private List<Volume> processVolumes(final AppConfig config)
   {
+    List<Volume> mergedVolumes = new ArrayList<>();
     final JdbcSerialization io = config.getDatabaseSerializer();
-    if (io != null)
+    if (io == null)
     {
-      final List<Volume> loadedVolumes = io.loadAll();
-      final List<Volume> scannedVolumes = new ArrayList<>();
-      for (final Volume loadedVol : loadedVolumes)
+      return mergedVolumes;
+    }
+    config.setChangeReport(ChangeReport.create(config));
+    io.startRun(config.getMode().name());
+    // watch mode needs the complete trees in memory, so it always uses the regular merge
+    if (config.isStreamingMerge() && config.getMode() != ProcessMode.Watch)
+    {
+      LOGGER.info(config.msg("streaming.info.skipping_stages"));
+      final CatalogWriter writer = new CatalogWriter(config, io);
+      new StreamingMerge(config, io, writer).process();
+      writer.close();
+      config.getIoLimits().logStatistics(config);
+      return mergedVolumes;
+    }
+    final boolean compact = config.isCompactCatalog() || config.isCatalogSnapshot();
+    final List<Volume> loadedVolumes = compact ? io.loadAllCompact() : io.loadAll();
+    if (config.getHashConfig().getChunkSize() > 0)
+    {
+      config.setChunkStore(ChunkStore.load(config, io));
+    }
+    if (config.isConcurrentVolumes())
+    {
+      final VolumePipeline pipeline = new VolumePipeline(this, config);
+      mergedVolumes = pipeline.process(loadedVolumes);
+    }
+    else
+    {
+      mergedVolumes = processVolumes(config, loadedVolumes);
+    }
+    io.saveAll(mergedVolumes);
+    saveChunks(config, io);
+    config.getIoLimits().logStatistics(config);
+    return mergedVolumes;
+  }
+
+  /**
+   * Store the chunk hash values recorded while hashing, now that new files have an id. Files hashed later in watch mode
+   * do not get chunk hash values.
+   */
+  private void saveChunks(final AppConfig config, final JdbcSerialization io)
+  {
+    final ChunkStore store = config.getChunkStore();
+    if (store == null)
+    {
+      return;
+    }
+    io.beginTransaction();
+    store.save(config, io);
+    io.commitTransaction();
+    config.setChunkStore(null);
+  }
+
+  private void watch(final AppConfig config, final List<Volume> volumes)
+  {
+    VolumeWatcher watcher = null;
+    try
+    {
+      watcher = new VolumeWatcher(config, volumes);
+      config.setVolumeWatcher(watcher);
+      watcher.register();
+      watcher.run();
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("watcher.error.create_failed"), e);
+    }
+    finally
+    {
+      config.setVolumeWatcher(null);
+      if (watcher != null)
       {
-        final String path = loadedVol.getPath();
-        final File dir = new File(path);
-        if (dir.exists())
+        try
         {
-          if (dir.isDirectory())
-          {
-            final Volume vol = new Volume();
-            vol.setPath(loadedVol.getPath());
-            vol.setEntry(dir);
-            scannedVolumes.add(vol);
-            final VolumeScanner scanner = new VolumeScanner(config, vol);
-            scanner.scan();
-          }
-          else
-          {
-            LOGGER.error(config.msg("processor.error.not_a_directory", path));
-          }
+          watcher.close();
         }
-        else
+        catch (final IOException e)
         {
-          LOGGER.error(config.msg("processor.error.directory_invalid", path));
+          LOGGER.error(config.msg("watcher.error.create_failed"), e);
         }
       }
+    }
+  }
 
-      final VolumeProcessor proc = new VolumeProcessor();
-      proc.setConfig(config);
-      final List<Volume> mergedVolumes = proc.processVolumes(scannedVolumes, loadedVolumes);
+  private List<Volume> processVolumes(final AppConfig config, final List<Volume> loadedVolumes)
+  {
+    final List<Volume> scannedVolumes = new ArrayList<>();
+    for (final Volume loadedVol : loadedVolumes)
+    {
+      final Volume vol = VolumePipeline.scan(config, loadedVol);
+      if (vol != null)
+      {
+        scannedVolumes.add(vol);
+      }
+    }
 
-      final MetadataExtraction extraction = new MetadataExtraction();
-      extraction.update(config, mergedVolumes);
+    final VolumeProcessor proc = new VolumeProcessor();
+    proc.setConfig(config);
+    final List<Volume> mergedVolumes = proc.processVolumes(scannedVolumes, loadedVolumes);
 
-      validate(config, mergedVolumes);
+    final MetadataExtraction extraction = new MetadataExtraction();
+    extraction.update(config, mergedVolumes);
 
-      final HashProcessor hashProcessor = new HashProcessor();
-      hashProcessor.update(config, mergedVolumes);
+    validate(config, mergedVolumes);
 
-      io.saveAll(mergedVolumes);
-    }
+    final HashProcessor hashProcessor = new HashProcessor();
+    hashProcessor.update(config, mergedVolumes);
+    return mergedVolumes;
   }
 
-  private void validate(final AppConfig config, final List<Volume> volumes)
+  void validate(final AppConfig config, final List<Volume> volumes)
   {
     for (final Volume vol : volumes)
     {
@@ -192,6 +261,27 @@ public class App
   private void process(final AppConfig config)
   {
     printVersion(config);
+    try
+    {
+      processMode(config);
+    }
+    finally
+    {
+      final ChangeReport report = config.getChangeReport();
+      if (report != null)
+      {
+        report.close();
+      }
+      final JdbcSerialization io = config.getDatabaseSerializer();
+      if (io != null)
+      {
+        io.finishRun();
+      }
+    }
+  }
+
+  private void processMode(final AppConfig config)
+  {
     switch (config.getMode())
     {
     case AddVolume:
@@ -213,6 +303,15 @@ public class App
     {
       break;
     }
+    case Watch:
+    {
+      final List<Volume> volumes = processVolumes(config);
+      if (config.getDatabaseSerializer() != null)
+      {
+        watch(config, volumes);
+      }
+      break;
+    }
     default:
     {
       processVolumes(config);
@@ -18,13 +18,18 @@ package am.app;
 import java.io.File;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Set;
 import com.thebuzzmedia.exiftool.ExifTool;
 import am.db.JdbcSerialization;
+import am.filesystem.IoLimits;
+import am.processor.ChangeReport;
+import am.processor.hashes.ChunkStore;
 import am.processor.hashes.HashConfig;
 import am.services.wikidata.WikidataConfiguration;
 import am.services.wikidata.WikidataService;
@@ -64,6 +69,8 @@ public class AppConfig
   private File tsvDirectory;
   private Set<String> ignoreDirNames;
   private Set<String> ignoreFileNames;
+  private final Map<Long, Set<String>> volumeIgnoreDirNames = new HashMap<>();
+  private final Map<Long, Set<String>> volumeIgnoreFileNames = new HashMap<>();
   private ExifTool exifTool;
   private String exifToolPath;
   private Long exifToolMaxUsage;
@@ -75,6 +82,19 @@ public class AppConfig
   private String addVolumeValidator;
   private final List<String> fileSystemItems;
   private WikidataConfiguration wikidataConfiguration;
+  private boolean concurrentVolumes;
+  private boolean incrementalScan;
+  private boolean streamingMerge;
+  private boolean compactCatalog;
+  private boolean catalogSnapshot;
+  private int scanCheckpointSeconds;
+  private int mergeThreads;
+  private int hashThreadsPerStore;
+  private boolean logFileChanges = true;
+  private ChangeReport changeReport;
+  private volatile VolumeWatcher volumeWatcher;
+  private ChunkStore chunkStore;
+  private final IoLimits ioLimits = new IoLimits();
 
   public AppConfig()
   {
@@ -271,6 +291,40 @@ public class AppConfig
     this.ignoreFileNames = ignoreFileNames;
   }
 
+  /**
+   * Return ignore rules for directories that apply to a single volume in addition to {@link #getIgnoreDirNames()}.
+   *
+   * @param volumeRef
+   *          volume id, possibly null
+   * @return set of rules, possibly null
+   */
+  public Set<String> getVolumeIgnoreDirNames(Long volumeRef)
+  {
+    return volumeIgnoreDirNames.get(volumeRef);
+  }
+
+  public void setVolumeIgnoreDirNames(Long volumeRef, Set<String> names)
+  {
+    volumeIgnoreDirNames.put(volumeRef, names);
+  }
+
+  /**
+   * Return ignore rules for files that apply to a single volume in addition to {@link #getIgnoreFileNames()}.
+   *
+   * @param volumeRef
+   *          volume id, possibly null
+   * @return set of rules, possibly null
+   */
+  public Set<String> getVolumeIgnoreFileNames(Long volumeRef)
+  {
+    return volumeIgnoreFileNames.get(volumeRef);
+  }
+
+  public void setVolumeIgnoreFileNames(Long volumeRef, Set<String> names)
+  {
+    volumeIgnoreFileNames.put(volumeRef, names);
+  }
+
   public ExifTool getExifTool()
   {
     return exifTool;
@@ -370,4 +424,140 @@ public class AppConfig
   {
     this.wikidataConfiguration = wikidataConfiguration;
   }
+
+  public boolean isConcurrentVolumes()
+  {
+    return concurrentVolumes;
+  }
+
+  public void setConcurrentVolumes(boolean concurrentVolumes)
+  {
+    this.concurrentVolumes = concurrentVolumes;
+  }
+
+  public boolean isIncrementalScan()
+  {
+    return incrementalScan;
+  }
+
+  public void setIncrementalScan(boolean incrementalScan)
+  {
+    this.incrementalScan = incrementalScan;
+  }
+
+  public boolean isStreamingMerge()
+  {
+    return streamingMerge;
+  }
+
+  public void setStreamingMerge(boolean streamingMerge)
+  {
+    this.streamingMerge = streamingMerge;
+  }
+
+  public boolean isCompactCatalog()
+  {
+    return compactCatalog;
+  }
+
+  public void setCompactCatalog(boolean compactCatalog)
+  {
+    this.compactCatalog = compactCatalog;
+  }
+
+  /**
+   * Write a memory-mapped snapshot of the catalog after saving it to the database, and load volumes from a valid
+   * snapshot instead of the database.
+   *
+   * @return whether catalog snapshots are used
+   */
+  public boolean isCatalogSnapshot()
+  {
+    return catalogSnapshot;
+  }
+
+  public void setCatalogSnapshot(boolean catalogSnapshot)
+  {
+    this.catalogSnapshot = catalogSnapshot;
+  }
+
+  public int getScanCheckpointSeconds()
+  {
+    return scanCheckpointSeconds;
+  }
+
+  public void setScanCheckpointSeconds(int scanCheckpointSeconds)
+  {
+    this.scanCheckpointSeconds = scanCheckpointSeconds;
+  }
+
+  public int getMergeThreads()
+  {
+    return mergeThreads;
+  }
+
+  public void setMergeThreads(int mergeThreads)
+  {
+    this.mergeThreads = mergeThreads;
+  }
+
+  public int getHashThreadsPerStore()
+  {
+    return hashThreadsPerStore;
+  }
+
+  public void setHashThreadsPerStore(int hashThreadsPerStore)
+  {
+    this.hashThreadsPerStore = hashThreadsPerStore;
+  }
+
+  public boolean isLogFileChanges()
+  {
+    return logFileChanges;
+  }
+
+  public void setLogFileChanges(boolean logFileChanges)
+  {
+    this.logFileChanges = logFileChanges;
+  }
+
+  public ChangeReport getChangeReport()
+  {
+    return changeReport;
+  }
+
+  public void setChangeReport(ChangeReport changeReport)
+  {
+    this.changeReport = changeReport;
+  }
+
+  public VolumeWatcher getVolumeWatcher()
+  {
+    return volumeWatcher;
+  }
+
+  public void setVolumeWatcher(VolumeWatcher volumeWatcher)
+  {
+    this.volumeWatcher = volumeWatcher;
+  }
+
+  public IoLimits getIoLimits()
+  {
+    return ioLimits;
+  }
+
+  /**
+   * Return the chunk hash values loaded for this run, if chunk hashing is configured.
+   *
+   * @return store or null
+   */
+  public ChunkStore getChunkStore()
+  {
+    return chunkStore;
+  }
+
+  public void setChunkStore(ChunkStore chunkStore)
+  {
+    this.chunkStore = chunkStore;
+  }
 }
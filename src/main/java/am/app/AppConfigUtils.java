@@ -21,6 +21,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
@@ -31,7 +33,9 @@ import com.thebuzzmedia.exiftool.Version;
 import com.thebuzzmedia.exiftool.exceptions.UnsupportedFeatureException;
 import am.db.JdbcSerialization;
 import am.filesystem.FileSystemHelper;
+import am.filesystem.IoLimits;
 import am.processor.hashes.HashConfig;
+import am.processor.hashes.HashInput;
 import am.processor.hashes.HashStrategy;
 
 /**
@@ -42,11 +46,33 @@ public final class AppConfigUtils
   private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(AppConfigUtils.class);
   private static final String LOG_DIR = "logDir";
   private static final String DATABASE_DIR = "databaseDir";
+  private static final String TSV_DIR = "tsvDir";
   private static final String IGNORE_DIR_NAMES = "ignoreDirNames";
   private static final String IGNORE_FILE_NAMES = "ignoreFileNames";
   private static final String EXIFTOOL_PATH = "exiftoolPath";
   private static final String CREATE_HASHES = "createHashes";
+  private static final String HASH_INPUT = "hashInput";
+  private static final String HASH_UNTIL = "until ";
+  private static final String HASH_FILES = "files";
+  private static final String HASH_CANCEL_AT_DEADLINE = "hashCancelAtDeadline";
+  private static final String CHECKSUM = "checksum";
+  private static final String VERIFY_CHECKSUM = "verifyChecksum";
+  private static final String FINGERPRINT = "fingerprint";
+  private static final String VERIFY_FINGERPRINT = "verifyFingerprint";
+  private static final String CHUNK_SIZE = "chunkSize";
+  private static final String CHUNKS_PER_RUN = "chunksPerRun";
   private static final String WIKIDATA = "wikidata";
+  private static final String CONCURRENT_VOLUMES = "concurrentVolumes";
+  private static final String INCREMENTAL_SCAN = "incrementalScan";
+  private static final String STREAMING_MERGE = "streamingMerge";
+  private static final String COMPACT_CATALOG = "compactCatalog";
+  private static final String CATALOG_SNAPSHOT = "catalogSnapshot";
+  private static final String SCAN_CHECKPOINT_SECONDS = "scanCheckpointSeconds";
+  private static final String MERGE_THREADS = "mergeThreads";
+  private static final String HASH_THREADS_PER_STORE = "hashThreadsPerStore";
+  private static final String LOG_FILE_CHANGES = "logFileChanges";
+  private static final String IO_BYTES_PER_SECOND = "ioBytesPerSecond";
+  private static final String IO_OPERATIONS_PER_SECOND = "ioOperationsPerSecond";
 
   private AppConfigUtils()
   {
@@ -83,15 +109,203 @@ public final class AppConfigUtils
     }
   }
 
+  private static void initConcurrentVolumes(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(CONCURRENT_VOLUMES))
+    {
+      final Object obj = props.remove(CONCURRENT_VOLUMES);
+      config.setConcurrentVolumes(Boolean.parseBoolean(obj.toString()));
+    }
+  }
+
+  private static void initIncrementalScan(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(INCREMENTAL_SCAN))
+    {
+      final Object obj = props.remove(INCREMENTAL_SCAN);
+      config.setIncrementalScan(Boolean.parseBoolean(obj.toString()));
+    }
+  }
+
+  private static void initStreamingMerge(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(STREAMING_MERGE))
+    {
+      final Object obj = props.remove(STREAMING_MERGE);
+      config.setStreamingMerge(Boolean.parseBoolean(obj.toString()));
+    }
+  }
+
+  private static void initCompactCatalog(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(COMPACT_CATALOG))
+    {
+      final Object obj = props.remove(COMPACT_CATALOG);
+      config.setCompactCatalog(Boolean.parseBoolean(obj.toString()));
+    }
+  }
+
+  private static void initCatalogSnapshot(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(CATALOG_SNAPSHOT))
+    {
+      final Object obj = props.remove(CATALOG_SNAPSHOT);
+      config.setCatalogSnapshot(Boolean.parseBoolean(obj.toString()));
+    }
+  }
+
+  private static void initScanCheckpointSeconds(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(SCAN_CHECKPOINT_SECONDS))
+    {
+      final String s = props.remove(SCAN_CHECKPOINT_SECONDS).toString();
+      try
+      {
+        config.setScanCheckpointSeconds(Integer.parseInt(s.trim()));
+      }
+      catch (final NumberFormatException nfe)
+      {
+        LOGGER.error(config.msg("init.error.scan_checkpoint_seconds", s));
+      }
+    }
+  }
+
+  private static void initHashThreadsPerStore(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(HASH_THREADS_PER_STORE))
+    {
+      final String s = props.remove(HASH_THREADS_PER_STORE).toString();
+      try
+      {
+        config.setHashThreadsPerStore(Integer.parseInt(s.trim()));
+      }
+      catch (final NumberFormatException nfe)
+      {
+        LOGGER.error(config.msg("init.error.hash_threads_per_store", s));
+      }
+    }
+  }
+
+  private static void initTsvDirectory(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(TSV_DIR))
+    {
+      final String path = props.remove(TSV_DIR).toString();
+      final File dir = new File(path);
+      if (dir.isDirectory())
+      {
+        config.setTsvDirectory(dir);
+      }
+      else
+      {
+        LOGGER.error(config.msg("tsv.error.directory_does_not_exist", path));
+      }
+    }
+  }
+
+  private static void initLogFileChanges(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(LOG_FILE_CHANGES))
+    {
+      final Object obj = props.remove(LOG_FILE_CHANGES);
+      config.setLogFileChanges(Boolean.parseBoolean(obj.toString()));
+    }
+  }
+
+  private static void initMergeThreads(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(MERGE_THREADS))
+    {
+      final String s = props.remove(MERGE_THREADS).toString();
+      try
+      {
+        config.setMergeThreads(Integer.parseInt(s.trim()));
+      }
+      catch (final NumberFormatException nfe)
+      {
+        LOGGER.error(config.msg("init.error.merge_threads", s));
+      }
+    }
+  }
+
+  /**
+   * Interpret I/O budgets, either as default for all volumes (key without suffix) or for a single volume (volume id as
+   * suffix, e.g. ioBytesPerSecond.3).
+   */
+  private static void initIoLimits(final AppConfig config, final Properties props)
+  {
+    final IoLimits limits = config.getIoLimits();
+    for (final String key : props.stringPropertyNames())
+    {
+      final boolean bytes = isKeyOrVolumeKey(key, IO_BYTES_PER_SECOND);
+      if (!bytes && !isKeyOrVolumeKey(key, IO_OPERATIONS_PER_SECOND))
+      {
+        continue;
+      }
+      final String value = props.remove(key).toString();
+      try
+      {
+        final long amount = IoLimits.parseAmount(value);
+        final int index = key.indexOf('.');
+        final Long volumeRef = index < 0 ? null : Long.valueOf(key.substring(index + 1));
+        if (volumeRef == null)
+        {
+          if (bytes)
+          {
+            limits.setDefaultBytesPerSecond(amount);
+          }
+          else
+          {
+            limits.setDefaultOperationsPerSecond(amount);
+          }
+        }
+        else
+          if (bytes)
+          {
+            limits.setBytesPerSecond(volumeRef, amount);
+          }
+          else
+          {
+            limits.setOperationsPerSecond(volumeRef, amount);
+          }
+      }
+      catch (final NumberFormatException | ArithmeticException e)
+      {
+        LOGGER.error(config.msg("init.error.io_limit", key, value));
+      }
+    }
+  }
+
+  private static boolean isKeyOrVolumeKey(final String key, final String name)
+  {
+    return key.equals(name) || key.startsWith(name + ".");
+  }
+
   public static boolean interpretProperties(final AppConfig config)
   {
     final Properties props = config.getProperties();
     initLogging(config, props);
     initIgnoreDirNames(config, props);
     initIgnoreFileNames(config, props);
+    initVolumeIgnoreNames(config, props);
     initExiftool(config, props);
     initHashes(config, props);
+    initHashInput(config, props);
+    initChecksum(config, props);
+    initFingerprint(config, props);
+    initChunks(config, props);
     initWikidata(config, props);
+    initConcurrentVolumes(config, props);
+    initIncrementalScan(config, props);
+    initStreamingMerge(config, props);
+    initCompactCatalog(config, props);
+    initCatalogSnapshot(config, props);
+    initScanCheckpointSeconds(config, props);
+    initMergeThreads(config, props);
+    initHashThreadsPerStore(config, props);
+    initTsvDirectory(config, props);
+    initLogFileChanges(config, props);
+    initIoLimits(config, props);
     boolean success = initDatabase(config, props);
     if (success && !props.isEmpty())
     {
@@ -131,6 +345,131 @@ public final class AppConfigUtils
           LOGGER.error(config.msg("init.error.hash_percentage", s));
         }
       }
+      else
+        if (!s.isEmpty() && (Character.isDigit(s.charAt(0)) || s.startsWith(HASH_UNTIL)))
+        {
+          initHashBudget(config, hashConfig, s.trim());
+        }
+    }
+    if (props.containsKey(HASH_CANCEL_AT_DEADLINE))
+    {
+      config.getHashConfig()
+          .setCancelAtDeadline(Boolean.parseBoolean(props.remove(HASH_CANCEL_AT_DEADLINE).toString().trim()));
+    }
+  }
+
+  /**
+   * Interpret a createHashes value limiting the time, the amount of data or the number of files.
+   */
+  private static void initHashBudget(final AppConfig config, final HashConfig hashConfig, final String s)
+  {
+    try
+    {
+      if (s.startsWith(HASH_UNTIL))
+      {
+        hashConfig.setUntil(LocalTime.parse(s.substring(HASH_UNTIL.length()).trim()));
+        hashConfig.setStrategy(HashStrategy.Time);
+      }
+      else
+        if (s.endsWith(HASH_FILES))
+        {
+          hashConfig.setMaxFiles(Long.parseLong(s.substring(0, s.length() - HASH_FILES.length()).trim()));
+          hashConfig.setStrategy(HashStrategy.Files);
+        }
+        else
+        {
+          hashConfig.setMaxBytes(IoLimits.parseAmount(s));
+          hashConfig.setStrategy(HashStrategy.Data);
+        }
+    }
+    catch (final DateTimeParseException | NumberFormatException | ArithmeticException e)
+    {
+      LOGGER.error(config.msg("init.error.create_hashes", s));
+    }
+  }
+
+  private static void initHashInput(final AppConfig config, final Properties props)
+  {
+    if (props.containsKey(HASH_INPUT))
+    {
+      final String s = props.remove(HASH_INPUT).toString().trim();
+      if ("stream".equalsIgnoreCase(s))
+      {
+        config.getHashConfig().setInput(HashInput.Stream);
+      }
+      else
+        if ("channel".equalsIgnoreCase(s))
+        {
+          config.getHashConfig().setInput(HashInput.Channel);
+        }
+        else
+        {
+          LOGGER.error(config.msg("init.error.hash_input", s));
+        }
+    }
+  }
+
+  private static void initChecksum(final AppConfig config, final Properties props)
+  {
+    final HashConfig hashConfig = config.getHashConfig();
+    if (props.containsKey(CHECKSUM))
+    {
+      final String s = props.remove(CHECKSUM).toString().trim();
+      if (HashConfig.CHECKSUM_ALGORITHMS.contains(s))
+      {
+        hashConfig.setChecksumAlgorithm(s);
+      }
+      else
+        if (!"none".equalsIgnoreCase(s))
+        {
+          LOGGER.error(config.msg("init.error.checksum", s, HashConfig.CHECKSUM_ALGORITHMS));
+        }
+    }
+    if (props.containsKey(VERIFY_CHECKSUM))
+    {
+      hashConfig.setVerifyChecksum(Boolean.parseBoolean(props.remove(VERIFY_CHECKSUM).toString().trim()));
+    }
+  }
+
+  private static void initFingerprint(final AppConfig config, final Properties props)
+  {
+    final HashConfig hashConfig = config.getHashConfig();
+    if (props.containsKey(FINGERPRINT))
+    {
+      hashConfig.setFingerprint(Boolean.parseBoolean(props.remove(FINGERPRINT).toString().trim()));
+    }
+    if (props.containsKey(VERIFY_FINGERPRINT))
+    {
+      hashConfig.setVerifyFingerprint(Boolean.parseBoolean(props.remove(VERIFY_FINGERPRINT).toString().trim()));
+    }
+  }
+
+  private static void initChunks(final AppConfig config, final Properties props)
+  {
+    final HashConfig hashConfig = config.getHashConfig();
+    if (props.containsKey(CHUNK_SIZE))
+    {
+      final String s = props.remove(CHUNK_SIZE).toString();
+      try
+      {
+        hashConfig.setChunkSize(IoLimits.parseAmount(s));
+      }
+      catch (final NumberFormatException nfe)
+      {
+        LOGGER.error(config.msg("init.error.chunk_size", s));
+      }
+    }
+    if (props.containsKey(CHUNKS_PER_RUN))
+    {
+      final String s = props.remove(CHUNKS_PER_RUN).toString();
+      try
+      {
+        hashConfig.setChunksPerRun(Math.max(0, Integer.parseInt(s.trim())));
+      }
+      catch (final NumberFormatException nfe)
+      {
+        LOGGER.error(config.msg("init.error.chunks_per_run", s));
+      }
     }
   }
 
@@ -192,6 +531,39 @@ public final class AppConfigUtils
     config.setIgnoreFileNames(names);
   }
 
+  /**
+   * Interpret ignore rules of single volumes, with the volume id as suffix of the key, e.g. ignoreDirNames.3.
+   */
+  private static void initVolumeIgnoreNames(final AppConfig config, final Properties props)
+  {
+    for (final String key : props.stringPropertyNames())
+    {
+      final boolean dirs = key.startsWith(IGNORE_DIR_NAMES + ".");
+      if (!dirs && !key.startsWith(IGNORE_FILE_NAMES + "."))
+      {
+        continue;
+      }
+      final String value = props.remove(key).toString();
+      try
+      {
+        final Long volumeRef = Long.valueOf(key.substring(key.indexOf('.') + 1));
+        final Set<String> names = FileSystemHelper.splitFileNames(value, ",");
+        if (dirs)
+        {
+          config.setVolumeIgnoreDirNames(volumeRef, names);
+        }
+        else
+        {
+          config.setVolumeIgnoreFileNames(volumeRef, names);
+        }
+      }
+      catch (final NumberFormatException e)
+      {
+        LOGGER.error(config.msg("init.error.volume_key", key));
+      }
+    }
+  }
+
   private static boolean initDatabase(AppConfig config, Properties props)
   {
     if (props.containsKey(DATABASE_DIR))
@@ -160,6 +160,13 @@ public class ArgumentParser
           config.setMode(ProcessMode.Check);
           config.addFileSystemItem(nextArg);
         };
+      }, new AbstractParameter("args.watch", "watch", "w", null)
+      {
+        @Override
+        public void process(final AppConfig config, final String nextArg)
+        {
+          config.setMode(ProcessMode.Watch);
+        };
       }, new AbstractParameter("args.wikidata", "wikidata", null, ParameterType.Boolean)
       {
         @Override
@@ -36,6 +36,12 @@ public enum ProcessMode
    */
   Check,
 
+  /**
+   * Check current file system state against catalog, then keep running and update the catalog whenever the file
+   * system changes.
+   */
+  Watch,
+
   /**
    * Add a volume.
    */
@@ -19,6 +19,7 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.slf4j.LoggerFactory;
 import com.thebuzzmedia.exiftool.ExifTool;
 import am.db.JdbcSerialization;
+import am.processor.ChangeReport;
 import am.services.wikidata.WikidataConfiguration;
 import ch.qos.logback.classic.LoggerContext;
 
@@ -43,10 +44,28 @@ public class ShutdownThread extends Thread
   {
     LOGGER.info(config.msg("shutdown.info.shutting_down"));
 
+    // in watch mode the application only ends here; let the watcher store the batch it is working on before
+    // anything it uses gets closed
+    final VolumeWatcher watcher = config.getVolumeWatcher();
+    if (watcher != null)
+    {
+      watcher.stop();
+    }
+
+    // write the rest of the change report
+    final ChangeReport report = config.getChangeReport();
+    if (report != null)
+    {
+      report.close();
+      config.setChangeReport(null);
+    }
+
     // database first, its proper state is most important
     final JdbcSerialization io = config.getDatabaseSerializer();
     if (io != null)
     {
+      // in watch mode the run was not finished yet, this also inserts its pending events
+      io.finishRun();
       io.close();
       config.setDatabaseSerializer(null);
     }
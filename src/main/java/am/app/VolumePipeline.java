@@ -0,0 +1,257 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import am.filesystem.VolumeScanner;
+import am.filesystem.model.Volume;
+import am.processor.MetadataExtraction;
+import am.processor.VolumeProcessor;
+import am.processor.hashes.HashProcessor;
+
+/**
+ * Run the complete processing pipeline (scanning, merging, metadata extraction, validation and hash creation) for each
+ * volume on its own. Volumes are grouped by the {@link FileStore} they are located on. Groups are processed
+ * concurrently, the volumes of a single group one after another so that a device is never read by two pipelines at the
+ * same time. A volume whose processing fails is logged and left out of the result, the other volumes are not affected.
+ *
+ * @author Marco Schmidt
+ */
+public class VolumePipeline
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(VolumePipeline.class);
+  private final App app;
+  private final AppConfig config;
+  private final MetadataExtraction extraction = new MetadataExtraction();
+  private final Object validationLock = new Object();
+
+  public VolumePipeline(final App app, final AppConfig config)
+  {
+    this.app = app;
+    this.config = config;
+  }
+
+  /**
+   * Scan the directory tree of a volume.
+   *
+   * @param config
+   *          application configuration
+   * @param loadedVol
+   *          volume as loaded from the database
+   * @return new volume object with the scanned tree or null if the volume's path is not a directory
+   */
+  static Volume scan(final AppConfig config, final Volume loadedVol)
+  {
+    final String path = loadedVol.getPath();
+    final File dir = new File(path);
+    if (dir.exists())
+    {
+      if (dir.isDirectory())
+      {
+        final Volume vol = new Volume();
+        vol.setPath(loadedVol.getPath());
+        vol.setEntry(dir);
+        final VolumeScanner scanner = new VolumeScanner(config, vol);
+        scanner.setCatalog(loadedVol);
+        scanner.scan();
+        return vol;
+      }
+      else
+      {
+        LOGGER.error(config.msg("processor.error.not_a_directory", path));
+      }
+    }
+    else
+    {
+      LOGGER.error(config.msg("processor.error.directory_invalid", path));
+    }
+    return null;
+  }
+
+  /**
+   * Process all argument volumes, concurrently if they are located on different devices.
+   *
+   * @param loadedVolumes
+   *          volumes as loaded from the database
+   * @return merged volumes in the order of the argument list
+   */
+  public List<Volume> process(final List<Volume> loadedVolumes)
+  {
+    final Map<Object, List<Volume>> groups = groupByFileStore(loadedVolumes);
+    final Map<String, String> context = MDC.getCopyOfContextMap();
+    final AtomicInteger threadIndex = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, groups.size()),
+        r -> new Thread(r, "vol" + threadIndex.incrementAndGet()));
+    LOGGER.info(config.msg("pipeline.info.start", loadedVolumes.size(), groups.size()));
+    final List<List<Volume>> groupList = new ArrayList<>(groups.values());
+    final List<Future<List<Volume>>> futures = new ArrayList<>();
+    for (final List<Volume> group : groupList)
+    {
+      // a single task per device so that its volumes are processed one after another
+      futures.add(executor.submit(() -> processGroup(context, group)));
+    }
+    final Map<Volume, Volume> mergedByLoaded = new IdentityHashMap<>();
+    try
+    {
+      for (int groupIndex = 0; groupIndex < futures.size(); groupIndex++)
+      {
+        final List<Volume> group = groupList.get(groupIndex);
+        try
+        {
+          final List<Volume> merged = futures.get(groupIndex).get();
+          for (int index = 0; index < group.size(); index++)
+          {
+            mergedByLoaded.put(group.get(index), merged.get(index));
+          }
+        }
+        catch (final ExecutionException e)
+        {
+          LOGGER.error(config.msg("pipeline.error.failed", group.get(0).getPath()), e.getCause());
+        }
+      }
+    }
+    catch (final InterruptedException e)
+    {
+      LOGGER.error(config.msg("pipeline.error.interrupted"), e);
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      executor.shutdownNow();
+      extraction.close(config);
+    }
+    final List<Volume> result = new ArrayList<>();
+    for (final Volume loaded : loadedVolumes)
+    {
+      final Volume merged = mergedByLoaded.get(loaded);
+      if (merged != null)
+      {
+        result.add(merged);
+      }
+    }
+    return result;
+  }
+
+  private List<Volume> processGroup(final Map<String, String> context, final List<Volume> group)
+  {
+    if (context != null)
+    {
+      MDC.setContextMap(context);
+    }
+    final List<Volume> result = new ArrayList<>();
+    for (final Volume loaded : group)
+    {
+      try
+      {
+        result.add(process(loaded));
+      }
+      catch (final RuntimeException e)
+      {
+        // the other volumes on this device still get processed
+        LOGGER.error(config.msg("pipeline.error.failed", loaded.getPath()), e);
+        result.add(null);
+      }
+    }
+    return result;
+  }
+
+  private Volume process(final Volume loaded)
+  {
+    final String path = loaded.getPath();
+    LOGGER.info(config.msg("pipeline.info.start_volume", path, loaded.getId()));
+    final long startMillis = System.currentTimeMillis();
+
+    final Volume scanned = scan(config, loaded);
+    final long scanMillis = System.currentTimeMillis();
+
+    final VolumeProcessor proc = new VolumeProcessor();
+    proc.setConfig(config);
+    final List<Volume> scannedVolumes = scanned == null ? Collections.emptyList() : Collections.singletonList(scanned);
+    final List<Volume> mergedVolumes = proc.processVolumes(scannedVolumes, Collections.singletonList(loaded));
+    final long mergeMillis = System.currentTimeMillis();
+
+    if (config.getExifTool() != null)
+    {
+      for (final Volume merged : mergedVolumes)
+      {
+        extraction.update(config, merged);
+      }
+    }
+    final long extractionMillis = System.currentTimeMillis();
+
+    synchronized (validationLock)
+    {
+      // validators may query Wikidata over a single shared connection
+      app.validate(config, mergedVolumes);
+    }
+    final long validationMillis = System.currentTimeMillis();
+
+    final HashProcessor hashProcessor = new HashProcessor();
+    hashProcessor.update(config, mergedVolumes);
+    final long hashMillis = System.currentTimeMillis();
+
+    LOGGER.info(config.msg("pipeline.info.end_volume", path, hashMillis - startMillis, scanMillis - startMillis,
+        mergeMillis - scanMillis, extractionMillis - mergeMillis, validationMillis - extractionMillis,
+        hashMillis - validationMillis));
+    return mergedVolumes.isEmpty() ? null : mergedVolumes.get(0);
+  }
+
+  /**
+   * Group volumes by the {@link FileStore} they are stored on, keeping the order of the argument list. A volume whose
+   * store cannot be determined forms a group of its own.
+   *
+   * @param volumes
+   *          volumes to be grouped
+   * @return map from group key to volumes of that group
+   */
+  Map<Object, List<Volume>> groupByFileStore(final List<Volume> volumes)
+  {
+    final Map<Object, List<Volume>> result = new LinkedHashMap<>();
+    for (final Volume vol : volumes)
+    {
+      final String path = vol.getPath();
+      Object key;
+      try
+      {
+        key = Files.getFileStore(Paths.get(path));
+      }
+      catch (final IOException e)
+      {
+        key = path;
+      }
+      result.computeIfAbsent(key, k -> new ArrayList<>()).add(vol);
+    }
+    return result;
+  }
+}
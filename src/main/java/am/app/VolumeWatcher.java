@@ -0,0 +1,595 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.db.JdbcSerialization;
+import am.filesystem.VolumeScanner;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+import am.processor.MetadataExtraction;
+import am.processor.VolumeProcessor;
+import am.processor.hashes.HashCreation;
+import am.processor.hashes.HashProcessor;
+import am.processor.hashes.HashStrategy;
+
+/**
+ * Keep the catalog up to date after an initial check by watching all directories of all volumes with a
+ * {@link WatchService}. Events are collected in batches. Each batch updates the in-memory volume trees, examines and
+ * hashes new or modified files and writes the affected directories to the database in a single transaction. If the
+ * watch service reports an overflow, i.e. events were lost, the affected volume is scanned again completely.
+ *
+ * @author Marco Schmidt
+ */
+public class VolumeWatcher implements Closeable
+{
+  /**
+   * A batch is complete once no further events arrived for this many milliseconds.
+   */
+  static final long BATCH_QUIET_MILLIS = 1000;
+  /**
+   * A batch is complete at the latest after this many milliseconds, even if events keep coming in.
+   */
+  static final long BATCH_MAX_MILLIS = 10000;
+  private static final Logger LOGGER = LoggerFactory.getLogger(VolumeWatcher.class);
+  private final AppConfig config;
+  private final List<Volume> volumes;
+  private final WatchService watchService;
+  private final Map<WatchKey, WatchedDirectory> keys = new HashMap<>();
+  private final VolumeProcessor processor = new VolumeProcessor();
+  private final MetadataExtraction extraction = new MetadataExtraction();
+  private final Set<Directory> changedDirectories = new LinkedHashSet<>();
+  private final Map<Directory, Directory> changedTrees = new LinkedHashMap<>();
+  private final Set<File> changedFiles = new LinkedHashSet<>();
+  private final Set<File> missingFiles = new LinkedHashSet<>();
+  private final Set<Volume> overflowVolumes = new LinkedHashSet<>();
+  private final Map<Volume, VolumeScanner> scanners = new IdentityHashMap<>();
+  private boolean running;
+
+  /**
+   * A directory registered with the watch service.
+   */
+  private static final class WatchedDirectory
+  {
+    private final Volume volume;
+    private final Directory directory;
+    private final Path path;
+
+    WatchedDirectory(final Volume volume, final Directory directory, final Path path)
+    {
+      this.volume = volume;
+      this.directory = directory;
+      this.path = path;
+    }
+  }
+
+  public VolumeWatcher(final AppConfig config, final List<Volume> volumes) throws IOException
+  {
+    this.config = config;
+    this.volumes = new ArrayList<>(volumes);
+    processor.setConfig(config);
+    watchService = FileSystems.getDefault().newWatchService();
+  }
+
+  public List<Volume> getVolumes()
+  {
+    return Collections.unmodifiableList(volumes);
+  }
+
+  /**
+   * Register all existing directories of all volumes with the watch service.
+   */
+  public void register()
+  {
+    for (final Volume vol : volumes)
+    {
+      register(vol);
+    }
+    LOGGER.info(config.msg("watcher.info.start", keys.size(), volumes.size()));
+  }
+
+  private void register(final Volume vol)
+  {
+    final Directory root = vol.getRoot();
+    if (root != null)
+    {
+      register(vol, root, Paths.get(vol.getPath()));
+    }
+  }
+
+  private void register(final Volume vol, final Directory dir, final Path path)
+  {
+    if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+    {
+      return;
+    }
+    try
+    {
+      final WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+      keys.put(key, new WatchedDirectory(vol, dir, path));
+    }
+    catch (final ClosedWatchServiceException e)
+    {
+      // stopped while a batch was applied
+      return;
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("watcher.error.register_failed", path), e);
+    }
+    for (final Directory sub : dir.getSubdirectories())
+    {
+      register(vol, sub, path.resolve(sub.getName()));
+    }
+  }
+
+  /**
+   * Process batches of events until the thread gets interrupted or this watcher is closed.
+   */
+  public void run()
+  {
+    synchronized (this)
+    {
+      running = true;
+    }
+    try
+    {
+      while (processBatch(-1) >= 0)
+      {
+        // keep watching
+      }
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      synchronized (this)
+      {
+        running = false;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Close this watcher and wait until {@link #run()} has returned, so that a batch being applied is stored completely
+   * before the caller goes on, e.g. to finish the run and close the database.
+   */
+  public void stop()
+  {
+    try
+    {
+      close();
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("watcher.error.create_failed"), e);
+    }
+    synchronized (this)
+    {
+      if (running)
+      {
+        LOGGER.info(config.msg("watcher.info.stopping"));
+      }
+      while (running)
+      {
+        try
+        {
+          wait();
+        }
+        catch (final InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Wait for events, collect them as a batch and apply all changes of that batch.
+   *
+   * @param timeoutMillis
+   *          maximum time to wait for the first event, a negative value means waiting indefinitely
+   * @return number of events processed (zero if the timeout elapsed), -1 if the watcher was closed; events collected
+   *         before it was closed are still applied
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public int processBatch(final long timeoutMillis) throws InterruptedException
+  {
+    int numEvents = 0;
+    boolean closed = false;
+    try
+    {
+      WatchKey key = timeoutMillis < 0 ? watchService.take()
+          : watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      final long millis = System.currentTimeMillis();
+      while (key != null)
+      {
+        numEvents += collect(key);
+        key = System.currentTimeMillis() - millis > BATCH_MAX_MILLIS ? null
+            : watchService.poll(BATCH_QUIET_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
+    catch (final ClosedWatchServiceException e)
+    {
+      closed = true;
+    }
+    if (numEvents > 0)
+    {
+      apply(numEvents);
+    }
+    return closed ? -1 : numEvents;
+  }
+
+  private int collect(final WatchKey key)
+  {
+    final WatchedDirectory watched = keys.get(key);
+    int numEvents = 0;
+    for (final WatchEvent<?> event : key.pollEvents())
+    {
+      numEvents++;
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+      {
+        if (watched == null)
+        {
+          overflowVolumes.addAll(volumes);
+        }
+        else
+        {
+          overflowVolumes.add(watched.volume);
+        }
+      }
+      else
+        if (watched != null)
+        {
+          handle(watched, (Path) event.context(), event.kind());
+        }
+    }
+    if (!key.reset())
+    {
+      // directory is no longer accessible, its removal is reported to the parent directory's key
+      keys.remove(key);
+    }
+    return numEvents;
+  }
+
+  private void handle(final WatchedDirectory watched, final Path name, final WatchEvent.Kind<?> kind)
+  {
+    final String fileName = name.toString();
+    final Path path = watched.path.resolve(name);
+    if (LOGGER.isTraceEnabled())
+    {
+      LOGGER.trace(config.msg("watcher.trace.event", kind.name(), path));
+    }
+    if (kind == StandardWatchEventKinds.ENTRY_DELETE)
+    {
+      handleDelete(watched.directory, path, fileName);
+    }
+    else
+      if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+      {
+        // modification events of directories are followed by events for the modified entries
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE && !getScanner(watched.volume).isIgnoredDirectory(path))
+        {
+          handleNewDirectory(watched, path, fileName);
+        }
+      }
+      else
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS) && !getScanner(watched.volume).isIgnoredFile(path, fileName))
+        {
+          handleFile(watched, path, fileName);
+        }
+  }
+
+  private void handleDelete(final Directory dir, final Path path, final String name)
+  {
+    final Directory sub = dir.getSubdirectory(name);
+    if (sub != null)
+    {
+      collectMissingFiles(sub, path);
+      processor.mergeDirectory(null, sub);
+      changedTrees.put(sub, dir);
+      return;
+    }
+    final File file = dir.getFile(name);
+    if (file != null && file.getState() != FileState.Missing)
+    {
+      file.setState(FileState.Missing);
+      file.setEntry(path.toFile());
+      missingFiles.add(file);
+      changedDirectories.add(dir);
+    }
+  }
+
+  /**
+   * Remember the files of a deleted directory which are about to become missing, files already missing are not
+   * reported again.
+   */
+  private void collectMissingFiles(final Directory dir, final Path path)
+  {
+    for (final File file : dir.getFiles())
+    {
+      if (file.getState() != FileState.Missing)
+      {
+        file.setEntry(path.resolve(file.getName()).toFile());
+        missingFiles.add(file);
+      }
+    }
+    for (final Directory sub : dir.getSubdirectories())
+    {
+      collectMissingFiles(sub, path.resolve(sub.getName()));
+    }
+  }
+
+  private VolumeScanner getScanner(final Volume volume)
+  {
+    return scanners.computeIfAbsent(volume, vol -> new VolumeScanner(config, vol));
+  }
+
+  private void handleNewDirectory(final WatchedDirectory watched, final Path path, final String name)
+  {
+    final Volume scannedVolume = new Volume();
+    scannedVolume.setPath(path.toString());
+    final VolumeScanner scanner = new VolumeScanner(config, scannedVolume);
+    scanner.useIgnoreRulesOf(getScanner(watched.volume));
+    scanner.scan();
+    final Directory scanned = scannedVolume.getRoot();
+    if (scanned == null)
+    {
+      return;
+    }
+    scanned.setName(name);
+    final Directory dir = watched.directory;
+    final Directory existing = dir.getSubdirectory(name);
+    final Directory merged = processor.mergeDirectory(scanned, existing);
+    if (existing != null)
+    {
+      dir.remove(existing);
+    }
+    dir.add(merged);
+    collectChangedFiles(merged, path);
+    register(watched.volume, merged, path);
+    changedTrees.put(merged, dir);
+  }
+
+  private void collectChangedFiles(final Directory dir, final Path path)
+  {
+    dir.setEntry(path.toFile());
+    for (final File file : dir.getFiles())
+    {
+      file.setEntry(path.resolve(file.getName()).toFile());
+      final FileState state = file.getState();
+      if (state == FileState.New || state == FileState.Modified)
+      {
+        changedFiles.add(file);
+      }
+    }
+    for (final Directory sub : dir.getSubdirectories())
+    {
+      collectChangedFiles(sub, path.resolve(sub.getName()));
+    }
+  }
+
+  private void handleFile(final WatchedDirectory watched, final Path path, final String name)
+  {
+    File scanned;
+    try
+    {
+      scanned = getScanner(watched.volume).createFile(path, name);
+    }
+    catch (final IOException e)
+    {
+      // removed again, the deletion event follows
+      return;
+    }
+    final Directory dir = watched.directory;
+    final File existing = dir.getFile(name);
+    if (existing == null)
+    {
+      scanned.setState(FileState.New);
+      scanned.setEntry(path.toFile());
+      dir.add(scanned);
+      changedFiles.add(scanned);
+    }
+    else
+      if (existing.getByteSizeValue() != scanned.getByteSizeValue()
+          || existing.getLastModifiedMillis() != scanned.getLastModifiedMillis())
+      {
+        existing.setByteSizeValue(scanned.getByteSizeValue());
+        existing.setLastModifiedMillis(scanned.getLastModifiedMillis());
+        existing.setState(FileState.Modified);
+        existing.setEntry(path.toFile());
+        clearMetadata(existing);
+        changedFiles.add(existing);
+      }
+      else
+        if (existing.getState() == FileState.Missing)
+        {
+          existing.setState(FileState.Identical);
+        }
+        else
+        {
+          return;
+        }
+    changedDirectories.add(dir);
+  }
+
+  private static void clearMetadata(final File file)
+  {
+    file.setMimeType(null);
+    file.setFileGroup(null);
+    file.setFileType(null);
+    file.setImageWidth(null);
+    file.setImageHeight(null);
+    file.setDurationNanos(null);
+    file.setHashValue(null);
+    file.setHashCreated(null);
+    file.setChecksum(File.UNKNOWN);
+    file.setFingerprint(File.UNKNOWN);
+  }
+
+  private void apply(final int numEvents)
+  {
+    final long millis = System.currentTimeMillis();
+    final boolean extract = config.getExifTool() != null;
+    final boolean hash = config.getHashConfig().getStrategy() != HashStrategy.None;
+    final HashCreation creator = new HashCreation();
+    for (final File file : changedFiles)
+    {
+      if (extract)
+      {
+        extraction.update(config, file);
+      }
+      if (hash)
+      {
+        creator.update(config, file);
+      }
+    }
+    save();
+    report();
+    LOGGER.info(config.msg("watcher.info.batch", numEvents, changedFiles.size(),
+        changedDirectories.size() + changedTrees.size(), System.currentTimeMillis() - millis));
+    changedFiles.clear();
+    missingFiles.clear();
+    changedDirectories.clear();
+    changedTrees.clear();
+
+    // changes recorded above for these volumes are superseded by scanning them again
+    final List<Volume> rescan = new ArrayList<>(overflowVolumes);
+    overflowVolumes.clear();
+    for (final Volume vol : rescan)
+    {
+      rescan(vol);
+    }
+  }
+
+  private void save()
+  {
+    final JdbcSerialization io = config.getDatabaseSerializer();
+    if (io == null || !io.beginTransaction())
+    {
+      return;
+    }
+    for (final Map.Entry<Directory, Directory> entry : changedTrees.entrySet())
+    {
+      final Directory tree = entry.getKey();
+      final Directory parent = entry.getValue();
+      tree.setVolumeRef(parent.getVolumeRef());
+      io.save(tree, parent.getId(), false);
+    }
+    for (final Directory dir : changedDirectories)
+    {
+      io.saveFiles(dir, false);
+    }
+    // files keep their state until the next run, so only those changed by this batch become events
+    for (final File file : changedFiles)
+    {
+      io.addEvent(file);
+    }
+    for (final File file : missingFiles)
+    {
+      io.addEvent(file);
+    }
+    io.commitTransaction();
+  }
+
+  /**
+   * Log the changes of a batch and add them to the change report, if there is one.
+   */
+  private void report()
+  {
+    for (final File file : changedFiles)
+    {
+      processor.print(file);
+    }
+    for (final File file : missingFiles)
+    {
+      processor.print(file);
+    }
+  }
+
+  private void rescan(final Volume vol)
+  {
+    LOGGER.warn(config.msg("watcher.warn.overflow", vol.getPath()));
+    final Volume scanned = VolumePipeline.scan(config, vol);
+    if (scanned == null)
+    {
+      return;
+    }
+    final Volume merged = processor.processVolumes(Collections.singletonList(scanned), Collections.singletonList(vol))
+        .get(0);
+    if (config.getExifTool() != null)
+    {
+      extraction.update(config, merged);
+    }
+    new HashProcessor().update(config, Collections.singletonList(merged));
+    final JdbcSerialization io = config.getDatabaseSerializer();
+    if (io != null && io.beginTransaction())
+    {
+      io.saveAll(Collections.singletonList(merged));
+      io.commitTransaction();
+    }
+    final Iterator<Map.Entry<WatchKey, WatchedDirectory>> iter = keys.entrySet().iterator();
+    while (iter.hasNext())
+    {
+      final Map.Entry<WatchKey, WatchedDirectory> entry = iter.next();
+      if (entry.getValue().volume == vol)
+      {
+        entry.getKey().cancel();
+        iter.remove();
+      }
+    }
+    volumes.set(volumes.indexOf(vol), merged);
+    register(merged);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    watchService.close();
+  }
+}
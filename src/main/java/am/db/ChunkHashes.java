@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.db;
+
+/**
+ * Hash values of the fixed-size chunks of a file, computed from the same content as the file's hash value, and the
+ * root of the Merkle tree built from them. The chunk hash values are stored back to back in a single byte array. A
+ * chunk index tells where verification continues, so that large files can be verified across several runs.
+ *
+ * @author Marco Schmidt
+ */
+public class ChunkHashes extends Model
+{
+  private Long fileRef;
+  private long byteSize;
+  private long chunkSize;
+  private String hashValue;
+  private String root;
+  private byte[] hashes;
+  private int nextChunk;
+  private long created;
+
+  public Long getFileRef()
+  {
+    return fileRef;
+  }
+
+  public void setFileRef(Long fileRef)
+  {
+    this.fileRef = fileRef;
+  }
+
+  /**
+   * Get the size of the file the chunk hash values were computed from.
+   *
+   * @return size in bytes
+   */
+  public long getByteSize()
+  {
+    return byteSize;
+  }
+
+  public void setByteSize(long byteSize)
+  {
+    this.byteSize = byteSize;
+  }
+
+  public long getChunkSize()
+  {
+    return chunkSize;
+  }
+
+  public void setChunkSize(long chunkSize)
+  {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Get the hash value of the complete file computed in the same read as the chunk hash values.
+   *
+   * @return hash value
+   */
+  public String getHashValue()
+  {
+    return hashValue;
+  }
+
+  public void setHashValue(String hashValue)
+  {
+    this.hashValue = hashValue;
+  }
+
+  /**
+   * Get the root of the Merkle tree over the chunk hash values, used to check the stored hash values themselves.
+   *
+   * @return hexadecimal root hash value
+   */
+  public String getRoot()
+  {
+    return root;
+  }
+
+  public void setRoot(String root)
+  {
+    this.root = root;
+  }
+
+  /**
+   * Get the hash values of all chunks, in file order.
+   *
+   * @return concatenated hash values
+   */
+  public byte[] getHashes()
+  {
+    return hashes;
+  }
+
+  public void setHashes(byte[] hashes)
+  {
+    this.hashes = hashes;
+  }
+
+  /**
+   * Get the index of the chunk verification continues with, 0 if the last verification was completed.
+   *
+   * @return chunk index
+   */
+  public int getNextChunk()
+  {
+    return nextChunk;
+  }
+
+  public void setNextChunk(int nextChunk)
+  {
+    this.nextChunk = nextChunk;
+  }
+
+  public long getCreated()
+  {
+    return created;
+  }
+
+  public void setCreated(long created)
+  {
+    this.created = created;
+  }
+
+  /**
+   * Return the number of chunks of the file.
+   *
+   * @return number of chunks, the last one may be shorter than the chunk size
+   */
+  public int getNumChunks()
+  {
+    return chunkSize > 0 ? (int) ((byteSize + chunkSize - 1) / chunkSize) : 0;
+  }
+}
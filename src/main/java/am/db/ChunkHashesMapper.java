@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ModelMapper} for the {@link ChunkHashes} class, a side table with at most one row per file. The chunk hash
+ * values of a file are stored as a single blob.
+ *
+ * @author Marco Schmidt
+ */
+public class ChunkHashesMapper extends ModelMapper<ChunkHashes>
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChunkHashesMapper.class);
+  static final String TABLE_CHUNK_HASHES = "chunk_hashes";
+  private static final String COL_FILE_REF = "file_ref";
+  private static final String COL_SIZE = "byte_size";
+  private static final String COL_CHUNK_SIZE = "chunk_size";
+  private static final String COL_HASH_VALUE = "hash_value";
+  private static final String COL_ROOT = "root";
+  private static final String COL_HASHES = "hashes";
+  private static final String COL_NEXT_CHUNK = "next_chunk";
+  private static final String COL_CREATED = "created";
+  private static final String[] COLUMNS =
+  {
+      COL_FILE_REF, COL_SIZE, COL_CHUNK_SIZE, COL_HASH_VALUE, COL_ROOT, COL_HASHES, COL_NEXT_CHUNK, COL_CREATED
+  };
+
+  @Override
+  protected ChunkHashes create()
+  {
+    return new ChunkHashes();
+  }
+
+  @Override
+  protected String getTableName()
+  {
+    return TABLE_CHUNK_HASHES;
+  }
+
+  @Override
+  public ChunkHashes from(ResultSet rs)
+  {
+    final ChunkHashes chunks = super.from(rs);
+    try
+    {
+      chunks.setFileRef(Long.valueOf(rs.getLong(COL_FILE_REF)));
+      chunks.setByteSize(rs.getLong(COL_SIZE));
+      chunks.setChunkSize(rs.getLong(COL_CHUNK_SIZE));
+      chunks.setHashValue(rs.getString(COL_HASH_VALUE));
+      chunks.setRoot(rs.getString(COL_ROOT));
+      chunks.setHashes(rs.getBytes(COL_HASHES));
+      chunks.setNextChunk(rs.getInt(COL_NEXT_CHUNK));
+      chunks.setCreated(rs.getLong(COL_CREATED));
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(getConfig().msg("database.error.convert_from_result_set", this.getClass().getSimpleName()), e);
+    }
+    return chunks;
+  }
+
+  @Override
+  public void to(PreparedStatement stat, ChunkHashes chunks, boolean appendModelId)
+  {
+    try
+    {
+      setLong(stat, 1, chunks.getFileRef());
+      stat.setLong(2, chunks.getByteSize());
+      stat.setLong(3, chunks.getChunkSize());
+      ModelMapper.setString(stat, 4, chunks.getHashValue());
+      ModelMapper.setString(stat, 5, chunks.getRoot());
+      stat.setBytes(6, chunks.getHashes());
+      stat.setInt(7, chunks.getNextChunk());
+      stat.setLong(8, chunks.getCreated());
+      if (appendModelId)
+      {
+        stat.setLong(9, chunks.getId());
+      }
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(getConfig().msg("database.error.convert_to_prepared_statement", this.getClass().getSimpleName()), e);
+    }
+  }
+
+  @Override
+  protected String getTableDefinition()
+  {
+    return COL_FILE_REF + " bigint,\n" + COL_SIZE + " bigint,\n" + COL_CHUNK_SIZE + " bigint,\n" + COL_HASH_VALUE
+        + " text,\n" + COL_ROOT + " text,\n" + COL_HASHES + " blob,\n" + COL_NEXT_CHUNK + " int,\n" + COL_CREATED
+        + " bigint\n";
+  }
+
+  @Override
+  public List<String> getCreateIndexQueries()
+  {
+    return Arrays.asList("create unique index if not exists " + TABLE_CHUNK_HASHES + "_" + COL_FILE_REF + " on "
+        + TABLE_CHUNK_HASHES + " (" + COL_FILE_REF + ");");
+  }
+
+  @Override
+  public String getInsertQuery()
+  {
+    return getInsertQuery(COLUMNS);
+  }
+
+  @Override
+  public String getUpdateQuery()
+  {
+    return getUpdateQuery(COLUMNS);
+  }
+
+  /**
+   * Delete the rows of files that are no longer stored in table files.
+   *
+   * @param io
+   *          database connection
+   * @return number of rows deleted
+   */
+  public int deleteOrphans(JdbcSerialization io)
+  {
+    final PreparedStatement stat = io.prepare("delete from " + TABLE_CHUNK_HASHES + " where " + COL_FILE_REF
+        + " not in (select " + ID + " from " + io.getFileMapper().getTableName() + ");");
+    if (stat == null)
+    {
+      return 0;
+    }
+    try
+    {
+      return stat.executeUpdate();
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(getConfig().msg("database.error.failed_deleting_rows"), e);
+      return 0;
+    }
+    finally
+    {
+      io.close(stat);
+    }
+  }
+}
@@ -18,6 +18,9 @@ package am.db;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import am.filesystem.model.Directory;
@@ -30,7 +33,7 @@ import am.filesystem.model.Directory;
 public class DirectoryMapper extends ModelMapper<Directory>
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryMapper.class);
-  private static final String TABLE_DIRS = "dirs";
+  static final String TABLE_DIRS = "dirs";
   /**
    * Name of column referencing volume.
    */
@@ -38,10 +41,30 @@ public class DirectoryMapper extends ModelMapper<Directory>
   private static final String TABLE_DIRS_PARENT_REF = "parent_ref";
   private static final String TABLE_DIRS_NAME = "name";
   private static final String TABLE_DIRS_WIKIDATA_ENT_ID = "wikidata_ent_id";
+  private static final String TABLE_DIRS_LAST_MODIFIED = "last_modified";
+  private static final String TABLE_DIRS_NUM_ENTRIES = "num_entries";
   private static final String[] COLUMNS =
   {
-      TABLE_DIRS_VOLUME_REF, TABLE_DIRS_PARENT_REF, TABLE_DIRS_NAME, TABLE_DIRS_WIKIDATA_ENT_ID
+      TABLE_DIRS_VOLUME_REF, TABLE_DIRS_PARENT_REF, TABLE_DIRS_NAME, TABLE_DIRS_WIKIDATA_ENT_ID,
+      TABLE_DIRS_LAST_MODIFIED, TABLE_DIRS_NUM_ENTRIES
   };
+  private final String tableName;
+
+  public DirectoryMapper()
+  {
+    this(TABLE_DIRS);
+  }
+
+  /**
+   * Create a mapper for a table with the columns of the directory table, but a different name.
+   *
+   * @param tableName
+   *          name of the table
+   */
+  public DirectoryMapper(final String tableName)
+  {
+    this.tableName = tableName;
+  }
 
   @Override
   protected Directory create()
@@ -52,7 +75,7 @@ public class DirectoryMapper extends ModelMapper<Directory>
   @Override
   protected String getTableName()
   {
-    return TABLE_DIRS;
+    return tableName;
   }
 
   @Override
@@ -66,6 +89,10 @@ public class DirectoryMapper extends ModelMapper<Directory>
       dir.setParentRef(parentRef < 1 ? null : Long.valueOf(parentRef));
       dir.setName(rs.getString(TABLE_DIRS_NAME));
       dir.setWikidataEntityId(rs.getString(TABLE_DIRS_WIKIDATA_ENT_ID));
+      final long lastModified = rs.getLong(TABLE_DIRS_LAST_MODIFIED);
+      dir.setLastModified(rs.wasNull() ? null : new Date(lastModified));
+      final long numEntries = rs.getLong(TABLE_DIRS_NUM_ENTRIES);
+      dir.setNumEntries(rs.wasNull() ? null : Long.valueOf(numEntries));
     }
     catch (final SQLException e)
     {
@@ -83,9 +110,12 @@ public class DirectoryMapper extends ModelMapper<Directory>
       setLong(stat, 2, dir.getParentRef());
       stat.setString(3, dir.getName());
       stat.setString(4, dir.getWikidataEntityId());
+      final Date lastModified = dir.getLastModified();
+      setLong(stat, 5, lastModified == null ? null : lastModified.getTime());
+      setLong(stat, 6, dir.getNumEntries());
       if (appendModelId)
       {
-        stat.setLong(5, dir.getId());
+        stat.setLong(7, dir.getId());
       }
     }
     catch (final SQLException e)
@@ -98,7 +128,45 @@ public class DirectoryMapper extends ModelMapper<Directory>
   protected String getTableDefinition()
   {
     return TABLE_DIRS_VOLUME_REF + " bigint,\n" + TABLE_DIRS_PARENT_REF + " bigint,\n" + TABLE_DIRS_NAME + " text,\n"
-        + TABLE_DIRS_WIKIDATA_ENT_ID + " text\n";
+        + TABLE_DIRS_WIKIDATA_ENT_ID + " text,\n" + TABLE_DIRS_LAST_MODIFIED + " integer,\n" + TABLE_DIRS_NUM_ENTRIES
+        + " bigint\n";
+  }
+
+  @Override
+  public List<String> getCreateIndexQueries()
+  {
+    return Arrays.asList("create index if not exists " + tableName + "_" + TABLE_DIRS_PARENT_REF + " on " + tableName
+        + " (" + TABLE_DIRS_PARENT_REF + ");");
+  }
+
+  /**
+   * Load the root directory of a volume, without files or subdirectories.
+   *
+   * @param io
+   *          database connection
+   * @param volumeRef
+   *          id of the volume
+   * @return root directory or null if the volume has none stored
+   */
+  public Directory loadRoot(JdbcSerialization io, Long volumeRef)
+  {
+    final List<Directory> list = loadByQuery(io, "select * from " + tableName + " where " + TABLE_DIRS_VOLUME_REF
+        + "=? and " + TABLE_DIRS_PARENT_REF + " is null;", volumeRef);
+    return list == null || list.isEmpty() ? null : list.get(0);
+  }
+
+  /**
+   * Load the direct subdirectories of a directory, without their files or subdirectories.
+   *
+   * @param io
+   *          database connection
+   * @param parentRef
+   *          id of the parent directory
+   * @return list of subdirectories
+   */
+  public List<Directory> loadSubdirectories(JdbcSerialization io, Long parentRef)
+  {
+    return loadByField(io, TABLE_DIRS_PARENT_REF, parentRef);
   }
 
   @Override
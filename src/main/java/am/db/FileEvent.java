@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.db;
+
+import am.filesystem.model.FileState;
+
+/**
+ * A file entering a state in a {@link Run}, e.g. becoming {@link FileState#Missing}. Events are only appended, never
+ * updated, so they keep the history that the state column of a file row overwrites.
+ *
+ * @author Marco Schmidt
+ */
+public class FileEvent extends Model
+{
+  private Long runRef;
+  private Long volumeRef;
+  private Long fileRef;
+  private FileState state;
+  private Long created;
+  private String path;
+
+  public Long getRunRef()
+  {
+    return runRef;
+  }
+
+  public void setRunRef(Long runRef)
+  {
+    this.runRef = runRef;
+  }
+
+  public Long getVolumeRef()
+  {
+    return volumeRef;
+  }
+
+  public void setVolumeRef(Long volumeRef)
+  {
+    this.volumeRef = volumeRef;
+  }
+
+  public Long getFileRef()
+  {
+    return fileRef;
+  }
+
+  public void setFileRef(Long fileRef)
+  {
+    this.fileRef = fileRef;
+  }
+
+  public FileState getState()
+  {
+    return state;
+  }
+
+  public void setState(FileState state)
+  {
+    this.state = state;
+  }
+
+  /**
+   * Time the event was recorded.
+   *
+   * @return milliseconds since 1970
+   */
+  public Long getCreated()
+  {
+    return created;
+  }
+
+  public void setCreated(Long created)
+  {
+    this.created = created;
+  }
+
+  /**
+   * Absolute path of the file at the time of the event.
+   *
+   * @return path
+   */
+  public String getPath()
+  {
+    return path;
+  }
+
+  public void setPath(String path)
+  {
+    this.path = path;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.filesystem.model.FileState;
+
+/**
+ * {@link ModelMapper} for the {@link FileEvent} class. Rows are inserted in batches by
+ * {@link JdbcSerialization#addEvent(am.filesystem.model.File)}.
+ *
+ * @author Marco Schmidt
+ */
+public class FileEventMapper extends ModelMapper<FileEvent>
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileEventMapper.class);
+  static final String TABLE_FILE_EVENTS = "file_events";
+  /**
+   * Name of column referencing the run.
+   */
+  public static final String COL_RUN_REF = "run_ref";
+  private static final String COL_VOLUME_REF = "volume_ref";
+  private static final String COL_FILE_REF = "file_ref";
+  private static final String COL_STATE = "state";
+  private static final String COL_CREATED = "created";
+  private static final String COL_PATH = "path";
+  private static final String[] COLUMNS =
+  {
+      COL_RUN_REF, COL_VOLUME_REF, COL_FILE_REF, COL_STATE, COL_CREATED, COL_PATH
+  };
+
+  @Override
+  protected FileEvent create()
+  {
+    return new FileEvent();
+  }
+
+  @Override
+  protected String getTableName()
+  {
+    return TABLE_FILE_EVENTS;
+  }
+
+  @Override
+  public FileEvent from(ResultSet rs)
+  {
+    final FileEvent event = super.from(rs);
+    try
+    {
+      event.setRunRef(rs.getLong(COL_RUN_REF));
+      event.setVolumeRef(rs.getLong(COL_VOLUME_REF));
+      final long fileRef = rs.getLong(COL_FILE_REF);
+      event.setFileRef(rs.wasNull() ? null : Long.valueOf(fileRef));
+      event.setState(FileState.values()[rs.getInt(COL_STATE)]);
+      event.setCreated(rs.getLong(COL_CREATED));
+      event.setPath(rs.getString(COL_PATH));
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(getConfig().msg("database.error.convert_from_result_set", this.getClass().getSimpleName()), e);
+    }
+    return event;
+  }
+
+  @Override
+  public void to(PreparedStatement stat, FileEvent event, boolean appendModelId)
+  {
+    try
+    {
+      setLong(stat, 1, event.getRunRef());
+      setLong(stat, 2, event.getVolumeRef());
+      setLong(stat, 3, event.getFileRef());
+      stat.setInt(4, event.getState().getNumericValue());
+      setLong(stat, 5, event.getCreated());
+      ModelMapper.setString(stat, 6, event.getPath());
+      if (appendModelId)
+      {
+        stat.setLong(7, event.getId());
+      }
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(getConfig().msg("database.error.convert_to_prepared_statement", this.getClass().getSimpleName()), e);
+    }
+  }
+
+  @Override
+  protected String getTableDefinition()
+  {
+    return COL_RUN_REF + " bigint,\n" + COL_VOLUME_REF + " bigint,\n" + COL_FILE_REF + " bigint,\n" + COL_STATE
+        + " int,\n" + COL_CREATED + " bigint,\n" + COL_PATH + " text\n";
+  }
+
+  @Override
+  public List<String> getCreateIndexQueries()
+  {
+    return Arrays.asList(
+        "create index if not exists " + TABLE_FILE_EVENTS + "_" + COL_RUN_REF + " on " + TABLE_FILE_EVENTS + " ("
+            + COL_RUN_REF + ");",
+        "create index if not exists " + TABLE_FILE_EVENTS + "_" + COL_FILE_REF + " on " + TABLE_FILE_EVENTS + " ("
+            + COL_FILE_REF + ");");
+  }
+
+  @Override
+  public String getInsertQuery()
+  {
+    return getInsertQuery(COLUMNS);
+  }
+
+  @Override
+  public String getUpdateQuery()
+  {
+    return getUpdateQuery(COLUMNS);
+  }
+
+  /**
+   * Load the events of all runs after a given run, in the order they were recorded.
+   *
+   * @param io
+   *          database connection
+   * @param runId
+   *          id of the last run already processed by the caller, 0 for all events
+   * @return list of events, empty if there are none or loading failed, null if there is no connection
+   */
+  public List<FileEvent> loadSinceRun(JdbcSerialization io, long runId)
+  {
+    return loadByQuery(io, "select * from " + TABLE_FILE_EVENTS + " where " + COL_RUN_REF + ">? order by " + ID + ";",
+        Long.valueOf(runId));
+  }
+}
@@ -18,7 +18,9 @@ package am.db;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Date;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import am.filesystem.model.File;
@@ -32,7 +34,7 @@ import am.filesystem.model.FileState;
 public class FileMapper extends ModelMapper<File>
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(FileMapper.class);
-  private static final String TABLE_FILES = "files";
+  static final String TABLE_FILES = "files";
   /**
    * Name of column referencing volume.
    */
@@ -48,11 +50,32 @@ public class FileMapper extends ModelMapper<File>
   private static final String COL_HASH_VALUE = "hash_value";
   private static final String COL_HASH_CREATED = "hash_created";
   private static final String COL_WIKIDATA_ENT_ID = "wikidata_ent_id";
+  private static final String COL_FILE_KEY = "file_key";
+  private static final String COL_CHECKSUM = "checksum";
+  private static final String COL_FINGERPRINT = "fingerprint";
   private static final String[] COLUMNS =
   {
       COL_VOLUME_REF, COL_DIR_REF, COL_NAME, COL_SIZE, COL_LAST_MODIFIED, COL_MIME_TYPE, COL_FILE_GROUP, COL_FILE_TYPE,
-      COL_STATE, COL_HASH_VALUE, COL_HASH_CREATED, COL_WIKIDATA_ENT_ID
+      COL_STATE, COL_HASH_VALUE, COL_HASH_CREATED, COL_WIKIDATA_ENT_ID, COL_FILE_KEY, COL_CHECKSUM,
+      COL_FINGERPRINT
   };
+  private final String tableName;
+
+  public FileMapper()
+  {
+    this(TABLE_FILES);
+  }
+
+  /**
+   * Create a mapper for a table with the columns of the file table, but a different name.
+   *
+   * @param tableName
+   *          name of the table
+   */
+  public FileMapper(final String tableName)
+  {
+    this.tableName = tableName;
+  }
 
   @Override
   protected File create()
@@ -63,7 +86,7 @@ public class FileMapper extends ModelMapper<File>
   @Override
   protected String getTableName()
   {
-    return TABLE_FILES;
+    return tableName;
   }
 
   @Override
@@ -75,15 +98,18 @@ public class FileMapper extends ModelMapper<File>
       file.setVolumeRef(rs.getLong(COL_VOLUME_REF));
       file.setDirectoryRef(rs.getLong(COL_DIR_REF));
       file.setName(rs.getString(COL_NAME));
-      file.setByteSize(rs.getLong(COL_SIZE));
-      file.setLastModified(rs.getDate(COL_LAST_MODIFIED));
+      file.setByteSizeValue(getLongValue(rs, COL_SIZE));
+      file.setLastModifiedMillis(getLongValue(rs, COL_LAST_MODIFIED));
       file.setMimeType(rs.getString(COL_MIME_TYPE));
       file.setFileGroup(rs.getString(COL_FILE_GROUP));
       file.setFileType(rs.getString(COL_FILE_TYPE));
       file.setState(FileState.values()[rs.getInt(COL_STATE)]);
       file.setHashValue(rs.getString(COL_HASH_VALUE));
-      file.setHashCreated(rs.getDate(COL_HASH_CREATED));
+      file.setHashCreatedMillis(getLongValue(rs, COL_HASH_CREATED));
       file.setWikidataEntityId(rs.getString(COL_WIKIDATA_ENT_ID));
+      file.setFileKey(rs.getString(COL_FILE_KEY));
+      file.setChecksum(getLongValue(rs, COL_CHECKSUM));
+      file.setFingerprint(getLongValue(rs, COL_FINGERPRINT));
     }
     catch (final SQLException e)
     {
@@ -100,19 +126,21 @@ public class FileMapper extends ModelMapper<File>
       stat.setLong(1, file.getVolumeRef());
       setLong(stat, 2, file.getDirectoryRef());
       stat.setString(3, file.getName());
-      stat.setLong(4, file.getByteSize());
-      stat.setLong(5, file.getLastModified().getTime());
+      setLongValue(stat, 4, file.getByteSizeValue());
+      setLongValue(stat, 5, file.getLastModifiedMillis());
       stat.setString(6, file.getMimeType());
       stat.setString(7, file.getFileGroup());
       stat.setString(8, file.getFileType());
       stat.setInt(9, file.getState().getNumericValue());
       ModelMapper.setString(stat, 10, file.getHashValue());
-      final Date hashCreated = file.getHashCreated();
-      setLong(stat, 11, hashCreated == null ? null : hashCreated.getTime());
+      setLongValue(stat, 11, file.getHashCreatedMillis());
       ModelMapper.setString(stat, 12, file.getWikidataEntityId());
+      ModelMapper.setString(stat, 13, file.getFileKey());
+      setLongValue(stat, 14, file.getChecksum());
+      setLongValue(stat, 15, file.getFingerprint());
       if (appendModelId)
       {
-        stat.setLong(13, file.getId());
+        stat.setLong(16, file.getId());
       }
 
     }
@@ -122,13 +150,54 @@ public class FileMapper extends ModelMapper<File>
     }
   }
 
+  private static long getLongValue(final ResultSet rs, final String column) throws SQLException
+  {
+    final long value = rs.getLong(column);
+    return rs.wasNull() ? File.UNKNOWN : value;
+  }
+
+  private static void setLongValue(final PreparedStatement stat, final int index, final long value) throws SQLException
+  {
+    if (value == File.UNKNOWN)
+    {
+      stat.setNull(index, Types.BIGINT);
+    }
+    else
+    {
+      stat.setLong(index, value);
+    }
+  }
+
   @Override
   protected String getTableDefinition()
   {
     return COL_VOLUME_REF + " bigint,\n" + COL_DIR_REF + " bigint,\n" + COL_NAME + " text,\n" + COL_SIZE + " bigint,\n"
         + COL_LAST_MODIFIED + " integer,\n" + COL_MIME_TYPE + " text,\n" + COL_FILE_GROUP + " text,\n" + COL_FILE_TYPE
         + " text,\n" + COL_STATE + " int,\n" + COL_HASH_VALUE + " text,\n" + COL_HASH_CREATED + " integer,\n"
-        + COL_WIKIDATA_ENT_ID + " text\n";
+        + COL_WIKIDATA_ENT_ID + " text,\n" + COL_FILE_KEY + " text,\n" + COL_CHECKSUM + " bigint,\n"
+        + COL_FINGERPRINT + " bigint\n";
+  }
+
+  @Override
+  public List<String> getCreateIndexQueries()
+  {
+    return Arrays
+        .asList("create index if not exists " + tableName + "_" + COL_DIR_REF + " on " + tableName + " (" + COL_DIR_REF
+            + ");");
+  }
+
+  /**
+   * Load the files of a single directory.
+   *
+   * @param io
+   *          database connection
+   * @param directoryRef
+   *          id of the directory
+   * @return list of files
+   */
+  public List<File> loadByDirectory(JdbcSerialization io, Long directoryRef)
+  {
+    return loadByField(io, COL_DIR_REF, directoryRef);
   }
 
   @Override
@@ -16,19 +16,31 @@
 package am.db;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import am.app.AppConfig;
 import am.filesystem.FileSystemHelper;
+import am.filesystem.model.CatalogSnapshot;
+import am.filesystem.model.CompactCatalog;
 import am.filesystem.model.Directory;
+import am.filesystem.model.FileState;
 import am.filesystem.model.Volume;
 
 /**
@@ -39,19 +51,39 @@ import am.filesystem.model.Volume;
 public class JdbcSerialization
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(JdbcSerialization.class);
+  private static final String SNAPSHOT_FILE_NAME = "am.snapshot";
+  private static final String TABLE_SNAPSHOT_STAMP = "snapshot_stamp";
+  private static final Set<String> CATALOG_TABLES = new HashSet<>(
+      Arrays.asList(VolumeMapper.TABLE_VOLUMES, DirectoryMapper.TABLE_DIRS, FileMapper.TABLE_FILES));
+  private static final int EVENT_BATCH_SIZE = 1000;
+  /**
+   * States recorded as {@link FileEvent}; missing and corrupted files only when they enter that state.
+   */
+  private static final Set<FileState> EVENT_STATES = EnumSet.of(FileState.New, FileState.Modified, FileState.Missing,
+      FileState.Corrupted, FileState.Moved);
   private AppConfig config;
   private Connection conn;
   private String uri;
   private VolumeMapper volumeMapper = new VolumeMapper();
   private DirectoryMapper directoryMapper = new DirectoryMapper();
   private FileMapper fileMapper = new FileMapper();
+  private final DirectoryMapper scanDirectoryMapper = new DirectoryMapper("scan_dirs");
+  private final FileMapper scanFileMapper = new FileMapper("scan_files");
+  private final RunMapper runMapper = new RunMapper();
+  private final FileEventMapper fileEventMapper = new FileEventMapper();
+  private final ChunkHashesMapper chunkHashesMapper = new ChunkHashesMapper();
+  private File snapshotFile;
+  private boolean snapshotStampCleared;
+  private Run run;
+  private final Map<Long, FileState> storedStates = new HashMap<>();
+  private final List<FileEvent> pendingEvents = new ArrayList<>();
 
   public boolean isConnected()
   {
     return conn != null;
   }
 
-  public void close()
+  public synchronized void close()
   {
     try
     {
@@ -69,6 +101,7 @@ public class JdbcSerialization
     {
       conn = null;
       uri = null;
+      snapshotFile = null;
     }
   }
 
@@ -86,6 +119,8 @@ public class JdbcSerialization
       LOGGER.debug(
           config.msg("init.debug.database_connection_attempt_succeeded", uri, System.currentTimeMillis() - millis));
       enableForeignKeys();
+      snapshotFile = dir == null ? null : new File(dir, SNAPSHOT_FILE_NAME);
+      snapshotStampCleared = false;
       return true;
     }
     catch (final SQLException e)
@@ -131,6 +166,35 @@ public class JdbcSerialization
     createTable(getVolumeMapper());
     createTable(getDirectoryMapper());
     createTable(getFileMapper());
+    createTable(scanDirectoryMapper);
+    createTable(scanFileMapper);
+    createTable(runMapper);
+    createTable(fileEventMapper);
+    createTable(chunkHashesMapper);
+    execute("create table if not exists " + TABLE_SNAPSHOT_STAMP + " (stamp bigint);");
+  }
+
+  private boolean execute(final String query)
+  {
+    final PreparedStatement stat = prepare(query);
+    if (stat == null)
+    {
+      return false;
+    }
+    try
+    {
+      stat.execute();
+      return true;
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("init.error.database_execute_update_failed", query), e);
+      return false;
+    }
+    finally
+    {
+      close(stat);
+    }
   }
 
   private void createTable(ModelMapper<? extends Model> mapper)
@@ -152,6 +216,78 @@ public class JdbcSerialization
       {
         close(stat);
       }
+      upgradeTable(mapper);
+      for (final String indexQuery : mapper.getCreateIndexQueries())
+      {
+        try
+        {
+          stat = conn.prepareStatement(indexQuery);
+          stat.execute();
+        }
+        catch (final SQLException e)
+        {
+          LOGGER.error(config.msg("init.error.database_execute_update_failed", indexQuery), e);
+        }
+        finally
+        {
+          close(stat);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add columns to a table created by an earlier version of this application, so that existing databases keep working
+   * when a {@link ModelMapper} defines new columns.
+   *
+   * @param mapper
+   *          mapper defining the table
+   */
+  private void upgradeTable(ModelMapper<? extends Model> mapper)
+  {
+    final Set<String> existing = new HashSet<>();
+    PreparedStatement stat = null;
+    ResultSet rs = null;
+    try
+    {
+      stat = conn.prepareStatement(mapper.getTableInfoQuery());
+      rs = stat.executeQuery();
+      while (rs.next())
+      {
+        existing.add(rs.getString("name").toLowerCase(Locale.ROOT));
+      }
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("database.error.table_info_failed", mapper.getTableName()), e);
+      return;
+    }
+    finally
+    {
+      close(rs);
+      close(stat);
+    }
+    for (final String def : mapper.getColumnDefinitions())
+    {
+      final String name = def.split("\\s+")[0].toLowerCase(Locale.ROOT);
+      if (!existing.contains(name))
+      {
+        final String query = mapper.getAddColumnQuery(def);
+        try
+        {
+          stat = conn.prepareStatement(query);
+          stat.execute();
+          LOGGER.info(config.msg("database.info.added_column", name, mapper.getTableName()));
+        }
+        catch (final SQLException e)
+        {
+          LOGGER.error(config.msg("init.error.database_execute_update_failed", query), e);
+        }
+        finally
+        {
+          close(stat);
+        }
+      }
     }
   }
 
@@ -225,6 +361,11 @@ public class JdbcSerialization
     fileMapper.setConfig(config);
     directoryMapper.setConfig(config);
     volumeMapper.setConfig(config);
+    scanDirectoryMapper.setConfig(config);
+    scanFileMapper.setConfig(config);
+    runMapper.setConfig(config);
+    fileEventMapper.setConfig(config);
+    chunkHashesMapper.setConfig(config);
   }
 
   public VolumeMapper getVolumeMapper()
@@ -257,9 +398,57 @@ public class JdbcSerialization
     this.fileMapper = fileMapper;
   }
 
+  /**
+   * Return the mapper of the staging table holding directories of interrupted scans.
+   *
+   * @return mapper for table scan_dirs
+   */
+  public DirectoryMapper getScanDirectoryMapper()
+  {
+    return scanDirectoryMapper;
+  }
+
+  public RunMapper getRunMapper()
+  {
+    return runMapper;
+  }
+
+  public FileEventMapper getFileEventMapper()
+  {
+    return fileEventMapper;
+  }
+
+  public ChunkHashesMapper getChunkHashesMapper()
+  {
+    return chunkHashesMapper;
+  }
+
+  /**
+   * Return the mapper of the staging table holding files of interrupted scans.
+   *
+   * @return mapper for table scan_files
+   */
+  public FileMapper getScanFileMapper()
+  {
+    return scanFileMapper;
+  }
+
   public List<Volume> loadAll()
   {
     final List<Volume> vols = volumeMapper.loadAll(this);
+    final Map<Long, Directory> dirMap = loadDirectories(vols);
+    final List<am.filesystem.model.File> files = fileMapper.loadAll(this);
+    for (final am.filesystem.model.File f : files)
+    {
+      final Long directoryRef = f.getDirectoryRef();
+      final Directory directory = dirMap.get(directoryRef);
+      directory.add(f);
+    }
+    return vols;
+  }
+
+  private Map<Long, Directory> loadDirectories(final List<Volume> vols)
+  {
     final Map<Long, Volume> volMap = volumeMapper.toMap(vols);
     final List<Directory> dirs = directoryMapper.loadAll(this);
     final Map<Long, Directory> dirMap = directoryMapper.toMap(dirs);
@@ -277,14 +466,58 @@ public class JdbcSerialization
         parent.add(d);
       }
     }
-    final List<am.filesystem.model.File> files = fileMapper.loadAll(this);
-    for (final am.filesystem.model.File f : files)
+    return dirMap;
+  }
+
+  /**
+   * Load all volumes like {@link #loadAll()}, but read files one at a time into a {@link CompactCatalog} per volume
+   * instead of creating an object for each of them. The returned volumes' directories and files are views on those
+   * catalogs. With {@link AppConfig#isCatalogSnapshot()} the volumes are read from a valid snapshot file if there is one.
+   *
+   * @return list of volumes
+   */
+  public List<Volume> loadAllCompact()
+  {
+    final List<Volume> snapshot = loadSnapshot();
+    if (snapshot != null)
     {
-      final Long directoryRef = f.getDirectoryRef();
-      final Directory directory = dirMap.get(directoryRef);
-      directory.add(f);
+      return snapshot;
     }
-    return vols;
+    final List<Volume> vols = volumeMapper.loadAll(this);
+    loadDirectories(vols);
+    final Map<Long, CompactCatalog.Builder> builders = new HashMap<>();
+    for (final Volume vol : vols)
+    {
+      if (vol.getRoot() != null)
+      {
+        builders.put(vol.getId(), CompactCatalog.builder(vol));
+      }
+    }
+    fileMapper.forEach(this, file ->
+    {
+      final CompactCatalog.Builder builder = builders.get(file.getVolumeRef());
+      if (builder != null)
+      {
+        builder.add(file);
+      }
+    });
+    final List<Volume> result = new ArrayList<>();
+    for (final Volume vol : vols)
+    {
+      final CompactCatalog.Builder builder = builders.remove(vol.getId());
+      if (builder == null)
+      {
+        result.add(vol);
+      }
+      else
+      {
+        final CompactCatalog catalog = builder.build();
+        LOGGER.debug(config.msg("database.debug.compact_catalog", vol.getPath(), catalog.getNumDirectories(),
+            catalog.getNumFiles(), catalog.getNumBytes()));
+        result.add(catalog.toVolume());
+      }
+    }
+    return result;
   }
 
   public void saveAll(List<Volume> vols)
@@ -294,7 +527,383 @@ public class JdbcSerialization
     {
       save(vol);
     }
+    flushEvents();
     LOGGER.debug(config.msg("database.debug.database_saved", System.currentTimeMillis() - millis));
+    writeSnapshot(vols);
+  }
+
+  /**
+   * Store a new row in table runs. Until {@link #finishRun()} every stored file whose state is new, modified, moved or
+   * that became missing or corrupted is recorded as a {@link FileEvent} of that run.
+   *
+   * @param mode
+   *          name of the mode the application runs in
+   * @return the new run or null if it could not be stored
+   */
+  public synchronized Run startRun(final String mode)
+  {
+    final Run newRun = new Run();
+    newRun.setStarted(Long.valueOf(System.currentTimeMillis()));
+    newRun.setMode(mode);
+    if (!isConnected() || !runMapper.insert(this, newRun))
+    {
+      return null;
+    }
+    run = newRun;
+    loadStoredStates();
+    return run;
+  }
+
+  /**
+   * Remember files already stored as missing or corrupted, so that another run with the same state records no event.
+   */
+  private void loadStoredStates()
+  {
+    storedStates.clear();
+    final PreparedStatement stat = prepare("select " + ModelMapper.ID + ", state from " + FileMapper.TABLE_FILES
+        + " where state in (" + FileState.Missing.getNumericValue() + "," + FileState.Corrupted.getNumericValue()
+        + ");");
+    if (stat == null)
+    {
+      return;
+    }
+    ResultSet rs = null;
+    try
+    {
+      rs = stat.executeQuery();
+      while (rs.next())
+      {
+        storedStates.put(Long.valueOf(rs.getLong(1)), FileState.values()[rs.getInt(2)]);
+      }
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("database.error.failed_loading_rows"), e);
+    }
+    finally
+    {
+      close(rs);
+      close(stat);
+    }
+  }
+
+  /**
+   * Record the state of a file just stored as an event of the current run, if a run was started and the state is one
+   * to be recorded. Events are inserted in batches, at the latest when the current transaction is committed. The run
+   * and its pending events may be accessed by several threads, e.g. by the watcher while the shutdown thread finishes
+   * the run.
+   *
+   * @param file
+   *          stored file, with id
+   */
+  public synchronized void addEvent(final am.filesystem.model.File file)
+  {
+    final FileState state = file.getState();
+    final Long id = file.getId();
+    if (run == null || id == null || !EVENT_STATES.contains(state))
+    {
+      return;
+    }
+    if (state == FileState.Missing || state == FileState.Corrupted)
+    {
+      if (storedStates.put(id, state) == state)
+      {
+        return;
+      }
+    }
+    else
+    {
+      storedStates.remove(id);
+    }
+    final FileEvent event = new FileEvent();
+    event.setRunRef(run.getId());
+    event.setVolumeRef(file.getVolumeRef());
+    event.setFileRef(id);
+    event.setState(state);
+    event.setCreated(Long.valueOf(System.currentTimeMillis()));
+    final File entry = file.getEntry();
+    event.setPath(entry == null ? file.getName() : entry.getAbsolutePath());
+    pendingEvents.add(event);
+    if (pendingEvents.size() >= EVENT_BATCH_SIZE)
+    {
+      flushEvents();
+    }
+  }
+
+  /**
+   * Insert pending events with one batch, in a transaction of its own unless one is active.
+   */
+  private synchronized void flushEvents()
+  {
+    if (pendingEvents.isEmpty() || !isConnected())
+    {
+      return;
+    }
+    final PreparedStatement stat = prepare(fileEventMapper.getInsertQuery());
+    if (stat == null)
+    {
+      pendingEvents.clear();
+      return;
+    }
+    boolean autoCommit = false;
+    try
+    {
+      autoCommit = conn.getAutoCommit();
+      if (autoCommit)
+      {
+        conn.setAutoCommit(false);
+      }
+      for (final FileEvent event : pendingEvents)
+      {
+        fileEventMapper.to(stat, event, false);
+        stat.addBatch();
+      }
+      stat.executeBatch();
+      if (autoCommit)
+      {
+        conn.commit();
+      }
+      run.setNumEvents(run.getNumEvents() + pendingEvents.size());
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("database.error.failed_inserting_rows"), e);
+      rollback(autoCommit);
+    }
+    finally
+    {
+      pendingEvents.clear();
+      close(stat);
+      if (autoCommit)
+      {
+        try
+        {
+          conn.setAutoCommit(true);
+        }
+        catch (final SQLException e)
+        {
+          LOGGER.error(config.msg("database.error.transaction_failed"), e);
+        }
+      }
+    }
+  }
+
+  private void rollback(final boolean ownTransaction)
+  {
+    if (ownTransaction)
+    {
+      try
+      {
+        conn.rollback();
+      }
+      catch (final SQLException e)
+      {
+        LOGGER.error(config.msg("database.error.transaction_failed"), e);
+      }
+    }
+  }
+
+  /**
+   * Insert remaining events and store the end time and number of events of the current run.
+   */
+  public synchronized void finishRun()
+  {
+    if (run == null)
+    {
+      return;
+    }
+    flushEvents();
+    run.setFinished(Long.valueOf(System.currentTimeMillis()));
+    runMapper.update(this, run);
+    LOGGER.info(config.msg("database.info.run_finished", run.getId(), run.getNumEvents()));
+    run = null;
+    storedStates.clear();
+  }
+
+  /**
+   * Called before a row of a mapper is written. The first change to the catalog tables after a snapshot was written
+   * removes the snapshot stamp from the database, so that the snapshot is no longer used.
+   *
+   * @param mapper
+   *          mapper about to write
+   */
+  void beforeWrite(final ModelMapper<? extends Model> mapper)
+  {
+    if (!snapshotStampCleared && CATALOG_TABLES.contains(mapper.getTableName()))
+    {
+      snapshotStampCleared = execute("delete from " + TABLE_SNAPSHOT_STAMP + ";");
+    }
+  }
+
+  private Long loadSnapshotStamp()
+  {
+    final PreparedStatement stat = prepare("select stamp from " + TABLE_SNAPSHOT_STAMP + ";");
+    if (stat == null)
+    {
+      return null;
+    }
+    ResultSet rs = null;
+    try
+    {
+      rs = stat.executeQuery();
+      return rs.next() ? Long.valueOf(rs.getLong(1)) : null;
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("database.error.failed_loading_rows"), e);
+      return null;
+    }
+    finally
+    {
+      close(rs);
+      close(stat);
+    }
+  }
+
+  private List<Volume> loadSnapshot()
+  {
+    if (!config.isCatalogSnapshot() || snapshotFile == null)
+    {
+      return null;
+    }
+    final Long stamp = loadSnapshotStamp();
+    if (stamp == null)
+    {
+      LOGGER.debug(config.msg("database.debug.snapshot_not_valid", snapshotFile.getAbsolutePath()));
+      return null;
+    }
+    final long millis = System.currentTimeMillis();
+    try
+    {
+      final List<Volume> result = CatalogSnapshot.read(snapshotFile, stamp.longValue());
+      if (result == null)
+      {
+        LOGGER.debug(config.msg("database.debug.snapshot_not_valid", snapshotFile.getAbsolutePath()));
+      }
+      else
+      {
+        LOGGER.info(config.msg("database.info.snapshot_loaded", result.size(), snapshotFile.getAbsolutePath(),
+            System.currentTimeMillis() - millis));
+      }
+      return result;
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("database.error.snapshot_failed", snapshotFile.getAbsolutePath()), e);
+      return null;
+    }
+  }
+
+  /**
+   * Write a snapshot of all volumes and store its stamp. Only done if the volumes are all volumes of the database, the
+   * snapshot would be incomplete otherwise.
+   *
+   * @param vols
+   *          volumes just saved
+   */
+  private void writeSnapshot(final List<Volume> vols)
+  {
+    if (!config.isCatalogSnapshot() || snapshotFile == null)
+    {
+      return;
+    }
+    final Set<Long> saved = new HashSet<>();
+    for (final Volume vol : vols)
+    {
+      saved.add(vol.getId());
+    }
+    final Set<Long> stored = volumeMapper.toMap(volumeMapper.loadAll(this)).keySet();
+    if (!saved.equals(stored))
+    {
+      LOGGER.debug(config.msg("database.debug.snapshot_incomplete", vols.size(), stored.size()));
+      return;
+    }
+    final long millis = System.currentTimeMillis();
+    final long stamp = ThreadLocalRandom.current().nextLong();
+    try
+    {
+      CatalogSnapshot.write(snapshotFile, stamp, vols);
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("database.error.snapshot_failed", snapshotFile.getAbsolutePath()), e);
+      return;
+    }
+    // the snapshot file is complete before the database refers to it
+    if (execute("delete from " + TABLE_SNAPSHOT_STAMP + ";")
+        && execute("insert into " + TABLE_SNAPSHOT_STAMP + " (stamp) values (" + stamp + ");"))
+    {
+      snapshotStampCleared = false;
+      LOGGER.debug(config.msg("database.debug.snapshot_written", snapshotFile.getAbsolutePath(), vols.size(),
+          System.currentTimeMillis() - millis));
+    }
+  }
+
+  /**
+   * Start a transaction so that following changes are only written with {@link #commitTransaction()}.
+   *
+   * @return whether the transaction could be started
+   */
+  public boolean beginTransaction()
+  {
+    if (!isConnected())
+    {
+      return false;
+    }
+    try
+    {
+      conn.setAutoCommit(false);
+      return true;
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("database.error.transaction_failed"), e);
+      return false;
+    }
+  }
+
+  /**
+   * Insert pending events, commit the current transaction and return to auto-commit mode. On failure the transaction
+   * is rolled back.
+   *
+   * @return whether the changes were committed
+   */
+  public boolean commitTransaction()
+  {
+    if (!isConnected())
+    {
+      return false;
+    }
+    flushEvents();
+    try
+    {
+      conn.commit();
+      return true;
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("database.error.transaction_failed"), e);
+      try
+      {
+        conn.rollback();
+      }
+      catch (final SQLException re)
+      {
+        LOGGER.error(config.msg("database.error.transaction_failed"), re);
+      }
+      return false;
+    }
+    finally
+    {
+      try
+      {
+        conn.setAutoCommit(true);
+      }
+      catch (final SQLException e)
+      {
+        LOGGER.error(config.msg("database.error.transaction_failed"), e);
+      }
+    }
   }
 
   private void save(Volume vol)
@@ -304,22 +913,80 @@ public class JdbcSerialization
     save(root, null);
   }
 
-  private void save(Directory dir, Long parentRef)
+  /**
+   * Store a directory with everything below it.
+   *
+   * @param dir
+   *          directory to be stored, its volume reference must be assigned
+   * @param parentRef
+   *          id of the parent directory or null for a volume's root directory
+   */
+  public void save(Directory dir, Long parentRef)
+  {
+    save(dir, parentRef, true);
+  }
+
+  /**
+   * Store a directory with everything below it.
+   *
+   * @param dir
+   *          directory to be stored, its volume reference must be assigned
+   * @param parentRef
+   *          id of the parent directory or null for a volume's root directory
+   * @param events
+   *          whether to record the states of the stored files as events, otherwise the caller records the files that
+   *          actually changed with {@link #addEvent(am.filesystem.model.File)}
+   */
+  public void save(Directory dir, Long parentRef, boolean events)
   {
     dir.setParentRef(parentRef);
     directoryMapper.upsert(this, dir);
 
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       sub.setVolumeRef(dir.getVolumeRef());
-      save(sub, dir.getId());
+      save(sub, dir.getId(), events);
     }
 
-    for (final am.filesystem.model.File file : dir.getFiles())
+    saveFileRows(dir, events);
+  }
+
+  /**
+   * Store a directory and its files, but not its subdirectories.
+   *
+   * @param dir
+   *          directory loaded from or already stored in the database
+   */
+  public void saveFiles(Directory dir)
+  {
+    saveFiles(dir, true);
+  }
+
+  /**
+   * Store a directory and its files, but not its subdirectories.
+   *
+   * @param dir
+   *          directory loaded from or already stored in the database
+   * @param events
+   *          whether to record the states of the stored files as events, otherwise the caller records the files that
+   *          actually changed with {@link #addEvent(am.filesystem.model.File)}
+   */
+  public void saveFiles(Directory dir, boolean events)
+  {
+    directoryMapper.upsert(this, dir);
+    saveFileRows(dir, events);
+  }
+
+  private void saveFileRows(Directory dir, boolean events)
+  {
+    for (final am.filesystem.model.File file : dir.getFilesView())
     {
       file.setDirectoryRef(dir.getId());
       file.setVolumeRef(dir.getVolumeRef());
-      fileMapper.upsert(this, file);
+      if (fileMapper.upsert(this, file) && events)
+      {
+        addEvent(file);
+      }
     }
   }
 }
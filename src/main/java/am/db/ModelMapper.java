@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import am.app.AppConfig;
@@ -126,12 +127,75 @@ public abstract class ModelMapper<T extends Model>
     return result;
   }
 
+  /**
+   * Load all rows one at a time, without keeping them in a list.
+   *
+   * @param io
+   *          database access
+   * @param consumer
+   *          receives an object for each row
+   * @return whether all rows were loaded
+   */
+  public boolean forEach(JdbcSerialization io, Consumer<T> consumer)
+  {
+    final AppConfig config = io.getConfig();
+    final long timeMillis = System.currentTimeMillis();
+    final PreparedStatement stat = createSelectAll(io);
+    if (stat == null)
+    {
+      return false;
+    }
+    ResultSet resultSet = null;
+    try
+    {
+      resultSet = stat.executeQuery();
+      long numRows = 0;
+      while (resultSet.next())
+      {
+        consumer.accept(from(resultSet));
+        numRows++;
+      }
+      if (LOGGER.isDebugEnabled())
+      {
+        LOGGER.debug(config.msg("init.debug.database_loaded", numRows, this.getClass().getSimpleName(),
+            System.currentTimeMillis() - timeMillis));
+      }
+      return true;
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(config.msg("database.error.failed_loading_rows"), e);
+      return false;
+    }
+    finally
+    {
+      io.close(resultSet);
+      io.close(stat);
+    }
+  }
+
   public List<T> loadByField(JdbcSerialization io, String fieldName, Object fieldValue)
+  {
+    return loadByQuery(io, getSelectByFieldValueQuery(fieldName), fieldValue);
+  }
+
+  /**
+   * Load all rows returned by a query with a single parameter.
+   *
+   * @param io
+   *          database connection
+   * @param query
+   *          SQL select query with one question mark placeholder
+   * @param fieldValue
+   *          value for the placeholder, a {@link String} or {@link Long}
+   * @return list of model objects, empty if nothing was found or loading failed, null if there is no connection
+   */
+  protected List<T> loadByQuery(JdbcSerialization io, String query, Object fieldValue)
   {
     final AppConfig config = io.getConfig();
     final List<T> result = new ArrayList<>();
     final long timeMillis = System.currentTimeMillis();
-    final PreparedStatement stat = createSelectByField(io, fieldName);
+    final PreparedStatement stat = io.isConnected() ? io.prepare(query) : null;
     if (stat == null)
     {
       return null;
@@ -173,6 +237,7 @@ public abstract class ModelMapper<T extends Model>
   {
     final AppConfig config = io.getConfig();
     final long timeMillis = System.currentTimeMillis();
+    io.beforeWrite(this);
     final PreparedStatement stat = createDeleteByField(io, fieldName, fieldValue);
     try
     {
@@ -214,18 +279,6 @@ public abstract class ModelMapper<T extends Model>
     }
   }
 
-  private PreparedStatement createSelectByField(JdbcSerialization io, String fieldName)
-  {
-    if (io.isConnected())
-    {
-      return io.prepare(getSelectByFieldValueQuery(fieldName));
-    }
-    else
-    {
-      return null;
-    }
-  }
-
   private PreparedStatement createDeleteByField(JdbcSerialization io, String fieldName, Object fieldValue)
   {
     if (io.isConnected())
@@ -329,6 +382,7 @@ public abstract class ModelMapper<T extends Model>
 
   public boolean insert(JdbcSerialization io, T model)
   {
+    io.beforeWrite(this);
     final PreparedStatement stat = createInsert(io);
     ResultSet generatedKeys = null;
     if (stat == null)
@@ -361,6 +415,7 @@ public abstract class ModelMapper<T extends Model>
 
   public boolean update(JdbcSerialization io, T model)
   {
+    io.beforeWrite(this);
     final PreparedStatement stat = createUpdate(io);
     if (stat == null)
     {
@@ -493,6 +548,52 @@ public abstract class ModelMapper<T extends Model>
     return sb.toString();
   }
 
+  /**
+   * Split the table definition into column definitions, each consisting of a column name followed by its type.
+   *
+   * @return list of column definitions like {@code name text}
+   */
+  public List<String> getColumnDefinitions()
+  {
+    final List<String> result = new ArrayList<>();
+    for (final String item : getTableDefinition().split(","))
+    {
+      final String def = item.trim();
+      if (!def.isEmpty())
+      {
+        result.add(def);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Assemble an SQL query adding a column to an existing table.
+   *
+   * @param columnDefinition
+   *          column name and type as returned by {@link #getColumnDefinitions()}
+   * @return the SQL code
+   */
+  public String getAddColumnQuery(final String columnDefinition)
+  {
+    return "alter table " + getTableName() + " add column " + columnDefinition + ";";
+  }
+
+  public String getTableInfoQuery()
+  {
+    return "pragma table_info(" + getTableName() + ");";
+  }
+
+  /**
+   * Return queries creating the indexes of this mapper's table, to be run after the table was created.
+   *
+   * @return list of SQL statements, empty by default
+   */
+  public List<String> getCreateIndexQueries()
+  {
+    return new ArrayList<>();
+  }
+
   public String getCreateTableQuery()
   {
     return "create table if not exists " + getTableName() + " (\n" + ID + " integer not null primary key,\n"
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.db;
+
+/**
+ * One execution of the application that stored changes, referenced by the {@link FileEvent} rows written during it.
+ *
+ * @author Marco Schmidt
+ */
+public class Run extends Model
+{
+  private Long started;
+  private Long finished;
+  private String mode;
+  private long numEvents;
+
+  /**
+   * Start time.
+   *
+   * @return milliseconds since 1970
+   */
+  public Long getStarted()
+  {
+    return started;
+  }
+
+  public void setStarted(Long started)
+  {
+    this.started = started;
+  }
+
+  /**
+   * End time, null while the run is active or if it was terminated.
+   *
+   * @return milliseconds since 1970 or null
+   */
+  public Long getFinished()
+  {
+    return finished;
+  }
+
+  public void setFinished(Long finished)
+  {
+    this.finished = finished;
+  }
+
+  public String getMode()
+  {
+    return mode;
+  }
+
+  public void setMode(String mode)
+  {
+    this.mode = mode;
+  }
+
+  public long getNumEvents()
+  {
+    return numEvents;
+  }
+
+  public void setNumEvents(long numEvents)
+  {
+    this.numEvents = numEvents;
+  }
+}
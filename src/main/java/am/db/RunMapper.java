@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ModelMapper} for the {@link Run} class.
+ *
+ * @author Marco Schmidt
+ */
+public class RunMapper extends ModelMapper<Run>
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(RunMapper.class);
+  static final String TABLE_RUNS = "runs";
+  private static final String COL_STARTED = "started";
+  private static final String COL_FINISHED = "finished";
+  private static final String COL_MODE = "mode";
+  private static final String COL_NUM_EVENTS = "num_events";
+  private static final String[] COLUMNS =
+  {
+      COL_STARTED, COL_FINISHED, COL_MODE, COL_NUM_EVENTS
+  };
+
+  @Override
+  protected Run create()
+  {
+    return new Run();
+  }
+
+  @Override
+  protected String getTableName()
+  {
+    return TABLE_RUNS;
+  }
+
+  @Override
+  public Run from(ResultSet rs)
+  {
+    final Run run = super.from(rs);
+    try
+    {
+      run.setStarted(rs.getLong(COL_STARTED));
+      final long finished = rs.getLong(COL_FINISHED);
+      run.setFinished(rs.wasNull() ? null : Long.valueOf(finished));
+      run.setMode(rs.getString(COL_MODE));
+      run.setNumEvents(rs.getLong(COL_NUM_EVENTS));
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(getConfig().msg("database.error.convert_from_result_set", this.getClass().getSimpleName()), e);
+    }
+    return run;
+  }
+
+  @Override
+  public void to(PreparedStatement stat, Run run, boolean appendModelId)
+  {
+    try
+    {
+      setLong(stat, 1, run.getStarted());
+      setLong(stat, 2, run.getFinished());
+      ModelMapper.setString(stat, 3, run.getMode());
+      stat.setLong(4, run.getNumEvents());
+      if (appendModelId)
+      {
+        stat.setLong(5, run.getId());
+      }
+    }
+    catch (final SQLException e)
+    {
+      LOGGER.error(getConfig().msg("database.error.convert_to_prepared_statement", this.getClass().getSimpleName()), e);
+    }
+  }
+
+  @Override
+  protected String getTableDefinition()
+  {
+    return COL_STARTED + " bigint,\n" + COL_FINISHED + " bigint,\n" + COL_MODE + " text,\n" + COL_NUM_EVENTS
+        + " bigint\n";
+  }
+
+  @Override
+  public String getInsertQuery()
+  {
+    return getInsertQuery(COLUMNS);
+  }
+
+  @Override
+  public String getUpdateQuery()
+  {
+    return getUpdateQuery(COLUMNS);
+  }
+}
@@ -31,7 +31,7 @@ import am.filesystem.model.Volume;
 public class VolumeMapper extends ModelMapper<Volume>
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(VolumeMapper.class);
-  private static final String TABLE_VOLUMES = "volumes";
+  static final String TABLE_VOLUMES = "volumes";
   private static final String TABLE_VOLUMES_MAIN = "main";
   private static final String TABLE_VOLUMES_MAIN_REF = "main_ref";
   private static final String TABLE_VOLUMES_PATH = "path";
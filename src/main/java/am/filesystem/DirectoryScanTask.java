@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+
+/**
+ * Fork/join task scanning a single directory. Files are added to the task's {@link Directory} right away, each
+ * subdirectory is added as well and then scanned by a task of its own. Entries are added in the order they are listed
+ * by the file system, just like {@link VolumeVisitor} does, so the resulting tree does not depend on the number of
+ * threads.
+ *
+ * Errors are handled like {@link VolumeVisitor} does: an entry that disappears between listing its directory and
+ * reading its attributes is skipped, a directory that disappears before it is listed is removed from its parent, and
+ * any other failure to list a directory or read attributes ends the scan with an {@link UncheckedIOException}.
+ *
+ * Only this task modifies its {@link Directory} object, so no synchronization is necessary.
+ */
+class DirectoryScanTask extends RecursiveAction
+{
+  private static final long serialVersionUID = -2480431563939005441L;
+  private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(VolumeScanner.class);
+  private final transient VolumeScanner scanner;
+  private final transient AppConfig config;
+  private final transient Path path;
+  private final transient Directory dir;
+  private long numDirectories;
+  private long numFiles;
+  private long numBytes;
+  private boolean vanished;
+
+  DirectoryScanTask(final VolumeScanner scanner, final AppConfig config, final Path path, final Directory dir)
+  {
+    this.scanner = scanner;
+    this.config = config;
+    this.path = path;
+    this.dir = dir;
+  }
+
+  @Override
+  protected void compute()
+  {
+    if (LOGGER.isTraceEnabled())
+    {
+      LOGGER.trace(config.msg("scanner.trace.enter", path.toAbsolutePath()));
+    }
+    numDirectories = 1;
+    final List<DirectoryScanTask> tasks = new ArrayList<>();
+    DirectoryStream<Path> stream = null;
+    try
+    {
+      stream = Files.newDirectoryStream(path);
+      for (final Path entry : stream)
+      {
+        addEntry(entry, tasks);
+      }
+    }
+    catch (final NoSuchFileException e)
+    {
+      // removed since its parent was listed, the parent task drops it
+      LOGGER.debug(config.msg("scanner.debug.vanished_directory", path.toAbsolutePath()));
+      vanished = true;
+      return;
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+    catch (final DirectoryIteratorException e)
+    {
+      throw new UncheckedIOException(e.getCause());
+    }
+    finally
+    {
+      FileSystemHelper.close(stream);
+    }
+    // listings come in file system order, merging requires name order
+    dir.sortByName();
+
+    invokeAll(tasks);
+    for (final DirectoryScanTask task : tasks)
+    {
+      if (task.vanished)
+      {
+        dir.remove(task.dir);
+        continue;
+      }
+      numDirectories += task.getNumDirectories();
+      numFiles += task.getNumFiles();
+      numBytes += task.getNumBytes();
+    }
+    if (LOGGER.isTraceEnabled())
+    {
+      LOGGER.trace(config.msg("scanner.trace.exit", path.toAbsolutePath()));
+    }
+  }
+
+  private void addEntry(final Path entry, final List<DirectoryScanTask> tasks)
+  {
+    final BasicFileAttributes attrs = readAttributes(entry);
+    if (attrs == null)
+    {
+      return;
+    }
+    if (attrs.isDirectory())
+    {
+      if (!scanner.isIgnoredDirectory(entry))
+      {
+        final Directory sub = scanner.addDirectory(entry);
+        dir.add(sub);
+        tasks.add(new DirectoryScanTask(scanner, config, entry, sub));
+      }
+    }
+    else
+    {
+      addFile(entry, attrs);
+    }
+  }
+
+  /**
+   * Read the attributes of a listed entry.
+   *
+   * @return attributes or null if the entry no longer exists
+   */
+  private BasicFileAttributes readAttributes(final Path entry)
+  {
+    try
+    {
+      return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+    catch (final NoSuchFileException e)
+    {
+      LOGGER.debug(config.msg("scanner.debug.vanished_entry", entry.toAbsolutePath()));
+      return null;
+    }
+    catch (final IOException e)
+    {
+      // like VolumeVisitor: failing to access an entry ends the scan
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void addFile(final Path file, final BasicFileAttributes attrs)
+  {
+    if (LOGGER.isTraceEnabled())
+    {
+      LOGGER.trace(config.msg("scanner.trace.file", file.toAbsolutePath()));
+    }
+    final Path fileName = file.getFileName();
+    final String name = fileName == null ? file.toString() : fileName.toString();
+    if (scanner.isIgnoredFile(file, name))
+    {
+      if (LOGGER.isTraceEnabled())
+      {
+        LOGGER.trace(config.msg("scanner.trace.skip_file", file.toAbsolutePath()));
+      }
+      return;
+    }
+    final File model = scanner.createFile(file, name, attrs);
+    numBytes += model.getByteSizeValue();
+    dir.add(model);
+    numFiles++;
+  }
+
+  /**
+   * Return whether the task's directory no longer existed when it was to be listed.
+   *
+   * @return true if the directory vanished
+   */
+  public boolean isVanished()
+  {
+    return vanished;
+  }
+
+  public long getNumDirectories()
+  {
+    return numDirectories;
+  }
+
+  public long getNumFiles()
+  {
+    return numFiles;
+  }
+
+  public long getNumBytes()
+  {
+    return numBytes;
+  }
+}
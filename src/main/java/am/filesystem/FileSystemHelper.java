@@ -18,6 +18,11 @@ package am.filesystem;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -33,6 +38,8 @@ public final class FileSystemHelper
    * Directory separator to be used internally.
    */
   public static final String DIRECTORY_SEPARATOR = "/";
+  private static final Path DEVICE_DIRECTORY = Paths.get("/dev");
+  private static final Path SYS_BLOCK_DIRECTORY = Paths.get("/sys/class/block");
 
   private FileSystemHelper()
   {
@@ -121,6 +128,47 @@ public final class FileSystemHelper
     }
   }
 
+  /**
+   * Determine whether a file store is located on a rotating hard disk, which is read fastest by one thread at a time.
+   * Only implemented for Linux, where the kernel flags each block device in
+   * {@code /sys/class/block/<device>/queue/rotational}; partitions use the flag of their disk.
+   *
+   * @param store
+   *          file store, e.g. of a volume
+   * @return true if the store is known to be on a rotating disk, false if not or if that cannot be determined
+   */
+  public static boolean isRotational(final FileStore store)
+  {
+    final String name = store.name();
+    if (name == null || !name.startsWith(DEVICE_DIRECTORY.toString() + "/"))
+    {
+      return false;
+    }
+    try
+    {
+      // resolves links like /dev/mapper/name to /dev/dm-0
+      final Path device = Paths.get(name).toRealPath();
+      final Path fileName = device.getFileName();
+      if (!device.startsWith(DEVICE_DIRECTORY) || fileName == null)
+      {
+        return false;
+      }
+      final Path sysEntry = SYS_BLOCK_DIRECTORY.resolve(fileName.toString()).toRealPath();
+      Path flag = sysEntry.resolve("queue/rotational");
+      final Path disk = sysEntry.getParent();
+      if (!Files.isRegularFile(flag) && disk != null)
+      {
+        flag = disk.resolve("queue/rotational");
+      }
+      return Files.isRegularFile(flag) && new String(Files.readAllBytes(flag), StandardCharsets.US_ASCII).trim()
+          .equals("1");
+    }
+    catch (final IOException | SecurityException | java.nio.file.InvalidPathException e)
+    {
+      return false;
+    }
+  }
+
   public static String normalizePath(final String path)
   {
     String result;
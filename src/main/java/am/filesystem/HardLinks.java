@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import am.filesystem.model.Directory;
+import am.filesystem.model.DirectoryVisitor;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+
+/**
+ * Groups of {@link File} objects which are links to the same physical file, identified by their file key. On Unix-like
+ * systems the file key contains device and inode, so the same key means the same file even across volumes. Files
+ * without file key (e.g. on Windows) and files in state {@link FileState#Missing} are counted, but never grouped.
+ *
+ * Only groups with more than one link cost a list, so that volumes without hard links need not much more than the
+ * hash map.
+ *
+ * @author Marco Schmidt
+ */
+public class HardLinks
+{
+  private final Map<String, List<File>> groups = new HashMap<>();
+  private long numFiles;
+  private long numBytes;
+  private long numPhysicalFiles;
+  private long numPhysicalBytes;
+
+  /**
+   * Add all files of a directory tree.
+   *
+   * @param dir
+   *          directory, possibly null
+   */
+  public void addAll(final Directory dir)
+  {
+    if (dir == null)
+    {
+      return;
+    }
+    dir.accept(DirectoryVisitor.ofFiles(this::add));
+  }
+
+  /**
+   * Add a single file.
+   *
+   * @param file
+   *          file to be added
+   */
+  public void add(final File file)
+  {
+    if (file.getState() == FileState.Missing)
+    {
+      return;
+    }
+    final long size = file.getByteSizeValue() == File.UNKNOWN ? 0 : file.getByteSizeValue();
+    numFiles++;
+    numBytes += size;
+    final String key = file.getFileKey();
+    if (key == null)
+    {
+      numPhysicalFiles++;
+      numPhysicalBytes += size;
+      return;
+    }
+    final List<File> group = groups.get(key);
+    if (group == null)
+    {
+      groups.put(key, Collections.singletonList(file));
+      numPhysicalFiles++;
+      numPhysicalBytes += size;
+    }
+    else
+      if (group.size() == 1)
+      {
+        final List<File> links = new ArrayList<>(2);
+        links.add(group.get(0));
+        links.add(file);
+        groups.put(key, links);
+      }
+      else
+      {
+        group.add(file);
+      }
+  }
+
+  /**
+   * Return all links to the physical file of a file, in the order they were added.
+   *
+   * @param file
+   *          file that was added before
+   * @return non-empty list including the argument, a list with only the argument if there are no other links
+   */
+  public List<File> getLinks(final File file)
+  {
+    final String key = file.getFileKey();
+    final List<File> group = key == null ? null : groups.get(key);
+    return group == null ? Collections.singletonList(file) : Collections.unmodifiableList(group);
+  }
+
+  /**
+   * Return number of added files.
+   *
+   * @return number of paths
+   */
+  public long getNumFiles()
+  {
+    return numFiles;
+  }
+
+  /**
+   * Return sum of the sizes of all added files.
+   *
+   * @return logical size in bytes
+   */
+  public long getNumBytes()
+  {
+    return numBytes;
+  }
+
+  /**
+   * Return number of distinct physical files.
+   *
+   * @return number of files with hard links counted once
+   */
+  public long getNumPhysicalFiles()
+  {
+    return numPhysicalFiles;
+  }
+
+  /**
+   * Return sum of the sizes of distinct physical files.
+   *
+   * @return physical size in bytes
+   */
+  public long getNumPhysicalBytes()
+  {
+    return numPhysicalBytes;
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled set of rules deciding which directories or files are ignored when scanning.
+ *
+ * Rules are glob patterns:
+ * <ul>
+ * <li>A rule without wildcards and without slash is a name like before, e.g. {@code Thumbs.db}. All such names are put
+ * into a single hash set.</li>
+ * <li>A rule with wildcards but without slash is matched against the name of an entry, e.g. {@code *.tmp} or
+ * {@code .~lock.*#}. {@code *} stands for any number of characters, {@code ?} for a single character and {@code [...]}
+ * for a character class.</li>
+ * <li>A rule with a slash is matched against the path of an entry relative to the volume root, with slashes as
+ * separator, e.g. {@code /photos/cache} or {@code **}{@code /node_modules}. A leading slash is optional, {@code **}
+ * stands for any number of directory levels including none.</li>
+ * </ul>
+ * Rules are compiled so that the cost of checking an entry barely depends on the number of rules: literal names,
+ * {@code **}{@code /name} rules and literal paths end up in hash sets, rules with a single star like {@code *.tmp} or
+ * {@code .~lock.*#} become prefix and suffix pairs, and everything else is combined into one regular expression for
+ * names and one for paths. Only if there are path rules the caller needs to compute relative paths, see
+ * {@link #hasPathRules()}.
+ *
+ * @author Marco Schmidt
+ */
+public final class IgnoreRules
+{
+  private static final String SPECIAL_CHARACTERS = "\\.^$|+(){}";
+  private final Set<String> names = new HashSet<>();
+  private final List<String[]> nameAffixes = new ArrayList<>();
+  private final List<String> nameGlobs = new ArrayList<>();
+  private final Set<String> paths = new HashSet<>();
+  private final List<String> pathSuffixes = new ArrayList<>();
+  private final List<String> pathGlobs = new ArrayList<>();
+  private Pattern namePattern;
+  private Pattern pathPattern;
+
+  private IgnoreRules()
+  {
+  }
+
+  /**
+   * Compile rules.
+   *
+   * @param ruleSets
+   *          collections of rules, e.g. global rules and rules of a single volume, each possibly null
+   * @return compiled rules
+   */
+  @SafeVarargs
+  public static IgnoreRules compile(final Collection<String>... ruleSets)
+  {
+    final IgnoreRules result = new IgnoreRules();
+    for (final Collection<String> rules : ruleSets)
+    {
+      if (rules == null)
+      {
+        continue;
+      }
+      for (final String rule : rules)
+      {
+        result.add(rule.trim());
+      }
+    }
+    result.namePattern = combine(result.nameGlobs);
+    result.pathPattern = combine(result.pathGlobs);
+    return result;
+  }
+
+  private void add(final String rule)
+  {
+    String glob = rule;
+    while (glob.length() > 1 && glob.endsWith("/"))
+    {
+      glob = glob.substring(0, glob.length() - 1);
+    }
+    final boolean anchored = glob.startsWith("/");
+    if (anchored)
+    {
+      glob = glob.substring(1);
+    }
+    else
+      if (glob.startsWith("**/") && isLiteral(glob.substring(3)))
+      {
+        // any depth including the top level, so only the last part matters
+        addPathSuffix(glob.substring(3));
+        return;
+      }
+    if (glob.isEmpty())
+    {
+      return;
+    }
+    if (anchored || glob.indexOf('/') >= 0)
+    {
+      addPath(glob);
+    }
+    else
+      if (isLiteral(glob))
+      {
+        names.add(glob);
+      }
+      else
+        if (isSingleStar(glob))
+        {
+          final int star = glob.indexOf('*');
+          nameAffixes.add(new String[]
+          {
+              glob.substring(0, star), glob.substring(star + 1)
+          });
+        }
+        else
+        {
+          nameGlobs.add(glob);
+        }
+  }
+
+  private void addPathSuffix(final String suffix)
+  {
+    if (suffix.indexOf('/') < 0)
+    {
+      names.add(suffix);
+    }
+    else
+    {
+      pathSuffixes.add(suffix);
+    }
+  }
+
+  private void addPath(final String glob)
+  {
+    if (isLiteral(glob))
+    {
+      paths.add(glob);
+    }
+    else
+    {
+      pathGlobs.add(glob);
+    }
+  }
+
+  private static boolean isLiteral(final String glob)
+  {
+    return glob.indexOf('*') < 0 && glob.indexOf('?') < 0 && glob.indexOf('[') < 0;
+  }
+
+  private static boolean isSingleStar(final String glob)
+  {
+    final int star = glob.indexOf('*');
+    return star >= 0 && star == glob.lastIndexOf('*') && glob.indexOf('?') < 0 && glob.indexOf('[') < 0;
+  }
+
+  private static Pattern combine(final List<String> globs)
+  {
+    if (globs.isEmpty())
+    {
+      return null;
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (final String glob : globs)
+    {
+      if (sb.length() > 0)
+      {
+        sb.append('|');
+      }
+      sb.append("(?:");
+      appendRegex(sb, glob);
+      sb.append(')');
+    }
+    return Pattern.compile(sb.toString());
+  }
+
+  /**
+   * Convert a glob pattern to a regular expression.
+   *
+   * @param sb
+   *          buffer to append regular expression to
+   * @param glob
+   *          glob pattern
+   */
+  static void appendRegex(final StringBuilder sb, final String glob)
+  {
+    int index = 0;
+    while (index < glob.length())
+    {
+      final char c = glob.charAt(index++);
+      if (c == '*')
+      {
+        if (index < glob.length() && glob.charAt(index) == '*')
+        {
+          index++;
+          if (index < glob.length() && glob.charAt(index) == '/')
+          {
+            index++;
+            sb.append("(?:.*/)?");
+          }
+          else
+          {
+            sb.append(".*");
+          }
+        }
+        else
+        {
+          sb.append("[^/]*");
+        }
+      }
+      else
+        if (c == '?')
+        {
+          sb.append("[^/]");
+        }
+        else
+          if (c == '[' && isCharacterClass(glob, index))
+          {
+            index = appendCharacterClass(sb, glob, index);
+          }
+          else
+          {
+            if (SPECIAL_CHARACTERS.indexOf(c) >= 0 || c == '[' || c == ']')
+            {
+              sb.append('\\');
+            }
+            sb.append(c);
+          }
+    }
+  }
+
+  private static boolean isCharacterClass(final String glob, final int start)
+  {
+    final int first = start < glob.length() && glob.charAt(start) == '!' ? start + 1 : start;
+    return glob.indexOf(']', first) > first;
+  }
+
+  private static int appendCharacterClass(final StringBuilder sb, final String glob, final int start)
+  {
+    final int end = glob.indexOf(']', start);
+    sb.append('[');
+    int index = start;
+    if (glob.charAt(index) == '!')
+    {
+      sb.append('^');
+      index++;
+    }
+    while (index < end)
+    {
+      final char c = glob.charAt(index++);
+      if (c == '\\' || c == '[' || c == '&' || c == '^')
+      {
+        sb.append('\\');
+      }
+      sb.append(c);
+    }
+    sb.append(']');
+    return end + 1;
+  }
+
+  /**
+   * Check whether an entry is to be ignored.
+   *
+   * @param relativePath
+   *          path relative to the volume root separated by slashes, only evaluated if {@link #hasPathRules()}
+   * @param name
+   *          name of the entry
+   * @return whether a rule matches
+   */
+  public boolean isIgnored(final String relativePath, final String name)
+  {
+    if (name != null && isIgnoredName(name))
+    {
+      return true;
+    }
+    return relativePath != null && hasPathRules() && isIgnoredPath(relativePath);
+  }
+
+  private boolean isIgnoredName(final String name)
+  {
+    if (names.contains(name))
+    {
+      return true;
+    }
+    for (final String[] affixes : nameAffixes)
+    {
+      final String prefix = affixes[0];
+      final String suffix = affixes[1];
+      if (name.length() >= prefix.length() + suffix.length() && name.startsWith(prefix) && name.endsWith(suffix))
+      {
+        return true;
+      }
+    }
+    return namePattern != null && namePattern.matcher(name).matches();
+  }
+
+  private boolean isIgnoredPath(final String path)
+  {
+    if (paths.contains(path))
+    {
+      return true;
+    }
+    for (final String suffix : pathSuffixes)
+    {
+      if (path.endsWith(suffix) && (path.length() == suffix.length() || path.charAt(path.length() - suffix.length()
+          - 1) == '/'))
+      {
+        return true;
+      }
+    }
+    return pathPattern != null && pathPattern.matcher(path).matches();
+  }
+
+  /**
+   * Return whether there are rules which depend on the path of an entry rather than its name.
+   *
+   * @return whether {@link #isIgnored(String, String)} needs the relative path
+   */
+  public boolean hasPathRules()
+  {
+    return !paths.isEmpty() || !pathSuffixes.isEmpty() || pathPattern != null;
+  }
+
+  public boolean isEmpty()
+  {
+    return names.isEmpty() && nameAffixes.isEmpty() && namePattern == null && !hasPathRules();
+  }
+}
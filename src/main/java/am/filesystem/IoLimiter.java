@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the number of bytes and the number of operations per second read from a volume.
+ *
+ * Each bucket holds at most one second's worth of tokens so that short bursts after idle phases are possible. Callers
+ * take tokens with {@link #acquire(long, long)} before reading. If a bucket does not hold enough tokens the tokens are
+ * reserved anyway and the caller sleeps until the bucket would have been refilled, without holding the lock, so that
+ * threads sharing a limiter (scanner threads, hash creation) queue up in a fair way.
+ *
+ * A rate of zero or less means unlimited. Statistics about the time spent waiting can be queried at any time.
+ *
+ * @author Marco Schmidt
+ */
+public class IoLimiter
+{
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+  private final long bytesPerSecond;
+  private final long operationsPerSecond;
+  private double byteTokens;
+  private double operationTokens;
+  private long lastRefillNanos;
+  private long numBytes;
+  private long numOperations;
+  private long numThrottled;
+  private long throttledNanos;
+
+  public IoLimiter(final long bytesPerSecond, final long operationsPerSecond)
+  {
+    this.bytesPerSecond = bytesPerSecond;
+    this.operationsPerSecond = operationsPerSecond;
+    byteTokens = bytesPerSecond;
+    operationTokens = operationsPerSecond;
+    lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Take tokens for operations and bytes, sleeping if the configured rates are exceeded.
+   *
+   * @param operations
+   *          number of file system operations (directory listings, attribute reads, read calls)
+   * @param bytes
+   *          number of bytes read
+   */
+  public void acquire(final long operations, final long bytes)
+  {
+    final long waitNanos;
+    synchronized (this)
+    {
+      refill(System.nanoTime());
+      numOperations += operations;
+      numBytes += bytes;
+      byteTokens -= bytes;
+      operationTokens -= operations;
+      waitNanos = Math.max(getWaitNanos(byteTokens, bytesPerSecond), getWaitNanos(operationTokens, operationsPerSecond));
+      if (waitNanos > 0)
+      {
+        numThrottled++;
+        throttledNanos += waitNanos;
+      }
+    }
+    if (waitNanos > 0)
+    {
+      try
+      {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+      catch (final InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void refill(final long nanos)
+  {
+    final double seconds = (nanos - lastRefillNanos) / NANOS_PER_SECOND;
+    lastRefillNanos = nanos;
+    if (bytesPerSecond > 0)
+    {
+      byteTokens = Math.min(bytesPerSecond, byteTokens + seconds * bytesPerSecond);
+    }
+    if (operationsPerSecond > 0)
+    {
+      operationTokens = Math.min(operationsPerSecond, operationTokens + seconds * operationsPerSecond);
+    }
+  }
+
+  private static long getWaitNanos(final double tokens, final long rate)
+  {
+    if (rate <= 0 || tokens >= 0)
+    {
+      return 0;
+    }
+    return (long) (-tokens * NANOS_PER_SECOND / rate);
+  }
+
+  public long getBytesPerSecond()
+  {
+    return bytesPerSecond;
+  }
+
+  public long getOperationsPerSecond()
+  {
+    return operationsPerSecond;
+  }
+
+  public synchronized long getNumBytes()
+  {
+    return numBytes;
+  }
+
+  public synchronized long getNumOperations()
+  {
+    return numOperations;
+  }
+
+  /**
+   * Return how often a caller had to wait.
+   *
+   * @return number of calls to {@link #acquire(long, long)} that slept
+   */
+  public synchronized long getNumThrottled()
+  {
+    return numThrottled;
+  }
+
+  /**
+   * Return the total time callers had to wait.
+   *
+   * @return sum of sleeping times in milliseconds
+   */
+  public synchronized long getThrottledMillis()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(throttledNanos);
+  }
+}
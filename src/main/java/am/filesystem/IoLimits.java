@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+
+/**
+ * Configured I/O budgets and the {@link IoLimiter} objects enforcing them, one per volume. Scanning and hash creation
+ * of a volume go through the same limiter.
+ *
+ * Default rates apply to all volumes, rates assigned to a single volume id override them. Rates of zero mean
+ * unlimited; volumes without any limit get no limiter at all.
+ *
+ * @author Marco Schmidt
+ */
+public class IoLimits
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(IoLimits.class);
+  private long defaultBytesPerSecond;
+  private long defaultOperationsPerSecond;
+  private final Map<Long, Long> bytesPerSecond = new HashMap<>();
+  private final Map<Long, Long> operationsPerSecond = new HashMap<>();
+  private final Map<Long, IoLimiter> limiters = new TreeMap<>();
+  private IoLimiter defaultLimiter;
+
+  /**
+   * Parse a non-negative amount with an optional binary suffix k, M, G or T (case is ignored).
+   *
+   * @param value
+   *          text like 500, 64k or 20M
+   * @return parsed amount
+   * @throws NumberFormatException
+   *           if the text is not a valid amount
+   */
+  public static long parseAmount(final String value)
+  {
+    String s = value.trim().toLowerCase(Locale.ROOT);
+    long factor = 1;
+    if (s.endsWith("k"))
+    {
+      factor = 1L << 10;
+    }
+    else
+      if (s.endsWith("m"))
+      {
+        factor = 1L << 20;
+      }
+      else
+        if (s.endsWith("g"))
+        {
+          factor = 1L << 30;
+        }
+        else
+          if (s.endsWith("t"))
+          {
+            factor = 1L << 40;
+          }
+    if (factor > 1)
+    {
+      s = s.substring(0, s.length() - 1).trim();
+    }
+    final long amount = Long.parseLong(s);
+    if (amount < 0)
+    {
+      throw new NumberFormatException(value);
+    }
+    return Math.multiplyExact(amount, factor);
+  }
+
+  /**
+   * Return the limiter of a volume, creating it on first access.
+   *
+   * @param volumeRef
+   *          volume id, null if unknown
+   * @return shared limiter or null if no limit applies to the volume
+   */
+  public synchronized IoLimiter getLimiter(final Long volumeRef)
+  {
+    if (volumeRef == null)
+    {
+      if (defaultLimiter == null && isLimited(defaultBytesPerSecond, defaultOperationsPerSecond))
+      {
+        defaultLimiter = new IoLimiter(defaultBytesPerSecond, defaultOperationsPerSecond);
+      }
+      return defaultLimiter;
+    }
+    IoLimiter limiter = limiters.get(volumeRef);
+    if (limiter == null)
+    {
+      final long bytes = bytesPerSecond.getOrDefault(volumeRef, defaultBytesPerSecond);
+      final long operations = operationsPerSecond.getOrDefault(volumeRef, defaultOperationsPerSecond);
+      if (!isLimited(bytes, operations))
+      {
+        return null;
+      }
+      limiter = new IoLimiter(bytes, operations);
+      limiters.put(volumeRef, limiter);
+    }
+    return limiter;
+  }
+
+  private static boolean isLimited(final long bytes, final long operations)
+  {
+    return bytes > 0 || operations > 0;
+  }
+
+  /**
+   * Log how much each limiter used so far has throttled.
+   *
+   * @param config
+   *          application configuration
+   */
+  public synchronized void logStatistics(final AppConfig config)
+  {
+    for (final Map.Entry<Long, IoLimiter> entry : limiters.entrySet())
+    {
+      log(config, entry.getKey(), entry.getValue());
+    }
+    if (defaultLimiter != null)
+    {
+      log(config, "-", defaultLimiter);
+    }
+  }
+
+  private static void log(final AppConfig config, final Object volumeRef, final IoLimiter limiter)
+  {
+    LOGGER.info(config.msg("io.info.throttled", volumeRef, limiter.getNumOperations(), limiter.getNumBytes(),
+        limiter.getNumThrottled(), limiter.getThrottledMillis()));
+  }
+
+  public synchronized long getDefaultBytesPerSecond()
+  {
+    return defaultBytesPerSecond;
+  }
+
+  public synchronized void setDefaultBytesPerSecond(long defaultBytesPerSecond)
+  {
+    this.defaultBytesPerSecond = defaultBytesPerSecond;
+  }
+
+  public synchronized long getDefaultOperationsPerSecond()
+  {
+    return defaultOperationsPerSecond;
+  }
+
+  public synchronized void setDefaultOperationsPerSecond(long defaultOperationsPerSecond)
+  {
+    this.defaultOperationsPerSecond = defaultOperationsPerSecond;
+  }
+
+  public synchronized void setBytesPerSecond(Long volumeRef, long value)
+  {
+    bytesPerSecond.put(volumeRef, Long.valueOf(value));
+  }
+
+  public synchronized void setOperationsPerSecond(Long volumeRef, long value)
+  {
+    operationsPerSecond.put(volumeRef, Long.valueOf(value));
+  }
+}
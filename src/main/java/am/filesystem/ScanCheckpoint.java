@@ -0,0 +1,268 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.db.DirectoryMapper;
+import am.db.FileMapper;
+import am.db.JdbcSerialization;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+
+/**
+ * Persist the progress of a volume scan so that an interrupted scan can be resumed.
+ *
+ * Each directory whose subtree was scanned completely is reported with {@link #completed(String, Directory)}. Every
+ * couple of seconds these subtrees are written to the staging tables scan_dirs and scan_files. The root of a stored
+ * subtree has no parent reference and its path relative to the volume as name. Once the parent directory completes
+ * as well, the subtree's root row is attached to the parent's row, so nothing is written twice. The walk frontier
+ * thus consists of the directories on the path from the volume root to the directory being scanned; everything
+ * completed next to it is in the staging tables.
+ *
+ * A new scan of the volume loads the staging tables with {@link #load()} and takes completed subtrees from there with
+ * {@link #restore(String)} instead of walking them again. After a scan has finished, {@link #clear()} removes the
+ * volume's rows.
+ *
+ * @author Marco Schmidt
+ */
+public class ScanCheckpoint
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScanCheckpoint.class);
+  private final AppConfig config;
+  private final JdbcSerialization io;
+  private final Long volumeRef;
+  private final long intervalMillis;
+  private long lastFlushMillis;
+
+  /**
+   * Completed subtrees not yet written, by path relative to the volume.
+   */
+  private final Map<String, Directory> pending = new LinkedHashMap<>();
+
+  /**
+   * Ids of the staging rows of subtree roots already written, to be attached to their parent's row once the parent
+   * completes. Scanned model objects are never assigned staging ids themselves, they get the ids of the catalog tables
+   * when merged.
+   */
+  private final Map<Directory, Long> stagingIds = new IdentityHashMap<>();
+
+  /**
+   * Completed subtrees of an earlier, interrupted scan, by path relative to the volume.
+   */
+  private final Map<String, Directory> restorable = new HashMap<>();
+
+  public ScanCheckpoint(final AppConfig config, final JdbcSerialization io, final Long volumeRef,
+      final long intervalMillis)
+  {
+    this.config = config;
+    this.io = io;
+    this.volumeRef = volumeRef;
+    this.intervalMillis = intervalMillis;
+    lastFlushMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Load the subtrees stored by an earlier scan of this volume.
+   *
+   * @return number of directories loaded
+   */
+  public int load()
+  {
+    final List<Directory> dirs;
+    final List<File> files;
+    synchronized (io)
+    {
+      dirs = io.getScanDirectoryMapper().loadByField(io, DirectoryMapper.TABLE_DIRS_VOLUME_REF, volumeRef);
+      files = io.getScanFileMapper().loadByField(io, FileMapper.COL_VOLUME_REF, volumeRef);
+    }
+    if (dirs == null || dirs.isEmpty())
+    {
+      return 0;
+    }
+    final Map<Long, Directory> copies = new HashMap<>();
+    for (final Directory row : dirs)
+    {
+      final Directory copy = new Directory();
+      copy.setName(row.getName());
+      copy.setLastModified(row.getLastModified());
+      copy.setNumEntries(row.getNumEntries());
+      copies.put(row.getId(), copy);
+    }
+    for (final Directory row : dirs)
+    {
+      final Directory copy = copies.get(row.getId());
+      final Directory parent = row.getParentRef() == null ? null : copies.get(row.getParentRef());
+      if (parent == null)
+      {
+        restorable.put(row.getName(), copy);
+        stagingIds.put(copy, row.getId());
+      }
+      else
+      {
+        parent.add(copy);
+      }
+    }
+    if (files != null)
+    {
+      for (final File row : files)
+      {
+        final Directory dir = copies.get(row.getDirectoryRef());
+        if (dir != null)
+        {
+          final File copy = new File();
+          copy.setName(row.getName());
+          copy.setByteSizeValue(row.getByteSizeValue());
+          copy.setLastModifiedMillis(row.getLastModifiedMillis());
+          copy.setFileKey(row.getFileKey());
+          dir.add(copy);
+        }
+      }
+    }
+    LOGGER.info(config.msg("checkpoint.info.loaded", dirs.size(), restorable.size()));
+    return dirs.size();
+  }
+
+  /**
+   * Take a subtree completed by an earlier scan.
+   *
+   * @param path
+   *          directory path relative to the volume, separated by slashes
+   * @return complete directory or null if the directory was not completed earlier
+   */
+  public Directory restore(final String path)
+  {
+    return restorable.remove(path);
+  }
+
+  /**
+   * Report a directory whose subtree has been scanned completely.
+   *
+   * @param path
+   *          directory path relative to the volume, separated by slashes
+   * @param dir
+   *          scanned directory
+   */
+  public void completed(final String path, final Directory dir)
+  {
+    // completed subdirectories are written or attached as part of this directory
+    final String prefix = path.isEmpty() ? "" : path + "/";
+    final Iterator<String> iter = pending.keySet().iterator();
+    while (iter.hasNext())
+    {
+      if (iter.next().startsWith(prefix))
+      {
+        iter.remove();
+      }
+    }
+    pending.put(path, dir);
+  }
+
+  /**
+   * Write completed subtrees if the checkpoint interval has passed since the last write.
+   */
+  public void flushIfDue()
+  {
+    if (System.currentTimeMillis() - lastFlushMillis >= intervalMillis)
+    {
+      flush();
+    }
+  }
+
+  /**
+   * Write all completed subtrees in a single transaction.
+   */
+  public void flush()
+  {
+    final long millis = System.currentTimeMillis();
+    int numDirs = 0;
+    synchronized (io)
+    {
+      io.beginTransaction();
+      for (final Map.Entry<String, Directory> entry : pending.entrySet())
+      {
+        numDirs += write(entry.getValue(), entry.getKey(), null);
+      }
+      io.commitTransaction();
+    }
+    pending.clear();
+    lastFlushMillis = System.currentTimeMillis();
+    LOGGER.debug(config.msg("checkpoint.debug.flushed", numDirs, lastFlushMillis - millis));
+  }
+
+  private int write(final Directory dir, final String name, final Long parentRef)
+  {
+    final Directory row = new Directory();
+    row.setVolumeRef(volumeRef);
+    row.setParentRef(parentRef);
+    row.setName(name);
+    row.setLastModified(dir.getLastModified());
+    row.setNumEntries(dir.getNumEntries());
+    final Long stagingId = stagingIds.get(dir);
+    if (stagingId != null)
+    {
+      // root of a subtree written earlier, attach it to its parent
+      row.setId(stagingId);
+      io.getScanDirectoryMapper().update(io, row);
+      stagingIds.remove(dir);
+      return 0;
+    }
+    io.getScanDirectoryMapper().insert(io, row);
+    if (parentRef == null)
+    {
+      stagingIds.put(dir, row.getId());
+    }
+    int result = 1;
+    for (final Directory sub : dir.getSubdirectoriesView())
+    {
+      result += write(sub, sub.getName(), row.getId());
+    }
+    for (final File file : dir.getFilesView())
+    {
+      final File fileRow = new File();
+      fileRow.setVolumeRef(volumeRef);
+      fileRow.setDirectoryRef(row.getId());
+      fileRow.setName(file.getName());
+      fileRow.setByteSizeValue(file.getByteSizeValue());
+      fileRow.setLastModifiedMillis(file.getLastModifiedMillis());
+      fileRow.setFileKey(file.getFileKey());
+      io.getScanFileMapper().insert(io, fileRow);
+    }
+    return result;
+  }
+
+  /**
+   * Remove the staging rows of the volume once its scan has finished.
+   */
+  public void clear()
+  {
+    synchronized (io)
+    {
+      io.getScanFileMapper().deleteByField(io, FileMapper.COL_VOLUME_REF, volumeRef);
+      io.getScanDirectoryMapper().deleteByField(io, DirectoryMapper.TABLE_DIRS_VOLUME_REF, volumeRef);
+    }
+    pending.clear();
+    stagingIds.clear();
+    restorable.clear();
+  }
+}
@@ -16,49 +16,353 @@
 package am.filesystem;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ForkJoinPool;
 import org.slf4j.LoggerFactory;
 import am.app.AppConfig;
+import am.db.JdbcSerialization;
 import am.filesystem.model.Directory;
+import am.filesystem.model.File;
 import am.filesystem.model.Volume;
 
 /**
  * Scan a directory tree for entries and put them into a {@link Volume} object.
+ *
+ * If more than one thread is configured with {@link AppConfig#getNumberOfThreads()} the tree is scanned by a
+ * {@link ForkJoinPool}, one {@link DirectoryScanTask} per directory. Otherwise it is walked by a single thread with a
+ * {@link VolumeVisitor}. Both modes lead to the same tree, also when entries disappear during the scan, and both end
+ * the scan when a directory cannot be listed.
+ *
+ * With {@link AppConfig#isIncrementalScan()} and a catalog version of the volume assigned via
+ * {@link #setCatalog(Volume)} the single-threaded {@link VolumeVisitor} is used, reusing the catalog content of all
+ * directories whose time of last modification has not changed.
+ *
+ * With {@link AppConfig#getScanCheckpointSeconds()} greater than zero the single-threaded {@link VolumeVisitor} is
+ * used as well, storing its progress in a {@link ScanCheckpoint} at that interval. A scan of the same volume after an
+ * interruption resumes from the checkpoint.
+ *
+ * Creating directory and file objects counts as one file system operation each for the volume's {@link IoLimiter}, if
+ * one is configured.
+ *
+ * Ignore rules from {@link AppConfig#getIgnoreDirNames()} and {@link AppConfig#getIgnoreFileNames()} plus the volume's
+ * own rules are compiled into {@link IgnoreRules} when a scan starts.
  */
 public class VolumeScanner
 {
   private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(VolumeScanner.class);
   private final Volume volume;
   private final AppConfig config;
+  private Volume catalog;
+  private IoLimiter limiter;
+  private IgnoreRules dirRules;
+  private IgnoreRules fileRules;
+  private Path ignoreRoot;
+  private boolean sharedIgnoreRules;
 
   public VolumeScanner(final AppConfig config, final Volume v)
   {
     this.volume = v;
     this.config = config;
+    limiter = config.getIoLimits().getLimiter(v.getId());
+    compileIgnoreRules();
+  }
+
+  private void compileIgnoreRules()
+  {
+    if (sharedIgnoreRules)
+    {
+      return;
+    }
+    final Long volumeRef = getVolumeRef();
+    dirRules = IgnoreRules.compile(config.getIgnoreDirNames(), config.getVolumeIgnoreDirNames(volumeRef));
+    fileRules = IgnoreRules.compile(config.getIgnoreFileNames(), config.getVolumeIgnoreFileNames(volumeRef));
+    ignoreRoot = volume.getPath() == null ? null : Paths.get(volume.getPath()).toAbsolutePath();
+  }
+
+  /**
+   * Use the ignore rules of another scanner, e.g. when scanning a directory below that scanner's volume on its own.
+   * Path rules remain relative to the other scanner's volume.
+   *
+   * @param other
+   *          scanner of the volume containing this scanner's directory tree
+   */
+  public void useIgnoreRulesOf(final VolumeScanner other)
+  {
+    dirRules = other.dirRules;
+    fileRules = other.fileRules;
+    ignoreRoot = other.ignoreRoot;
+    sharedIgnoreRules = true;
   }
 
   public void scan()
+  {
+    // configuration may have changed since this object was created
+    compileIgnoreRules();
+    final Integer numThreads = config.getNumberOfThreads();
+    if (isIncremental() || isCheckpointed())
+    {
+      scanSequential();
+    }
+    else
+      if (numThreads != null && numThreads.intValue() > 1)
+      {
+        scanParallel(numThreads.intValue());
+      }
+      else
+      {
+        scanSequential();
+      }
+    logSizes();
+  }
+
+  /**
+   * Log logical size (all paths) and physical size (hard links counted once) of the scanned tree.
+   */
+  private void logSizes()
+  {
+    if (volume.getRoot() != null && LOGGER.isDebugEnabled())
+    {
+      final HardLinks links = new HardLinks();
+      links.addAll(volume.getRoot());
+      LOGGER.debug(config.msg("scanner.debug.sizes", volume.getPath(), links.getNumFiles(), links.getNumBytes(),
+          links.getNumPhysicalFiles(), links.getNumPhysicalBytes()));
+    }
+  }
+
+  private boolean isIncremental()
+  {
+    return config.isIncrementalScan() && catalog != null && catalog.getRoot() != null;
+  }
+
+  private Long getVolumeRef()
+  {
+    return catalog == null ? volume.getId() : catalog.getId();
+  }
+
+  private boolean isCheckpointed()
+  {
+    final JdbcSerialization io = config.getDatabaseSerializer();
+    return config.getScanCheckpointSeconds() > 0 && io != null && io.isConnected() && getVolumeRef() != null;
+  }
+
+  private void scanSequential()
   {
     final String dirName = volume.getPath();
+    ScanCheckpoint checkpoint = null;
     try
     {
       final long millis = System.currentTimeMillis();
       LOGGER.debug(config.msg("scanner.debug.start", dirName));
       final VolumeVisitor visitor = new VolumeVisitor(this, config);
+      if (isIncremental())
+      {
+        visitor.setCatalogRoot(catalog.getRoot());
+      }
+      if (isCheckpointed())
+      {
+        checkpoint = new ScanCheckpoint(config, config.getDatabaseSerializer(), getVolumeRef(),
+            config.getScanCheckpointSeconds() * 1000L);
+        checkpoint.load();
+        visitor.setCheckpoint(checkpoint);
+      }
       Files.walkFileTree(Paths.get(dirName), visitor);
       LOGGER.debug(config.msg("scanner.debug.end", dirName, visitor.getNumDirectories(), visitor.getNumFiles(),
           visitor.getNumBytes(), System.currentTimeMillis() - millis));
+      if (isIncremental())
+      {
+        LOGGER.debug(config.msg("scanner.debug.end_incremental", dirName, visitor.getNumReusedDirectories()));
+      }
+      if (checkpoint != null)
+      {
+        LOGGER.debug(config.msg("scanner.debug.end_resumed", dirName, visitor.getNumRestoredDirectories()));
+        checkpoint.clear();
+      }
     }
     catch (final IOException e)
     {
       LOGGER.error(config.msg("scanner.error.scanning_directory", dirName), e);
+      if (checkpoint != null)
+      {
+        // keep what was completed so that the next scan can resume
+        checkpoint.flush();
+      }
+    }
+  }
+
+  private void scanParallel(final int numThreads)
+  {
+    final String dirName = volume.getPath();
+    final ForkJoinPool pool = new ForkJoinPool(numThreads);
+    try
+    {
+      final long millis = System.currentTimeMillis();
+      LOGGER.debug(config.msg("scanner.debug.start_parallel", dirName, numThreads));
+      final Path path = Paths.get(dirName);
+      if (isIgnoredDirectory(path))
+      {
+        return;
+      }
+      final Directory root = new Directory();
+      root.setName("");
+      setRootDirectory(root, path.toAbsolutePath());
+      final DirectoryScanTask task = new DirectoryScanTask(this, config, path, root);
+      pool.invoke(task);
+      if (task.isVanished())
+      {
+        // like VolumeVisitor, which never gets to create the root
+        volume.setRoot(null);
+        LOGGER.error(config.msg("scanner.error.scanning_directory", dirName));
+        return;
+      }
+      LOGGER.debug(config.msg("scanner.debug.end", dirName, task.getNumDirectories(), task.getNumFiles(),
+          task.getNumBytes(), System.currentTimeMillis() - millis));
+    }
+    catch (final UncheckedIOException e)
+    {
+      LOGGER.error(config.msg("scanner.error.scanning_directory", dirName), e.getCause());
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Check whether a directory is to be skipped because its name is on the list of ignored directory names.
+   *
+   * @param path
+   *          directory to check
+   * @return true if the directory and everything below it is to be ignored, false otherwise
+   */
+  public boolean isIgnoredDirectory(final Path path)
+  {
+    final Path fileName = path.getFileName();
+    final String name = fileName == null ? null : fileName.toString();
+    if (dirRules.isIgnored(dirRules.hasPathRules() ? getRelativePath(path) : null, name))
+    {
+      if (LOGGER.isDebugEnabled())
+      {
+        LOGGER.debug(config.msg("scanner.debug.skipping_ignored", path.toAbsolutePath(), name));
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Check whether a file is to be skipped because it matches an ignore rule for files.
+   *
+   * @param path
+   *          file to check
+   * @param name
+   *          name of the file
+   * @return true if the file is to be ignored, false otherwise
+   */
+  public boolean isIgnoredFile(final Path path, final String name)
+  {
+    return fileRules.isIgnored(fileRules.hasPathRules() ? getRelativePath(path) : null, name);
+  }
+
+  private String getRelativePath(final Path path)
+  {
+    if (ignoreRoot == null)
+    {
+      return null;
+    }
+    return ignoreRoot.relativize(path.toAbsolutePath()).toString().replace(java.io.File.separatorChar, '/');
+  }
+
+  /**
+   * Create a {@link File} model object for a file found while scanning, reading its attributes first.
+   *
+   * @param path
+   *          file in the file system
+   * @param name
+   *          name of the file
+   * @return new model object with size and time of last modification assigned
+   * @throws IOException
+   *           if the file's attributes cannot be read
+   */
+  public File createFile(final Path path, final String name) throws IOException
+  {
+    return createFile(path, name, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+  }
+
+  /**
+   * Create a {@link File} model object for a file found while scanning from attributes the caller already has, e.g.
+   * from a {@link java.nio.file.FileVisitor} or a directory listing. Only symbolic links lead to another access of the
+   * file system, their target's attributes are used as long as the target exists.
+   *
+   * @param path
+   *          file in the file system
+   * @param name
+   *          name of the file
+   * @param attrs
+   *          attributes of the file, not following symbolic links
+   * @return new model object with size, time of last modification and file key assigned
+   */
+  public File createFile(final Path path, final String name, final BasicFileAttributes attrs)
+  {
+    BasicFileAttributes fileAttrs = attrs;
+    if (attrs.isSymbolicLink())
+    {
+      try
+      {
+        fileAttrs = Files.readAttributes(path, BasicFileAttributes.class);
+      }
+      catch (final IOException e)
+      {
+        // dangling link, keep the link's own attributes
+        if (LOGGER.isTraceEnabled())
+        {
+          LOGGER.trace(config.msg("scanner.trace.dangling_link", path.toAbsolutePath()));
+        }
+      }
+    }
+    throttle();
+    final File model = new File();
+    model.setByteSizeValue(fileAttrs.size());
+    model.setName(name);
+    model.setLastModifiedMillis(fileAttrs.lastModifiedTime().toMillis());
+    final Object fileKey = fileAttrs.fileKey();
+    model.setFileKey(fileKey == null ? null : fileKey.toString());
+    return model;
+  }
+
+  public Volume getCatalog()
+  {
+    return catalog;
+  }
+
+  /**
+   * Assign the volume as stored in the catalog, used for incremental scans.
+   *
+   * @param catalog
+   *          volume loaded from the database, possibly null
+   */
+  public void setCatalog(Volume catalog)
+  {
+    this.catalog = catalog;
+    limiter = config.getIoLimits().getLimiter(getVolumeRef());
+    compileIgnoreRules();
+  }
+
+  private void throttle()
+  {
+    if (limiter != null)
+    {
+      limiter.acquire(1, 0);
     }
   }
 
   public Directory addDirectory(Path path)
   {
+    throttle();
     final Directory dir = new Directory();
     final Path fileName = path == null ? null : path.getFileName();
     dir.setName(fileName == null ? null : fileName.toString());
@@ -17,11 +17,12 @@ package am.filesystem;
 
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
-import java.util.Set;
 import java.util.Stack;
 import org.slf4j.LoggerFactory;
 import am.app.AppConfig;
@@ -30,6 +31,14 @@ import am.filesystem.model.File;
 
 /**
  * Visit all files and directories in a volume, an abstraction for a directory tree.
+ *
+ * If a catalog root was assigned with {@link #setCatalogRoot(Directory)} the visitor reuses the files of each
+ * directory whose time of last modification and number of entries are the same as in the catalog. Only the
+ * subdirectories of such a directory are visited, its files are not listed.
+ *
+ * If a {@link ScanCheckpoint} was assigned with {@link #setCheckpoint(ScanCheckpoint)} each completely visited
+ * directory is reported to it, and directories completed by an interrupted earlier scan are taken from it instead of
+ * being visited.
  */
 public class VolumeVisitor extends SimpleFileVisitor<Path>
 {
@@ -40,51 +49,204 @@ public class VolumeVisitor extends SimpleFileVisitor<Path>
   private long numDirectories;
   private long numFiles;
   private long numBytes;
-  private final Set<String> ignoreFileNames;
+  private long numReusedDirectories;
+  private long numRestoredDirectories;
+  private final Stack<Directory> catalogStack;
+  private Directory catalogRoot;
+  private ScanCheckpoint checkpoint;
+  private Path rootPath;
+  private final long startMillis;
+
+  /**
+   * Directories modified this close to the start of the scan or later do not get their time of last modification
+   * recorded so that changes within the timestamp granularity of the file system are not missed in the next scan.
+   */
+  static final long RACY_MILLIS = 2000;
 
   public VolumeVisitor(final VolumeScanner scanner, final AppConfig config)
   {
     dirStack = new Stack<Directory>();
+    catalogStack = new Stack<Directory>();
     this.scanner = scanner;
     this.config = config;
-    ignoreFileNames = config.getIgnoreFileNames();
+    startMillis = System.currentTimeMillis();
   }
 
   @Override
   public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException
   {
-    final Path fileName = path.getFileName();
-    final String name = fileName == null ? null : fileName.toString();
-    if (config.getIgnoreDirNames().contains(name))
+    countEntry();
+    if (scanner.isIgnoredDirectory(path))
     {
-      if (LOGGER.isDebugEnabled())
-      {
-        LOGGER.debug(config.msg("scanner.debug.skipping_ignored", path.toAbsolutePath(), name));
-      }
       return FileVisitResult.SKIP_SUBTREE;
     }
     if (LOGGER.isTraceEnabled())
     {
       LOGGER.trace(config.msg("scanner.trace.enter", path.toAbsolutePath()));
     }
+    if (restore(path))
+    {
+      return FileVisitResult.SKIP_SUBTREE;
+    }
     Directory dir;
+    Directory loaded;
     if (dirStack.isEmpty())
     {
       dir = new Directory();
       dir.setName("");
       scanner.setRootDirectory(dir, path.toAbsolutePath());
+      loaded = catalogRoot;
     }
     else
     {
       dir = scanner.addDirectory(path);
       final Directory parent = dirStack.peek();
       parent.add(dir);
+      final Directory loadedParent = catalogStack.peek();
+      loaded = loadedParent == null ? null : loadedParent.getSubdirectory(dir.getName());
     }
+    final long lastModified = attrs.lastModifiedTime().toMillis();
+    dir.setLastModified(lastModified < startMillis - RACY_MILLIS ? new Date(lastModified) : null);
     dirStack.push(dir);
+    catalogStack.push(loaded);
     numDirectories++;
+    if (isReusable(dir, loaded))
+    {
+      reuse(path, dir, loaded);
+      dirStack.pop();
+      catalogStack.pop();
+      completed(path, dir);
+      return FileVisitResult.SKIP_SUBTREE;
+    }
+    dir.setNumEntries(Long.valueOf(0));
     return FileVisitResult.CONTINUE;
   }
 
+  private static boolean isReusable(final Directory scanned, final Directory loaded)
+  {
+    if (loaded == null || loaded.getLastModified() == null || scanned.getLastModified() == null)
+    {
+      return false;
+    }
+    final Long numEntries = loaded.getNumEntries();
+    // entries that were ignored in the last scan may not be ignored now, so only complete directories get reused
+    return scanned.getLastModified().equals(loaded.getLastModified()) && numEntries != null
+        && numEntries.longValue() == loaded.getFileNames().size() + loaded.getSubdirectoryNames().size();
+  }
+
+  private void reuse(final Path path, final Directory dir, final Directory loaded) throws IOException
+  {
+    if (LOGGER.isTraceEnabled())
+    {
+      LOGGER.trace(config.msg("scanner.trace.reuse", path.toAbsolutePath()));
+    }
+    numReusedDirectories++;
+    dir.setReused(true);
+    for (final File file : loaded.getFiles())
+    {
+      if (!scanner.isIgnoredFile(path.resolve(file.getName()), file.getName()))
+      {
+        numBytes += file.getByteSizeValue();
+        dir.add(file);
+        numFiles++;
+      }
+    }
+    for (final String name : loaded.getSubdirectoryNames())
+    {
+      try
+      {
+        Files.walkFileTree(path.resolve(name), this);
+      }
+      catch (final NoSuchFileException e)
+      {
+        // removed since the directory's time of last modification was read, the next scan will pick that up
+        LOGGER.debug(config.msg("scanner.debug.vanished_directory", e.getFile()));
+      }
+    }
+    // assigned after walking the subdirectories as those increment the counter
+    dir.setNumEntries(loaded.getNumEntries());
+  }
+
+  private boolean restore(final Path path)
+  {
+    if (checkpoint == null)
+    {
+      return false;
+    }
+    if (dirStack.isEmpty())
+    {
+      rootPath = path;
+    }
+    final String relativePath = getRelativePath(path);
+    final Directory dir = checkpoint.restore(relativePath);
+    if (dir == null)
+    {
+      return false;
+    }
+    if (LOGGER.isTraceEnabled())
+    {
+      LOGGER.trace(config.msg("scanner.trace.restore", path.toAbsolutePath()));
+    }
+    numRestoredDirectories++;
+    if (dirStack.isEmpty())
+    {
+      dir.setName("");
+      scanner.setRootDirectory(dir, path.toAbsolutePath());
+    }
+    else
+    {
+      final Path fileName = path.getFileName();
+      dir.setName(fileName == null ? null : fileName.toString());
+      dirStack.peek().add(dir);
+    }
+    countRestored(dir);
+    checkpoint.completed(relativePath, dir);
+    return true;
+  }
+
+  private void countRestored(final Directory dir)
+  {
+    numDirectories++;
+    for (final File file : dir.getFiles())
+    {
+      numBytes += file.getByteSizeValue();
+      numFiles++;
+    }
+    for (final Directory sub : dir.getSubdirectories())
+    {
+      countRestored(sub);
+    }
+  }
+
+  private void completed(final Path path, final Directory dir)
+  {
+    // listings come in file system order, merging requires name order
+    dir.sortByName();
+    if (checkpoint != null)
+    {
+      checkpoint.completed(getRelativePath(path), dir);
+      checkpoint.flushIfDue();
+    }
+  }
+
+  /**
+   * Return path relative to the volume root with slashes as separator, the empty string for the root itself.
+   */
+  private String getRelativePath(final Path path)
+  {
+    return rootPath.relativize(path).toString().replace(java.io.File.separatorChar, '/');
+  }
+
+  private void countEntry()
+  {
+    if (!dirStack.isEmpty())
+    {
+      final Directory parent = dirStack.peek();
+      final Long numEntries = parent.getNumEntries();
+      parent.setNumEntries(Long.valueOf(numEntries == null ? 1 : numEntries.longValue() + 1));
+    }
+  }
+
   @Override
   public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
   {
@@ -93,13 +255,13 @@ public class VolumeVisitor extends SimpleFileVisitor<Path>
       LOGGER.trace(config.msg("scanner.trace.file", file.toAbsolutePath()));
     }
 
+    countEntry();
     final Directory dir = dirStack.peek();
     if (dir != null)
     {
-      final java.io.File fileSystemFile = file.toFile();
       final Path fileName = file.getFileName();
-      final String name = fileName == null ? fileSystemFile.getName() : fileName.toString();
-      if (ignoreFileNames.contains(name))
+      final String name = fileName == null ? file.toString() : fileName.toString();
+      if (scanner.isIgnoredFile(file, name))
       {
         if (LOGGER.isTraceEnabled())
         {
@@ -107,12 +269,8 @@ public class VolumeVisitor extends SimpleFileVisitor<Path>
         }
         return FileVisitResult.CONTINUE;
       }
-      final File model = new File();
-      final long length = fileSystemFile.length();
-      model.setByteSize(Long.valueOf(length));
-      numBytes += length;
-      model.setName(name);
-      model.setLastModified(new Date(fileSystemFile.lastModified()));
+      final File model = scanner.createFile(file, name, attrs);
+      numBytes += model.getByteSizeValue();
       dir.add(model);
     }
     numFiles++;
@@ -122,6 +280,13 @@ public class VolumeVisitor extends SimpleFileVisitor<Path>
   @Override
   public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException
   {
+    if (exc instanceof NoSuchFileException && !dirStack.isEmpty())
+    {
+      // removed since its directory was listed, the next scan will pick that up
+      LOGGER.debug(config.msg("scanner.debug.vanished_entry", file.toAbsolutePath()));
+      return FileVisitResult.CONTINUE;
+    }
+    // the volume root or any other entry or directory listing that cannot be read ends the scan
     return super.visitFileFailed(file, exc);
   }
 
@@ -132,8 +297,52 @@ public class VolumeVisitor extends SimpleFileVisitor<Path>
     {
       LOGGER.trace(config.msg("scanner.trace.exit", dir.toAbsolutePath()));
     }
-    dirStack.pop();
-    return FileVisitResult.CONTINUE;
+    completed(dir, dirStack.pop());
+    catalogStack.pop();
+    // a listing that failed part of the way ends the scan like one that could not be started
+    return super.postVisitDirectory(dir, exc);
+  }
+
+  public Directory getCatalogRoot()
+  {
+    return catalogRoot;
+  }
+
+  /**
+   * Assign the root directory of the volume as stored in the catalog, enabling reuse of unchanged directories.
+   *
+   * @param catalogRoot
+   *          root directory loaded from the database
+   */
+  public void setCatalogRoot(Directory catalogRoot)
+  {
+    this.catalogRoot = catalogRoot;
+  }
+
+  public ScanCheckpoint getCheckpoint()
+  {
+    return checkpoint;
+  }
+
+  /**
+   * Assign the checkpoint to report completed directories to and to restore directories from.
+   *
+   * @param checkpoint
+   *          checkpoint of the volume, loaded already
+   */
+  public void setCheckpoint(ScanCheckpoint checkpoint)
+  {
+    this.checkpoint = checkpoint;
+  }
+
+  public long getNumRestoredDirectories()
+  {
+    return numRestoredDirectories;
+  }
+
+  public long getNumReusedDirectories()
+  {
+    return numReusedDirectories;
   }
 
   public long getNumDirectories()
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file with the {@link CompactCatalog} of each volume, so that a following run can start without loading all
+ * rows from the database. The file is mapped into memory read-only: the arrays of each catalog are copied from it in
+ * bulk, strings are only decoded when they are first needed.
+ *
+ * The database remains the source of truth. A snapshot is written together with a stamp that is also stored in the
+ * database; it is only used if both stamps are equal. The file starts with a header:
+ * <ul>
+ * <li>magic number, format version, stamp and number of volumes</li>
+ * <li>offset and length of each volume's section</li>
+ * </ul>
+ * Each section holds the volume's values followed by its catalog's arrays. A section must be smaller than 2 GiB.
+ *
+ * @author Marco Schmidt
+ */
+public final class CatalogSnapshot
+{
+  private static final long MAGIC = 0x414d434154534e50L;
+  private static final int FORMAT_VERSION = 3;
+  private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private CatalogSnapshot()
+  {
+  }
+
+  /**
+   * Write volumes to a snapshot file. The data is written to a temporary file first which then replaces the snapshot
+   * file, so readers never see an incomplete file.
+   *
+   * @param file
+   *          snapshot file
+   * @param stamp
+   *          validity stamp, also to be stored in the database
+   * @param volumes
+   *          volumes with their directory trees and ids assigned
+   * @throws IOException
+   *           if writing fails
+   */
+  public static void write(final java.io.File file, final long stamp, final List<Volume> volumes) throws IOException
+  {
+    final java.io.File temp = new java.io.File(file.getPath() + ".tmp");
+    final RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+    try
+    {
+      raf.setLength(0);
+      final FileChannel channel = raf.getChannel();
+      final Output out = new Output(channel);
+      out.putLong(MAGIC);
+      out.putInt(FORMAT_VERSION);
+      out.putLong(stamp);
+      out.putInt(volumes.size());
+      final long tableOffset = out.position();
+      for (int i = 0; i < volumes.size(); i++)
+      {
+        out.putLong(0);
+        out.putLong(0);
+      }
+      final long[] offsets = new long[volumes.size()];
+      final long[] lengths = new long[volumes.size()];
+      for (int i = 0; i < volumes.size(); i++)
+      {
+        final Volume vol = volumes.get(i);
+        offsets[i] = out.position();
+        out.putLong(vol.getId() == null ? File.UNKNOWN : vol.getId().longValue());
+        out.putString(vol.getPath());
+        out.putString(vol.getValidator());
+        out.putByte(vol.isMain() ? 1 : 0);
+        out.putLong(vol.getMainRef() == null ? File.UNKNOWN : vol.getMainRef().longValue());
+        CompactCatalog.of(vol).write(out);
+        lengths[i] = out.position() - offsets[i];
+        if (lengths[i] > Integer.MAX_VALUE)
+        {
+          throw new IOException("Snapshot section of volume " + vol.getPath() + " too large: " + lengths[i]);
+        }
+      }
+      out.flush();
+      final ByteBuffer table = ByteBuffer.allocate(volumes.size() * 2 * Long.BYTES);
+      for (int i = 0; i < volumes.size(); i++)
+      {
+        table.putLong(offsets[i]);
+        table.putLong(lengths[i]);
+      }
+      table.flip();
+      channel.write(table, tableOffset);
+      channel.force(false);
+    }
+    finally
+    {
+      raf.close();
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Read all volumes from a snapshot file if it exists and was written with the expected stamp.
+   *
+   * @param file
+   *          snapshot file
+   * @param stamp
+   *          validity stamp stored in the database
+   * @return list of volumes whose directories and files are views on compact catalogs, or null if the file does not
+   *         exist, is of a different format or has a different stamp
+   * @throws IOException
+   *           if reading fails
+   */
+  public static List<Volume> read(final java.io.File file, final long stamp) throws IOException
+  {
+    if (!file.isFile() || file.length() < HEADER_BYTES)
+    {
+      return null;
+    }
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      final FileChannel channel = raf.getChannel();
+      final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getLong() != MAGIC || header.getInt() != FORMAT_VERSION || header.getLong() != stamp)
+      {
+        return null;
+      }
+      final int numVolumes = header.getInt();
+      final ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES,
+          (long) numVolumes * 2 * Long.BYTES);
+      final List<Volume> result = new ArrayList<>(numVolumes);
+      for (int i = 0; i < numVolumes; i++)
+      {
+        final long offset = table.getLong();
+        final long length = table.getLong();
+        // the mapping stays valid after the channel is closed, strings are decoded from it later
+        final ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        final Volume vol = new Volume();
+        final long id = section.getLong();
+        vol.setId(id == File.UNKNOWN ? null : Long.valueOf(id));
+        vol.setPath(getString(section));
+        vol.setValidator(getString(section));
+        vol.setMain(section.get() != 0);
+        final long mainRef = section.getLong();
+        vol.setMainRef(mainRef == File.UNKNOWN ? null : Long.valueOf(mainRef));
+        result.add(CompactCatalog.read(vol, section).toVolume());
+      }
+      return result;
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+  private static String getString(final ByteBuffer buffer)
+  {
+    final int length = buffer.getInt();
+    if (length < 0)
+    {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static long[] getLongs(final ByteBuffer buffer, final int length)
+  {
+    final long[] result = new long[length];
+    buffer.asLongBuffer().get(result);
+    buffer.position(buffer.position() + length * Long.BYTES);
+    return result;
+  }
+
+  static int[] getInts(final ByteBuffer buffer, final int length)
+  {
+    final int[] result = new int[length];
+    buffer.asIntBuffer().get(result);
+    buffer.position(buffer.position() + length * Integer.BYTES);
+    return result;
+  }
+
+  static byte[] getBytes(final ByteBuffer buffer, final int length)
+  {
+    final byte[] result = new byte[length];
+    buffer.get(result);
+    return result;
+  }
+
+  /**
+   * Buffered output to a file channel.
+   */
+  static final class Output
+  {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long flushed;
+
+    Output(final FileChannel channel)
+    {
+      this.channel = channel;
+    }
+
+    long position()
+    {
+      return flushed + buffer.position();
+    }
+
+    private void ensure(final int numBytes) throws IOException
+    {
+      if (buffer.remaining() < numBytes)
+      {
+        flush();
+      }
+    }
+
+    void flush() throws IOException
+    {
+      buffer.flip();
+      while (buffer.hasRemaining())
+      {
+        flushed += channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    void putByte(final int value) throws IOException
+    {
+      ensure(1);
+      buffer.put((byte) value);
+    }
+
+    void putInt(final int value) throws IOException
+    {
+      ensure(Integer.BYTES);
+      buffer.putInt(value);
+    }
+
+    void putLong(final long value) throws IOException
+    {
+      ensure(Long.BYTES);
+      buffer.putLong(value);
+    }
+
+    void putString(final String value) throws IOException
+    {
+      if (value == null)
+      {
+        putInt(-1);
+      }
+      else
+      {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        putBytes(bytes, bytes.length);
+      }
+    }
+
+    void putInts(final int[] values, final int length) throws IOException
+    {
+      for (int i = 0; i < length; i++)
+      {
+        putInt(values[i]);
+      }
+    }
+
+    void putLongs(final long[] values, final int length) throws IOException
+    {
+      for (int i = 0; i < length; i++)
+      {
+        putLong(values[i]);
+      }
+    }
+
+    void putBytes(final byte[] values, final int length) throws IOException
+    {
+      int offset = 0;
+      while (offset < length)
+      {
+        ensure(1);
+        final int num = Math.min(buffer.remaining(), length - offset);
+        buffer.put(values, offset, num);
+        offset += num;
+      }
+    }
+  }
+}
@@ -0,0 +1,1751 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory-saving representation of the directory tree of a {@link Volume} as loaded from the database.
+ *
+ * Instead of one {@link Directory} or {@link File} object per entry with boxed numbers, dates, strings, lists and maps,
+ * all values are kept in arrays with one element per directory or file (struct of arrays):
+ * <ul>
+ * <li>Numbers and dates are primitive {@code long} values, {@link #NULL} stands for null.</li>
+ * <li>Names, MIME types, file types and other repeating texts are stored once in a string pool and referenced by an
+ * {@code int} index.</li>
+ * <li>Hash values are stored as bytes instead of hexadecimal strings.</li>
+ * <li>File keys like {@code (dev=803,ino=1234)} are split into a pooled template and the inode number.</li>
+ * <li>Directories are stored breadth-first with the root at index 0, so that the subdirectories of a directory are
+ * consecutive; the files of a directory are consecutive as well. A directory only stores the index of its parent and
+ * the ranges of its subdirectories and files, both sorted by name.</li>
+ * </ul>
+ * {@link #toVolume()} returns a {@link Volume} whose directories and files are views on these arrays, so that code
+ * working with the regular model classes keeps working. A view holds nothing but the catalog and its index. Views are
+ * created on each access and not kept, so the catalog does not grow while it is traversed; two views on the same entry
+ * are equal, but not the same object. Views read and write through to the arrays, so changes like a new state or hash
+ * value are kept; values that are not stored, like {@link File#getVideoFileName()}, are kept in arrays of their own
+ * until the catalog is discarded. Values derived from the tree are not stored: {@link File#getEntry()} is computed
+ * from the volume path and names, volume and directory references from the position in the tree.
+ *
+ * Removing entries marks them as removed. Changes the ranges cannot hold are kept next to the arrays: a new name is
+ * stored for the entry, and the first entry added to a directory copies its entries into a regular {@link Directory},
+ * which views on that directory use from then on. Views of different files may be written by different threads at
+ * the same time.
+ *
+ * @author Marco Schmidt
+ */
+public final class CompactCatalog
+{
+  /**
+   * Value of a {@code long} column standing for null.
+   */
+  private static final long NULL = File.UNKNOWN;
+  /**
+   * Value of an {@code int} column referencing a string or directory standing for null.
+   */
+  static final int NONE = -1;
+  private static final int STATE_MASK = 0x0f;
+  private static final byte REMOVED = 0x10;
+  private static final byte TEXT_HASH = 0x20;
+  private static final byte RENAMED = 0x40;
+  private static final byte REUSED = 0x01;
+  private static final byte COPIED = 0x02;
+  private static final char KEY_NUMBER = '\0';
+  private static final int MAX_KEY_DIGITS = 18;
+  private static final int MAX_HASH_LENGTH = 255;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final Comparator<String> NAME_ORDER = Directory.NAME_ORDER;
+  private static final FileState[] STATES = FileState.values();
+  private final Volume volume;
+  private StringPool strings = new StringPool();
+  // directories
+  private int numDirectories;
+  private long[] dirIds = new long[16];
+  private int[] dirNames = new int[16];
+  private int[] dirParents = new int[16];
+  private int[] dirFirstSubs = new int[16];
+  private int[] dirNumSubs = new int[16];
+  private int[] dirFirstFiles = new int[16];
+  private int[] dirNumFiles = new int[16];
+  private long[] dirLastModified = new long[16];
+  private long[] dirNumEntries = new long[16];
+  private int[] dirWikidataIds = new int[16];
+  private byte[] dirFlags = new byte[16];
+  // files
+  private int numFiles;
+  private long[] fileIds = new long[16];
+  private int[] fileNames = new int[16];
+  private int[] fileDirs = new int[16];
+  private long[] fileSizes = new long[16];
+  private long[] fileLastModified = new long[16];
+  private long[] fileHashCreated = new long[16];
+  private long[] fileChecksums = new long[16];
+  private long[] fileFingerprints = new long[16];
+  private byte[] fileFlags = new byte[16];
+  private int[] fileMimeTypes = new int[16];
+  private int[] fileGroups = new int[16];
+  private int[] fileTypes = new int[16];
+  private int[] fileWikidataIds = new int[16];
+  private int[] fileKeyTemplates = new int[16];
+  private long[] fileKeyNumbers = new long[16];
+  private long[] fileDurations = new long[16];
+  private long[] fileWidths = new long[16];
+  private long[] fileHeights = new long[16];
+  private int hashWidth;
+  private byte[] hashLengths = new byte[16];
+  private byte[] hashes = new byte[0];
+  private VideoFileName[] fileVideoNames;
+  // incremented with each removal so that lists of views know when to skip removed entries
+  private final AtomicInteger numRemoved = new AtomicInteger();
+  // changes of the tree that the arrays cannot hold, see copy(int)
+  private final Map<Integer, Directory> copies = new HashMap<>();
+  private final Map<Integer, String> newDirectoryNames = new HashMap<>();
+  private final Map<Integer, String> newFileNames = new HashMap<>();
+
+  private CompactCatalog(final Volume source)
+  {
+    volume = new Volume();
+    volume.setId(source.getId());
+    volume.setPath(source.getPath());
+    volume.setEntry(source.getEntry());
+    volume.setValidator(source.getValidator());
+    volume.setMain(source.isMain());
+    volume.setMainRef(source.getMainRef());
+  }
+
+  /**
+   * Start creating a catalog from a volume. Its directory tree is taken over including all files it already contains.
+   * More files can be added with {@link Builder#add(File)}.
+   *
+   * @param source
+   *          volume with a root directory
+   * @return new builder
+   */
+  public static Builder builder(final Volume source)
+  {
+    return new Builder(source);
+  }
+
+  /**
+   * Create a catalog from a volume with its complete directory tree.
+   *
+   * @param source
+   *          volume with a root directory
+   * @return new catalog
+   */
+  public static CompactCatalog of(final Volume source)
+  {
+    return builder(source).build();
+  }
+
+  /**
+   * Create a volume object with the data of the volume this catalog was created from and a view on the root directory.
+   * Each call creates new objects, all of them reading and writing the same arrays.
+   *
+   * @return new volume
+   */
+  public Volume toVolume()
+  {
+    final Volume result = new Volume();
+    result.setId(volume.getId());
+    result.setPath(volume.getPath());
+    result.setEntry(volume.getEntry());
+    result.setValidator(volume.getValidator());
+    result.setMain(volume.isMain());
+    result.setMainRef(volume.getMainRef());
+    result.setRoot(new DirectoryView(this, 0));
+    return result;
+  }
+
+  /**
+   * Write strings and arrays for {@link CatalogSnapshot}.
+   *
+   * @param out
+   *          snapshot output
+   * @throws IOException
+   *           if writing fails
+   */
+  void write(final CatalogSnapshot.Output out) throws IOException
+  {
+    out.putInt(numDirectories);
+    out.putInt(numFiles);
+    out.putInt(hashWidth);
+    strings.write(out);
+    out.putLongs(dirIds, numDirectories);
+    out.putInts(dirNames, numDirectories);
+    out.putInts(dirParents, numDirectories);
+    out.putInts(dirFirstSubs, numDirectories);
+    out.putInts(dirNumSubs, numDirectories);
+    out.putInts(dirFirstFiles, numDirectories);
+    out.putInts(dirNumFiles, numDirectories);
+    out.putLongs(dirLastModified, numDirectories);
+    out.putLongs(dirNumEntries, numDirectories);
+    out.putInts(dirWikidataIds, numDirectories);
+    out.putBytes(dirFlags, numDirectories);
+    out.putLongs(fileIds, numFiles);
+    out.putInts(fileNames, numFiles);
+    out.putInts(fileDirs, numFiles);
+    out.putLongs(fileSizes, numFiles);
+    out.putLongs(fileLastModified, numFiles);
+    out.putLongs(fileHashCreated, numFiles);
+    out.putLongs(fileChecksums, numFiles);
+    out.putLongs(fileFingerprints, numFiles);
+    out.putBytes(fileFlags, numFiles);
+    out.putInts(fileMimeTypes, numFiles);
+    out.putInts(fileGroups, numFiles);
+    out.putInts(fileTypes, numFiles);
+    out.putInts(fileWikidataIds, numFiles);
+    out.putInts(fileKeyTemplates, numFiles);
+    out.putLongs(fileKeyNumbers, numFiles);
+    out.putLongs(fileDurations, numFiles);
+    out.putLongs(fileWidths, numFiles);
+    out.putLongs(fileHeights, numFiles);
+    out.putBytes(hashLengths, numFiles);
+    out.putBytes(hashes, getHashBytes(numFiles, hashWidth));
+  }
+
+  /**
+   * Read a catalog written by {@link #write(CatalogSnapshot.Output)}.
+   *
+   * @param source
+   *          volume values
+   * @param in
+   *          mapped snapshot section, positioned at the catalog
+   * @return new catalog
+   * @throws IOException
+   *           if the hash values stored in the snapshot cannot be held by an array
+   */
+  static CompactCatalog read(final Volume source, final ByteBuffer in) throws IOException
+  {
+    final CompactCatalog result = new CompactCatalog(source);
+    final int numDirs = in.getInt();
+    final int num = in.getInt();
+    result.numDirectories = numDirs;
+    result.numFiles = num;
+    result.hashWidth = in.getInt();
+    final long numHashBytes = (long) num * result.hashWidth;
+    if (result.hashWidth < 0 || result.hashWidth > MAX_HASH_LENGTH || numHashBytes > Integer.MAX_VALUE)
+    {
+      throw new IOException("Invalid size of hash values: " + num + " files with " + result.hashWidth + " bytes each.");
+    }
+    result.strings = StringPool.read(in);
+    result.dirIds = CatalogSnapshot.getLongs(in, numDirs);
+    result.dirNames = CatalogSnapshot.getInts(in, numDirs);
+    result.dirParents = CatalogSnapshot.getInts(in, numDirs);
+    result.dirFirstSubs = CatalogSnapshot.getInts(in, numDirs);
+    result.dirNumSubs = CatalogSnapshot.getInts(in, numDirs);
+    result.dirFirstFiles = CatalogSnapshot.getInts(in, numDirs);
+    result.dirNumFiles = CatalogSnapshot.getInts(in, numDirs);
+    result.dirLastModified = CatalogSnapshot.getLongs(in, numDirs);
+    result.dirNumEntries = CatalogSnapshot.getLongs(in, numDirs);
+    result.dirWikidataIds = CatalogSnapshot.getInts(in, numDirs);
+    result.dirFlags = CatalogSnapshot.getBytes(in, numDirs);
+    result.fileIds = CatalogSnapshot.getLongs(in, num);
+    result.fileNames = CatalogSnapshot.getInts(in, num);
+    result.fileDirs = CatalogSnapshot.getInts(in, num);
+    result.fileSizes = CatalogSnapshot.getLongs(in, num);
+    result.fileLastModified = CatalogSnapshot.getLongs(in, num);
+    result.fileHashCreated = CatalogSnapshot.getLongs(in, num);
+    result.fileChecksums = CatalogSnapshot.getLongs(in, num);
+    result.fileFingerprints = CatalogSnapshot.getLongs(in, num);
+    result.fileFlags = CatalogSnapshot.getBytes(in, num);
+    result.fileMimeTypes = CatalogSnapshot.getInts(in, num);
+    result.fileGroups = CatalogSnapshot.getInts(in, num);
+    result.fileTypes = CatalogSnapshot.getInts(in, num);
+    result.fileWikidataIds = CatalogSnapshot.getInts(in, num);
+    result.fileKeyTemplates = CatalogSnapshot.getInts(in, num);
+    result.fileKeyNumbers = CatalogSnapshot.getLongs(in, num);
+    result.fileDurations = CatalogSnapshot.getLongs(in, num);
+    result.fileWidths = CatalogSnapshot.getLongs(in, num);
+    result.fileHeights = CatalogSnapshot.getLongs(in, num);
+    result.hashLengths = CatalogSnapshot.getBytes(in, num);
+    result.hashes = CatalogSnapshot.getBytes(in, (int) numHashBytes);
+    return result;
+  }
+
+  public int getNumDirectories()
+  {
+    return numDirectories;
+  }
+
+  public int getNumFiles()
+  {
+    return numFiles;
+  }
+
+  /**
+   * Return the approximate number of bytes used by the arrays, not including the strings of the pool.
+   *
+   * @return memory use in bytes
+   */
+  public long getNumBytes()
+  {
+    final long dirBytes = (long) numDirectories * (3 * Long.BYTES + 7 * Integer.BYTES + 1);
+    final long fileBytes = (long) numFiles * (10 * Long.BYTES + 7 * Integer.BYTES + 2 + hashWidth);
+    return dirBytes + fileBytes + (long) strings.size() * Integer.BYTES;
+  }
+
+  private Long getVolumeRef()
+  {
+    return volume.getId();
+  }
+
+  private static Long toLong(final long value)
+  {
+    return value == NULL ? null : Long.valueOf(value);
+  }
+
+  private static long toPrimitive(final Long value)
+  {
+    return value == null ? NULL : value.longValue();
+  }
+
+  private static Date toDate(final long value)
+  {
+    return value == NULL ? null : new Date(value);
+  }
+
+  private static long toPrimitive(final Date value)
+  {
+    return value == null ? NULL : value.getTime();
+  }
+
+  private boolean isRemovedDirectory(final int index)
+  {
+    return (dirFlags[index] & REMOVED) != 0;
+  }
+
+  private void removeDirectory(final int index)
+  {
+    dirFlags[index] |= REMOVED;
+    numRemoved.incrementAndGet();
+  }
+
+  private boolean isRemovedFile(final int index)
+  {
+    return (fileFlags[index] & REMOVED) != 0;
+  }
+
+  private void removeFile(final int index)
+  {
+    fileFlags[index] |= REMOVED;
+    numRemoved.incrementAndGet();
+  }
+
+  private FileState getState(final int index)
+  {
+    return STATES[fileFlags[index] & STATE_MASK];
+  }
+
+  private void setState(final int index, final FileState state)
+  {
+    final int value = state == null ? 0 : state.ordinal();
+    fileFlags[index] = (byte) ((fileFlags[index] & ~STATE_MASK) | value);
+  }
+
+  private String getDirectoryName(final int index)
+  {
+    if ((dirFlags[index] & RENAMED) != 0)
+    {
+      return getNewName(newDirectoryNames, index);
+    }
+    return strings.get(dirNames[index]);
+  }
+
+  private String getFileName(final int index)
+  {
+    if ((fileFlags[index] & RENAMED) != 0)
+    {
+      return getNewName(newFileNames, index);
+    }
+    return strings.get(fileNames[index]);
+  }
+
+  private synchronized String getNewName(final Map<Integer, String> names, final int index)
+  {
+    return names.get(Integer.valueOf(index));
+  }
+
+  /**
+   * Give a directory a new name. The ranges stay sorted by the old names, so the parent's entries are copied first.
+   * Like with a regular {@link Directory}, the parent still finds the entry by its old name.
+   */
+  private synchronized void renameDirectory(final int index, final String name)
+  {
+    if (dirParents[index] != NONE)
+    {
+      copy(dirParents[index]);
+    }
+    newDirectoryNames.put(Integer.valueOf(index), name);
+    dirFlags[index] |= RENAMED;
+  }
+
+  private synchronized void renameFile(final int index, final String name)
+  {
+    copy(fileDirs[index]);
+    newFileNames.put(Integer.valueOf(index), name);
+    fileFlags[index] |= RENAMED;
+  }
+
+  /**
+   * Get the copy of the entries of a directory made by {@link #copy(int)}.
+   *
+   * @param index
+   *          index of directory
+   * @return copy or null if the entries of the directory were not changed
+   */
+  private Directory getCopy(final int index)
+  {
+    if ((dirFlags[index] & COPIED) == 0)
+    {
+      return null;
+    }
+    synchronized (this)
+    {
+      return copies.get(Integer.valueOf(index));
+    }
+  }
+
+  /**
+   * Copy the subdirectories and files of a directory into a regular {@link Directory} before its entries are changed
+   * for the first time. The ranges cannot take new entries, so from then on views on the directory read and change
+   * the copy. The copy holds views on the entries that were in the range, all other values of the directory are kept
+   * in the arrays.
+   *
+   * @param index
+   *          index of directory
+   * @return copy, created on first call
+   */
+  private synchronized Directory copy(final int index)
+  {
+    final Integer key = Integer.valueOf(index);
+    Directory result = copies.get(key);
+    if (result == null)
+    {
+      result = new Directory();
+      for (final Directory sub : new DirectoryList(this, index))
+      {
+        result.add(sub);
+      }
+      for (final File file : new FileList(this, index))
+      {
+        result.add(file);
+      }
+      copies.put(key, result);
+      dirFlags[index] |= COPIED;
+    }
+    return result;
+  }
+
+  private boolean isReused(final int index)
+  {
+    return (dirFlags[index] & REUSED) != 0;
+  }
+
+  private void setReused(final int index, final boolean reused)
+  {
+    if (reused)
+    {
+      dirFlags[index] |= REUSED;
+    }
+    else
+    {
+      dirFlags[index] &= ~REUSED;
+    }
+  }
+
+  /**
+   * Find an entry by name in a sorted range of name indexes.
+   *
+   * @param names
+   *          name column
+   * @param from
+   *          first index of range
+   * @param length
+   *          number of entries in range
+   * @param name
+   *          name to look for
+   * @return index of entry or {@link #NONE}
+   */
+  private int find(final int[] names, final int from, final int length, final String name)
+  {
+    int low = from;
+    int high = from + length - 1;
+    while (low <= high)
+    {
+      final int mid = (low + high) >>> 1;
+      final int cmp = NAME_ORDER.compare(strings.get(names[mid]), name);
+      if (cmp < 0)
+      {
+        low = mid + 1;
+      }
+      else
+        if (cmp > 0)
+        {
+          high = mid - 1;
+        }
+        else
+        {
+          return mid;
+        }
+    }
+    return NONE;
+  }
+
+  /**
+   * Create the file system entry of a directory from the volume path and the names of the directory and its parents.
+   *
+   * @param dirIndex
+   *          index of directory
+   * @param name
+   *          name of a file in that directory or null for the directory itself
+   * @return new entry
+   */
+  private java.io.File createEntry(final int dirIndex, final String name)
+  {
+    final List<String> names = new ArrayList<>();
+    if (name != null)
+    {
+      names.add(name);
+    }
+    int index = dirIndex;
+    while (index > 0)
+    {
+      names.add(getDirectoryName(index));
+      index = dirParents[index];
+    }
+    java.io.File result = new java.io.File(volume.getPath());
+    for (int i = names.size() - 1; i >= 0; i--)
+    {
+      result = new java.io.File(result, names.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Read a hash value. Synchronized with {@link #setHashValue(int, String)} because hashing threads write hash values
+   * at the same time and the first value longer than all before reallocates the hash array.
+   */
+  private synchronized String getHashValue(final int index)
+  {
+    final int length = hashLengths[index] & 0xff;
+    final boolean text = (fileFlags[index] & TEXT_HASH) != 0;
+    if (length == 0 && !text)
+    {
+      return null;
+    }
+    final int offset = index * hashWidth;
+    if (text)
+    {
+      return new String(hashes, offset, length, StandardCharsets.UTF_8);
+    }
+    final char[] chars = new char[length * 2];
+    for (int i = 0; i < length; i++)
+    {
+      final int b = hashes[offset + i] & 0xff;
+      chars[i * 2] = HEX[b >> 4];
+      chars[i * 2 + 1] = HEX[b & 0x0f];
+    }
+    return new String(chars);
+  }
+
+  private synchronized void setHashValue(final int index, final String value)
+  {
+    fileFlags[index] &= ~TEXT_HASH;
+    if (value == null)
+    {
+      hashLengths[index] = 0;
+      return;
+    }
+    final byte[] bytes;
+    if (isHex(value))
+    {
+      bytes = parseHex(value);
+    }
+    else
+    {
+      // not produced by HashCreation, keep as is
+      bytes = value.getBytes(StandardCharsets.UTF_8);
+      fileFlags[index] |= TEXT_HASH;
+    }
+    if (bytes.length > MAX_HASH_LENGTH)
+    {
+      throw new IllegalArgumentException(value);
+    }
+    ensureHashWidth(bytes.length);
+    System.arraycopy(bytes, 0, hashes, index * hashWidth, bytes.length);
+    hashLengths[index] = (byte) bytes.length;
+  }
+
+  private static boolean isHex(final String value)
+  {
+    if (value.isEmpty() || value.length() % 2 != 0)
+    {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++)
+    {
+      if (hexDigit(value.charAt(i)) < 0)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] parseHex(final String value)
+  {
+    final byte[] result = new byte[value.length() / 2];
+    for (int i = 0; i < result.length; i++)
+    {
+      result[i] = (byte) (hexDigit(value.charAt(i * 2)) << 4 | hexDigit(value.charAt(i * 2 + 1)));
+    }
+    return result;
+  }
+
+  private static int hexDigit(final char c)
+  {
+    if (c >= '0' && c <= '9')
+    {
+      return c - '0';
+    }
+    // only lower case so that converting back yields the same string
+    return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+  }
+
+  /**
+   * Return the number of bytes of the hash values of a number of files, computed without int overflow.
+   *
+   * @param num
+   *          number of files
+   * @param width
+   *          bytes per file
+   * @return number of bytes
+   * @throws IllegalStateException
+   *           if that many bytes cannot be held by an array
+   */
+  private static int getHashBytes(final int num, final int width)
+  {
+    final long result = (long) num * width;
+    if (result > Integer.MAX_VALUE)
+    {
+      throw new IllegalStateException("Too many hash values: " + num + " files with " + width + " bytes each.");
+    }
+    return (int) result;
+  }
+
+  private void ensureHashWidth(final int width)
+  {
+    if (width <= hashWidth)
+    {
+      return;
+    }
+    final int capacity = hashLengths.length;
+    final byte[] resized = new byte[getHashBytes(capacity, width)];
+    for (int i = 0; i < numFiles; i++)
+    {
+      System.arraycopy(hashes, i * hashWidth, resized, i * width, hashLengths[i] & 0xff);
+    }
+    hashes = resized;
+    hashWidth = width;
+  }
+
+  private synchronized VideoFileName getVideoFileName(final int index)
+  {
+    return fileVideoNames == null ? null : fileVideoNames[index];
+  }
+
+  private synchronized void setVideoFileName(final int index, final VideoFileName value)
+  {
+    if (fileVideoNames == null)
+    {
+      if (value == null)
+      {
+        return;
+      }
+      fileVideoNames = new VideoFileName[numFiles];
+    }
+    fileVideoNames[index] = value;
+  }
+
+  private String getFileKey(final int index)
+  {
+    final String template = strings.get(fileKeyTemplates[index]);
+    final long number = fileKeyNumbers[index];
+    if (template == null || number == NULL)
+    {
+      return template;
+    }
+    final int pos = template.indexOf(KEY_NUMBER);
+    return template.substring(0, pos) + number + template.substring(pos + 1);
+  }
+
+  private void setFileKey(final int index, final String key)
+  {
+    fileKeyNumbers[index] = NULL;
+    if (key == null || key.indexOf(KEY_NUMBER) >= 0)
+    {
+      fileKeyTemplates[index] = strings.intern(key);
+      return;
+    }
+    // split off the last number, usually the inode
+    int end = key.length();
+    while (end > 0 && !isDigit(key.charAt(end - 1)))
+    {
+      end--;
+    }
+    int start = end;
+    while (start > 0 && isDigit(key.charAt(start - 1)))
+    {
+      start--;
+    }
+    final int numDigits = end - start;
+    if (numDigits == 0 || numDigits > MAX_KEY_DIGITS || (numDigits > 1 && key.charAt(start) == '0'))
+    {
+      fileKeyTemplates[index] = strings.intern(key);
+      return;
+    }
+    fileKeyNumbers[index] = Long.parseLong(key.substring(start, end));
+    fileKeyTemplates[index] = strings.intern(key.substring(0, start) + KEY_NUMBER + key.substring(end));
+  }
+
+  private static boolean isDigit(final char c)
+  {
+    return c >= '0' && c <= '9';
+  }
+
+  private void addDirectory(final Directory dir, final int parent)
+  {
+    if (numDirectories == dirIds.length)
+    {
+      final int capacity = numDirectories * 2;
+      dirIds = Arrays.copyOf(dirIds, capacity);
+      dirNames = Arrays.copyOf(dirNames, capacity);
+      dirParents = Arrays.copyOf(dirParents, capacity);
+      dirFirstSubs = Arrays.copyOf(dirFirstSubs, capacity);
+      dirNumSubs = Arrays.copyOf(dirNumSubs, capacity);
+      dirFirstFiles = Arrays.copyOf(dirFirstFiles, capacity);
+      dirNumFiles = Arrays.copyOf(dirNumFiles, capacity);
+      dirLastModified = Arrays.copyOf(dirLastModified, capacity);
+      dirNumEntries = Arrays.copyOf(dirNumEntries, capacity);
+      dirWikidataIds = Arrays.copyOf(dirWikidataIds, capacity);
+      dirFlags = Arrays.copyOf(dirFlags, capacity);
+    }
+    final int index = numDirectories++;
+    dirIds[index] = toPrimitive(dir.getId());
+    dirNames[index] = strings.intern(dir.getName());
+    dirParents[index] = parent;
+    dirLastModified[index] = toPrimitive(dir.getLastModified());
+    dirNumEntries[index] = toPrimitive(dir.getNumEntries());
+    dirWikidataIds[index] = strings.intern(dir.getWikidataEntityId());
+  }
+
+  private void addFile(final int dirIndex, final File file)
+  {
+    if (numFiles == fileIds.length)
+    {
+      growFiles(numFiles * 2);
+    }
+    final int index = numFiles++;
+    fileDirs[index] = dirIndex;
+    fileIds[index] = toPrimitive(file.getId());
+    fileNames[index] = strings.intern(file.getName());
+    fileSizes[index] = file.getByteSizeValue();
+    fileLastModified[index] = file.getLastModifiedMillis();
+    fileHashCreated[index] = file.getHashCreatedMillis();
+    fileChecksums[index] = file.getChecksum();
+    fileFingerprints[index] = file.getFingerprint();
+    setState(index, file.getState());
+    fileMimeTypes[index] = strings.intern(file.getMimeType());
+    fileGroups[index] = strings.intern(file.getFileGroup());
+    fileTypes[index] = strings.intern(file.getFileType());
+    fileWikidataIds[index] = strings.intern(file.getWikidataEntityId());
+    fileDurations[index] = toPrimitive(file.getDurationNanos());
+    fileWidths[index] = toPrimitive(file.getImageWidth());
+    fileHeights[index] = toPrimitive(file.getImageHeight());
+    setFileKey(index, file.getFileKey());
+    setHashValue(index, file.getHashValue());
+  }
+
+  private void growFiles(final int capacity)
+  {
+    fileIds = Arrays.copyOf(fileIds, capacity);
+    fileNames = Arrays.copyOf(fileNames, capacity);
+    fileDirs = Arrays.copyOf(fileDirs, capacity);
+    fileSizes = Arrays.copyOf(fileSizes, capacity);
+    fileLastModified = Arrays.copyOf(fileLastModified, capacity);
+    fileHashCreated = Arrays.copyOf(fileHashCreated, capacity);
+    fileChecksums = Arrays.copyOf(fileChecksums, capacity);
+    fileFingerprints = Arrays.copyOf(fileFingerprints, capacity);
+    fileFlags = Arrays.copyOf(fileFlags, capacity);
+    fileMimeTypes = Arrays.copyOf(fileMimeTypes, capacity);
+    fileGroups = Arrays.copyOf(fileGroups, capacity);
+    fileTypes = Arrays.copyOf(fileTypes, capacity);
+    fileWikidataIds = Arrays.copyOf(fileWikidataIds, capacity);
+    fileKeyTemplates = Arrays.copyOf(fileKeyTemplates, capacity);
+    fileKeyNumbers = Arrays.copyOf(fileKeyNumbers, capacity);
+    fileDurations = Arrays.copyOf(fileDurations, capacity);
+    fileWidths = Arrays.copyOf(fileWidths, capacity);
+    fileHeights = Arrays.copyOf(fileHeights, capacity);
+    hashLengths = Arrays.copyOf(hashLengths, capacity);
+    hashes = Arrays.copyOf(hashes, getHashBytes(capacity, hashWidth));
+  }
+
+  /**
+   * Bring files into directory order, sorted by name within each directory, and release unused capacity.
+   */
+  private void finish()
+  {
+    final int[] starts = new int[numDirectories + 1];
+    for (int i = 0; i < numFiles; i++)
+    {
+      starts[fileDirs[i] + 1]++;
+    }
+    for (int d = 0; d < numDirectories; d++)
+    {
+      dirNumFiles[d] = starts[d + 1];
+      starts[d + 1] += starts[d];
+      dirFirstFiles[d] = starts[d];
+    }
+    final int[] order = new int[numFiles];
+    final int[] next = Arrays.copyOf(starts, numDirectories);
+    for (int i = 0; i < numFiles; i++)
+    {
+      order[next[fileDirs[i]]++] = i;
+    }
+    for (int d = 0; d < numDirectories; d++)
+    {
+      sortByName(order, dirFirstFiles[d], dirNumFiles[d]);
+    }
+    permuteFiles(order);
+    dirIds = Arrays.copyOf(dirIds, numDirectories);
+    dirNames = Arrays.copyOf(dirNames, numDirectories);
+    dirParents = Arrays.copyOf(dirParents, numDirectories);
+    dirFirstSubs = Arrays.copyOf(dirFirstSubs, numDirectories);
+    dirNumSubs = Arrays.copyOf(dirNumSubs, numDirectories);
+    dirFirstFiles = Arrays.copyOf(dirFirstFiles, numDirectories);
+    dirNumFiles = Arrays.copyOf(dirNumFiles, numDirectories);
+    dirLastModified = Arrays.copyOf(dirLastModified, numDirectories);
+    dirNumEntries = Arrays.copyOf(dirNumEntries, numDirectories);
+    dirWikidataIds = Arrays.copyOf(dirWikidataIds, numDirectories);
+    dirFlags = Arrays.copyOf(dirFlags, numDirectories);
+    strings.trim();
+  }
+
+  private void sortByName(final int[] order, final int from, final int length)
+  {
+    if (length < 2)
+    {
+      return;
+    }
+    final Integer[] range = new Integer[length];
+    for (int i = 0; i < length; i++)
+    {
+      range[i] = Integer.valueOf(order[from + i]);
+    }
+    Arrays.sort(range, (a, b) -> NAME_ORDER.compare(strings.get(fileNames[a.intValue()]),
+        strings.get(fileNames[b.intValue()])));
+    for (int i = 0; i < length; i++)
+    {
+      order[from + i] = range[i].intValue();
+    }
+  }
+
+  private void permuteFiles(final int[] order)
+  {
+    fileIds = permute(fileIds, order);
+    fileNames = permute(fileNames, order);
+    fileDirs = permute(fileDirs, order);
+    fileSizes = permute(fileSizes, order);
+    fileLastModified = permute(fileLastModified, order);
+    fileHashCreated = permute(fileHashCreated, order);
+    fileChecksums = permute(fileChecksums, order);
+    fileFingerprints = permute(fileFingerprints, order);
+    fileFlags = permute(fileFlags, order);
+    fileMimeTypes = permute(fileMimeTypes, order);
+    fileGroups = permute(fileGroups, order);
+    fileTypes = permute(fileTypes, order);
+    fileWikidataIds = permute(fileWikidataIds, order);
+    fileKeyTemplates = permute(fileKeyTemplates, order);
+    fileKeyNumbers = permute(fileKeyNumbers, order);
+    fileDurations = permute(fileDurations, order);
+    fileWidths = permute(fileWidths, order);
+    fileHeights = permute(fileHeights, order);
+    hashLengths = permute(hashLengths, order);
+    final byte[] sortedHashes = new byte[getHashBytes(order.length, hashWidth)];
+    for (int i = 0; i < order.length; i++)
+    {
+      System.arraycopy(hashes, order[i] * hashWidth, sortedHashes, i * hashWidth, hashWidth);
+    }
+    hashes = sortedHashes;
+  }
+
+  private static long[] permute(final long[] values, final int[] order)
+  {
+    final long[] result = new long[order.length];
+    for (int i = 0; i < order.length; i++)
+    {
+      result[i] = values[order[i]];
+    }
+    return result;
+  }
+
+  private static int[] permute(final int[] values, final int[] order)
+  {
+    final int[] result = new int[order.length];
+    for (int i = 0; i < order.length; i++)
+    {
+      result[i] = values[order[i]];
+    }
+    return result;
+  }
+
+  private static byte[] permute(final byte[] values, final int[] order)
+  {
+    final byte[] result = new byte[order.length];
+    for (int i = 0; i < order.length; i++)
+    {
+      result[i] = values[order[i]];
+    }
+    return result;
+  }
+
+  /**
+   * Read-only list of the views on a range of consecutive directories or files, skipping removed entries. Views are
+   * created on each access and not kept, so the list only holds the positions of the entries.
+   *
+   * @param <T>
+   *          view type
+   */
+  private abstract static class RangeList<T> extends AbstractList<T>
+  {
+    private final CompactCatalog catalog;
+    private final int first;
+    private final int length;
+    private int[] positions;
+    private int numRemoved = -1;
+
+    RangeList(final CompactCatalog catalog, final int first, final int length)
+    {
+      this.catalog = catalog;
+      this.first = first;
+      this.length = length;
+    }
+
+    CompactCatalog getCatalog()
+    {
+      return catalog;
+    }
+
+    abstract boolean isRemoved(int index);
+
+    abstract T create(int index);
+
+    /**
+     * Determine the positions of the entries not removed, if any were removed since the last call.
+     */
+    private void update()
+    {
+      final int removed = catalog.numRemoved.get();
+      if (removed == numRemoved)
+      {
+        return;
+      }
+      numRemoved = removed;
+      int num = 0;
+      for (int i = first; i < first + length; i++)
+      {
+        if (!isRemoved(i))
+        {
+          num++;
+        }
+      }
+      if (num == length)
+      {
+        positions = null;
+        return;
+      }
+      positions = new int[num];
+      num = 0;
+      for (int i = first; i < first + length; i++)
+      {
+        if (!isRemoved(i))
+        {
+          positions[num++] = i;
+        }
+      }
+    }
+
+    @Override
+    public synchronized int size()
+    {
+      update();
+      return positions == null ? length : positions.length;
+    }
+
+    @Override
+    public synchronized T get(final int i)
+    {
+      if (i < 0 || i >= size())
+      {
+        throw new IndexOutOfBoundsException(Integer.toString(i));
+      }
+      return create(positions == null ? first + i : positions[i]);
+    }
+  }
+
+  /**
+   * Views on the subdirectories of a directory.
+   */
+  private static final class DirectoryList extends RangeList<Directory>
+  {
+    DirectoryList(final CompactCatalog catalog, final int dirIndex)
+    {
+      super(catalog, catalog.dirFirstSubs[dirIndex], catalog.dirNumSubs[dirIndex]);
+    }
+
+    @Override
+    boolean isRemoved(final int index)
+    {
+      return getCatalog().isRemovedDirectory(index);
+    }
+
+    @Override
+    Directory create(final int index)
+    {
+      return new DirectoryView(getCatalog(), index);
+    }
+  }
+
+  /**
+   * Views on the files of a directory.
+   */
+  private static final class FileList extends RangeList<File>
+  {
+    FileList(final CompactCatalog catalog, final int dirIndex)
+    {
+      super(catalog, catalog.dirFirstFiles[dirIndex], catalog.dirNumFiles[dirIndex]);
+    }
+
+    @Override
+    boolean isRemoved(final int index)
+    {
+      return getCatalog().isRemovedFile(index);
+    }
+
+    @Override
+    File create(final int index)
+    {
+      return new FileView(getCatalog(), index);
+    }
+  }
+
+  /**
+   * View on a directory, reading and writing the catalog's arrays. Holds nothing but its position in the catalog, the
+   * fields inherited from {@link Directory} are not used. Once entries were added, the entries are read from and
+   * changed in the directory's copy, see {@link CompactCatalog#copy(int)}.
+   */
+  private static final class DirectoryView extends Directory
+  {
+    private final CompactCatalog catalog;
+    private final int index;
+
+    DirectoryView(final CompactCatalog catalog, final int index)
+    {
+      super(false);
+      this.catalog = catalog;
+      this.index = index;
+    }
+
+    @Override
+    public Long getId()
+    {
+      return CompactCatalog.toLong(catalog.dirIds[index]);
+    }
+
+    @Override
+    public void setId(final Long id)
+    {
+      catalog.dirIds[index] = CompactCatalog.toPrimitive(id);
+    }
+
+    @Override
+    public String getName()
+    {
+      return catalog.getDirectoryName(index);
+    }
+
+    @Override
+    public void setName(final String name)
+    {
+      catalog.renameDirectory(index, name);
+    }
+
+    @Override
+    public void add(final Directory d)
+    {
+      catalog.copy(index).add(d);
+    }
+
+    @Override
+    public void add(final File f)
+    {
+      catalog.copy(index).add(f);
+    }
+
+    @Override
+    public void remove(final Directory d)
+    {
+      final Directory copy = catalog.getCopy(index);
+      if (copy != null)
+      {
+        copy.remove(d);
+        return;
+      }
+      final int sub = findSubdirectory(d.getName());
+      if (sub != CompactCatalog.NONE)
+      {
+        catalog.removeDirectory(sub);
+      }
+    }
+
+    @Override
+    public void remove(final File f)
+    {
+      final Directory copy = catalog.getCopy(index);
+      if (copy != null)
+      {
+        copy.remove(f);
+        return;
+      }
+      final int file = findFile(f.getName());
+      if (file != CompactCatalog.NONE)
+      {
+        catalog.removeFile(file);
+      }
+    }
+
+    @Override
+    public List<Directory> getSubdirectories()
+    {
+      return new ArrayList<>(getSubdirectoriesView());
+    }
+
+    @Override
+    public List<File> getFiles()
+    {
+      return new ArrayList<>(getFilesView());
+    }
+
+    @Override
+    public List<Directory> getSubdirectoriesView()
+    {
+      final Directory copy = catalog.getCopy(index);
+      return copy == null ? new DirectoryList(catalog, index) : copy.getSubdirectoriesView();
+    }
+
+    @Override
+    public List<File> getFilesView()
+    {
+      final Directory copy = catalog.getCopy(index);
+      return copy == null ? new FileList(catalog, index) : copy.getFilesView();
+    }
+
+    @Override
+    public void sortByName()
+    {
+      // ranges are sorted by name when the catalog is built
+      final Directory copy = catalog.getCopy(index);
+      if (copy != null)
+      {
+        copy.sortByName();
+      }
+    }
+
+    @Override
+    public Directory findOrCreateSubdirectory(final String name)
+    {
+      final Directory result = getSubdirectory(name);
+      return result == null ? catalog.copy(index).findOrCreateSubdirectory(name) : result;
+    }
+
+    @Override
+    public Set<String> getFileNames()
+    {
+      final Directory copy = catalog.getCopy(index);
+      if (copy != null)
+      {
+        return copy.getFileNames();
+      }
+      final Set<String> result = new HashSet<>();
+      final int first = catalog.dirFirstFiles[index];
+      for (int i = first; i < first + catalog.dirNumFiles[index]; i++)
+      {
+        if (!catalog.isRemovedFile(i))
+        {
+          result.add(catalog.strings.get(catalog.fileNames[i]));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public Set<String> getSubdirectoryNames()
+    {
+      final Directory copy = catalog.getCopy(index);
+      if (copy != null)
+      {
+        return copy.getSubdirectoryNames();
+      }
+      final Set<String> result = new HashSet<>();
+      final int first = catalog.dirFirstSubs[index];
+      for (int i = first; i < first + catalog.dirNumSubs[index]; i++)
+      {
+        if (!catalog.isRemovedDirectory(i))
+        {
+          result.add(catalog.strings.get(catalog.dirNames[i]));
+        }
+      }
+      return result;
+    }
+
+    private int findSubdirectory(final String name)
+    {
+      final int sub = catalog.find(catalog.dirNames, catalog.dirFirstSubs[index], catalog.dirNumSubs[index], name);
+      return sub == CompactCatalog.NONE || catalog.isRemovedDirectory(sub) ? CompactCatalog.NONE : sub;
+    }
+
+    private int findFile(final String name)
+    {
+      final int file = catalog.find(catalog.fileNames, catalog.dirFirstFiles[index], catalog.dirNumFiles[index], name);
+      return file == CompactCatalog.NONE || catalog.isRemovedFile(file) ? CompactCatalog.NONE : file;
+    }
+
+    @Override
+    public Directory getSubdirectory(final String name)
+    {
+      final Directory copy = catalog.getCopy(index);
+      if (copy != null)
+      {
+        return copy.getSubdirectory(name);
+      }
+      final int sub = findSubdirectory(name);
+      return sub == CompactCatalog.NONE ? null : new DirectoryView(catalog, sub);
+    }
+
+    @Override
+    public File getFile(final String name)
+    {
+      final Directory copy = catalog.getCopy(index);
+      if (copy != null)
+      {
+        return copy.getFile(name);
+      }
+      final int file = findFile(name);
+      return file == CompactCatalog.NONE ? null : new FileView(catalog, file);
+    }
+
+    @Override
+    public java.io.File getEntry()
+    {
+      return catalog.createEntry(index, null);
+    }
+
+    @Override
+    public void setEntry(final java.io.File entry)
+    {
+      // derived from the volume path and names
+    }
+
+    @Override
+    public Long getVolumeRef()
+    {
+      return catalog.getVolumeRef();
+    }
+
+    @Override
+    public void setVolumeRef(final Long volumeRef)
+    {
+      // derived from the catalog
+    }
+
+    @Override
+    public Long getParentRef()
+    {
+      final int parent = catalog.dirParents[index];
+      return parent == CompactCatalog.NONE ? null : CompactCatalog.toLong(catalog.dirIds[parent]);
+    }
+
+    @Override
+    public void setParentRef(final Long parentRef)
+    {
+      // derived from the position in the tree
+    }
+
+    @Override
+    public String getWikidataEntityId()
+    {
+      return catalog.strings.get(catalog.dirWikidataIds[index]);
+    }
+
+    @Override
+    public void setWikidataEntityId(final String wikidataEntityId)
+    {
+      catalog.dirWikidataIds[index] = catalog.strings.intern(wikidataEntityId);
+    }
+
+    @Override
+    public Date getLastModified()
+    {
+      return CompactCatalog.toDate(catalog.dirLastModified[index]);
+    }
+
+    @Override
+    public void setLastModified(final Date lastModified)
+    {
+      catalog.dirLastModified[index] = CompactCatalog.toPrimitive(lastModified);
+    }
+
+    @Override
+    public Long getNumEntries()
+    {
+      return CompactCatalog.toLong(catalog.dirNumEntries[index]);
+    }
+
+    @Override
+    public void setNumEntries(final Long numEntries)
+    {
+      catalog.dirNumEntries[index] = CompactCatalog.toPrimitive(numEntries);
+    }
+
+    @Override
+    public boolean isReused()
+    {
+      return catalog.isReused(index);
+    }
+
+    @Override
+    public void setReused(final boolean reused)
+    {
+      catalog.setReused(index, reused);
+    }
+
+    /**
+     * Views are created on each access, so two views on the same directory are equal.
+     */
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof DirectoryView))
+      {
+        return false;
+      }
+      final DirectoryView other = (DirectoryView) obj;
+      return other.catalog == catalog && other.index == index;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return System.identityHashCode(catalog) * 31 + index;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getName();
+    }
+  }
+
+  /**
+   * View on a file, reading and writing the catalog's arrays. Holds nothing but its position in the catalog, the
+   * fields inherited from {@link File} are not used.
+   */
+  private static final class FileView extends File
+  {
+    private final CompactCatalog catalog;
+    private final int index;
+
+    FileView(final CompactCatalog catalog, final int index)
+    {
+      this.catalog = catalog;
+      this.index = index;
+    }
+
+    @Override
+    public Long getId()
+    {
+      return CompactCatalog.toLong(catalog.fileIds[index]);
+    }
+
+    @Override
+    public void setId(final Long id)
+    {
+      catalog.fileIds[index] = CompactCatalog.toPrimitive(id);
+    }
+
+    @Override
+    public String getName()
+    {
+      return catalog.getFileName(index);
+    }
+
+    @Override
+    public void setName(final String name)
+    {
+      catalog.renameFile(index, name);
+    }
+
+    @Override
+    public long getLastModifiedMillis()
+    {
+      return catalog.fileLastModified[index];
+    }
+
+    @Override
+    public void setLastModifiedMillis(final long lastModified)
+    {
+      catalog.fileLastModified[index] = lastModified;
+    }
+
+    @Override
+    public long getByteSizeValue()
+    {
+      return catalog.fileSizes[index];
+    }
+
+    @Override
+    public void setByteSizeValue(final long byteSize)
+    {
+      catalog.fileSizes[index] = byteSize;
+    }
+
+    @Override
+    public String getFileType()
+    {
+      return catalog.strings.get(catalog.fileTypes[index]);
+    }
+
+    @Override
+    public void setFileType(final String fileType)
+    {
+      catalog.fileTypes[index] = catalog.strings.intern(fileType);
+    }
+
+    @Override
+    public java.io.File getEntry()
+    {
+      return catalog.createEntry(catalog.fileDirs[index], getName());
+    }
+
+    @Override
+    public void setEntry(final java.io.File entry)
+    {
+      // derived from the volume path and names
+    }
+
+    @Override
+    public FileState getState()
+    {
+      return catalog.getState(index);
+    }
+
+    @Override
+    public void setState(final FileState state)
+    {
+      catalog.setState(index, state);
+    }
+
+    @Override
+    public String getFileGroup()
+    {
+      return catalog.strings.get(catalog.fileGroups[index]);
+    }
+
+    @Override
+    public void setFileGroup(final String fileGroup)
+    {
+      catalog.fileGroups[index] = catalog.strings.intern(fileGroup);
+    }
+
+    @Override
+    public String getMimeType()
+    {
+      return catalog.strings.get(catalog.fileMimeTypes[index]);
+    }
+
+    @Override
+    public void setMimeType(final String mimeType)
+    {
+      catalog.fileMimeTypes[index] = catalog.strings.intern(mimeType);
+    }
+
+    @Override
+    public Long getDurationNanos()
+    {
+      return CompactCatalog.toLong(catalog.fileDurations[index]);
+    }
+
+    @Override
+    public void setDurationNanos(final Long durationNanos)
+    {
+      catalog.fileDurations[index] = CompactCatalog.toPrimitive(durationNanos);
+    }
+
+    @Override
+    public Long getImageWidth()
+    {
+      return CompactCatalog.toLong(catalog.fileWidths[index]);
+    }
+
+    @Override
+    public void setImageWidth(final Long imageWidth)
+    {
+      catalog.fileWidths[index] = CompactCatalog.toPrimitive(imageWidth);
+    }
+
+    @Override
+    public Long getImageHeight()
+    {
+      return CompactCatalog.toLong(catalog.fileHeights[index]);
+    }
+
+    @Override
+    public void setImageHeight(final Long imageHeight)
+    {
+      catalog.fileHeights[index] = CompactCatalog.toPrimitive(imageHeight);
+    }
+
+    @Override
+    public String getHashValue()
+    {
+      return catalog.getHashValue(index);
+    }
+
+    @Override
+    public void setHashValue(final String hashValue)
+    {
+      catalog.setHashValue(index, hashValue);
+    }
+
+    @Override
+    public long getHashCreatedMillis()
+    {
+      return catalog.fileHashCreated[index];
+    }
+
+    @Override
+    public void setHashCreatedMillis(final long hashCreated)
+    {
+      catalog.fileHashCreated[index] = hashCreated;
+    }
+
+    @Override
+    public long getChecksum()
+    {
+      return catalog.fileChecksums[index];
+    }
+
+    @Override
+    public void setChecksum(final long checksum)
+    {
+      catalog.fileChecksums[index] = checksum;
+    }
+
+    @Override
+    public long getFingerprint()
+    {
+      return catalog.fileFingerprints[index];
+    }
+
+    @Override
+    public void setFingerprint(final long fingerprint)
+    {
+      catalog.fileFingerprints[index] = fingerprint;
+    }
+
+    @Override
+    public VideoFileName getVideoFileName()
+    {
+      return catalog.getVideoFileName(index);
+    }
+
+    @Override
+    public void setVideoFileName(final VideoFileName videoFileName)
+    {
+      catalog.setVideoFileName(index, videoFileName);
+    }
+
+    @Override
+    public String getWikidataEntityId()
+    {
+      return catalog.strings.get(catalog.fileWikidataIds[index]);
+    }
+
+    @Override
+    public void setWikidataEntityId(final String wikidataEntityId)
+    {
+      catalog.fileWikidataIds[index] = catalog.strings.intern(wikidataEntityId);
+    }
+
+    @Override
+    public Long getVolumeRef()
+    {
+      return catalog.getVolumeRef();
+    }
+
+    @Override
+    public void setVolumeRef(final Long volumeRef)
+    {
+      // derived from the catalog
+    }
+
+    @Override
+    public Long getDirectoryRef()
+    {
+      return CompactCatalog.toLong(catalog.dirIds[catalog.fileDirs[index]]);
+    }
+
+    @Override
+    public void setDirectoryRef(final Long directoryRef)
+    {
+      // derived from the position in the tree
+    }
+
+    @Override
+    public String getFileKey()
+    {
+      return catalog.getFileKey(index);
+    }
+
+    @Override
+    public void setFileKey(final String fileKey)
+    {
+      catalog.setFileKey(index, fileKey);
+    }
+
+    /**
+     * Views are created on each access, so two views on the same file are equal.
+     */
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof FileView))
+      {
+        return false;
+      }
+      final FileView other = (FileView) obj;
+      return other.catalog == catalog && other.index == index;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return System.identityHashCode(catalog) * 31 + index;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getName();
+    }
+  }
+
+  /**
+   * Collects the files of a volume, e.g. while reading them from the database one at a time.
+   */
+  public static final class Builder
+  {
+    private final CompactCatalog catalog;
+    private final Map<Long, Integer> dirIndexes = new HashMap<>();
+
+    Builder(final Volume source)
+    {
+      catalog = new CompactCatalog(source);
+      // breadth-first so that the subdirectories of each directory are consecutive
+      final List<Directory> order = new ArrayList<>();
+      final Directory root = source.getRoot();
+      order.add(root);
+      catalog.addDirectory(root, NONE);
+      for (int i = 0; i < order.size(); i++)
+      {
+        final List<Directory> subs = order.get(i).getSubdirectories();
+        subs.sort(Comparator.comparing(Directory::getName, NAME_ORDER));
+        catalog.dirFirstSubs[i] = catalog.numDirectories;
+        catalog.dirNumSubs[i] = subs.size();
+        for (final Directory sub : subs)
+        {
+          order.add(sub);
+          catalog.addDirectory(sub, i);
+        }
+      }
+      for (int i = 0; i < order.size(); i++)
+      {
+        final Directory dir = order.get(i);
+        if (dir.getId() != null)
+        {
+          dirIndexes.put(dir.getId(), Integer.valueOf(i));
+        }
+        for (final File file : dir.getFiles())
+        {
+          catalog.addFile(i, file);
+        }
+      }
+    }
+
+    /**
+     * Add a file to the directory given by its directory reference.
+     *
+     * @param file
+     *          file to be added, its values are copied
+     * @return whether the directory is part of the volume and the file was added
+     */
+    public boolean add(final File file)
+    {
+      final Integer index = file.getDirectoryRef() == null ? null : dirIndexes.get(file.getDirectoryRef());
+      if (index == null)
+      {
+        return false;
+      }
+      catalog.addFile(index.intValue(), file);
+      return true;
+    }
+
+    /**
+     * Finish the catalog. The builder must not be used afterwards.
+     *
+     * @return new catalog
+     */
+    public CompactCatalog build()
+    {
+      catalog.finish();
+      return catalog;
+    }
+  }
+}
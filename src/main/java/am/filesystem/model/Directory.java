@@ -16,6 +16,8 @@
 package am.filesystem.model;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,15 +30,48 @@ import am.services.wikidata.WikidataEntity;
  */
 public class Directory extends Model implements WikidataEntity
 {
+  /**
+   * Order of subdirectory and file names after {@link #sortByName()}, natural {@link String} order with null first.
+   */
+  public static final Comparator<String> NAME_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+  private static final Comparator<Directory> DIRECTORY_ORDER = Comparator.comparing(Directory::getName, NAME_ORDER);
+  private static final Comparator<File> FILE_ORDER = Comparator.comparing(File::getName, NAME_ORDER);
   private Long volumeRef;
   private Long parentRef;
   private String name;
-  private final List<Directory> subdirectories = new ArrayList<>();
-  private final List<File> files = new ArrayList<>();
-  private final Map<String, Directory> subdirectoryMap = new HashMap<>();
-  private final Map<String, File> fileMap = new HashMap<>();
+  private final ArrayList<Directory> subdirectories;
+  private final ArrayList<File> files;
+  private final List<Directory> subdirectoriesView;
+  private final List<File> filesView;
+  private final Map<String, Directory> subdirectoryMap;
+  private final Map<String, File> fileMap;
   private java.io.File entry;
   private String wikidataEntityId;
+  private Date lastModified;
+  private Long numEntries;
+  private boolean reused;
+
+  public Directory()
+  {
+    this(true);
+  }
+
+  /**
+   * Create a directory, optionally without lists and maps of entries. Subclasses that keep their entries elsewhere
+   * and override all methods accessing them, like the views of {@link CompactCatalog}, do not need them.
+   *
+   * @param withEntries
+   *          whether to create lists and maps of subdirectories and files
+   */
+  Directory(final boolean withEntries)
+  {
+    subdirectories = withEntries ? new ArrayList<>() : null;
+    files = withEntries ? new ArrayList<>() : null;
+    subdirectoriesView = withEntries ? new ReadOnlyList<>(subdirectories) : null;
+    filesView = withEntries ? new ReadOnlyList<>(files) : null;
+    subdirectoryMap = withEntries ? new HashMap<>() : null;
+    fileMap = withEntries ? new HashMap<>() : null;
+  }
 
   public String getName()
   {
@@ -60,6 +95,30 @@ public class Directory extends Model implements WikidataEntity
     fileMap.put(f.getName(), f);
   }
 
+  /**
+   * Remove a subdirectory, e.g. to replace it with a rescanned version.
+   *
+   * @param d
+   *          subdirectory to be removed
+   */
+  public void remove(final Directory d)
+  {
+    subdirectories.remove(d);
+    subdirectoryMap.remove(d.getName());
+  }
+
+  /**
+   * Remove a file, e.g. when it was found in another directory.
+   *
+   * @param f
+   *          file to be removed
+   */
+  public void remove(final File f)
+  {
+    files.remove(f);
+    fileMap.remove(f.getName());
+  }
+
   public List<Directory> getSubdirectories()
   {
     return new ArrayList<>(subdirectories);
@@ -70,6 +129,74 @@ public class Directory extends Model implements WikidataEntity
     return new ArrayList<>(files);
   }
 
+  /**
+   * Get a read-only view of the subdirectories. Unlike {@link #getSubdirectories()} no list is copied, so the
+   * directory must not be modified while the view is iterated.
+   *
+   * @return unmodifiable list of subdirectories
+   */
+  public List<Directory> getSubdirectoriesView()
+  {
+    return subdirectoriesView;
+  }
+
+  /**
+   * Get a read-only view of the files. Unlike {@link #getFiles()} no list is copied, so the directory must not be
+   * modified while the view is iterated.
+   *
+   * @return unmodifiable list of files
+   */
+  public List<File> getFilesView()
+  {
+    return filesView;
+  }
+
+  /**
+   * Sort subdirectories and files by name according to {@link #NAME_ORDER}. Lists that are already sorted are only
+   * checked, so calling this repeatedly costs one comparison per entry.
+   */
+  public void sortByName()
+  {
+    sort(subdirectories, DIRECTORY_ORDER);
+    sort(files, FILE_ORDER);
+  }
+
+  private static <T> void sort(final ArrayList<T> list, final Comparator<? super T> order)
+  {
+    for (int i = 1; i < list.size(); i++)
+    {
+      if (order.compare(list.get(i - 1), list.get(i)) > 0)
+      {
+        list.sort(order);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Traverse the directory tree starting with this directory, files of a directory before its subdirectories. No
+   * lists are copied, so the visitor must not add or remove entries.
+   *
+   * @param visitor
+   *          callbacks for directories and files
+   * @see ParallelTraversal
+   */
+  public void accept(final DirectoryVisitor visitor)
+  {
+    if (visitor.enterDirectory(this))
+    {
+      for (final File file : getFilesView())
+      {
+        visitor.visitFile(file);
+      }
+      for (final Directory sub : getSubdirectoriesView())
+      {
+        sub.accept(visitor);
+      }
+      visitor.leaveDirectory(this);
+    }
+  }
+
   public Directory findOrCreateSubdirectory(String name)
   {
     Directory result = subdirectoryMap.get(name);
@@ -145,6 +272,48 @@ public class Directory extends Model implements WikidataEntity
     this.wikidataEntityId = wikidataEntityId;
   }
 
+  public Date getLastModified()
+  {
+    return lastModified == null ? null : new Date(lastModified.getTime());
+  }
+
+  public void setLastModified(Date lastModified)
+  {
+    this.lastModified = lastModified == null ? null : new Date(lastModified.getTime());
+  }
+
+  /**
+   * Get number of entries (files and subdirectories) found in this directory when it was last scanned.
+   *
+   * @return number of entries or null if unknown
+   */
+  public Long getNumEntries()
+  {
+    return numEntries;
+  }
+
+  public void setNumEntries(Long numEntries)
+  {
+    this.numEntries = numEntries;
+  }
+
+  /**
+   * Was the content of this directory taken over from the catalog instead of being read from the file system? This is
+   * the case with an incremental scan if the directory's time of last modification has not changed. Its files are then
+   * the very same objects as in the loaded directory, its subdirectories have been scanned (or reused) separately.
+   *
+   * @return whether the directory's files were reused from the catalog
+   */
+  public boolean isReused()
+  {
+    return reused;
+  }
+
+  public void setReused(boolean reused)
+  {
+    this.reused = reused;
+  }
+
   @Override
   public String toString()
   {
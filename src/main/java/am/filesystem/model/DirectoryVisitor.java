@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.util.function.Consumer;
+
+/**
+ * Callbacks for traversing a directory tree with {@link Directory#accept(DirectoryVisitor)} or
+ * {@link ParallelTraversal}. Directories are reported before (pre-order) and after (post-order) their content.
+ *
+ * @author Marco Schmidt
+ */
+public interface DirectoryVisitor
+{
+  /**
+   * Create a visitor that passes all files of a tree to a consumer.
+   *
+   * @param consumer
+   *          receives each file
+   * @return new visitor
+   */
+  static DirectoryVisitor ofFiles(final Consumer<? super File> consumer)
+  {
+    return new FileConsumerVisitor(consumer);
+  }
+
+  /**
+   * A directory is entered, before its files and subdirectories are visited.
+   *
+   * @param dir
+   *          directory
+   * @return whether to visit the directory's content; if false {@link #leaveDirectory(Directory)} is not called either
+   */
+  default boolean enterDirectory(final Directory dir)
+  {
+    return true;
+  }
+
+  /**
+   * Visit a file.
+   *
+   * @param file
+   *          file of the current directory
+   */
+  default void visitFile(final File file)
+  {
+  }
+
+  /**
+   * A directory is left, after all its files and subdirectories were visited.
+   *
+   * @param dir
+   *          directory
+   */
+  default void leaveDirectory(final Directory dir)
+  {
+  }
+}
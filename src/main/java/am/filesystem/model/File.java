@@ -24,11 +24,15 @@ import am.services.wikidata.WikidataEntity;
  */
 public class File extends Model implements WikidataEntity
 {
+  /**
+   * Value of the primitive size and time accessors if the value is unknown, like null for the object accessors.
+   */
+  public static final long UNKNOWN = Long.MIN_VALUE;
   private Long volumeRef;
   private Long directoryRef;
   private String name;
-  private Date lastModified;
-  private Long byteSize;
+  private long lastModified = UNKNOWN;
+  private long byteSize = UNKNOWN;
   private String fileGroup;
   private String fileType;
   private String mimeType;
@@ -38,9 +42,12 @@ public class File extends Model implements WikidataEntity
   private java.io.File entry;
   private FileState state = FileState.Unknown;
   private String hashValue;
-  private Date hashCreated;
+  private long hashCreated = UNKNOWN;
+  private long checksum = UNKNOWN;
+  private long fingerprint = UNKNOWN;
   private VideoFileName videoFileName;
   private String wikidataEntityId;
+  private String fileKey;
 
   public String getName()
   {
@@ -54,20 +61,51 @@ public class File extends Model implements WikidataEntity
 
   public Date getLastModified()
   {
-    return lastModified == null ? null : new Date(lastModified.getTime());
+    return toDate(getLastModifiedMillis());
   }
 
   public void setLastModified(Date lastModified)
   {
-    this.lastModified = lastModified == null ? null : new Date(lastModified.getTime());
+    setLastModifiedMillis(toMillis(lastModified));
+  }
+
+  /**
+   * Get the time of last modification without creating a {@link Date} object.
+   *
+   * @return milliseconds since the epoch or {@link #UNKNOWN}
+   */
+  public long getLastModifiedMillis()
+  {
+    return lastModified;
+  }
+
+  public void setLastModifiedMillis(long lastModified)
+  {
+    this.lastModified = lastModified;
   }
 
   public Long getByteSize()
   {
-    return byteSize;
+    final long value = getByteSizeValue();
+    return value == UNKNOWN ? null : Long.valueOf(value);
   }
 
   public void setByteSize(Long byteSize)
+  {
+    setByteSizeValue(byteSize == null ? UNKNOWN : byteSize.longValue());
+  }
+
+  /**
+   * Get the file size without boxing.
+   *
+   * @return number of bytes or {@link #UNKNOWN}
+   */
+  public long getByteSizeValue()
+  {
+    return byteSize;
+  }
+
+  public void setByteSizeValue(long byteSize)
   {
     this.byteSize = byteSize;
   }
@@ -164,12 +202,67 @@ public class File extends Model implements WikidataEntity
 
   public Date getHashCreated()
   {
-    return hashCreated == null ? null : new Date(hashCreated.getTime());
+    return toDate(getHashCreatedMillis());
   }
 
   public void setHashCreated(Date newValue)
   {
-    this.hashCreated = newValue == null ? null : new Date(newValue.getTime());
+    setHashCreatedMillis(toMillis(newValue));
+  }
+
+  /**
+   * Get the time the hash value was computed without creating a {@link Date} object.
+   *
+   * @return milliseconds since the epoch or {@link #UNKNOWN}
+   */
+  public long getHashCreatedMillis()
+  {
+    return hashCreated;
+  }
+
+  public void setHashCreatedMillis(long hashCreated)
+  {
+    this.hashCreated = hashCreated;
+  }
+
+  /**
+   * Get the checksum computed together with the hash value, a non-negative 32 bit value.
+   *
+   * @return checksum or {@link #UNKNOWN}
+   */
+  public long getChecksum()
+  {
+    return checksum;
+  }
+
+  public void setChecksum(long checksum)
+  {
+    this.checksum = checksum;
+  }
+
+  /**
+   * Get the quick fingerprint computed from a few blocks of the file, a non-negative 63 bit value.
+   *
+   * @return fingerprint or {@link #UNKNOWN}
+   */
+  public long getFingerprint()
+  {
+    return fingerprint;
+  }
+
+  public void setFingerprint(long fingerprint)
+  {
+    this.fingerprint = fingerprint;
+  }
+
+  private static Date toDate(final long millis)
+  {
+    return millis == UNKNOWN ? null : new Date(millis);
+  }
+
+  private static long toMillis(final Date date)
+  {
+    return date == null ? UNKNOWN : date.getTime();
   }
 
   public VideoFileName getVideoFileName()
@@ -219,4 +312,21 @@ public class File extends Model implements WikidataEntity
   {
     return name;
   }
+
+  /**
+   * Return the key identifying the file within its file system, as reported by
+   * {@link java.nio.file.attribute.BasicFileAttributes#fileKey()} (e.g. device and inode on Unix-like systems),
+   * converted to a string so that it can be stored.
+   *
+   * @return file key or null if unknown
+   */
+  public String getFileKey()
+  {
+    return fileKey;
+  }
+
+  public void setFileKey(String fileKey)
+  {
+    this.fileKey = fileKey;
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.util.function.Consumer;
+
+/**
+ * Visitor that only passes files to a consumer.
+ *
+ * @author Marco Schmidt
+ */
+final class FileConsumerVisitor implements DirectoryVisitor
+{
+  private final Consumer<? super File> consumer;
+
+  FileConsumerVisitor(final Consumer<? super File> consumer)
+  {
+    this.consumer = consumer;
+  }
+
+  @Override
+  public void visitFile(final File file)
+  {
+    consumer.accept(file);
+  }
+}
@@ -50,7 +50,12 @@ public enum FileState
   /**
    * There were errors reading from the file.
    */
-  Corrupted(5);
+  Corrupted(5),
+
+  /**
+   * File was moved or renamed within its volume, metadata was taken over from the entry at its former location.
+   */
+  Moved(6);
 
   private int numericValue;
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Traverse a directory tree with several threads of a {@link ForkJoinPool}. Each subdirectory becomes a task of its
+ * own, so the visitor gets called concurrently and must be thread-safe. Within a single directory the order is the
+ * same as with {@link Directory#accept(DirectoryVisitor)}: enter, files, subdirectories, leave. The subdirectories are
+ * all completed before their parent is left.
+ *
+ * @author Marco Schmidt
+ */
+public final class ParallelTraversal
+{
+  private ParallelTraversal()
+  {
+  }
+
+  /**
+   * Traverse a tree and wait until all directories have been visited.
+   *
+   * @param root
+   *          directory to start with
+   * @param visitor
+   *          thread-safe callbacks
+   * @param pool
+   *          threads to use
+   */
+  public static void accept(final Directory root, final DirectoryVisitor visitor, final ForkJoinPool pool)
+  {
+    pool.invoke(new DirectoryTask(root, visitor));
+  }
+
+  /**
+   * Traverse a tree with the common pool.
+   *
+   * @param root
+   *          directory to start with
+   * @param visitor
+   *          thread-safe callbacks
+   */
+  public static void accept(final Directory root, final DirectoryVisitor visitor)
+  {
+    accept(root, visitor, ForkJoinPool.commonPool());
+  }
+
+  private static final class DirectoryTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+    private final transient Directory dir;
+    private final transient DirectoryVisitor visitor;
+
+    DirectoryTask(final Directory dir, final DirectoryVisitor visitor)
+    {
+      this.dir = dir;
+      this.visitor = visitor;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (!visitor.enterDirectory(dir))
+      {
+        return;
+      }
+      for (final File file : dir.getFilesView())
+      {
+        visitor.visitFile(file);
+      }
+      final List<Directory> subs = dir.getSubdirectoriesView();
+      if (subs.size() == 1)
+      {
+        new DirectoryTask(subs.get(0), visitor).compute();
+      }
+      else
+        if (!subs.isEmpty())
+        {
+          final List<DirectoryTask> tasks = new ArrayList<>(subs.size());
+          for (final Directory sub : subs)
+          {
+            tasks.add(new DirectoryTask(sub, visitor));
+          }
+          ForkJoinTask.invokeAll(tasks);
+        }
+      visitor.leaveDirectory(dir);
+    }
+  }
+}
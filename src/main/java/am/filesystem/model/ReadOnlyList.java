@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of an {@link ArrayList}. Unlike {@link java.util.Collections#unmodifiableList(java.util.List)} it
+ * wraps the concrete list type, so calls are not dispatched through a call site shared with all other unmodifiable
+ * lists of the application and can be inlined.
+ *
+ * @param <E>
+ *          element type
+ * @author Marco Schmidt
+ */
+final class ReadOnlyList<E> extends AbstractList<E> implements RandomAccess
+{
+  private final ArrayList<E> list;
+
+  ReadOnlyList(final ArrayList<E> list)
+  {
+    this.list = list;
+  }
+
+  @Override
+  public E get(final int index)
+  {
+    return list.get(index);
+  }
+
+  @Override
+  public int size()
+  {
+    return list.size();
+  }
+}
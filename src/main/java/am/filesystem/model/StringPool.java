@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Distinct strings of a {@link CompactCatalog}, each stored once and referenced by its index. The map from string to
+ * index is only needed while strings are added; it is dropped by {@link #trim()} and rebuilt if a string is added
+ * later. A pool read from a {@link CatalogSnapshot} decodes each string from the mapped file when it is first
+ * requested.
+ *
+ * @author Marco Schmidt
+ */
+final class StringPool
+{
+  private String[] strings = new String[64];
+  private int size;
+  private Map<String, Integer> indexes = new HashMap<>();
+  private final ByteBuffer data;
+  private final int[] offsets;
+
+  StringPool()
+  {
+    data = null;
+    offsets = null;
+  }
+
+  private StringPool(final ByteBuffer data, final int[] offsets)
+  {
+    this.data = data;
+    this.offsets = offsets;
+    size = offsets.length - 1;
+    strings = new String[size];
+    indexes = null;
+  }
+
+  /**
+   * Read a pool written by {@link #write(CatalogSnapshot.Output)}, leaving the buffer positioned after it.
+   *
+   * @param buffer
+   *          mapped snapshot section
+   * @return pool with strings not decoded yet
+   */
+  static StringPool read(final ByteBuffer buffer)
+  {
+    final int num = buffer.getInt();
+    final int[] offsets = CatalogSnapshot.getInts(buffer, num + 1);
+    final StringPool result = new StringPool(buffer.slice(), offsets);
+    buffer.position(buffer.position() + offsets[num]);
+    return result;
+  }
+
+  /**
+   * Write the number of strings, the offsets of their UTF-8 encodings and the encodings.
+   *
+   * @param out
+   *          snapshot output
+   * @throws IOException
+   *           if writing fails
+   */
+  void write(final CatalogSnapshot.Output out) throws IOException
+  {
+    final byte[][] encoded = new byte[size][];
+    final int[] ends = new int[size + 1];
+    for (int i = 0; i < size; i++)
+    {
+      encoded[i] = get(i).getBytes(StandardCharsets.UTF_8);
+      ends[i + 1] = ends[i] + encoded[i].length;
+    }
+    out.putInt(size);
+    out.putInts(ends, size + 1);
+    for (final byte[] bytes : encoded)
+    {
+      out.putBytes(bytes, bytes.length);
+    }
+  }
+
+  /**
+   * Return the index of a string, adding it if it is not in the pool yet.
+   *
+   * @param s
+   *          string, possibly null
+   * @return index or {@link CompactCatalog#NONE} for null
+   */
+  int intern(final String s)
+  {
+    if (s == null)
+    {
+      return CompactCatalog.NONE;
+    }
+    if (indexes == null)
+    {
+      indexes = new HashMap<>(size * 2);
+      for (int i = 0; i < size; i++)
+      {
+        indexes.put(get(i), Integer.valueOf(i));
+      }
+    }
+    final Integer index = indexes.get(s);
+    if (index != null)
+    {
+      return index.intValue();
+    }
+    if (size == strings.length)
+    {
+      strings = Arrays.copyOf(strings, Math.max(16, size * 2));
+    }
+    strings[size] = s;
+    indexes.put(s, Integer.valueOf(size));
+    return size++;
+  }
+
+  String get(final int index)
+  {
+    if (index < 0)
+    {
+      return null;
+    }
+    String result = strings[index];
+    if (result == null)
+    {
+      // absolute reads only, views of several threads may decode the same string, which is harmless
+      final int start = offsets[index];
+      final byte[] bytes = new byte[offsets[index + 1] - start];
+      for (int i = 0; i < bytes.length; i++)
+      {
+        bytes[i] = data.get(start + i);
+      }
+      result = new String(bytes, StandardCharsets.UTF_8);
+      strings[index] = result;
+    }
+    return result;
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  /**
+   * Release memory only needed for adding strings.
+   */
+  void trim()
+  {
+    strings = Arrays.copyOf(strings, size);
+    indexes = null;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import am.app.AppConfig;
+import am.db.JdbcSerialization;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+import am.processor.hashes.HashCreation;
+import am.processor.hashes.HashStrategy;
+import am.processor.hashes.QuickFingerprint;
+
+/**
+ * {@link DirectoryConsumer} running the per-file stages on each merged directory and storing it: fingerprints,
+ * metadata extraction with exiftool if configured, hash creation if all hashes are to be created, then writing
+ * directory and files to the database.
+ *
+ * @author Marco Schmidt
+ */
+public class CatalogWriter implements DirectoryConsumer
+{
+  private final AppConfig config;
+  private final JdbcSerialization io;
+  private final MetadataExtraction extraction = new MetadataExtraction();
+  private final HashCreation hashCreation = new HashCreation();
+  private final QuickFingerprint fingerprint = new QuickFingerprint();
+  private final boolean extract;
+  private final boolean hash;
+
+  public CatalogWriter(final AppConfig config, final JdbcSerialization io)
+  {
+    this.config = config;
+    this.io = io;
+    extract = config.getExifTool() != null;
+    hash = config.getHashConfig().getStrategy() == HashStrategy.All;
+  }
+
+  @Override
+  public void accept(final Volume volume, final Directory dir)
+  {
+    for (final File file : dir.getFilesView())
+    {
+      file.setVolumeRef(volume.getId());
+      if (file.getState() != FileState.Missing)
+      {
+        fingerprint.update(config, file);
+        if (extract)
+        {
+          extraction.update(config, file);
+        }
+        if (hash)
+        {
+          hashCreation.update(config, file);
+        }
+      }
+    }
+    io.saveFiles(dir);
+  }
+
+  /**
+   * Release resources once all directories were processed.
+   */
+  public void close()
+  {
+    if (extract)
+    {
+      extraction.close(config);
+    }
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+
+/**
+ * Machine-readable report of the files whose state changed in a run, one tab-separated line per file with columns
+ * volume id, file id, state, size in bytes, time of last modification in milliseconds since 1970 and path. Tabs, line
+ * breaks and backslashes in paths are escaped with a backslash. Lines are collected in chunks which a background thread
+ * writes to the file, so the threads merging volumes do not wait for the disk unless the queue of chunks is full.
+ *
+ * @author Marco Schmidt
+ */
+public final class ChangeReport
+{
+  static final String HEADER = "volume\tid\tstate\tsize\tlast_modified\tpath\n";
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChangeReport.class);
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int MAX_QUEUED_CHUNKS = 16;
+  private static final FileState[] STATES = FileState.values();
+  private final AppConfig config;
+  private final java.io.File file;
+  private final Writer writer;
+  private final BlockingQueue<StringBuilder> queue = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+  private final StringBuilder end = new StringBuilder();
+  private final long[] counts = new long[STATES.length];
+  private final Thread thread;
+  private StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 1024);
+  private volatile IOException failure;
+  private boolean closed;
+
+  ChangeReport(final AppConfig config, final java.io.File file) throws IOException
+  {
+    this.config = config;
+    this.file = file;
+    writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    chunk.append(HEADER);
+    thread = new Thread(this::drain, "change-report");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Create a report in the configured TSV directory, named after the current time.
+   *
+   * @param config
+   *          configuration with {@link AppConfig#getTsvDirectory()}
+   * @return new report or null if no directory is configured or the file could not be created
+   */
+  public static ChangeReport create(final AppConfig config)
+  {
+    final java.io.File dir = config.getTsvDirectory();
+    if (dir == null)
+    {
+      return null;
+    }
+    final SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss", Locale.ROOT);
+    final java.io.File file = new java.io.File(dir, "changes_" + formatter.format(new Date()) + ".tsv");
+    try
+    {
+      return new ChangeReport(config, file);
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("init.error.tsv_file_creation", file.getAbsolutePath()), e);
+      return null;
+    }
+  }
+
+  /**
+   * Add a line for a file to the report. Files without state or with state {@link FileState#Identical} are ignored.
+   *
+   * @param model
+   *          file with state and file system entry assigned
+   */
+  public synchronized void add(final File model)
+  {
+    final FileState state = model.getState();
+    if (closed || state == null || state == FileState.Identical)
+    {
+      return;
+    }
+    counts[state.ordinal()]++;
+    append(model.getVolumeRef());
+    append(model.getId());
+    chunk.append(state.name()).append('\t');
+    appendValue(model.getByteSizeValue());
+    appendValue(model.getLastModifiedMillis());
+    final java.io.File entry = model.getEntry();
+    appendEscaped(entry == null ? model.getName() : entry.getAbsolutePath());
+    chunk.append('\n');
+    if (chunk.length() >= CHUNK_SIZE)
+    {
+      put(chunk);
+      chunk = new StringBuilder(CHUNK_SIZE + 1024);
+    }
+  }
+
+  private void append(final Long value)
+  {
+    if (value != null)
+    {
+      chunk.append(value.longValue());
+    }
+    chunk.append('\t');
+  }
+
+  private void appendValue(final long value)
+  {
+    if (value != File.UNKNOWN)
+    {
+      chunk.append(value);
+    }
+    chunk.append('\t');
+  }
+
+  private void appendEscaped(final String s)
+  {
+    for (int i = 0; i < s.length(); i++)
+    {
+      final char c = s.charAt(i);
+      switch (c)
+      {
+      case '\t':
+        chunk.append("\\t");
+        break;
+      case '\n':
+        chunk.append("\\n");
+        break;
+      case '\r':
+        chunk.append("\\r");
+        break;
+      case '\\':
+        chunk.append("\\\\");
+        break;
+      default:
+        chunk.append(c);
+        break;
+      }
+    }
+  }
+
+  private void put(final StringBuilder sb)
+  {
+    try
+    {
+      queue.put(sb);
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain()
+  {
+    try
+    {
+      StringBuilder sb;
+      while ((sb = queue.take()) != end)
+      {
+        if (failure == null)
+        {
+          write(sb);
+        }
+      }
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      try
+      {
+        writer.close();
+      }
+      catch (final IOException e)
+      {
+        failure = e;
+      }
+    }
+  }
+
+  private void write(final StringBuilder sb)
+  {
+    try
+    {
+      writer.append(sb);
+    }
+    catch (final IOException e)
+    {
+      failure = e;
+    }
+  }
+
+  /**
+   * Number of files reported in a state.
+   *
+   * @param state
+   *          file state
+   * @return number of lines with that state
+   */
+  public synchronized long getCount(final FileState state)
+  {
+    return counts[state.ordinal()];
+  }
+
+  public java.io.File getFile()
+  {
+    return file;
+  }
+
+  /**
+   * Write remaining lines, wait for the background thread to finish and log a summary. Lines added afterwards are
+   * ignored.
+   */
+  public void close()
+  {
+    synchronized (this)
+    {
+      if (closed)
+      {
+        return;
+      }
+      closed = true;
+      put(chunk);
+      put(end);
+    }
+    try
+    {
+      thread.join();
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    final String path = file.getAbsolutePath();
+    if (failure != null)
+    {
+      LOGGER.error(config.msg("init.error.tsv_file_write", path), failure);
+    }
+    LOGGER.info(config.msg("changereport.info.summary", path, getCount(FileState.New), getCount(FileState.Modified),
+        getCount(FileState.Missing), getCount(FileState.Moved)));
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import am.filesystem.model.Directory;
+import am.filesystem.model.Volume;
+
+/**
+ * Downstream stage receiving the merged directories of a {@link StreamingMerge} one at a time.
+ *
+ * @author Marco Schmidt
+ */
+public interface DirectoryConsumer
+{
+  /**
+   * Process a merged directory. It contains its merged files but no subdirectories. Directories are passed parents
+   * first; a consumer storing them assigns the id that its subdirectories then use as parent reference.
+   *
+   * @param volume
+   *          volume the directory belongs to
+   * @param dir
+   *          merged directory
+   */
+  void accept(Volume volume, Directory dir);
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import am.filesystem.model.Directory;
+
+/**
+ * Pair the entries of two lists sorted by name with a linear merge join, as an alternative to building the union of
+ * both name sets and looking up each name on both sides.
+ *
+ * @author Marco Schmidt
+ */
+final class MergeJoin
+{
+  private MergeJoin()
+  {
+    // prevent instantiation
+  }
+
+  /**
+   * Call a consumer for each name in either list, in name order, with the scanned and the loaded entry of that name or
+   * null if one side does not have it. Both lists must be sorted by {@link Directory#NAME_ORDER}, see
+   * {@link Directory#sortByName()}.
+   *
+   * @param scanned
+   *          entries from the file system
+   * @param loaded
+   *          entries from the database
+   * @param nameOf
+   *          function returning an entry's name
+   * @param consumer
+   *          receives pairs of entries
+   */
+  static <T> void join(final List<T> scanned, final List<T> loaded, final Function<? super T, String> nameOf,
+      final BiConsumer<T, T> consumer)
+  {
+    final int numScanned = scanned.size();
+    final int numLoaded = loaded.size();
+    int i = 0;
+    int j = 0;
+    while (i < numScanned && j < numLoaded)
+    {
+      final T s = scanned.get(i);
+      final T l = loaded.get(j);
+      final int cmp = Directory.NAME_ORDER.compare(nameOf.apply(s), nameOf.apply(l));
+      if (cmp < 0)
+      {
+        consumer.accept(s, null);
+        i++;
+      }
+      else
+        if (cmp > 0)
+        {
+          consumer.accept(null, l);
+          j++;
+        }
+        else
+        {
+          consumer.accept(s, l);
+          i++;
+          j++;
+        }
+    }
+    while (i < numScanned)
+    {
+      consumer.accept(scanned.get(i++), null);
+    }
+    while (j < numLoaded)
+    {
+      consumer.accept(null, loaded.get(j++));
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+
+/**
+ * Merge a scanned and a loaded directory tree with fork/join, one task per directory. Each task merges its directory,
+ * assigns file system entries and volume references and counts file states in the same pass, so that no further
+ * traversal of the merged tree is necessary. Children are merged in name order and results of subtasks are combined in
+ * that order, the merged tree is therefore the same regardless of the number of threads.
+ *
+ * @author Marco Schmidt
+ */
+final class MergeTask extends RecursiveTask<Directory>
+{
+  private static final long serialVersionUID = 1L;
+  private static final FileState[] STATES = FileState.values();
+  private final transient VolumeProcessor processor;
+  private final transient Directory scanned;
+  private final transient Directory loaded;
+  private final java.io.File parentEntry;
+  private final Long volumeRef;
+  private final long[] counts = new long[STATES.length];
+  private final transient List<File> changedFiles = new ArrayList<>();
+
+  MergeTask(final VolumeProcessor processor, final Directory scanned, final Directory loaded,
+      final java.io.File parentEntry, final Long volumeRef)
+  {
+    this.processor = processor;
+    this.scanned = scanned;
+    this.loaded = loaded;
+    this.parentEntry = parentEntry;
+    this.volumeRef = volumeRef;
+  }
+
+  @Override
+  protected Directory compute()
+  {
+    if (scanned == null || loaded == null)
+    {
+      return computeOneSided();
+    }
+    final Directory merged = new Directory();
+    merged.setId(loaded.getId());
+    merged.setWikidataEntityId(loaded.getWikidataEntityId());
+    merged.setName(scanned.getName());
+    merged.setLastModified(scanned.getLastModified());
+    merged.setNumEntries(scanned.getNumEntries());
+    final java.io.File entry = new java.io.File(parentEntry, merged.getName());
+    merged.setEntry(entry);
+
+    scanned.sortByName();
+    loaded.sortByName();
+    final List<MergeTask> tasks = new ArrayList<>();
+    MergeJoin.join(scanned.getSubdirectoriesView(), loaded.getSubdirectoriesView(), Directory::getName,
+        (s, l) -> tasks.add(new MergeTask(processor, s, l, entry, volumeRef)));
+    invokeAll(tasks);
+    for (final MergeTask task : tasks)
+    {
+      merged.add(task.join());
+      combine(task);
+    }
+
+    MergeJoin.join(scanned.getFilesView(), loaded.getFilesView(), File::getName, (s, l) ->
+    {
+      final File file = processor.mergeFile(s, l);
+      merged.add(file);
+      visit(entry, file);
+    });
+    return merged;
+  }
+
+  /**
+   * Only one side exists, all files of the subtree are new or missing and the subtree is taken over as it is.
+   */
+  private Directory computeOneSided()
+  {
+    final Directory dir = scanned == null ? loaded : scanned;
+    final FileState state = scanned == null ? FileState.Missing : FileState.New;
+    final java.io.File entry = new java.io.File(parentEntry, dir.getName());
+    dir.setEntry(entry);
+    final List<Directory> subs = dir.getSubdirectoriesView();
+    final List<MergeTask> tasks = new ArrayList<>(subs.size());
+    for (final Directory sub : subs)
+    {
+      tasks.add(scanned == null ? new MergeTask(processor, null, sub, entry, volumeRef)
+          : new MergeTask(processor, sub, null, entry, volumeRef));
+    }
+    invokeAll(tasks);
+    for (final MergeTask task : tasks)
+    {
+      combine(task);
+    }
+    for (final File file : dir.getFilesView())
+    {
+      file.setState(state);
+      visit(entry, file);
+    }
+    return dir;
+  }
+
+  private void visit(final java.io.File dirEntry, final File file)
+  {
+    file.setEntry(new java.io.File(dirEntry, file.getName()));
+    // new files get the volume reference when stored, later stages may need it before that
+    file.setVolumeRef(volumeRef);
+    final FileState state = file.getState();
+    if (state != null)
+    {
+      counts[state.ordinal()]++;
+      if (state != FileState.Identical)
+      {
+        changedFiles.add(file);
+      }
+    }
+  }
+
+  private void combine(final MergeTask task)
+  {
+    for (int i = 0; i < counts.length; i++)
+    {
+      counts[i] += task.counts[i];
+    }
+    changedFiles.addAll(task.changedFiles);
+  }
+
+  /**
+   * Number of files in a state after the task has completed.
+   *
+   * @param state
+   *          file state
+   * @return number of files of the merged subtree in that state
+   */
+  long getCount(final FileState state)
+  {
+    return counts[state.ordinal()];
+  }
+
+  /**
+   * Files of the merged subtree that are not identical, in the order of a depth-first traversal that visits
+   * subdirectories before files.
+   *
+   * @return list of files
+   */
+  List<File> getChangedFiles()
+  {
+    return changedFiles;
+  }
+}
@@ -27,7 +27,8 @@ import com.thebuzzmedia.exiftool.Tag;
 import com.thebuzzmedia.exiftool.core.StandardTag;
 import com.thebuzzmedia.exiftool.core.UnspecifiedTag;
 import am.app.AppConfig;
-import am.filesystem.model.Directory;
+import am.filesystem.HardLinks;
+import am.filesystem.model.DirectoryVisitor;
 import am.filesystem.model.File;
 import am.filesystem.model.Volume;
 
@@ -56,34 +57,75 @@ public class MetadataExtraction
   });
   private long numExamined;
 
-  public long getNumExamined()
+  public synchronized long getNumExamined()
   {
     return numExamined;
   }
 
-  public void setNumExamined(long numExamined)
+  public synchronized void setNumExamined(long numExamined)
   {
     this.numExamined = numExamined;
   }
 
+  /**
+   * Examine all files of a volume that have not been examined yet. Of several hard links to the same physical file only
+   * the first one is examined, the others take over its metadata.
+   *
+   * @param config
+   *          application configuration
+   * @param volume
+   *          volume with file system entries assigned
+   */
   public void update(final AppConfig config, final Volume volume)
   {
-    update(config, volume.getRoot());
+    final HardLinks links = new HardLinks();
+    links.addAll(volume.getRoot());
+    volume.getRoot().accept(DirectoryVisitor.ofFiles(f ->
+    {
+      if (!copyFromLink(config, f, links))
+      {
+        update(config, f);
+      }
+    }));
   }
 
-  private void update(AppConfig config, Directory dir)
+  private boolean copyFromLink(final AppConfig config, final File file, final HardLinks links)
   {
-    for (final File f : dir.getFiles())
+    if (file.getMimeType() != null)
     {
-      update(config, f);
+      return false;
     }
-    for (final Directory d : dir.getSubdirectories())
+    for (final File link : links.getLinks(file))
     {
-      update(config, d);
+      if (link != file && link.getMimeType() != null)
+      {
+        file.setMimeType(link.getMimeType());
+        file.setFileGroup(link.getFileGroup());
+        file.setFileType(link.getFileType());
+        file.setImageWidth(link.getImageWidth());
+        file.setImageHeight(link.getImageHeight());
+        file.setDurationNanos(link.getDurationNanos());
+        if (LOGGER.isTraceEnabled())
+        {
+          LOGGER.trace(config.msg("exiftool.trace.hard_link", file.getEntry().getAbsolutePath(),
+              link.getEntry().getAbsolutePath()));
+        }
+        return true;
+      }
     }
+    return false;
   }
 
-  private void update(AppConfig config, File file)
+  /**
+   * Examine a single file with exiftool. Synchronized because exiftool runs as a single process which is reopened
+   * every now and then, so volumes processed concurrently take turns.
+   *
+   * @param config
+   *          application configuration
+   * @param file
+   *          file to be examined
+   */
+  public synchronized void update(AppConfig config, File file)
   {
     final String mimeType = file.getMimeType();
     final java.io.File entry = file.getEntry();
@@ -197,6 +239,21 @@ public class MetadataExtraction
       {
         update(config, v);
       }
+      close(config);
+    }
+  }
+
+  /**
+   * Log the number of examined files and close the exiftool instance of the configuration.
+   *
+   * @param config
+   *          application configuration
+   */
+  public void close(final AppConfig config)
+  {
+    final ExifTool exifTool = config.getExifTool();
+    if (exifTool != null)
+    {
       LOGGER.info(config.msg("exiftool.info.number_examined_files", getNumExamined()));
       try
       {
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+import am.processor.hashes.HashCreation;
+import am.processor.hashes.QuickFingerprint;
+
+/**
+ * Find files that were moved or renamed within a merged volume. Such files show up twice after
+ * {@link VolumeProcessor#mergeDirectory(Directory, Directory)}: as {@link FileState#Missing} at the old location and as
+ * {@link FileState#New} at the new location. Pairs are found
+ * <ol>
+ * <li>by file key (device and inode on Unix-like systems), which a move within a file system keeps, together with an
+ * unchanged size and time of last modification, or</li>
+ * <li>by size and time of last modification if exactly one missing and exactly one new file share them. If the missing
+ * file has a {@link QuickFingerprint} the new file's fingerprint is computed and both must be equal, which takes a few
+ * reads instead of reading the whole file. Otherwise, if the missing file has a hash value the new file is hashed and
+ * both values must be equal, otherwise both must have the same name.</li>
+ * </ol>
+ * The new file takes over id, hash value and all other metadata of the missing file and gets state
+ * {@link FileState#Moved}; the missing file is removed from the tree. A fingerprint computed for the new file is
+ * kept. Storing the volume thus updates the existing
+ * database row instead of adding a new one, and neither exiftool nor hash creation need to process the file again.
+ *
+ * @author Marco Schmidt
+ */
+public class MoveDetection
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(MoveDetection.class);
+  private final AppConfig config;
+  private final QuickFingerprint fingerprint = new QuickFingerprint();
+  private final Map<File, Directory> missingParents = new IdentityHashMap<>();
+  private final Map<String, List<File>> missingByKey = new HashMap<>();
+  private final Map<String, List<File>> missingBySizeAndTime = new HashMap<>();
+  private final Map<String, Integer> numNewBySizeAndTime = new HashMap<>();
+  private final List<File> newFiles = new ArrayList<>();
+
+  public MoveDetection(final AppConfig config)
+  {
+    this.config = config;
+  }
+
+  /**
+   * Pair missing and new files of a merged volume.
+   *
+   * @param volume
+   *          merged volume with file system entries assigned
+   * @return number of files detected as moved
+   */
+  public int detect(final Volume volume)
+  {
+    clear();
+    collect(volume.getRoot());
+    int numMoved = 0;
+    if (!missingParents.isEmpty())
+    {
+      for (final File file : newFiles)
+      {
+        File missing = findByKey(file);
+        if (missing == null)
+        {
+          missing = findBySizeAndTime(file);
+        }
+        if (missing != null)
+        {
+          move(missing, file);
+          numMoved++;
+        }
+      }
+    }
+    if (numMoved > 0)
+    {
+      LOGGER.info(config.msg("movedetection.info.detected", volume.getPath(), numMoved));
+    }
+    clear();
+    return numMoved;
+  }
+
+  private void clear()
+  {
+    missingParents.clear();
+    missingByKey.clear();
+    missingBySizeAndTime.clear();
+    numNewBySizeAndTime.clear();
+    newFiles.clear();
+  }
+
+  private void collect(final Directory dir)
+  {
+    if (dir == null)
+    {
+      return;
+    }
+    for (final File file : dir.getFilesView())
+    {
+      final FileState state = file.getState();
+      if (state == FileState.Missing && file.getId() != null)
+      {
+        missingParents.put(file, dir);
+        if (file.getFileKey() != null)
+        {
+          missingByKey.computeIfAbsent(file.getFileKey(), k -> new ArrayList<>()).add(file);
+        }
+        missingBySizeAndTime.computeIfAbsent(getSizeAndTime(file), k -> new ArrayList<>()).add(file);
+      }
+      else
+        if (state == FileState.New)
+        {
+          newFiles.add(file);
+          numNewBySizeAndTime.merge(getSizeAndTime(file), Integer.valueOf(1), Integer::sum);
+        }
+    }
+    for (final Directory sub : dir.getSubdirectoriesView())
+    {
+      collect(sub);
+    }
+  }
+
+  private static String getSizeAndTime(final File file)
+  {
+    return file.getByteSizeValue() + "/" + file.getLastModifiedMillis();
+  }
+
+  private File findByKey(final File file)
+  {
+    if (file.getFileKey() == null)
+    {
+      return null;
+    }
+    final String sizeAndTime = getSizeAndTime(file);
+    for (final File missing : missingByKey.getOrDefault(file.getFileKey(), Collections.emptyList()))
+    {
+      // a file key may be reused for a different file after the file it belonged to was deleted
+      if (missingParents.containsKey(missing) && sizeAndTime.equals(getSizeAndTime(missing)))
+      {
+        return missing;
+      }
+    }
+    return null;
+  }
+
+  private File findBySizeAndTime(final File file)
+  {
+    final String sizeAndTime = getSizeAndTime(file);
+    if (numNewBySizeAndTime.getOrDefault(sizeAndTime, Integer.valueOf(0)).intValue() != 1)
+    {
+      return null;
+    }
+    File candidate = null;
+    for (final File missing : missingBySizeAndTime.getOrDefault(sizeAndTime, Collections.emptyList()))
+    {
+      if (missingParents.containsKey(missing))
+      {
+        if (candidate != null)
+        {
+          // ambiguous
+          return null;
+        }
+        candidate = missing;
+      }
+    }
+    return candidate != null && isSameContent(candidate, file) ? candidate : null;
+  }
+
+  /**
+   * Decide whether a new file has the content of the only missing file with the same size and time of last
+   * modification, by fingerprint, hash value or name, in that order.
+   */
+  private boolean isSameContent(final File missing, final File file)
+  {
+    final long value = missing.getFingerprint();
+    if (value != File.UNKNOWN)
+    {
+      fingerprint.update(config, file);
+      if (file.getFingerprint() != File.UNKNOWN)
+      {
+        return value == file.getFingerprint();
+      }
+    }
+    final String hashValue = missing.getHashValue();
+    if (hashValue == null)
+    {
+      return missing.getName().equals(file.getName());
+    }
+    // the hash value is kept in the new file even if it differs, it needs to be computed anyway
+    return hashValue.equals(new HashCreation().update(config, file));
+  }
+
+  private void move(final File missing, final File file)
+  {
+    missingParents.remove(missing).remove(missing);
+    file.setId(missing.getId());
+    file.setHashValue(missing.getHashValue());
+    file.setHashCreatedMillis(missing.getHashCreatedMillis());
+    file.setChecksum(missing.getChecksum());
+    if (file.getFingerprint() == File.UNKNOWN)
+    {
+      file.setFingerprint(missing.getFingerprint());
+    }
+    file.setMimeType(missing.getMimeType());
+    file.setFileGroup(missing.getFileGroup());
+    file.setFileType(missing.getFileType());
+    file.setDurationNanos(missing.getDurationNanos());
+    file.setImageWidth(missing.getImageWidth());
+    file.setImageHeight(missing.getImageHeight());
+    file.setWikidataEntityId(missing.getWikidataEntityId());
+    file.setState(FileState.Moved);
+    if (LOGGER.isDebugEnabled())
+    {
+      LOGGER.debug(config.msg("movedetection.debug.moved_file", getPath(missing), getPath(file)));
+    }
+  }
+
+  private static String getPath(final File file)
+  {
+    final java.io.File entry = file.getEntry();
+    return entry == null ? file.getName() : entry.getAbsolutePath();
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.db.JdbcSerialization;
+import am.filesystem.FileSystemHelper;
+import am.filesystem.VolumeScanner;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.Volume;
+
+/**
+ * Merge file system and catalog one directory at a time instead of building a complete scanned and a complete loaded
+ * tree first. For each directory the file system listing and the catalog's rows are sorted by name and merged in a
+ * single pass; the merged directory is handed to a {@link DirectoryConsumer} and then dropped. Peak memory thus depends
+ * on the depth of the directory tree and the size of single directories, not on the size of the catalog.
+ *
+ * @author Marco Schmidt
+ */
+public class StreamingMerge
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(StreamingMerge.class);
+  private static final Comparator<Directory> DIRECTORY_ORDER = Comparator.comparing(Directory::getName, Directory.NAME_ORDER);
+  private static final Comparator<File> FILE_ORDER = Comparator.comparing(File::getName, Directory.NAME_ORDER);
+  private final AppConfig config;
+  private final JdbcSerialization io;
+  private final DirectoryConsumer consumer;
+  private final VolumeProcessor processor = new VolumeProcessor();
+  private long numDirectories;
+  private long numFiles;
+
+  public StreamingMerge(final AppConfig config, final JdbcSerialization io, final DirectoryConsumer consumer)
+  {
+    this.config = config;
+    this.io = io;
+    this.consumer = consumer;
+    processor.setConfig(config);
+  }
+
+  /**
+   * Merge all volumes stored in the catalog.
+   */
+  public void process()
+  {
+    final List<Volume> volumes = io.getVolumeMapper().loadAll(io);
+    if (volumes != null)
+    {
+      for (final Volume vol : volumes)
+      {
+        io.beginTransaction();
+        merge(vol);
+        io.commitTransaction();
+      }
+    }
+  }
+
+  /**
+   * Merge a single volume.
+   *
+   * @param vol
+   *          volume as loaded from the database, without its directory tree
+   */
+  public void merge(final Volume vol)
+  {
+    final long millis = System.currentTimeMillis();
+    numDirectories = 0;
+    numFiles = 0;
+    final Path path = Paths.get(vol.getPath());
+    final boolean exists = Files.isDirectory(path);
+    if (!exists)
+    {
+      LOGGER.error(config.msg("processor.error.directory_invalid", vol.getPath()));
+    }
+    final Directory loadedRoot = io.getDirectoryMapper().loadRoot(io, vol.getId());
+    merge(new VolumeScanner(config, vol), vol, path, exists, "", loadedRoot, null);
+    LOGGER.info(config.msg("streaming.info.merged_volume", FileSystemHelper.normalizePath(vol.getPath()),
+        numDirectories, numFiles, System.currentTimeMillis() - millis));
+  }
+
+  private void merge(final VolumeScanner scanner, final Volume vol, final Path path, final boolean exists,
+      final String name, final Directory loaded, final Long parentRef)
+  {
+    final List<Directory> scannedDirs = new ArrayList<>();
+    final List<File> scannedFiles = new ArrayList<>();
+    if (exists && !list(scanner, path, scannedDirs, scannedFiles))
+    {
+      // leave catalog content of an unreadable directory untouched
+      return;
+    }
+    final Directory merged = new Directory();
+    merged.setName(name);
+    merged.setVolumeRef(vol.getId());
+    merged.setParentRef(parentRef);
+    merged.setEntry(path.toFile());
+    List<File> loadedFiles = Collections.emptyList();
+    List<Directory> loadedDirs = Collections.emptyList();
+    if (loaded != null)
+    {
+      merged.setId(loaded.getId());
+      merged.setWikidataEntityId(loaded.getWikidataEntityId());
+      loadedFiles = io.getFileMapper().loadByDirectory(io, loaded.getId());
+      loadedDirs = io.getDirectoryMapper().loadSubdirectories(io, loaded.getId());
+    }
+    mergeFiles(merged, scannedFiles, loadedFiles, path);
+    numDirectories++;
+    consumer.accept(vol, merged);
+
+    // files are done, only keep what is needed to descend
+    final Long mergedId = merged.getId();
+    MergeJoin.join(scannedDirs, sort(loadedDirs, DIRECTORY_ORDER), Directory::getName, (scannedDir, loadedDir) ->
+    {
+      final String subName = scannedDir == null ? loadedDir.getName() : scannedDir.getName();
+      merge(scanner, vol, path.resolve(subName), scannedDir != null, subName, loadedDir, mergedId);
+    });
+  }
+
+  private void mergeFiles(final Directory merged, final List<File> scannedFiles, final List<File> loadedFiles,
+      final Path path)
+  {
+    MergeJoin.join(scannedFiles, sort(loadedFiles, FILE_ORDER), File::getName, (scannedFile, loadedFile) ->
+    {
+      final File file = processor.mergeFile(scannedFile, loadedFile);
+      file.setEntry(path.resolve(file.getName()).toFile());
+      merged.add(file);
+      processor.print(file);
+      numFiles++;
+    });
+  }
+
+  /**
+   * Sort database rows in Java rather than with SQL order by, as SQLite's binary collation of UTF-8 differs from
+   * {@link String#compareTo(String)} for some characters and both sides must use the same order.
+   */
+  private static <T> List<T> sort(final List<T> list, final Comparator<T> order)
+  {
+    if (list == null)
+    {
+      return Collections.emptyList();
+    }
+    final List<T> result = new ArrayList<>(list);
+    result.sort(order);
+    return result;
+  }
+
+  private boolean list(final VolumeScanner scanner, final Path path, final List<Directory> dirs,
+      final List<File> files)
+  {
+    DirectoryStream<Path> stream = null;
+    try
+    {
+      stream = Files.newDirectoryStream(path);
+      for (final Path entry : stream)
+      {
+        final BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+            LinkOption.NOFOLLOW_LINKS);
+        final Path fileName = entry.getFileName();
+        final String name = fileName == null ? "" : fileName.toString();
+        if (attrs.isDirectory())
+        {
+          if (!scanner.isIgnoredDirectory(entry))
+          {
+            dirs.add(scanner.addDirectory(entry));
+          }
+        }
+        else
+          if (!scanner.isIgnoredFile(entry, name))
+          {
+            files.add(scanner.createFile(entry, name, attrs));
+          }
+      }
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("scanner.debug.failed_listing_directory", path), e);
+      return false;
+    }
+    finally
+    {
+      FileSystemHelper.close(stream);
+    }
+    dirs.sort(DIRECTORY_ORDER);
+    files.sort(FILE_ORDER);
+    return true;
+  }
+
+  public long getNumDirectories()
+  {
+    return numDirectories;
+  }
+
+  public long getNumFiles()
+  {
+    return numFiles;
+  }
+}
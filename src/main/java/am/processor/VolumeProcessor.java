@@ -16,20 +16,23 @@
 package am.processor;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import am.app.AppConfig;
 import am.filesystem.FileSystemHelper;
 import am.filesystem.model.Directory;
+import am.filesystem.model.DirectoryVisitor;
 import am.filesystem.model.File;
 import am.filesystem.model.FileState;
 import am.filesystem.model.Volume;
+import am.processor.hashes.QuickFingerprint;
 
 /**
  * Merge two descriptions of a directory tree (volume), one as was just determined from the file system and one stored
@@ -41,33 +44,29 @@ public class VolumeProcessor
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(VolumeProcessor.class);
   private AppConfig config;
+  private final QuickFingerprint fingerprint = new QuickFingerprint();
 
   private void assignFileState(Directory dir, FileState state)
   {
     if (dir != null)
     {
-      for (final Directory sub : dir.getSubdirectories())
-      {
-        assignFileState(sub, state);
-      }
-      for (final File file : dir.getFiles())
-      {
-        file.setState(state);
-      }
+      dir.accept(DirectoryVisitor.ofFiles(file -> file.setState(state)));
     }
   }
 
-  private void assignFileSystemEntries(java.io.File parent, Directory dir)
+  private void assignFileSystemEntries(java.io.File parent, Directory dir, Long volumeRef)
   {
     final java.io.File dirEntry = new java.io.File(parent, dir.getName());
     dir.setEntry(dirEntry);
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
-      assignFileSystemEntries(dirEntry, sub);
+      assignFileSystemEntries(dirEntry, sub, volumeRef);
     }
-    for (final File file : dir.getFiles())
+    for (final File file : dir.getFilesView())
     {
       file.setEntry(new java.io.File(dirEntry, file.getName()));
+      // new files get the volume reference when stored, later stages may need it before that
+      file.setVolumeRef(volumeRef);
     }
   }
 
@@ -76,7 +75,7 @@ public class VolumeProcessor
     final String path = vol.getPath();
     final java.io.File entry = new java.io.File(path);
     vol.setEntry(entry);
-    assignFileSystemEntries(entry, vol.getRoot());
+    assignFileSystemEntries(entry, vol.getRoot(), vol.getId());
   }
 
   public Directory mergeDirectory(Directory scanned, Directory loaded)
@@ -95,23 +94,14 @@ public class VolumeProcessor
     merged.setId(loaded.getId());
     merged.setWikidataEntityId(loaded.getWikidataEntityId());
     merged.setName(scanned.getName());
+    merged.setLastModified(scanned.getLastModified());
+    merged.setNumEntries(scanned.getNumEntries());
 
-    final Set<String> names = new HashSet<>();
-    names.addAll(scanned.getSubdirectoryNames());
-    names.addAll(loaded.getSubdirectoryNames());
-    for (final String subName : names)
-    {
-      merged.add(mergeDirectory(scanned.getSubdirectory(subName), loaded.getSubdirectory(subName)));
-    }
-
-    names.clear();
-    names.addAll(scanned.getFileNames());
-    names.addAll(loaded.getFileNames());
-    for (final String fileName : names)
-    {
-      merged.add(mergeFile(scanned.getFile(fileName), loaded.getFile(fileName)));
-    }
-
+    scanned.sortByName();
+    loaded.sortByName();
+    MergeJoin.join(scanned.getSubdirectoriesView(), loaded.getSubdirectoriesView(), Directory::getName,
+        (s, l) -> merged.add(mergeDirectory(s, l)));
+    MergeJoin.join(scanned.getFilesView(), loaded.getFilesView(), File::getName, (s, l) -> merged.add(mergeFile(s, l)));
     return merged;
   }
 
@@ -136,28 +126,31 @@ public class VolumeProcessor
       scanned.setState(FileState.New);
       return scanned;
     }
+    if (scanned.equals(loaded))
+    {
+      // taken over from the catalog by an incremental scan, views of a compact catalog are equal but not the same
+      loaded.setState(FileState.Identical);
+      return loaded;
+    }
     final File result = new File();
     result.setId(loaded.getId());
     result.setName(scanned.getName());
-    final Date scannedLastMod = scanned.getLastModified();
-    final Date loadedLastMod = loaded.getLastModified();
-    boolean modified = !scannedLastMod.equals(loadedLastMod);
-    result.setLastModified(scannedLastMod);
-    final Long scannedSize = scanned.getByteSize();
-    final Long loadedSize = loaded.getByteSize();
-    if (!modified)
-    {
-      modified = !scannedSize.equals(loadedSize);
-    }
+    final long scannedLastMod = scanned.getLastModifiedMillis();
+    final long scannedSize = scanned.getByteSizeValue();
+    final boolean modified = scannedLastMod != loaded.getLastModifiedMillis() || scannedSize != loaded.getByteSizeValue();
+    result.setLastModifiedMillis(scannedLastMod);
     result.setState(modified ? FileState.Modified : FileState.Identical);
-    result.setByteSize(scannedSize);
+    result.setByteSizeValue(scannedSize);
+    result.setFileKey(scanned.getFileKey());
     final String fileType = loaded.getFileType();
     result.setFileType(fileType);
     if (result.getState() == FileState.Identical)
     {
       // if loaded and scanned are identical copy metadata from loaded record
-      result.setHashCreated(loaded.getHashCreated());
+      result.setHashCreatedMillis(loaded.getHashCreatedMillis());
       result.setHashValue(loaded.getHashValue());
+      result.setChecksum(loaded.getChecksum());
+      result.setFingerprint(loaded.getFingerprint());
       result.setDurationNanos(loaded.getDurationNanos());
       result.setImageHeight(loaded.getImageHeight());
       result.setImageWidth(loaded.getImageWidth());
@@ -199,6 +192,35 @@ public class VolumeProcessor
   }
 
   public List<Volume> processVolumes(List<Volume> scannedVolumes, List<Volume> loadedVolumes)
+  {
+    final int numThreads = config == null ? 0 : config.getMergeThreads();
+    if (numThreads > 0)
+    {
+      final ForkJoinPool pool = new ForkJoinPool(numThreads);
+      try
+      {
+        return processVolumes(scannedVolumes, loadedVolumes, pool);
+      }
+      finally
+      {
+        pool.shutdown();
+      }
+    }
+    return processVolumes(scannedVolumes, loadedVolumes, null);
+  }
+
+  /**
+   * Merge scanned and loaded volumes.
+   *
+   * @param scannedVolumes
+   *          volumes just scanned from the file system
+   * @param loadedVolumes
+   *          volumes loaded from the database
+   * @param pool
+   *          if non-null, merge each volume with a {@link MergeTask} in that pool, otherwise single-threaded
+   * @return merged volumes
+   */
+  List<Volume> processVolumes(List<Volume> scannedVolumes, List<Volume> loadedVolumes, ForkJoinPool pool)
   {
     final List<Volume> result = new ArrayList<>();
 
@@ -211,7 +233,9 @@ public class VolumeProcessor
     keys.addAll(scannedMap.keySet());
     keys.addAll(loadedMap.keySet());
 
-    // traverse all volumes
+    // traverse all volumes, pairing missing and new files of each merged volume
+    final MoveDetection moveDetection = new MoveDetection(config);
+    final Map<Volume, List<File>> changedFiles = new IdentityHashMap<>();
     for (final String key : keys)
     {
       final Volume scanned = scannedMap.get(key);
@@ -220,7 +244,10 @@ public class VolumeProcessor
       if (loaded == null)
       {
         merged = scanned;
-        assignFileState(merged.getRoot(), FileState.New);
+        if (pool == null)
+        {
+          assignFileState(merged.getRoot(), FileState.New);
+        }
       }
       else
       {
@@ -236,27 +263,109 @@ public class VolumeProcessor
             root.setEntry(new java.io.File(merged.getPath()));
             merged.setRoot(root);
           }
-          assignFileState(root, FileState.Missing);
+          if (pool == null)
+          {
+            assignFileState(root, FileState.Missing);
+          }
         }
-        else
+        else if (pool == null)
         {
           merged = mergeVolume(scanned, loaded);
         }
+        else
+        {
+          merged = new Volume();
+          merged.setId(loaded.getId());
+          merged.setPath(FileSystemHelper.normalizePath(scanned.getPath()));
+          merged.setValidator(loaded.getValidator());
+        }
       }
       result.add(merged);
-      assignFileSystemEntries(merged);
+      if (pool == null)
+      {
+        assignFileSystemEntries(merged);
+        moveDetection.detect(merged);
+        updateFingerprints(merged);
+      }
+      else
+      {
+        final List<File> changed = mergeParallel(pool, merged, scanned == null ? null : scanned.getRoot(),
+            loaded == null ? null : loaded.getRoot(), moveDetection);
+        if (changed != null)
+        {
+          changedFiles.put(merged, changed);
+        }
+      }
     }
 
-    print(result);
+    if (isPrinting())
+    {
+      print(result, changedFiles);
+    }
 
     return result;
   }
 
-  private void print(List<Volume> volumes)
+  /**
+   * Merge, assign file system entries and count file states of a volume in one parallel traversal, then detect moved
+   * files.
+   *
+   * @return files to be printed or null if the merged tree must be traversed for printing
+   */
+  private List<File> mergeParallel(ForkJoinPool pool, Volume merged, Directory scannedRoot, Directory loadedRoot,
+      MoveDetection moveDetection)
+  {
+    final long millis = System.currentTimeMillis();
+    final java.io.File entry = new java.io.File(merged.getPath());
+    merged.setEntry(entry);
+    final MergeTask task = new MergeTask(this, scannedRoot, loadedRoot, entry, merged.getId());
+    merged.setRoot(pool.invoke(task));
+    final int numMoved = moveDetection.detect(merged);
+    final int numChanged = updateFingerprints(merged);
+    LOGGER.info(config.msg("volumeprocessor.info.merged", merged.getPath(), System.currentTimeMillis() - millis,
+        pool.getParallelism(), task.getCount(FileState.New) - numMoved, task.getCount(FileState.Modified),
+        task.getCount(FileState.Missing) - numMoved, task.getCount(FileState.Moved) + numMoved,
+        task.getCount(FileState.Identical)));
+    // moved files and files with a different fingerprint change state and missing counterparts leave the tree,
+    // identical files are only printed when tracing
+    return numMoved > 0 || numChanged > 0 || LOGGER.isTraceEnabled() ? null : task.getChangedFiles();
+  }
+
+  /**
+   * Compute fingerprints of new and modified files and verify those of identical files if so configured, after move
+   * detection so that moved files keep their fingerprints.
+   *
+   * @return number of identical files found to be modified
+   */
+  private int updateFingerprints(Volume merged)
+  {
+    return config == null ? 0 : fingerprint.update(config, merged);
+  }
+
+  /**
+   * Changed files are printed unless neither logged nor reported.
+   */
+  private boolean isPrinting()
+  {
+    return config == null || config.isLogFileChanges() || config.getChangeReport() != null;
+  }
+
+  private void print(List<Volume> volumes, Map<Volume, List<File>> changedFiles)
   {
     for (final Volume vol : volumes)
     {
-      print(vol);
+      final List<File> changed = changedFiles.get(vol);
+      if (changed == null)
+      {
+        print(vol);
+      }
+      else
+      {
+        for (final File file : changed)
+        {
+          print(file);
+        }
+      }
     }
   }
 
@@ -267,23 +376,39 @@ public class VolumeProcessor
 
   private void print(Directory dir)
   {
-    for (final Directory sd : dir.getSubdirectories())
+    for (final Directory sd : dir.getSubdirectoriesView())
     {
       print(sd);
     }
-    for (final File file : dir.getFiles())
+    for (final File file : dir.getFilesView())
     {
       print(file);
     }
   }
 
-  private void print(File file)
+  /**
+   * Log a changed file, depending on {@link AppConfig#isLogFileChanges()}, and add it to the change report, if there
+   * is one.
+   *
+   * @param file
+   *          file with state and file system entry assigned
+   */
+  public void print(File file)
   {
     final FileState state = file.getState();
     if (state == null)
     {
       return;
     }
+    final ChangeReport report = config.getChangeReport();
+    if (report != null)
+    {
+      report.add(file);
+    }
+    if (!config.isLogFileChanges())
+    {
+      return;
+    }
     switch (state)
     {
     case New:
@@ -301,6 +426,11 @@ public class VolumeProcessor
       LOGGER.warn(config.msg("volumeprocessor.warn.missing_file", file.getEntry().getAbsolutePath()));
       break;
     }
+    case Moved:
+    {
+      LOGGER.info(config.msg("volumeprocessor.info.moved_file", file.getEntry().getAbsolutePath()));
+      break;
+    }
     default:
     {
       if (LOGGER.isTraceEnabled())
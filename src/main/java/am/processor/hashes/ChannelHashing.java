@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Checksum;
+import am.filesystem.IoLimiter;
+
+/**
+ * Feed the content of a file to a message digest and a checksum from a {@link FileChannel} instead of an input stream. How a file is
+ * read is decided per file by {@link #select(long, boolean)}:
+ * <ul>
+ * <li>small files are read into a direct buffer, one read call after another,</li>
+ * <li>larger files are read into two alternating direct buffers, a prefetch thread filling the next buffer while the
+ * digest works on the current one,</li>
+ * <li>very large files on stores other than rotating hard disks are mapped into memory one region at a time, the
+ * digest reading directly from the page cache and the kernel's read-ahead doing the prefetching; rotating disks are
+ * not mapped because page faults read in small pieces, causing more seeks when other programs use the same disk.</li>
+ * </ul>
+ * Buffers are allocated once per thread. Data appended to a file while it is hashed is read up to the end, like with
+ * an input stream.
+ *
+ * @author Marco Schmidt
+ */
+final class ChannelHashing
+{
+  /**
+   * Way of reading a file.
+   */
+  enum Mode
+  {
+    Read, Prefetch, Map
+  }
+
+  /**
+   * Size of each direct buffer in bytes.
+   */
+  static final int BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * Minimum file size in bytes for prefetching, below that the second thread costs more than it saves.
+   */
+  static final long PREFETCH_MIN_SIZE = 4L * BUFFER_SIZE;
+
+  /**
+   * Minimum file size in bytes for mapping files into memory.
+   */
+  static final long MAP_MIN_SIZE = 64L * BUFFER_SIZE;
+
+  /**
+   * Number of bytes mapped at a time.
+   */
+  static final long MAP_REGION_SIZE = 64L * BUFFER_SIZE;
+
+  private static final ThreadLocal<ByteBuffer[]> BUFFERS = ThreadLocal.withInitial(() -> new ByteBuffer[]
+  {
+      ByteBuffer.allocateDirect(BUFFER_SIZE), ByteBuffer.allocateDirect(BUFFER_SIZE)
+  });
+
+  private static final ExecutorService PREFETCH = Executors.newCachedThreadPool(r ->
+  {
+    final Thread thread = new Thread(r, "hash-prefetch");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private ChannelHashing()
+  {
+  }
+
+  /**
+   * Pick the way of reading a file.
+   *
+   * @param size
+   *          file size in bytes
+   * @param rotational
+   *          whether the file is located on a rotating hard disk
+   * @return mode to be used
+   */
+  static Mode select(final long size, final boolean rotational)
+  {
+    if (size >= MAP_MIN_SIZE && !rotational)
+    {
+      return Mode.Map;
+    }
+    return size >= PREFETCH_MIN_SIZE ? Mode.Prefetch : Mode.Read;
+  }
+
+  /**
+   * Read a channel from its beginning to its end and update a digest and a checksum with its content.
+   *
+   * @param channel
+   *          open channel
+   * @param mode
+   *          way of reading
+   * @param digest
+   *          digest to be updated or null
+   * @param checksum
+   *          checksum to be updated or null
+   * @param limiter
+   *          I/O budget of the file's volume or null
+   * @param cancel
+   *          checked after each read call, reading stops with a {@link CancellationException} once it returns true;
+   *          null to read up to the end
+   * @return number of bytes read
+   * @throws IOException
+   *           if reading fails
+   */
+  static long update(final FileChannel channel, final Mode mode, final MessageDigest digest, final Checksum checksum,
+      final IoLimiter limiter, final BooleanSupplier cancel) throws IOException
+  {
+    final Reads reads = new Reads(limiter, cancel);
+    long position = 0;
+    if (mode == Mode.Map)
+    {
+      position = map(channel, digest, checksum, reads);
+    }
+    else
+      if (mode == Mode.Prefetch)
+      {
+        position = prefetch(channel, digest, checksum, reads);
+      }
+    return read(channel, position, Long.MAX_VALUE, digest, checksum, reads);
+  }
+
+  /**
+   * Read a range of a channel into a digest, one buffer at a time.
+   *
+   * @param channel
+   *          open channel
+   * @param start
+   *          offset of the first byte to be read
+   * @param end
+   *          offset after the last byte to be read; reading stops earlier at the end of the channel
+   * @param digest
+   *          digest to be updated
+   * @param limiter
+   *          I/O budget of the file's volume or null
+   * @param cancel
+   *          checked after each read call like with
+   *          {@link #update(FileChannel, Mode, MessageDigest, Checksum, IoLimiter, BooleanSupplier)}, or null
+   * @return number of bytes read
+   * @throws IOException
+   *           if reading fails
+   */
+  static long update(final FileChannel channel, final long start, final long end, final MessageDigest digest,
+      final IoLimiter limiter, final BooleanSupplier cancel) throws IOException
+  {
+    return read(channel, start, end, digest, null, new Reads(limiter, cancel)) - start;
+  }
+
+  /**
+   * What happens after each read call: taking tokens from the I/O budget and checking for cancellation.
+   */
+  private static final class Reads
+  {
+    private final IoLimiter limiter;
+    private final BooleanSupplier cancel;
+
+    Reads(final IoLimiter limiter, final BooleanSupplier cancel)
+    {
+      this.limiter = limiter;
+      this.cancel = cancel;
+    }
+
+    void completed(final long numBytes)
+    {
+      if (limiter != null)
+      {
+        limiter.acquire(1, numBytes);
+      }
+      if (cancel != null && cancel.getAsBoolean())
+      {
+        throw new CancellationException();
+      }
+    }
+  }
+
+  /**
+   * Feed the remaining bytes of a buffer to the checksum and the digest, leaving no bytes remaining.
+   */
+  private static void consume(final ByteBuffer buffer, final MessageDigest digest, final Checksum checksum)
+  {
+    if (checksum != null)
+    {
+      final int start = buffer.position();
+      checksum.update(buffer);
+      buffer.position(start);
+    }
+    if (digest != null)
+    {
+      digest.update(buffer);
+    }
+    else
+    {
+      buffer.position(buffer.limit());
+    }
+  }
+
+  private static long read(final FileChannel channel, final long start, final long end, final MessageDigest digest,
+      final Checksum checksum, final Reads reads) throws IOException
+  {
+    final ByteBuffer buffer = BUFFERS.get()[0];
+    long position = start;
+    int numRead;
+    buffer.clear();
+    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+    while (position < end && (numRead = channel.read(buffer, position)) >= 0)
+    {
+      position += numRead;
+      reads.completed(numRead);
+      buffer.flip();
+      consume(buffer, digest, checksum);
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+    }
+    return position;
+  }
+
+  private static long prefetch(final FileChannel channel, final MessageDigest digest, final Checksum checksum,
+      final Reads reads) throws IOException
+  {
+    final ByteBuffer[] buffers = BUFFERS.get();
+    int current = 0;
+    long position = 0;
+    Future<Integer> pending = submit(channel, buffers[current], position);
+    try
+    {
+      int numRead;
+      while ((numRead = await(pending)) >= 0)
+      {
+        position += numRead;
+        final ByteBuffer full = buffers[current];
+        current = 1 - current;
+        pending = submit(channel, buffers[current], position);
+        reads.completed(numRead);
+        full.flip();
+        consume(full, digest, checksum);
+      }
+    }
+    finally
+    {
+      // the buffer must not be in use when it is handed to the next file
+      if (!pending.isDone())
+      {
+        awaitQuietly(pending);
+      }
+    }
+    return position;
+  }
+
+  private static Future<Integer> submit(final FileChannel channel, final ByteBuffer buffer, final long position)
+  {
+    buffer.clear();
+    return PREFETCH.submit(() -> Integer.valueOf(channel.read(buffer, position)));
+  }
+
+  private static int await(final Future<Integer> future) throws IOException
+  {
+    try
+    {
+      return future.get().intValue();
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (final ExecutionException e)
+    {
+      final Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+  }
+
+  private static void awaitQuietly(final Future<Integer> future)
+  {
+    try
+    {
+      await(future);
+    }
+    catch (final IOException e)
+    {
+      // the error of the current read has been reported already
+    }
+  }
+
+  private static long map(final FileChannel channel, final MessageDigest digest, final Checksum checksum,
+      final Reads reads) throws IOException
+  {
+    final long size = channel.size();
+    long position = 0;
+    while (position < size)
+    {
+      final long length = Math.min(MAP_REGION_SIZE, size - position);
+      final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      reads.completed(length);
+      try
+      {
+        consume(region, digest, checksum);
+      }
+      catch (final InternalError e)
+      {
+        // the JVM reports access to a page beyond the end of a file truncated after mapping this way
+        throw new IOException(e);
+      }
+      position += length;
+    }
+    return position;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Digest passing its input on to a digest of the complete input and to a digest of the current fixed-size chunk, so
+ * that the hash value of a file and those of its chunks are computed from the same reads. The result of
+ * {@link #digest()} is that of the complete input; the chunk hash values are available from {@link #getChunkHashes()}
+ * until the next {@link #reset()}.
+ *
+ * @author Marco Schmidt
+ */
+final class ChunkDigest extends MessageDigest
+{
+  private final MessageDigest fileDigest;
+  private final MessageDigest chunkDigest;
+  private final long chunkSize;
+  private final ByteArrayOutputStream hashes = new ByteArrayOutputStream();
+  private long chunkBytes;
+
+  ChunkDigest(final MessageDigest fileDigest, final MessageDigest chunkDigest, final long chunkSize)
+  {
+    super(fileDigest.getAlgorithm());
+    this.fileDigest = fileDigest;
+    this.chunkDigest = chunkDigest;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Return the hash values of all chunks after {@link #digest()}, or of the complete chunks so far before that.
+   *
+   * @return concatenated hash values
+   */
+  byte[] getChunkHashes()
+  {
+    return hashes.toByteArray();
+  }
+
+  @Override
+  protected void engineUpdate(final byte input)
+  {
+    fileDigest.update(input);
+    chunkDigest.update(input);
+    chunkBytes++;
+    completeChunk();
+  }
+
+  @Override
+  protected void engineUpdate(final byte[] input, final int offset, final int len)
+  {
+    fileDigest.update(input, offset, len);
+    int pos = offset;
+    final int end = offset + len;
+    while (pos < end)
+    {
+      final int num = (int) Math.min(end - pos, chunkSize - chunkBytes);
+      chunkDigest.update(input, pos, num);
+      chunkBytes += num;
+      pos += num;
+      completeChunk();
+    }
+  }
+
+  @Override
+  protected void engineUpdate(final ByteBuffer input)
+  {
+    final int start = input.position();
+    final int end = input.limit();
+    while (input.position() < end)
+    {
+      final int num = (int) Math.min(end - input.position(), chunkSize - chunkBytes);
+      input.limit(input.position() + num);
+      chunkDigest.update(input);
+      input.limit(end);
+      chunkBytes += num;
+      completeChunk();
+    }
+    input.position(start);
+    fileDigest.update(input);
+  }
+
+  private void completeChunk()
+  {
+    if (chunkBytes == chunkSize)
+    {
+      final byte[] value = chunkDigest.digest();
+      hashes.write(value, 0, value.length);
+      chunkBytes = 0;
+    }
+  }
+
+  @Override
+  protected byte[] engineDigest()
+  {
+    if (chunkBytes > 0)
+    {
+      final byte[] value = chunkDigest.digest();
+      hashes.write(value, 0, value.length);
+      chunkBytes = 0;
+    }
+    return fileDigest.digest();
+  }
+
+  @Override
+  protected void engineReset()
+  {
+    fileDigest.reset();
+    chunkDigest.reset();
+    hashes.reset();
+    chunkBytes = 0;
+  }
+
+  @Override
+  protected int engineGetDigestLength()
+  {
+    return fileDigest.getDigestLength();
+  }
+
+  /**
+   * Compute the root of a Merkle tree over chunk hash values. Pairs of neighbouring nodes are hashed together, after a
+   * byte 1 that keeps inner nodes apart from chunk hash values, and a node without a neighbour moves up unchanged,
+   * until a single node is left.
+   *
+   * @param leaves
+   *          concatenated chunk hash values
+   * @param digest
+   *          digest of the algorithm the chunk hash values were computed with, in its initial state
+   * @return root hash value, that of the empty input for no leaves
+   */
+  static byte[] getMerkleRoot(final byte[] leaves, final MessageDigest digest)
+  {
+    final int length = digest.getDigestLength();
+    int num = leaves.length / length;
+    if (num == 0)
+    {
+      return digest.digest();
+    }
+    byte[] level = leaves;
+    while (num > 1)
+    {
+      final int numParents = (num + 1) / 2;
+      final byte[] parents = new byte[numParents * length];
+      for (int i = 0; i < num / 2; i++)
+      {
+        digest.update((byte) 1);
+        digest.update(level, 2 * i * length, 2 * length);
+        System.arraycopy(digest.digest(), 0, parents, i * length, length);
+      }
+      if ((num & 1) != 0)
+      {
+        System.arraycopy(level, (num - 1) * length, parents, (numParents - 1) * length, length);
+      }
+      level = parents;
+      num = numParents;
+    }
+    return Arrays.copyOf(level, length);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.db.ChunkHashes;
+import am.db.ChunkHashesMapper;
+import am.db.JdbcSerialization;
+import am.filesystem.model.File;
+
+/**
+ * Chunk hash values of all files, loaded from the database before files are hashed and stored after the files were
+ * saved, so that hashing threads never access the database and new files can get chunk hash values before they have
+ * an id. Methods may be called by several threads at the same time.
+ *
+ * @author Marco Schmidt
+ */
+public class ChunkStore
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChunkStore.class);
+  private final Map<Long, ChunkHashes> byFile = new ConcurrentHashMap<>();
+  private final Map<File, ChunkHashes> changed = new IdentityHashMap<>();
+
+  /**
+   * Load all chunk hash values. Rows whose hash values do not lead to their stored Merkle root are dropped, they will
+   * be computed again the next time their file is read completely.
+   *
+   * @param config
+   *          application configuration
+   * @param io
+   *          database connection
+   * @return new store
+   */
+  public static ChunkStore load(final AppConfig config, final JdbcSerialization io)
+  {
+    final ChunkStore store = new ChunkStore();
+    final HashCreation creation = new HashCreation();
+    final MessageDigest digest = creation.createDigest(config, config.getHashConfig());
+    if (digest == null)
+    {
+      return store;
+    }
+    io.getChunkHashesMapper().forEach(io, chunks ->
+    {
+      final byte[] hashes = chunks.getHashes();
+      if (hashes != null && hashes.length == chunks.getNumChunks() * digest.getDigestLength()
+          && creation.toString(ChunkDigest.getMerkleRoot(hashes, digest)).equals(chunks.getRoot()))
+      {
+        store.byFile.put(chunks.getFileRef(), chunks);
+      }
+      else
+      {
+        LOGGER.warn(config.msg("chunkhashes.warn.root_differs", chunks.getFileRef()));
+      }
+    });
+    LOGGER.debug(config.msg("chunkhashes.debug.loaded", store.byFile.size()));
+    return store;
+  }
+
+  /**
+   * Get the chunk hash values of a file if they belong to the file's current content and chunk size: computed from a
+   * file of the same size together with the hash value the file still has.
+   *
+   * @param hashConfig
+   *          hash configuration with the chunk size
+   * @param file
+   *          file to look up
+   * @return chunk hash values or null
+   */
+  public ChunkHashes get(final HashConfig hashConfig, final File file)
+  {
+    final Long id = file.getId();
+    final ChunkHashes chunks = id == null ? null : byFile.get(id);
+    if (chunks == null || chunks.getChunkSize() != hashConfig.getChunkSize()
+        || chunks.getByteSize() != file.getByteSizeValue() || chunks.getHashValue() == null
+        || !chunks.getHashValue().equals(file.getHashValue()))
+    {
+      return null;
+    }
+    return chunks;
+  }
+
+  /**
+   * Return the number of bytes reading a file will take in the next run: the chunks of this run if the file has valid
+   * chunk hash values, its size otherwise.
+   *
+   * @param hashConfig
+   *          hash configuration with chunk size and chunks per run
+   * @param file
+   *          file to be read
+   * @return number of bytes, negative if unknown
+   */
+  public long getBytesToRead(final HashConfig hashConfig, final File file)
+  {
+    final ChunkHashes chunks = get(hashConfig, file);
+    if (chunks == null || hashConfig.getChunksPerRun() <= 0)
+    {
+      return file.getByteSizeValue();
+    }
+    final int first = chunks.getNextChunk() >= chunks.getNumChunks() ? 0 : chunks.getNextChunk();
+    final long start = first * chunks.getChunkSize();
+    final long end = Math.min(start + hashConfig.getChunksPerRun() * chunks.getChunkSize(), chunks.getByteSize());
+    return end - start;
+  }
+
+  /**
+   * Record new or changed chunk hash values of a file, to be stored by {@link #save(AppConfig, JdbcSerialization)}.
+   *
+   * @param file
+   *          file the values belong to
+   * @param chunks
+   *          chunk hash values
+   */
+  public void put(final File file, final ChunkHashes chunks)
+  {
+    final Long id = file.getId();
+    if (id != null)
+    {
+      final ChunkHashes old = byFile.put(id, chunks);
+      if (old != null && old != chunks && chunks.getId() == null)
+      {
+        chunks.setId(old.getId());
+      }
+    }
+    synchronized (changed)
+    {
+      changed.put(file, chunks);
+    }
+  }
+
+  /**
+   * Store all recorded chunk hash values of files that have an id, after the files were saved, and delete those of
+   * files no longer in the database.
+   *
+   * @param config
+   *          application configuration
+   * @param io
+   *          database connection
+   * @return number of rows written
+   */
+  public int save(final AppConfig config, final JdbcSerialization io)
+  {
+    final List<Map.Entry<File, ChunkHashes>> entries;
+    synchronized (changed)
+    {
+      entries = new ArrayList<>(changed.entrySet());
+      changed.clear();
+    }
+    final ChunkHashesMapper mapper = io.getChunkHashesMapper();
+    int numWritten = 0;
+    for (final Map.Entry<File, ChunkHashes> entry : entries)
+    {
+      final Long id = entry.getKey().getId();
+      if (id != null)
+      {
+        final ChunkHashes chunks = entry.getValue();
+        final ChunkHashes old = byFile.put(id, chunks);
+        if (old != null && old != chunks && chunks.getId() == null)
+        {
+          chunks.setId(old.getId());
+        }
+        chunks.setFileRef(id);
+        if (mapper.upsert(io, chunks))
+        {
+          numWritten++;
+        }
+      }
+    }
+    final int numDeleted = mapper.deleteOrphans(io);
+    LOGGER.debug(config.msg("chunkhashes.debug.saved", numWritten, numDeleted));
+    return numWritten;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.HashMap;
+import java.util.Map;
+import am.filesystem.FileSystemHelper;
+import am.filesystem.model.File;
+
+/**
+ * Find the {@link FileStore} of files and whether it is a rotating hard disk, looking up each directory and each store
+ * only once. Not thread-safe.
+ *
+ * @author Marco Schmidt
+ */
+class FileStores
+{
+  private final Map<java.io.File, FileStore> storesByDirectory = new HashMap<>();
+  private final Map<FileStore, Boolean> rotational = new HashMap<>();
+
+  /**
+   * Find the file store of a file.
+   *
+   * @param file
+   *          file with file system entry
+   * @return store or null if it could not be determined
+   */
+  FileStore get(final File file)
+  {
+    final java.io.File entry = file.getEntry();
+    final java.io.File dir = entry == null ? null : entry.getParentFile();
+    if (dir == null)
+    {
+      return null;
+    }
+    if (storesByDirectory.containsKey(dir))
+    {
+      return storesByDirectory.get(dir);
+    }
+    FileStore store;
+    try
+    {
+      store = Files.getFileStore(dir.toPath());
+    }
+    catch (final IOException | SecurityException | InvalidPathException e)
+    {
+      store = null;
+    }
+    storesByDirectory.put(dir, store);
+    return store;
+  }
+
+  boolean isRotational(final FileStore store)
+  {
+    return store != null
+        && rotational.computeIfAbsent(store, s -> Boolean.valueOf(FileSystemHelper.isRotational(s))).booleanValue();
+  }
+
+  boolean isRotational(final File file)
+  {
+    return isRotational(get(file));
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import am.filesystem.model.File;
+
+/**
+ * Limit of the hash creation work done in one run, following the configured {@link HashStrategy}.
+ *
+ * Limits known before hashing starts (percentage, amount of data, number of files) are applied by {@link #select(List)}
+ * to the list of files sorted by priority, so that the selection does not depend on the order in which parallel
+ * workers finish. A time limit is checked with {@link #canStart()} before each file and, if files are to be cancelled
+ * at the deadline, with {@link #isExhausted()} while a file is being read. Subclasses also report how much of the
+ * budget was used. Methods may be called by several threads at the same time.
+ *
+ * @author Marco Schmidt
+ */
+abstract class HashBudget
+{
+  private final long startMillis;
+  private final AtomicLong numFiles = new AtomicLong();
+  private final AtomicLong numBytes = new AtomicLong();
+  private final AtomicLong numCancelled = new AtomicLong();
+
+  HashBudget(final long startMillis)
+  {
+    this.startMillis = startMillis;
+  }
+
+  /**
+   * Create the budget for a hash creation run.
+   *
+   * @param hashConfig
+   *          strategy and its limit
+   * @param totalBytes
+   *          sum of the sizes of all files that could be hashed
+   * @param totalFiles
+   *          number of files that could be hashed
+   * @param nowMillis
+   *          start of the run
+   * @return new budget
+   */
+  static HashBudget create(final HashConfig hashConfig, final long totalBytes, final int totalFiles,
+      final long nowMillis)
+  {
+    final HashStrategy strategy = hashConfig.getStrategy();
+    final Double percentage = hashConfig.getPercentage();
+    if (strategy == HashStrategy.Percentage && totalBytes > 0 && percentage != null)
+    {
+      return new ByteBudget(nowMillis, percentage.doubleValue() / 100d * totalBytes, true);
+    }
+    if (strategy == HashStrategy.Data)
+    {
+      return new ByteBudget(nowMillis, hashConfig.getMaxBytes(), false);
+    }
+    if (strategy == HashStrategy.Files)
+    {
+      return new FileBudget(nowMillis, hashConfig.getMaxFiles());
+    }
+    if (strategy == HashStrategy.Time && hashConfig.getUntil() != null)
+    {
+      final long deadline = getNextOccurrence(hashConfig.getUntil(), nowMillis, ZoneId.systemDefault());
+      return new TimeBudget(nowMillis, deadline, System::currentTimeMillis);
+    }
+    return new FileBudget(nowMillis, totalFiles);
+  }
+
+  /**
+   * Find the next time a given time of day is reached, today or tomorrow.
+   *
+   * @param time
+   *          time of day
+   * @param nowMillis
+   *          current time
+   * @param zone
+   *          time zone of the time of day
+   * @return milliseconds since the epoch, always after nowMillis
+   */
+  static long getNextOccurrence(final LocalTime time, final long nowMillis, final ZoneId zone)
+  {
+    final ZonedDateTime now = Instant.ofEpochMilli(nowMillis).atZone(zone);
+    ZonedDateTime next = now.with(time);
+    if (!next.isAfter(now))
+    {
+      next = now.plusDays(1).with(time);
+    }
+    return next.toInstant().toEpochMilli();
+  }
+
+  /**
+   * Determine how many files from the start of the sorted list fit into the budget.
+   *
+   * @param files
+   *          files sorted by priority
+   * @return number of files to be hashed at most
+   */
+  int select(final List<File> files)
+  {
+    return select(files, File::getByteSizeValue);
+  }
+
+  /**
+   * Determine how many files from the start of the sorted list fit into the budget, with the number of bytes each file
+   * costs to read in this run.
+   *
+   * @param files
+   *          files sorted by priority
+   * @param bytes
+   *          number of bytes to be read for a file, negative if unknown
+   * @return number of files to be hashed at most
+   */
+  abstract int select(List<File> files, ToLongFunction<File> bytes);
+
+  /**
+   * Return whether hashing another file may start.
+   *
+   * @return true if there is budget left
+   */
+  boolean canStart()
+  {
+    return true;
+  }
+
+  /**
+   * Return whether the budget is used up while a file is being read.
+   *
+   * @return true if reading should stop
+   */
+  boolean isExhausted()
+  {
+    return false;
+  }
+
+  /**
+   * Return the portion of the budget used so far.
+   *
+   * @return used part, 1 for all of it; may be larger than 1 when the last file exceeded the budget
+   */
+  abstract double getUtilization();
+
+  /**
+   * Count a file whose hash value was computed or whose content was partly verified.
+   *
+   * @param bytes
+   *          number of bytes read
+   */
+  void hashed(final long bytes)
+  {
+    numFiles.incrementAndGet();
+    numBytes.addAndGet(Math.max(bytes, 0));
+  }
+
+  /**
+   * Count a file that was abandoned because the budget was used up while reading it.
+   */
+  void cancelled()
+  {
+    numCancelled.incrementAndGet();
+  }
+
+  long getStartMillis()
+  {
+    return startMillis;
+  }
+
+  long getNumFiles()
+  {
+    return numFiles.get();
+  }
+
+  long getNumBytes()
+  {
+    return numBytes.get();
+  }
+
+  long getNumCancelled()
+  {
+    return numCancelled.get();
+  }
+
+  /**
+   * Budget for an amount of data, from {@link HashStrategy#Percentage} or {@link HashStrategy#Data}. With a percentage
+   * the file that reaches the limit is still hashed completely, so that at least one file gets hashed. An absolute
+   * amount of data is a hard limit, selection stops before the file that would exceed it.
+   */
+  static final class ByteBudget extends HashBudget
+  {
+    private final double limit;
+    private final boolean inclusive;
+
+    ByteBudget(final long startMillis, final double limit, final boolean inclusive)
+    {
+      super(startMillis);
+      this.limit = limit;
+      this.inclusive = inclusive;
+    }
+
+    @Override
+    int select(final List<File> files, final ToLongFunction<File> bytes)
+    {
+      long sum = 0;
+      for (int i = 0; i < files.size(); i++)
+      {
+        sum += Math.max(bytes.applyAsLong(files.get(i)), 0);
+        if (inclusive && sum >= limit)
+        {
+          return i + 1;
+        }
+        if (sum > limit)
+        {
+          return i;
+        }
+      }
+      return files.size();
+    }
+
+    @Override
+    double getUtilization()
+    {
+      return limit > 0 ? getNumBytes() / limit : 1d;
+    }
+  }
+
+  /**
+   * Budget for a number of files, from {@link HashStrategy#Files}, also used for {@link HashStrategy#All}.
+   */
+  static final class FileBudget extends HashBudget
+  {
+    private final long limit;
+
+    FileBudget(final long startMillis, final long limit)
+    {
+      super(startMillis);
+      this.limit = limit;
+    }
+
+    @Override
+    int select(final List<File> files, final ToLongFunction<File> bytes)
+    {
+      return (int) Math.min(files.size(), Math.max(limit, 0));
+    }
+
+    @Override
+    double getUtilization()
+    {
+      return limit > 0 ? (double) getNumFiles() / limit : 1d;
+    }
+  }
+
+  /**
+   * Budget for the time until a deadline, from {@link HashStrategy#Time}. Files are started until the deadline.
+   */
+  static final class TimeBudget extends HashBudget
+  {
+    private final long deadlineMillis;
+    private final LongSupplier clock;
+
+    TimeBudget(final long startMillis, final long deadlineMillis, final LongSupplier clock)
+    {
+      super(startMillis);
+      this.deadlineMillis = deadlineMillis;
+      this.clock = clock;
+    }
+
+    @Override
+    int select(final List<File> files, final ToLongFunction<File> bytes)
+    {
+      return files.size();
+    }
+
+    @Override
+    boolean canStart()
+    {
+      return !isExhausted();
+    }
+
+    @Override
+    boolean isExhausted()
+    {
+      return clock.getAsLong() >= deadlineMillis;
+    }
+
+    @Override
+    double getUtilization()
+    {
+      final long available = deadlineMillis - getStartMillis();
+      return available > 0 ? (double) (clock.getAsLong() - getStartMillis()) / available : 1d;
+    }
+  }
+}
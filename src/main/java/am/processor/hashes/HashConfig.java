@@ -16,6 +16,10 @@
 package am.processor.hashes;
 
 import java.security.MessageDigest;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Configuration for file hashes.
@@ -39,9 +43,31 @@ public class HashConfig
    */
   public static final HashStrategy DEFAULT_STRATEGY = HashStrategy.Percentage;
 
+  /**
+   * Default way of reading files.
+   */
+  public static final HashInput DEFAULT_INPUT = HashInput.Channel;
+
+  /**
+   * Names of algorithms that can be used for checksums, computed in addition to hash values.
+   */
+  public static final List<String> CHECKSUM_ALGORITHMS = Collections
+      .unmodifiableList(Arrays.asList("CRC32C", "CRC32", "Adler32"));
+
   private String algorithm = DEFAULT_HASH_ALGORITHM;
   private Double percentage = DEFAULT_PERCENTAGE;
   private HashStrategy strategy = DEFAULT_STRATEGY;
+  private HashInput input = DEFAULT_INPUT;
+  private String checksumAlgorithm;
+  private boolean verifyChecksum;
+  private boolean fingerprint = true;
+  private boolean verifyFingerprint;
+  private long chunkSize;
+  private int chunksPerRun;
+  private long maxBytes;
+  private long maxFiles;
+  private LocalTime until;
+  private boolean cancelAtDeadline;
 
   public String getAlgorithm()
   {
@@ -72,4 +98,170 @@ public class HashConfig
   {
     this.strategy = strategy;
   }
+
+  public HashInput getInput()
+  {
+    return input;
+  }
+
+  public void setInput(HashInput input)
+  {
+    this.input = input;
+  }
+
+  /**
+   * Return the name of the algorithm for checksums computed in the same pass as hash values.
+   *
+   * @return one of {@link #CHECKSUM_ALGORITHMS} or null for no checksums
+   */
+  public String getChecksumAlgorithm()
+  {
+    return checksumAlgorithm;
+  }
+
+  public void setChecksumAlgorithm(String checksumAlgorithm)
+  {
+    this.checksumAlgorithm = checksumAlgorithm;
+  }
+
+  /**
+   * Return whether files with a stored checksum and hash value are checked by computing the checksum only, the hash
+   * value being computed only if the checksum differs.
+   *
+   * @return verify with checksums
+   */
+  public boolean isVerifyChecksum()
+  {
+    return verifyChecksum;
+  }
+
+  public void setVerifyChecksum(boolean verifyChecksum)
+  {
+    this.verifyChecksum = verifyChecksum;
+  }
+
+  /**
+   * Return whether new and modified files get a {@link QuickFingerprint}, also used to detect moved files without
+   * reading them completely.
+   *
+   * @return compute fingerprints
+   */
+  public boolean isFingerprint()
+  {
+    return fingerprint;
+  }
+
+  public void setFingerprint(boolean fingerprint)
+  {
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Return whether the fingerprints of files with unchanged size and time of last modification are computed again on
+   * every run and compared to the stored values.
+   *
+   * @return verify fingerprints
+   */
+  public boolean isVerifyFingerprint()
+  {
+    return verifyFingerprint;
+  }
+
+  public void setVerifyFingerprint(boolean verifyFingerprint)
+  {
+    this.verifyFingerprint = verifyFingerprint;
+  }
+
+  /**
+   * Return the size of the chunks whose hash values are stored for files larger than one chunk, so that later checks
+   * can verify a file one range at a time and report the range that differs.
+   *
+   * @return chunk size in bytes, 0 if no chunk hash values are computed
+   */
+  public long getChunkSize()
+  {
+    return chunkSize;
+  }
+
+  public void setChunkSize(long chunkSize)
+  {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Return how many chunks of a file are verified at most in one run.
+   *
+   * @return number of chunks, 0 to verify files with chunk hash values completely
+   */
+  public int getChunksPerRun()
+  {
+    return chunksPerRun;
+  }
+
+  public void setChunksPerRun(int chunksPerRun)
+  {
+    this.chunksPerRun = chunksPerRun;
+  }
+
+  /**
+   * Return the amount of data to be hashed with {@link HashStrategy#Data}.
+   *
+   * @return number of bytes
+   */
+  public long getMaxBytes()
+  {
+    return maxBytes;
+  }
+
+  public void setMaxBytes(long maxBytes)
+  {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Return the number of files to be hashed with {@link HashStrategy#Files}.
+   *
+   * @return number of files
+   */
+  public long getMaxFiles()
+  {
+    return maxFiles;
+  }
+
+  public void setMaxFiles(long maxFiles)
+  {
+    this.maxFiles = maxFiles;
+  }
+
+  /**
+   * Return the time of day at which hashing stops with {@link HashStrategy#Time}, today or tomorrow, whichever comes
+   * first after the start.
+   *
+   * @return local time
+   */
+  public LocalTime getUntil()
+  {
+    return until;
+  }
+
+  public void setUntil(LocalTime until)
+  {
+    this.until = until;
+  }
+
+  /**
+   * Return whether files being read when the deadline of {@link HashStrategy#Time} is reached are abandoned instead of
+   * completed. Nothing is stored for abandoned files.
+   *
+   * @return cancel at deadline
+   */
+  public boolean isCancelAtDeadline()
+  {
+    return cancelAtDeadline;
+  }
+
+  public void setCancelAtDeadline(boolean cancelAtDeadline)
+  {
+    this.cancelAtDeadline = cancelAtDeadline;
+  }
 }
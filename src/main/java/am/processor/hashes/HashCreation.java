@@ -17,27 +17,78 @@ package am.processor.hashes;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import am.app.AppConfig;
+import am.db.ChunkHashes;
 import am.filesystem.FileSystemHelper;
+import am.filesystem.IoLimiter;
 import am.filesystem.model.File;
 import am.filesystem.model.FileState;
 
 /**
- * Create hash values from input streams like files.
+ * Create hash values from input streams like files. An object keeps its checksum between files, so each thread
+ * needs its own object.
  *
  * @author Marco Schmidt
  */
 public class HashCreation
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(HashCreation.class);
+  private Checksum checksum;
+  private String checksumAlgorithm;
+  private BooleanSupplier cancel;
+  private boolean cancelled;
+  private QuickFingerprint fingerprint;
+  private MessageDigest chunkDigest;
+  private long numBytesRead;
+
+  /**
+   * Set a condition checked while reading files; once it is true the file being read is abandoned without changing
+   * its values.
+   *
+   * @param cancel
+   *          condition or null to always read files completely
+   */
+  public void setCancel(final BooleanSupplier cancel)
+  {
+    this.cancel = cancel;
+  }
+
+  /**
+   * Return the number of bytes the last call to an update method read successfully.
+   *
+   * @return number of bytes
+   */
+  public long getNumBytesRead()
+  {
+    return numBytesRead;
+  }
+
+  /**
+   * Return whether the last call to an update method abandoned its file because of the cancel condition.
+   *
+   * @return true if cancelled
+   */
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
 
   public MessageDigest createDigest(final AppConfig config, final HashConfig hashConfig)
   {
@@ -55,31 +106,229 @@ public class HashCreation
     return digest;
   }
 
-  public void update(final AppConfig config, final File file)
+  /**
+   * Compute the hash value of a file and compare it to the value stored so far.
+   *
+   * @param config
+   *          application configuration
+   * @param file
+   *          file to be read
+   * @return computed hash value or null if it could not be computed
+   */
+  public String update(final AppConfig config, final File file)
   {
     // create digest to be used to compute hash value
     final MessageDigest digest = createDigest(config, config.getHashConfig());
-    if (digest != null)
+    if (digest == null)
     {
-      update(config, file, digest);
+      return null;
     }
+    return update(config, file, digest);
   }
 
-  public void update(final AppConfig config, final File file, final MessageDigest digest)
+  public String update(final AppConfig config, final File file, final MessageDigest digest)
   {
-    // create input stream to read from
-    InputStream input = null;
+    return update(config, file, digest, false);
+  }
+
+  /**
+   * Compute the hash value of a file with a given digest and compare it to the value stored so far. With a checksum
+   * algorithm configured the checksum is computed from the same buffers. With {@link HashConfig#isVerifyChecksum()} a
+   * file that has both values stored is first read for the checksum only; the hash value is computed only if the
+   * checksums differ.
+   *
+   * @param config
+   *          application configuration
+   * @param file
+   *          file to be read
+   * @param digest
+   *          digest to be used, in its initial state
+   * @param rotational
+   *          whether the file is located on a rotating hard disk, used with {@link HashInput#Channel} to pick the way
+   *          of reading
+   * @return computed hash value or null if it could not be computed
+   */
+  public String update(final AppConfig config, final File file, final MessageDigest digest, final boolean rotational)
+  {
+    cancelled = false;
+    numBytesRead = 0;
     final java.io.File entry = file.getEntry();
     if (entry == null)
     {
       LOGGER.error(config.msg("hashcreation.error.no_file_object"));
+      return null;
+    }
+    final ChunkStore store = config.getChunkStore();
+    final ChunkHashes chunks = store == null ? null : store.get(config.getHashConfig(), file);
+    if (chunks != null)
+    {
+      return verifyChunks(config, file, entry, store, chunks);
+    }
+    return update(config, file, entry, digest, rotational, store);
+  }
+
+  /**
+   * Compute the hash value of a file without chunk hash values, verifying its checksum first if so configured.
+   */
+  private String update(final AppConfig config, final File file, final java.io.File entry, final MessageDigest digest,
+      final boolean rotational, final ChunkStore store)
+  {
+    final String path = entry.getAbsolutePath();
+    final Checksum sum = getChecksum(config);
+    if (sum != null && canVerify(config, file))
+    {
+      final long timeMillis = System.currentTimeMillis();
+      if (!read(config, file, entry, null, sum, rotational))
+      {
+        return null;
+      }
+      final long value = sum.getValue();
+      if (value == file.getChecksum())
+      {
+        if (LOGGER.isDebugEnabled())
+        {
+          LOGGER.debug(config.msg("hashcreation.debug.checksum_identical", formatChecksum(value), path,
+              System.currentTimeMillis() - timeMillis));
+        }
+        final String hashValue = file.getHashValue();
+        updateFileState(config, file, hashValue, value, path);
+        return hashValue;
+      }
+      LOGGER.warn(config.msg("hashcreation.warn.checksum_differs", path, formatChecksum(file.getChecksum()),
+          formatChecksum(value)));
+      sum.reset();
+    }
+    final long timeMillis = System.currentTimeMillis();
+    final ChunkDigest chunked = createChunkDigest(config, file, digest, store);
+    final MessageDigest input = chunked == null ? digest : chunked;
+    if (!read(config, file, entry, input, sum, rotational))
+    {
+      return null;
+    }
+    final String hashValue = finish(config, file, input, sum, path, timeMillis);
+    if (chunked != null)
+    {
+      putChunks(config, file, chunked, store, hashValue);
+    }
+    return hashValue;
+  }
+
+  /**
+   * Create a digest that computes chunk hash values together with the hash value of a file, if chunk hash values are
+   * enabled and the file has more than one chunk.
+   *
+   * @return new digest or null
+   */
+  private ChunkDigest createChunkDigest(final AppConfig config, final File file, final MessageDigest digest,
+      final ChunkStore store)
+  {
+    final long chunkSize = config.getHashConfig().getChunkSize();
+    if (store == null || chunkSize <= 0 || file.getByteSizeValue() <= chunkSize || getChunkDigest(config) == null)
+    {
+      return null;
+    }
+    chunkDigest.reset();
+    return new ChunkDigest(digest, chunkDigest, chunkSize);
+  }
+
+  /**
+   * Return the digest for chunk hash values, creating it on first use.
+   *
+   * @return digest or null if the hash algorithm is unknown
+   */
+  private MessageDigest getChunkDigest(final AppConfig config)
+  {
+    if (chunkDigest == null)
+    {
+      chunkDigest = createDigest(config, config.getHashConfig());
+    }
+    return chunkDigest;
+  }
+
+  /**
+   * Record the chunk hash values of a file read completely, if its hash value was accepted and all chunks were read.
+   */
+  private void putChunks(final AppConfig config, final File file, final ChunkDigest chunked, final ChunkStore store,
+      final String hashValue)
+  {
+    if (hashValue == null || !hashValue.equals(file.getHashValue()))
+    {
       return;
     }
+    final ChunkHashes chunks = new ChunkHashes();
+    chunks.setByteSize(file.getByteSizeValue());
+    chunks.setChunkSize(config.getHashConfig().getChunkSize());
+    final byte[] hashes = chunked.getChunkHashes();
+    if (hashes.length != chunks.getNumChunks() * chunkDigest.getDigestLength())
+    {
+      return;
+    }
+    chunks.setHashValue(hashValue);
+    chunks.setHashes(hashes);
+    chunks.setRoot(toString(ChunkDigest.getMerkleRoot(hashes, chunkDigest)));
+    chunks.setCreated(System.currentTimeMillis());
+    store.put(file, chunks);
+  }
+
+  /**
+   * Verify a file against its chunk hash values instead of reading it completely. Only the chunks of this run are read,
+   * starting after those verified by earlier runs, and verification stops at the first chunk that differs.
+   *
+   * @return stored hash value if all chunks were verified, null if chunks are left for later runs or verification failed
+   */
+  private String verifyChunks(final AppConfig config, final File file, final java.io.File entry,
+      final ChunkStore store, final ChunkHashes chunks)
+  {
+    final String path = entry.getAbsolutePath();
+    final FileChannel channel = getChunkDigest(config) == null ? null : open(config, entry);
+    if (channel == null)
+    {
+      return null;
+    }
+    final int numChunks = chunks.getNumChunks();
+    if (chunks.getNextChunk() >= numChunks)
+    {
+      chunks.setNextChunk(0);
+    }
+    final int first = chunks.getNextChunk();
+    final int perRun = config.getHashConfig().getChunksPerRun();
+    final int end = perRun > 0 ? (int) Math.min(numChunks, (long) first + perRun) : numChunks;
+    final int bad;
+    try
+    {
+      bad = compareChunks(channel, chunks, end, config.getIoLimits().getLimiter(file.getVolumeRef()));
+    }
+    catch (final CancellationException e)
+    {
+      LOGGER.debug(config.msg("hashcreation.debug.cancelled", path));
+      cancelled = true;
+      return null;
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("hashcreation.error.input_read", path), e);
+      file.setState(FileState.Corrupted);
+      return null;
+    }
+    finally
+    {
+      FileSystemHelper.close(channel);
+      store.put(file, chunks);
+    }
+    return checkChunks(config, file, chunks, path, first, bad);
+  }
+
+  /**
+   * Open a file for reading chunks.
+   *
+   * @return channel or null if the file could not be opened
+   */
+  private static FileChannel open(final AppConfig config, final java.io.File entry)
+  {
     final String path = entry.getAbsolutePath();
     try
     {
-      input = Files.newInputStream(entry.toPath());
-      update(config, file, digest, input, path);
+      return FileChannel.open(entry.toPath(), StandardOpenOption.READ);
     }
     catch (final InvalidPathException ipe)
     {
@@ -89,36 +338,202 @@ public class HashCreation
     {
       LOGGER.error(config.msg("hashcreation.error.file_open_failed", path), e);
     }
-    FileSystemHelper.close(input);
+    return null;
+  }
+
+  /**
+   * Evaluate the outcome of {@link #compareChunks(FileChannel, ChunkHashes, int, IoLimiter)}.
+   */
+  private String checkChunks(final AppConfig config, final File file, final ChunkHashes chunks, final String path,
+      final int first, final int bad)
+  {
+    if (bad >= 0)
+    {
+      // the cursor stays at the chunk that differs, so later runs read it first
+      final long start = bad * chunks.getChunkSize();
+      final long end = Math.min(start + chunks.getChunkSize(), chunks.getByteSize());
+      LOGGER.warn(config.msg("chunkhashes.warn.chunk_differs", path, bad, start, end - 1));
+      file.setState(FileState.Modified);
+      return null;
+    }
+    final int next = chunks.getNextChunk();
+    if (next < chunks.getNumChunks())
+    {
+      LOGGER.debug(config.msg("chunkhashes.debug.verified_range", path, first, next - 1, chunks.getNumChunks()));
+      return null;
+    }
+    LOGGER.debug(config.msg("chunkhashes.debug.verified", path, chunks.getNumChunks()));
+    chunks.setNextChunk(0);
+    final String hashValue = file.getHashValue();
+    updateFileState(config, file, hashValue, file.getChecksum(), path);
+    return hashValue;
   }
 
-  public void update(final AppConfig config, final File file, final MessageDigest digest, final InputStream input,
+  /**
+   * Read chunks from the next one to be verified up to a given chunk and compare their hash values to the stored
+   * ones, moving the cursor of the chunk hash values forward after each chunk that is identical.
+   *
+   * @return index of the first chunk that differs or -1 if all are identical
+   */
+  private int compareChunks(final FileChannel channel, final ChunkHashes chunks, final int end,
+      final IoLimiter limiter) throws IOException
+  {
+    final byte[] hashes = chunks.getHashes();
+    final int length = chunkDigest.getDigestLength();
+    final long chunkSize = chunks.getChunkSize();
+    for (int index = chunks.getNextChunk(); index < end; index++)
+    {
+      final long start = index * chunkSize;
+      final long stop = Math.min(start + chunkSize, chunks.getByteSize());
+      chunkDigest.reset();
+      final long numRead = ChannelHashing.update(channel, start, stop, chunkDigest, limiter, cancel);
+      numBytesRead += numRead;
+      if (numRead != stop - start
+          || !Arrays.equals(chunkDigest.digest(), 0, length, hashes, index * length, (index + 1) * length))
+      {
+        return index;
+      }
+      chunks.setNextChunk(index + 1);
+    }
+    return -1;
+  }
+
+  private static boolean canVerify(final AppConfig config, final File file)
+  {
+    return config.getHashConfig().isVerifyChecksum() && file.getChecksum() != File.UNKNOWN
+        && file.getHashValue() != null;
+  }
+
+  /**
+   * Read a file completely and feed its content to a digest and a checksum.
+   *
+   * @return whether reading was successful
+   */
+  private boolean read(final AppConfig config, final File file, final java.io.File entry, final MessageDigest digest,
+      final Checksum sum, final boolean rotational)
+  {
+    final String path = entry.getAbsolutePath();
+    final boolean useChannel = config.getHashConfig().getInput() == HashInput.Channel;
+    FileChannel channel = null;
+    InputStream input = null;
+    try
+    {
+      if (useChannel)
+      {
+        channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ);
+      }
+      else
+      {
+        input = Files.newInputStream(entry.toPath());
+      }
+    }
+    catch (final InvalidPathException ipe)
+    {
+      LOGGER.error(config.msg("hashcreation.error.path_conversion_failed", path), ipe);
+      return false;
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("hashcreation.error.file_open_failed", path), e);
+      return false;
+    }
+    try
+    {
+      final IoLimiter limiter = config.getIoLimits().getLimiter(file.getVolumeRef());
+      if (channel != null)
+      {
+        numBytesRead += ChannelHashing.update(channel, ChannelHashing.select(channel.size(), rotational), digest, sum,
+            limiter, cancel);
+      }
+      else
+      {
+        numBytesRead += readStream(file, digest, sum, input, limiter, cancel);
+      }
+      return true;
+    }
+    catch (final CancellationException e)
+    {
+      LOGGER.debug(config.msg("hashcreation.debug.cancelled", path));
+      cancelled = true;
+      return false;
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("hashcreation.error.input_read", path), e);
+      file.setState(FileState.Corrupted);
+      return false;
+    }
+    finally
+    {
+      FileSystemHelper.close(channel);
+      FileSystemHelper.close(input);
+    }
+  }
+
+  public String update(final AppConfig config, final File file, final MessageDigest digest, final InputStream input,
       final String inputName)
   {
-    long timeMillis = System.currentTimeMillis();
+    cancelled = false;
+    numBytesRead = 0;
+    final long timeMillis = System.currentTimeMillis();
+    final Checksum sum = getChecksum(config);
+    try
+    {
+      numBytesRead = readStream(file, digest, sum, input, config.getIoLimits().getLimiter(file.getVolumeRef()), cancel);
+    }
+    catch (final CancellationException e)
+    {
+      LOGGER.debug(config.msg("hashcreation.debug.cancelled", inputName));
+      cancelled = true;
+      return null;
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("hashcreation.error.input_read", inputName), e);
+      file.setState(FileState.Corrupted);
+      return null;
+    }
+    return finish(config, file, digest, sum, inputName, timeMillis);
+  }
 
+  private static long readStream(final File file, final MessageDigest digest, final Checksum sum,
+      final InputStream input, final IoLimiter limiter, final BooleanSupplier cancel) throws IOException
+  {
     // create buffer
-    final long fileSize = file.getByteSize() == null ? Integer.MAX_VALUE : file.getByteSize();
+    final long fileSize = file.getByteSizeValue() == File.UNKNOWN ? Integer.MAX_VALUE : file.getByteSizeValue();
     final int bufferSize = Math
         .max(Math.min(1024 * 1024, fileSize > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) fileSize), 1024);
     final byte[] buffer = new byte[bufferSize];
 
-    // read complete file in chunks and update digest
+    // read complete file in chunks and update digest and checksum, within the I/O budget of the file's volume
+    long total = 0;
     int numRead;
-    try
+    while ((numRead = input.read(buffer)) >= 0)
     {
-      while ((numRead = input.read(buffer)) >= 0)
+      total += numRead;
+      if (limiter != null)
+      {
+        limiter.acquire(1, numRead);
+      }
+      if (cancel != null && cancel.getAsBoolean())
+      {
+        throw new CancellationException();
+      }
+      if (sum != null)
+      {
+        sum.update(buffer, 0, numRead);
+      }
+      if (digest != null)
       {
         digest.update(buffer, 0, numRead);
       }
     }
-    catch (final IOException e)
-    {
-      LOGGER.error(config.msg("hashcreation.error.input_read", inputName), e);
-      file.setState(FileState.Corrupted);
-      return;
-    }
+    return total;
+  }
 
+  private String finish(final AppConfig config, final File file, final MessageDigest digest, final Checksum sum,
+      final String inputName, final long startMillis)
+  {
     // create final digest as byte array
     final byte[] result = digest.digest();
 
@@ -126,19 +541,101 @@ public class HashCreation
     final String hashValue = toString(result);
     if (LOGGER.isDebugEnabled())
     {
-      timeMillis = System.currentTimeMillis() - timeMillis;
+      final long timeMillis = System.currentTimeMillis() - startMillis;
       long mbPerSecond = 0;
-      if (timeMillis > 0 && file.getByteSize().longValue() > 0)
+      if (timeMillis > 0 && file.getByteSizeValue() > 0)
       {
-        mbPerSecond = file.getByteSize().longValue() / timeMillis / 1000L;
+        mbPerSecond = file.getByteSizeValue() / timeMillis / 1000L;
       }
       LOGGER.debug(config.msg("hashcreation.debug.computed_value", hashValue, inputName, timeMillis, mbPerSecond));
     }
 
-    updateFileState(config, file, hashValue, inputName);
+    updateFileState(config, file, hashValue, sum == null ? File.UNKNOWN : sum.getValue(), inputName);
+    if (file.getFingerprint() == File.UNKNOWN && file.getEntry() != null && config.getHashConfig().isFingerprint())
+    {
+      // files catalogued before fingerprints existed get one while their blocks are still cached
+      if (fingerprint == null)
+      {
+        fingerprint = new QuickFingerprint();
+      }
+      fingerprint.add(config, file);
+    }
+    return hashValue;
   }
 
-  private void updateFileState(final AppConfig config, final File file, final String hashValue, final String inputName)
+  /**
+   * Create an object computing a checksum.
+   *
+   * @param algorithm
+   *          one of {@link HashConfig#CHECKSUM_ALGORITHMS}
+   * @return new checksum or null for an unknown algorithm
+   */
+  public static Checksum createChecksum(final String algorithm)
+  {
+    if ("CRC32C".equals(algorithm))
+    {
+      return new CRC32C();
+    }
+    if ("CRC32".equals(algorithm))
+    {
+      return new CRC32();
+    }
+    return "Adler32".equals(algorithm) ? new Adler32() : null;
+  }
+
+  /**
+   * Return the checksum of this object in its initial state, creating it on first use.
+   *
+   * @return checksum or null if no checksum algorithm is configured
+   */
+  private Checksum getChecksum(final AppConfig config)
+  {
+    final String algorithm = config.getHashConfig().getChecksumAlgorithm();
+    if (algorithm == null)
+    {
+      return null;
+    }
+    if (checksum == null || !algorithm.equals(checksumAlgorithm))
+    {
+      checksum = createChecksum(algorithm);
+      checksumAlgorithm = algorithm;
+    }
+    else
+    {
+      checksum.reset();
+    }
+    return checksum;
+  }
+
+  /**
+   * Format a checksum as a hexadecimal number of eight digits.
+   *
+   * @param value
+   *          checksum or {@link File#UNKNOWN}
+   * @return formatted value, a dash for an unknown value
+   */
+  public static String formatChecksum(final long value)
+  {
+    return value == File.UNKNOWN ? "-" : String.format(Locale.ROOT, "%08x", Long.valueOf(value));
+  }
+
+  /**
+   * Assign a hash value computed for a file, or for another hard link to the same physical file, comparing it to the
+   * value stored so far.
+   *
+   * @param config
+   *          application configuration
+   * @param file
+   *          file to be updated
+   * @param hashValue
+   *          computed hash value
+   * @param checksum
+   *          checksum computed together with the hash value or {@link File#UNKNOWN}
+   * @param inputName
+   *          name of the input the value was computed from, for log messages
+   */
+  void updateFileState(final AppConfig config, final File file, final String hashValue, final long checksum,
+      final String inputName)
   {
     final String oldHashValue = file.getHashValue();
     if (oldHashValue == null)
@@ -146,6 +643,7 @@ public class HashCreation
       // first time hash was computed: store value and time of its creation (now) in file object
       file.setHashValue(hashValue);
       file.setHashCreated(new Date());
+      file.setChecksum(checksum);
     }
     else
     {
@@ -157,6 +655,10 @@ public class HashCreation
           LOGGER.debug(config.msg("hashcreation.debug.value_identical", hashValue, inputName));
         }
         file.setHashCreated(new Date());
+        if (checksum != File.UNKNOWN)
+        {
+          file.setChecksum(checksum);
+        }
       }
       else
       {
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.nio.file.FileStore;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.filesystem.HardLinks;
+import am.filesystem.model.File;
+
+/**
+ * Compute hash values with several worker threads. Files are grouped by the {@link FileStore} they are located on and
+ * each group is worked on by at most as many workers as its store allows, so that a rotating hard disk is read by one
+ * thread at a time instead of seeking back and forth between files while an SSD is read by several threads. Every store
+ * gets a worker of its own so that all devices are read at the same time, the threads left over go to the stores
+ * allowing more than one worker. Should there be more stores than threads, a semaphore keeps the number of files read
+ * at the same time within the number of threads. Within a group files are taken in list order. Each worker reuses its
+ * {@link MessageDigest} for all its files.
+ *
+ * @author Marco Schmidt
+ */
+final class HashEngine
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(HashEngine.class);
+  private final AppConfig config;
+  private final HardLinks links;
+  private final int numThreads;
+  private final FileStores stores;
+
+  HashEngine(final AppConfig config, final HardLinks links, final int numThreads)
+  {
+    this(config, links, numThreads, new FileStores());
+  }
+
+  HashEngine(final AppConfig config, final HardLinks links, final int numThreads, final FileStores stores)
+  {
+    this.config = config;
+    this.links = links;
+    this.numThreads = numThreads;
+    this.stores = stores;
+  }
+
+  /**
+   * Files of one store with the position of the next file to be hashed, shared by the workers of that store.
+   */
+  private static final class StoreQueue
+  {
+    private final List<File> files = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final int maxWorkers;
+    private final boolean rotational;
+    private int numWorkers;
+
+    StoreQueue(final int maxWorkers, final boolean rotational)
+    {
+      this.maxWorkers = maxWorkers;
+      this.rotational = rotational;
+    }
+
+    boolean canUseMoreWorkers()
+    {
+      return numWorkers < maxWorkers && numWorkers < files.size();
+    }
+
+    File next()
+    {
+      final int index = next.getAndIncrement();
+      return index < files.size() ? files.get(index) : null;
+    }
+  }
+
+  /**
+   * Compute hash values of all files and wait until that is done.
+   *
+   * @param files
+   *          files to be hashed, most important first
+   * @param budget
+   *          checked before each file is started, counting hashed files
+   */
+  void hash(final List<File> files, final HashBudget budget)
+  {
+    final long millis = System.currentTimeMillis();
+    final Map<FileStore, StoreQueue> queues = new LinkedHashMap<>();
+    final StoreQueue unknown = new StoreQueue(numThreads, false);
+    for (final File file : files)
+    {
+      final FileStore store = stores.get(file);
+      final StoreQueue queue = store == null ? unknown : queues.computeIfAbsent(store, s -> createQueue(s));
+      queue.files.add(file);
+    }
+    queues.put(null, unknown);
+    final int numWorkers = assignWorkers(queues.values(), numThreads);
+    for (final Map.Entry<FileStore, StoreQueue> entry : queues.entrySet())
+    {
+      if (entry.getKey() != null)
+      {
+        LOGGER.debug(config.msg("hashcreation.debug.file_store", entry.getKey().name(), entry.getValue().numWorkers));
+      }
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numWorkers));
+    final Semaphore permits = new Semaphore(numThreads, true);
+    final List<Future<?>> futures = new ArrayList<>();
+    try
+    {
+      for (final StoreQueue queue : queues.values())
+      {
+        for (int i = 0; i < queue.numWorkers; i++)
+        {
+          futures.add(executor.submit(() -> work(queue, budget, permits)));
+        }
+      }
+      for (final Future<?> future : futures)
+      {
+        future.get();
+      }
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (final ExecutionException e)
+    {
+      LOGGER.error(config.msg("hashcreation.error.worker_failed"), e.getCause());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+    LOGGER.info(config.msg("hashcreation.info.parallel", files.size(), numThreads, queues.size() - 1,
+        System.currentTimeMillis() - millis));
+  }
+
+  private StoreQueue createQueue(final FileStore store)
+  {
+    final int perStore = config.getHashThreadsPerStore();
+    final boolean rotational = stores.isRotational(store);
+    final int maxWorkers;
+    if (perStore > 0)
+    {
+      maxWorkers = Math.min(perStore, numThreads);
+    }
+    else
+    {
+      maxWorkers = rotational ? 1 : numThreads;
+    }
+    return new StoreQueue(maxWorkers, rotational);
+  }
+
+  /**
+   * Give each queue with files one worker, then hand out the remaining threads one at a time to the queues that may
+   * use more workers.
+   *
+   * @return total number of workers, larger than the number of threads only if there are more queues than threads
+   */
+  private static int assignWorkers(final Collection<StoreQueue> queues, final int numThreads)
+  {
+    int total = 0;
+    for (final StoreQueue queue : queues)
+    {
+      if (!queue.files.isEmpty())
+      {
+        queue.numWorkers = 1;
+        total++;
+      }
+    }
+    boolean assigned = true;
+    while (total < numThreads && assigned)
+    {
+      assigned = false;
+      for (final StoreQueue queue : queues)
+      {
+        if (total < numThreads && queue.canUseMoreWorkers())
+        {
+          queue.numWorkers++;
+          total++;
+          assigned = true;
+        }
+      }
+    }
+    return total;
+  }
+
+  private void work(final StoreQueue queue, final HashBudget budget, final Semaphore permits)
+  {
+    final HashCreation creator = HashProcessor.createCreator(config.getHashConfig(), budget);
+    final MessageDigest digest = creator.createDigest(config, config.getHashConfig());
+    if (digest == null)
+    {
+      return;
+    }
+    File file;
+    while (budget.canStart() && (file = queue.next()) != null)
+    {
+      permits.acquireUninterruptibly();
+      try
+      {
+        HashProcessor.hash(config, creator, digest, links, budget, file, queue.rotational);
+      }
+      finally
+      {
+        permits.release();
+      }
+    }
+  }
+}
@@ -17,7 +17,6 @@ package am.processor.hashes;
 
 import java.io.Serializable;
 import java.util.Comparator;
-import java.util.Date;
 import am.filesystem.model.File;
 
 /**
@@ -38,37 +37,12 @@ public class HashFilePriorityComparator implements Comparator<File>, Serializabl
     int rel = compareValues(f1.getHashValue(), f2.getHashValue());
     if (rel == 0)
     {
-      rel = compareCreationDate(f1.getHashCreated(), f2.getHashCreated());
+      // an unknown creation time is the smallest value
+      rel = Long.compare(f1.getHashCreatedMillis(), f2.getHashCreatedMillis());
     }
     return rel;
   }
 
-  private int compareCreationDate(Date hashCreated1, Date hashCreated2)
-  {
-    if (hashCreated1 == null)
-    {
-      if (hashCreated2 == null)
-      {
-        return 0;
-      }
-      else
-      {
-        return -1;
-      }
-    }
-    else
-    {
-      if (hashCreated2 == null)
-      {
-        return 1;
-      }
-      else
-      {
-        return hashCreated1.compareTo(hashCreated2);
-      }
-    }
-  }
-
   /**
    * Compare hash values, they are considered equal (0) if both values are null or both are non-null. Otherwise the null
    * value is considered smaller than the non-null value.
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+/**
+ * Enumeration type to describe how files are read to compute their hash values.
+ *
+ * @author Marco Schmidt
+ */
+public enum HashInput
+{
+  /**
+   * Read from an input stream into a heap buffer.
+   */
+  Stream,
+
+  /**
+   * Read from a file channel, picking direct buffers with prefetching or memory mapping by file size and device type.
+   */
+  Channel
+}
@@ -15,12 +15,14 @@
  */
 package am.processor.hashes;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import am.app.AppConfig;
+import am.filesystem.HardLinks;
 import am.filesystem.model.Directory;
 import am.filesystem.model.File;
 import am.filesystem.model.FileState;
@@ -35,6 +37,7 @@ public class HashProcessor
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(HashProcessor.class);
   private final List<File> files = new ArrayList<>();
+  private HardLinks links = new HardLinks();
   private long fileSizeSum;
 
   public List<File> getFiles()
@@ -51,13 +54,51 @@ public class HashProcessor
     }
     // put all files that are not missing in a list and add their sizes
     files.clear();
+    links = new HardLinks();
     fileSizeSum = initFileList(files, volumes, 0L);
     // sort list by necessity to compute hash: files without any hash value first, then by age in descending order
     // (oldest hashes first)
-    Collections.sort(files, new HashFilePriorityComparator());
+    final HashFilePriorityComparator comparator = new HashFilePriorityComparator();
+    removeLinks(config, comparator);
+    Collections.sort(files, comparator);
     compute(config);
   }
 
+  /**
+   * Keep only one file of each group of hard links in the list of files to be hashed, the one most in need of a hash
+   * value. The others get the value computed for that file.
+   *
+   * @param config
+   *          application configuration
+   * @param comparator
+   *          priority of files
+   */
+  private void removeLinks(final AppConfig config, final HashFilePriorityComparator comparator)
+  {
+    if (links.getNumPhysicalFiles() == links.getNumFiles())
+    {
+      return;
+    }
+    final List<File> physicalFiles = new ArrayList<>();
+    for (final File file : files)
+    {
+      final List<File> group = links.getLinks(file);
+      if (group.size() == 1)
+      {
+        physicalFiles.add(file);
+      }
+      else
+        if (group.get(0) == file)
+        {
+          physicalFiles.add(Collections.min(group, comparator));
+        }
+    }
+    LOGGER.debug(config.msg("hashcreation.debug.hard_links", files.size() - physicalFiles.size()));
+    files.clear();
+    files.addAll(physicalFiles);
+    fileSizeSum = links.getNumPhysicalBytes();
+  }
+
   private long initFileList(final List<File> files, final List<Volume> volumes, final long fileSizeSum)
   {
     long result = fileSizeSum;
@@ -76,11 +117,11 @@ public class HashProcessor
   private long initFileList(final List<File> files, final Directory dir, final long fileSizeSum)
   {
     long result = fileSizeSum;
-    for (final File f : dir.getFiles())
+    for (final File f : dir.getFilesView())
     {
       result = initFileList(files, f, result);
     }
-    for (final Directory d : dir.getSubdirectories())
+    for (final Directory d : dir.getSubdirectoriesView())
     {
       result = initFileList(files, d, result);
     }
@@ -94,54 +135,141 @@ public class HashProcessor
     if (state != null && state != FileState.Missing)
     {
       files.add(file);
-      result += file.getByteSize().longValue();
+      links.add(file);
+      result += file.getByteSizeValue();
     }
     return result;
   }
 
   private void compute(AppConfig config)
   {
-    final HashCreation creator = new HashCreation();
     final HashConfig hashConfig = config.getHashConfig();
     final HashStrategy strategy = hashConfig.getStrategy();
-    final Double percentage = hashConfig.getPercentage();
-    final String strategyInfo = formatStrategyInfo(config, strategy, percentage);
-    long computedBytes = 0;
-    boolean done = false;
+    final String strategyInfo = formatStrategyInfo(config, hashConfig);
     LOGGER.info(config.msg("hashcreation.info.strategy", strategyInfo, files.size()));
-    for (final File file : files)
+    final HashBudget budget = HashBudget.create(hashConfig, fileSizeSum, files.size(), System.currentTimeMillis());
+    final ChunkStore store = config.getChunkStore();
+    final List<File> selected = files.subList(0,
+        store == null ? budget.select(files) : budget.select(files, f -> store.getBytesToRead(hashConfig, f)));
+    final Integer numThreads = config.getNumberOfThreads();
+    if (numThreads != null && numThreads.intValue() > 1)
     {
-      // LOGGER.debug(config.msg("hashcreation.debug.file_info", file.getEntry().getAbsolutePath(), file.getByteSize(),
-      // file.getHashValue() == null ? '-' : file.getHashValue(),
-      // file.getHashCreated() == null ? "-" : file.getHashCreated().toString()));
-      creator.update(config, file);
-      computedBytes += file.getByteSize().longValue();
-      switch (strategy)
+      new HashEngine(config, links, numThreads.intValue()).hash(selected, budget);
+    }
+    else
+    {
+      final HashCreation creator = createCreator(hashConfig, budget);
+      final MessageDigest digest = creator.createDigest(config, hashConfig);
+      if (digest == null)
+      {
+        return;
+      }
+      final FileStores stores = new FileStores();
+      final boolean channel = hashConfig.getInput() == HashInput.Channel;
+      for (final File file : selected)
       {
-      case Percentage:
-        if (fileSizeSum > 0 && percentage != null)
+        if (!budget.canStart())
         {
-          final double perc = 100d * computedBytes / fileSizeSum;
-          done = perc >= percentage.doubleValue();
+          break;
         }
-        break;
-      default:
-        break;
+        hash(config, creator, digest, budget, file, channel && stores.isRotational(file));
       }
-      if (done)
+    }
+    logBudget(config, strategy, budget, selected.size());
+  }
+
+  /**
+   * Create an object to compute hash values that stops reading when the budget is used up, if so configured.
+   */
+  static HashCreation createCreator(final HashConfig hashConfig, final HashBudget budget)
+  {
+    final HashCreation creator = new HashCreation();
+    if (hashConfig.isCancelAtDeadline())
+    {
+      creator.setCancel(budget::isExhausted);
+    }
+    return creator;
+  }
+
+  private void hash(final AppConfig config, final HashCreation creator, final MessageDigest digest,
+      final HashBudget budget, final File file, final boolean rotational)
+  {
+    hash(config, creator, digest, links, budget, file, rotational);
+  }
+
+  /**
+   * Compute the hash value of one file, assign it to the file's hard links and count the file in the budget.
+   */
+  static void hash(final AppConfig config, final HashCreation creator, final MessageDigest digest,
+      final HardLinks links, final HashBudget budget, final File file, final boolean rotational)
+  {
+    // a failed read leaves data in the digest
+    digest.reset();
+    final String hashValue = creator.update(config, file, digest, rotational);
+    if (creator.isCancelled())
+    {
+      budget.cancelled();
+      return;
+    }
+    updateLinks(config, creator, links, file, hashValue);
+    if (hashValue != null || creator.getNumBytesRead() > 0)
+    {
+      // chunk verification reads only part of a file
+      budget.hashed(creator.getNumBytesRead());
+    }
+  }
+
+  private static void logBudget(final AppConfig config, final HashStrategy strategy, final HashBudget budget,
+      final int numSelected)
+  {
+    final long millis = Math.max(System.currentTimeMillis() - budget.getStartMillis(), 1);
+    final long numBytes = budget.getNumBytes();
+    final long mbPerSecond = numBytes * 1000L / millis / (1024 * 1024);
+    LOGGER.info(config.msg("hashcreation.info.budget", budget.getNumFiles(), numSelected, numBytes / (1024 * 1024),
+        millis, mbPerSecond, Math.round(budget.getUtilization() * 100d), budget.getNumCancelled(),
+        config.msg("hashcreation.info.strategy." + strategy.toString())));
+  }
+
+  /**
+   * Assign a hash value computed for a file to the other hard links of that file.
+   */
+  private static void updateLinks(final AppConfig config, final HashCreation creator, final HardLinks links,
+      final File file, final String hashValue)
+  {
+    if (hashValue == null)
+    {
+      return;
+    }
+    for (final File link : links.getLinks(file))
+    {
+      if (link != file)
       {
-        break;
+        creator.updateFileState(config, link, hashValue, file.getChecksum(), link.getEntry().getAbsolutePath());
       }
     }
   }
 
-  private String formatStrategyInfo(AppConfig config, HashStrategy strategy, Double percentage)
+  private String formatStrategyInfo(AppConfig config, HashConfig hashConfig)
   {
+    final HashStrategy strategy = hashConfig.getStrategy();
     final String name = config.msg("hashcreation.info.strategy." + strategy.toString());
     String details = "";
-    if (strategy == HashStrategy.Percentage)
+    switch (strategy)
     {
-      details = ", " + percentage.toString() + "%";
+    case Percentage:
+      details = ", " + hashConfig.getPercentage() + "%";
+      break;
+    case Data:
+      details = ", " + hashConfig.getMaxBytes() + " bytes";
+      break;
+    case Files:
+      details = ", " + hashConfig.getMaxFiles() + " files";
+      break;
+    case Time:
+      details = ", until " + hashConfig.getUntil();
+      break;
+    default:
+      break;
     }
     return name + details;
   }
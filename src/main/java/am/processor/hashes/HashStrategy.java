@@ -38,18 +38,19 @@ public enum HashStrategy
   Percentage,
 
   /**
-   * Compute hashes until a given amount of data has been consumed. Note that the hash for the current file is computed
-   * even if this means that the amount of data is exceeded. Not yet implemented.
+   * Compute hashes until a given amount of data has been consumed. Files that would exceed that amount are not
+   * started.
    */
   Data,
 
   /**
-   * Compute hashes until a given time has passed. Not yet implemented.
+   * Compute hashes until a given time of day is reached. Files being hashed at that time are completed unless
+   * {@link HashConfig#isCancelAtDeadline()} is set.
    */
   Time,
 
   /**
-   * Compute hashes for a given number of files. Time may vary depending on their size. Not yet implemented.
+   * Compute hashes for a given number of files. Time may vary depending on their size.
    */
   Files
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import am.app.AppConfig;
+import am.filesystem.IoLimiter;
+import am.filesystem.model.DirectoryVisitor;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+
+/**
+ * Compute a quick fingerprint of a file's content from a few blocks: the first, the last and some evenly spaced in
+ * between, together with the file size. Reading the blocks takes a few milliseconds even for very large files, so
+ * fingerprints can be computed for all new and modified files on every run and used to recognize changed content long
+ * before the file's hash value is checked again. Files no larger than all blocks together are read completely.
+ * <p>
+ * The fingerprint is the first 63 bits of the SHA-256 value of the size and the blocks, independent of the configured
+ * hash algorithm so that stored fingerprints stay comparable. An object keeps its buffer and digest between files, so
+ * each thread needs its own object.
+ *
+ * @author Marco Schmidt
+ */
+public class QuickFingerprint
+{
+  /**
+   * Size of each block in bytes.
+   */
+  public static final int BLOCK_SIZE = 64 * 1024;
+
+  /**
+   * Number of blocks read from files larger than all blocks together.
+   */
+  public static final int NUM_BLOCKS = 5;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(QuickFingerprint.class);
+  private static final String ALGORITHM = "SHA-256";
+  private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+  private final MessageDigest digest;
+  private long numComputed;
+  private long numVerified;
+  private long numModified;
+
+  public QuickFingerprint()
+  {
+    try
+    {
+      digest = MessageDigest.getInstance(ALGORITHM);
+    }
+    catch (final NoSuchAlgorithmException e)
+    {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compute the fingerprint of a file.
+   *
+   * @param entry
+   *          file to be read
+   * @param size
+   *          size of the file in bytes
+   * @param limiter
+   *          limiter to acquire each read from or null
+   * @return non-negative fingerprint
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public long compute(final java.io.File entry, final long size, final IoLimiter limiter) throws IOException
+  {
+    digest.reset();
+    buffer.clear();
+    buffer.putLong(size);
+    buffer.flip();
+    digest.update(buffer);
+    final FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ);
+    try
+    {
+      if (size <= (long) NUM_BLOCKS * BLOCK_SIZE)
+      {
+        for (long offset = 0; offset < size; offset += BLOCK_SIZE)
+        {
+          read(channel, offset, limiter);
+        }
+      }
+      else
+      {
+        for (int i = 0; i < NUM_BLOCKS; i++)
+        {
+          read(channel, (size - BLOCK_SIZE) / (NUM_BLOCKS - 1) * i, limiter);
+        }
+      }
+    }
+    finally
+    {
+      channel.close();
+    }
+    final byte[] value = digest.digest();
+    long result = 0;
+    for (int i = 0; i < Long.BYTES; i++)
+    {
+      result = (result << 8) | (value[i] & 0xff);
+    }
+    return result & Long.MAX_VALUE;
+  }
+
+  private void read(final FileChannel channel, final long offset, final IoLimiter limiter) throws IOException
+  {
+    buffer.clear();
+    int numRead;
+    while (buffer.hasRemaining() && (numRead = channel.read(buffer, offset + buffer.position())) >= 0)
+    {
+      if (limiter != null)
+      {
+        limiter.acquire(1, numRead);
+      }
+    }
+    buffer.flip();
+    digest.update(buffer);
+  }
+
+  /**
+   * Compute or verify the fingerprints of all files of a volume with {@link #update(AppConfig, File)}.
+   *
+   * @param config
+   *          application configuration
+   * @param volume
+   *          volume with file system entries assigned
+   * @return number of files found to be modified
+   */
+  public int update(final AppConfig config, final Volume volume)
+  {
+    if (!config.getHashConfig().isFingerprint() || volume.getRoot() == null)
+    {
+      return 0;
+    }
+    final long millis = System.currentTimeMillis();
+    final long computed = numComputed;
+    final long verified = numVerified;
+    final long modified = numModified;
+    volume.getRoot().accept(DirectoryVisitor.ofFiles(f -> update(config, f)));
+    final int numFound = (int) (numModified - modified);
+    if (numComputed > computed || numVerified > verified)
+    {
+      LOGGER.info(config.msg("fingerprint.info.volume", volume.getPath(), numComputed - computed,
+          numVerified - verified, numFound, System.currentTimeMillis() - millis));
+    }
+    return numFound;
+  }
+
+  /**
+   * Update the fingerprint of a file depending on its state. New and modified files get a fingerprint, and so do
+   * moved files that did not take one over. Identical files are checked against their stored fingerprint if
+   * {@link HashConfig#isVerifyFingerprint()} is set; if it differs the file gets state {@link FileState#Modified}
+   * while the stored fingerprint is kept, like with a differing hash value. Nothing is done if
+   * {@link HashConfig#isFingerprint()} is not set.
+   *
+   * @param config
+   *          application configuration
+   * @param file
+   *          file to be updated
+   * @return whether the file was found to be modified
+   */
+  public boolean update(final AppConfig config, final File file)
+  {
+    final FileState state = file.getState();
+    if (state == FileState.Identical ? !config.getHashConfig().isVerifyFingerprint() : state == FileState.Missing)
+    {
+      return false;
+    }
+    final long stored = file.getFingerprint();
+    if (stored == File.UNKNOWN)
+    {
+      add(config, file);
+      return false;
+    }
+    if (state != FileState.Identical)
+    {
+      return false;
+    }
+    final long value = compute(config, file);
+    if (value == File.UNKNOWN)
+    {
+      return false;
+    }
+    numVerified++;
+    if (value == stored)
+    {
+      return false;
+    }
+    numModified++;
+    LOGGER.warn(config.msg("fingerprint.warn.differs", file.getEntry().getAbsolutePath(), format(stored),
+        format(value)));
+    file.setState(FileState.Modified);
+    return true;
+  }
+
+  /**
+   * Compute the fingerprint of a file that does not have one yet, whatever its state.
+   *
+   * @param config
+   *          application configuration
+   * @param file
+   *          file to be updated
+   */
+  public void add(final AppConfig config, final File file)
+  {
+    if (file.getFingerprint() == File.UNKNOWN)
+    {
+      final long value = compute(config, file);
+      if (value != File.UNKNOWN)
+      {
+        numComputed++;
+        file.setFingerprint(value);
+      }
+    }
+  }
+
+  private long compute(final AppConfig config, final File file)
+  {
+    final java.io.File entry = file.getEntry();
+    if (!config.getHashConfig().isFingerprint() || entry == null || !entry.isFile())
+    {
+      return File.UNKNOWN;
+    }
+    try
+    {
+      return compute(entry, file.getByteSizeValue(), config.getIoLimits().getLimiter(file.getVolumeRef()));
+    }
+    catch (final IOException e)
+    {
+      LOGGER.error(config.msg("fingerprint.error.read", entry.getAbsolutePath()), e);
+      return File.UNKNOWN;
+    }
+  }
+
+  /**
+   * Format a fingerprint as sixteen hexadecimal digits.
+   *
+   * @param value
+   *          fingerprint or {@link File#UNKNOWN}
+   * @return formatted value or a dash for an unknown value
+   */
+  public static String format(final long value)
+  {
+    return value == File.UNKNOWN ? "-" : String.format(Locale.ROOT, "%016x", Long.valueOf(value));
+  }
+}
@@ -117,7 +117,7 @@ public abstract class AbstractValidator
 
   protected void markDirectoriesInvalid(Directory dir, String violationId)
   {
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       addViolation(sub, violationId);
     }
@@ -125,7 +125,7 @@ public abstract class AbstractValidator
 
   protected void markFilesInvalid(Directory dir, String violationId)
   {
-    for (final File file : dir.getFiles())
+    for (final File file : dir.getFilesView())
     {
       addViolation(file, violationId);
     }
@@ -164,12 +164,12 @@ public class MovieValidator extends AbstractValidator
       year = null;
     }
 
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       validateDirectory(config, sub, level + 1);
     }
 
-    for (final File file : dir.getFiles())
+    for (final File file : dir.getFilesView())
     {
       validateFile(year, level, file);
     }
@@ -73,7 +73,7 @@ public class PersonalDocumentValidator extends AbstractValidator
   {
     final Directory root = volume.getRoot();
     markFilesInvalid(root, VIOLATION_FILE_WRONG_DIRECTORY);
-    for (final Directory sub : root.getSubdirectories())
+    for (final Directory sub : root.getSubdirectoriesView())
     {
       validateCreator(sub);
     }
@@ -82,7 +82,7 @@ public class PersonalDocumentValidator extends AbstractValidator
   private void validateCreator(Directory dir)
   {
     markFilesInvalid(dir, VIOLATION_FILE_WRONG_DIRECTORY);
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       validateCreatorYear(sub);
     }
@@ -91,7 +91,7 @@ public class PersonalDocumentValidator extends AbstractValidator
   private void validateCreatorYear(Directory dir)
   {
     markFilesInvalid(dir, VIOLATION_FILE_WRONG_DIRECTORY);
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       validateCreatorYearDay(sub);
     }
@@ -102,7 +102,7 @@ public class PersonalDocumentValidator extends AbstractValidator
     markDirectoriesInvalid(dir, VIOLATION_DIRECTORY_TOO_DEEP);
     final Map<String, File> xmp = new HashMap<>();
     final Set<String> regular = new HashSet<>();
-    for (final File file : dir.getFiles())
+    for (final File file : dir.getFilesView())
     {
       final String name = file.getName();
       final int lastIndex = name.lastIndexOf('.');
@@ -126,7 +126,7 @@ public class TvSeriesValidator extends AbstractValidator
 
   private void validateRootDirectoryEntries(AppConfig config, Directory dir)
   {
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       validateYearEntries(config, sub);
     }
@@ -178,7 +178,7 @@ public class TvSeriesValidator extends AbstractValidator
 
     markFilesInvalid(dir, VIOLATION_NO_FILES_IN_YEAR_DIRECTORY);
 
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       validateShowEntries(config, sub, year);
     }
@@ -197,7 +197,7 @@ public class TvSeriesValidator extends AbstractValidator
     final Map<String, Directory> mapMissing = new HashMap<>();
     final String showName = dir.getName();
     final List<Entry<BigInteger, Directory>> seasons = new ArrayList<Map.Entry<BigInteger, Directory>>();
-    for (final Directory sub : dir.getSubdirectories())
+    for (final Directory sub : dir.getSubdirectoriesView())
     {
       final BigInteger number = StrUtil.getAsBigInteger(sub.getName());
       if (number == null)
@@ -281,7 +281,7 @@ public class TvSeriesValidator extends AbstractValidator
     markDirectoriesInvalid(dir, VIOLATION_NO_DIRECTORIES_IN_SEASON_DIRECTORY);
 
     final Map<Long, File> map = new HashMap<>();
-    for (final File file : dir.getFiles())
+    for (final File file : dir.getFilesView())
     {
       validateEpisodeEntry(config, file, seasonNumber);
       if (file.getWikidataEntityId() == null)
@@ -15,9 +15,13 @@
  */
 package am.app;
 
+import java.time.LocalTime;
 import java.util.Properties;
 import org.junit.Assert;
 import org.junit.Test;
+import am.filesystem.IoLimiter;
+import am.processor.hashes.HashConfig;
+import am.processor.hashes.HashStrategy;
 
 /**
  * Test {@link AppConfigUtils} class.
@@ -39,6 +43,48 @@ public class AppConfigUtilsTest
     Assert.assertTrue("Wikidata enabled.", config.getWikidataConfiguration().isEnabled());
   }
 
+  @Test
+  public void testInterpretIoLimits()
+  {
+    final AppConfig config = new AppConfig();
+    final Properties props = new Properties();
+    props.put("ioBytesPerSecond", "20M");
+    props.put("ioOperationsPerSecond.7", "500");
+    config.setProperties(props);
+    Assert.assertTrue("Volume-specific keys are known.", AppConfigUtils.interpretProperties(config));
+    final IoLimiter limiter = config.getIoLimits().getLimiter(Long.valueOf(7));
+    Assert.assertEquals("Default byte rate applies.", 20L * 1024 * 1024, limiter.getBytesPerSecond());
+    Assert.assertEquals("Volume operation rate applies.", 500, limiter.getOperationsPerSecond());
+  }
+
+  private static HashConfig interpretCreateHashes(final String value)
+  {
+    final AppConfig config = new AppConfig();
+    final Properties props = new Properties();
+    props.put("createHashes", value);
+    props.put("hashCancelAtDeadline", "true");
+    config.setProperties(props);
+    Assert.assertTrue("Hash budget keys are known.", AppConfigUtils.interpretProperties(config));
+    return config.getHashConfig();
+  }
+
+  @Test
+  public void testInterpretHashBudgets()
+  {
+    HashConfig hashConfig = interpretCreateHashes("2T");
+    Assert.assertEquals("Data strategy.", HashStrategy.Data, hashConfig.getStrategy());
+    Assert.assertEquals("Amount of data.", 2L << 40, hashConfig.getMaxBytes());
+    Assert.assertTrue("Cancel at deadline.", hashConfig.isCancelAtDeadline());
+    hashConfig = interpretCreateHashes("10000 files");
+    Assert.assertEquals("Files strategy.", HashStrategy.Files, hashConfig.getStrategy());
+    Assert.assertEquals("Number of files.", 10000, hashConfig.getMaxFiles());
+    hashConfig = interpretCreateHashes("until 02:00");
+    Assert.assertEquals("Time strategy.", HashStrategy.Time, hashConfig.getStrategy());
+    Assert.assertEquals("Time of day.", LocalTime.of(2, 0), hashConfig.getUntil());
+    hashConfig = interpretCreateHashes("until 25:00");
+    Assert.assertEquals("Invalid time keeps default strategy.", HashConfig.DEFAULT_STRATEGY, hashConfig.getStrategy());
+  }
+
   @Test
   public void testLoadConfigWrongFileName()
   {
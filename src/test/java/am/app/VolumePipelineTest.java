@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+import am.processor.hashes.HashStrategy;
+
+/**
+ * Test {@link VolumePipeline} class.
+ */
+public class VolumePipelineTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
+  private VolumePipeline pipeline;
+
+  @Before
+  public void setUp()
+  {
+    config = new AppConfig();
+    config.setIgnoreDirNames(new HashSet<String>());
+    config.setIgnoreFileNames(new HashSet<String>());
+    config.getHashConfig().setStrategy(HashStrategy.None);
+    pipeline = new VolumePipeline(new App(), config);
+  }
+
+  private Volume createVolume(final File dir)
+  {
+    final Volume vol = new Volume();
+    vol.setPath(dir.getAbsolutePath());
+    return vol;
+  }
+
+  @Test
+  public void testGroupByFileStore() throws IOException
+  {
+    final List<Volume> volumes = new ArrayList<>();
+    volumes.add(createVolume(folder.newFolder("a")));
+    volumes.add(createVolume(folder.newFolder("b")));
+    volumes.add(createVolume(new File(folder.getRoot(), "does_not_exist")));
+    final Map<Object, List<Volume>> groups = pipeline.groupByFileStore(volumes);
+    Assert.assertEquals("Two directories on the same device and a missing directory make two groups.", 2,
+        groups.size());
+  }
+
+  @Test
+  public void testProcess() throws IOException
+  {
+    final File dirA = folder.newFolder("a");
+    final File dirB = folder.newFolder("b");
+    new File(dirA, "file.txt").createNewFile();
+    final List<Volume> volumes = new ArrayList<>();
+    volumes.add(createVolume(dirA));
+    volumes.add(createVolume(dirB));
+    final List<Volume> merged = pipeline.process(volumes);
+    Assert.assertEquals("Each volume leads to one merged volume.", 2, merged.size());
+    Assert.assertEquals("Merged volumes keep order.", volumes.get(0).getPath(), merged.get(0).getPath());
+    Assert.assertEquals("New file found.", FileState.New, merged.get(0).getRoot().getFile("file.txt").getState());
+  }
+
+  @Test
+  public void testFailingVolume() throws IOException
+  {
+    final List<Volume> volumes = new ArrayList<>();
+    volumes.add(createVolume(folder.newFolder("a")));
+    volumes.add(createVolume(folder.newFolder("fail")));
+    volumes.add(createVolume(folder.newFolder("c")));
+    final App app = new App()
+    {
+      @Override
+      void validate(final AppConfig appConfig, final List<Volume> merged)
+      {
+        if (merged.get(0).getPath().endsWith("fail"))
+        {
+          throw new IllegalStateException("validation failed");
+        }
+      }
+    };
+    final List<Volume> merged = new VolumePipeline(app, config).process(volumes);
+    Assert.assertEquals("Only the failing volume is left out.", 2, merged.size());
+    Assert.assertEquals("Volume before the failing one kept.", volumes.get(0).getPath(), merged.get(0).getPath());
+    Assert.assertEquals("Volume after the failing one processed.", volumes.get(2).getPath(), merged.get(1).getPath());
+  }
+}
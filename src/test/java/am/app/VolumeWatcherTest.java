@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.db.FileEvent;
+import am.db.JdbcSerialization;
+import am.filesystem.model.Directory;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+import am.processor.ChangeReport;
+import am.processor.hashes.HashStrategy;
+
+/**
+ * Test {@link VolumeWatcher} class.
+ */
+public class VolumeWatcherTest
+{
+  private static final long TIMEOUT_MILLIS = 10000;
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  @Rule
+  public TemporaryFolder reportFolder = new TemporaryFolder();
+  private AppConfig config;
+  private JdbcSerialization io;
+  private VolumeWatcher watcher;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    config = new AppConfig();
+    config.setIgnoreDirNames(new HashSet<String>());
+    config.setIgnoreFileNames(new HashSet<String>());
+    config.getHashConfig().setStrategy(HashStrategy.None);
+    io = new JdbcSerialization();
+    io.setConfig(config);
+    io.connect(null);
+    io.createTables();
+    config.setDatabaseSerializer(io);
+
+    final Volume vol = new Volume();
+    vol.setPath(folder.getRoot().getAbsolutePath());
+    io.getVolumeMapper().insert(io, vol);
+    final List<Volume> merged = new VolumePipeline(new App(), config).process(Collections.singletonList(vol));
+    io.saveAll(merged);
+    watcher = new VolumeWatcher(config, merged);
+    watcher.register();
+  }
+
+  @After
+  public void tearDown() throws IOException
+  {
+    watcher.close();
+    io.close();
+  }
+
+  private void awaitEvents() throws InterruptedException
+  {
+    Assert.assertTrue("File system events are reported.", watcher.processBatch(TIMEOUT_MILLIS) > 0);
+  }
+
+  @Test
+  public void testNewAndDeletedFiles() throws IOException, InterruptedException
+  {
+    final File sub = folder.newFolder("sub");
+    Files.write(new File(sub, "file.txt").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    awaitEvents();
+    final Directory root = watcher.getVolumes().get(0).getRoot();
+    final Directory subDir = root.getSubdirectory("sub");
+    Assert.assertNotNull("New directory added to tree.", subDir);
+    Assert.assertEquals("File in new directory is new.", FileState.New, subDir.getFile("file.txt").getState());
+    Assert.assertNotNull("New directory stored in database.",
+        io.loadAll().get(0).getRoot().getSubdirectory("sub").getFile("file.txt"));
+
+    Files.delete(new File(sub, "file.txt").toPath());
+    awaitEvents();
+    Assert.assertEquals("Deleted file is missing.", FileState.Missing, subDir.getFile("file.txt").getState());
+    Assert.assertEquals("Missing state stored in database.", FileState.Missing,
+        io.loadAll().get(0).getRoot().getSubdirectory("sub").getFile("file.txt").getState());
+  }
+
+  @Test
+  public void testChangeReport() throws IOException, InterruptedException
+  {
+    config.setTsvDirectory(reportFolder.getRoot());
+    final ChangeReport report = ChangeReport.create(config);
+    config.setChangeReport(report);
+    final File file = folder.newFile("file.txt");
+    awaitEvents();
+    Files.delete(file.toPath());
+    awaitEvents();
+    report.close();
+    Assert.assertEquals("New file reported.", 1, report.getCount(FileState.New));
+    Assert.assertEquals("Deleted file reported.", 1, report.getCount(FileState.Missing));
+    final List<String> lines = Files.readAllLines(report.getFile().toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals("Header and two lines.", 3, lines.size());
+    Assert.assertTrue("Path of file reported.", lines.get(2).endsWith(file.getAbsolutePath()));
+  }
+
+  @Test
+  public void testEvents() throws IOException, InterruptedException
+  {
+    Assert.assertNotNull("Run started.", io.startRun("Watch"));
+    final File first = folder.newFile("first.txt");
+    awaitEvents();
+    folder.newFile("second.txt");
+    awaitEvents();
+    Files.delete(first.toPath());
+    awaitEvents();
+    final List<FileEvent> events = io.getFileEventMapper().loadSinceRun(io, 0);
+    Assert.assertEquals("Events stored with each batch, one per change.", 3, events.size());
+    Assert.assertEquals("First file new.", FileState.New, events.get(0).getState());
+    Assert.assertEquals("Second file new.", FileState.New, events.get(1).getState());
+    Assert.assertEquals("First file missing.", FileState.Missing, events.get(2).getState());
+    Assert.assertEquals("Path of first file.", first.getAbsolutePath(), events.get(2).getPath());
+    io.finishRun();
+  }
+
+  @Test
+  public void testStop() throws IOException, InterruptedException
+  {
+    final Thread thread = new Thread(watcher::run);
+    thread.start();
+    folder.newFile("file.txt");
+    Thread.sleep(100);
+    watcher.stop();
+    Assert.assertFalse("Watching ended before stop returned.", isRunning(thread));
+    Assert.assertNotNull("Batch collected before stopping was stored.",
+        io.loadAll().get(0).getRoot().getFile("file.txt"));
+    watcher.stop();
+  }
+
+  @Test
+  public void testCompactCatalog() throws IOException, InterruptedException
+  {
+    final File sub = folder.newFolder("sub");
+    Files.write(new File(sub, "old.txt").toPath(), "old".getBytes(StandardCharsets.UTF_8));
+    watcher.close();
+    io.saveAll(new VolumePipeline(new App(), config).process(io.loadAll()));
+    watcher = new VolumeWatcher(config, io.loadAllCompact());
+    watcher.register();
+    Files.write(new File(sub, "new.txt").toPath(), "new".getBytes(StandardCharsets.UTF_8));
+    awaitEvents();
+    final Directory subDir = watcher.getVolumes().get(0).getRoot().getSubdirectory("sub");
+    Assert.assertEquals("New file added to loaded directory.", FileState.New, subDir.getFile("new.txt").getState());
+    Assert.assertNotNull("Loaded file kept.", subDir.getFile("old.txt"));
+    Assert.assertNotNull("New file stored in database.",
+        io.loadAll().get(0).getRoot().getSubdirectory("sub").getFile("new.txt"));
+
+    Files.delete(new File(sub, "old.txt").toPath());
+    awaitEvents();
+    Assert.assertEquals("Deleted loaded file is missing.", FileState.Missing, subDir.getFile("old.txt").getState());
+    Assert.assertEquals("Missing state stored in database.", FileState.Missing,
+        io.loadAll().get(0).getRoot().getSubdirectory("sub").getFile("old.txt").getState());
+  }
+
+  private static boolean isRunning(final Thread thread) throws InterruptedException
+  {
+    // the thread may still be terminating after run returned
+    thread.join(TIMEOUT_MILLIS);
+    return thread.isAlive();
+  }
+}
@@ -15,18 +15,28 @@
  */
 package am.db;
 
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import am.app.AppConfig;
 import am.filesystem.model.Directory;
 import am.filesystem.model.File;
+import am.filesystem.model.FileState;
 import am.filesystem.model.Volume;
 
 public class JdbcSerializationTest
 {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void isConnectedNullTest()
   {
@@ -101,9 +111,15 @@ public class JdbcSerializationTest
     sub.setName("sub");
     sub.setParentRef(root.getId());
     sub.setVolumeRef(vol.getId());
+    final Date subLastModified = new Date(1600000000000L);
+    sub.setLastModified(subLastModified);
+    sub.setNumEntries(Long.valueOf(1));
     root.add(sub);
     inserted = directoryMapper.insert(io, sub);
     Assert.assertTrue("Inserting subdirectory works.", inserted);
+    final Directory loadedSub = directoryMapper.loadByField(io, ModelMapper.ID, sub.getId()).get(0);
+    Assert.assertEquals("Directory modification time is stored.", subLastModified, loadedSub.getLastModified());
+    Assert.assertEquals("Directory number of entries is stored.", Long.valueOf(1), loadedSub.getNumEntries());
 
     // insert file
     final File file = new File();
@@ -112,10 +128,16 @@ public class JdbcSerializationTest
     file.setVolumeRef(vol.getId());
     file.setByteSize(Long.valueOf(0));
     file.setLastModified(new Date());
+    file.setChecksum(0xe3069283L);
+    file.setFingerprint(0x123456789abcdefL);
     sub.add(file);
     final FileMapper fileMapper = io.getFileMapper();
     inserted = fileMapper.insert(io, file);
     Assert.assertTrue("Inserting file works.", inserted);
+    Assert.assertEquals("Checksum is stored.", 0xe3069283L,
+        fileMapper.loadByDirectory(io, sub.getId()).get(0).getChecksum());
+    Assert.assertEquals("Fingerprint is stored.", 0x123456789abcdefL,
+        fileMapper.loadByDirectory(io, sub.getId()).get(0).getFingerprint());
 
     final List<Volume> vols = new ArrayList<Volume>();
     vols.add(vol);
@@ -132,4 +154,205 @@ public class JdbcSerializationTest
 
     io.close();
   }
+
+  @Test
+  public void saveAndLoadAllCompactTest()
+  {
+    final JdbcSerialization io = new JdbcSerialization();
+    final AppConfig config = new AppConfig();
+    io.setConfig(config);
+    io.connect(null);
+    io.createTables();
+
+    final Volume vol = new Volume();
+    vol.setPath("/db/path");
+    io.getVolumeMapper().insert(io, vol);
+    final Directory root = new Directory();
+    root.setName("");
+    vol.setRoot(root);
+    final Directory sub = new Directory();
+    sub.setName("sub");
+    root.add(sub);
+    final File file = new File();
+    file.setName("file");
+    file.setByteSize(Long.valueOf(123));
+    file.setLastModified(new Date(1600000000000L));
+    file.setHashValue("00ff");
+    sub.add(file);
+    final List<Volume> vols = new ArrayList<Volume>();
+    vols.add(vol);
+    io.saveAll(vols);
+
+    final List<Volume> compact = io.loadAllCompact();
+    Assert.assertEquals("One volume loaded.", 1, compact.size());
+    final Directory loadedSub = compact.get(0).getRoot().getSubdirectory("sub");
+    Assert.assertNotNull("Subdirectory loaded.", loadedSub);
+    final File loadedFile = loadedSub.getFile("file");
+    Assert.assertNotNull("File loaded.", loadedFile);
+    Assert.assertEquals("Same id.", file.getId(), loadedFile.getId());
+    Assert.assertEquals("Same size.", Long.valueOf(123), loadedFile.getByteSize());
+    Assert.assertEquals("Same hash value.", "00ff", loadedFile.getHashValue());
+    Assert.assertEquals("Directory reference derived from tree.", sub.getId(), loadedFile.getDirectoryRef());
+
+    // changes made through views are stored
+    loadedFile.setHashValue("abcd");
+    io.saveAll(compact);
+    final File reloaded = io.loadAll().get(0).getRoot().getSubdirectory("sub").getFile("file");
+    Assert.assertEquals("Changed hash value was stored.", "abcd", reloaded.getHashValue());
+    io.close();
+  }
+
+  private static String loadFileName(final JdbcSerialization io)
+  {
+    return io.loadAllCompact().get(0).getRoot().getFiles().get(0).getName();
+  }
+
+  @Test
+  public void catalogSnapshotTest() throws IOException, SQLException
+  {
+    final JdbcSerialization io = new JdbcSerialization();
+    final AppConfig config = new AppConfig();
+    config.setCatalogSnapshot(true);
+    io.setConfig(config);
+    final java.io.File dir = folder.newFolder();
+    io.connect(dir);
+    io.createTables();
+
+    final Volume vol = new Volume();
+    vol.setPath("/db/path");
+    io.getVolumeMapper().insert(io, vol);
+    final Directory root = new Directory();
+    root.setName("");
+    vol.setRoot(root);
+    final File file = new File();
+    file.setName("file");
+    file.setByteSize(Long.valueOf(1));
+    file.setLastModified(new Date(1600000000000L));
+    root.add(file);
+    final List<Volume> vols = new ArrayList<Volume>();
+    vols.add(vol);
+    io.saveAll(vols);
+    Assert.assertTrue("Snapshot written.", new java.io.File(dir, "am.snapshot").isFile());
+
+    // a change that bypasses the application is not noticed, proving that the snapshot is used
+    final PreparedStatement stat = io.prepare("update files set name='changed';");
+    stat.execute();
+    io.close(stat);
+    Assert.assertEquals("Loaded from snapshot.", "file", loadFileName(io));
+
+    // a change made through a mapper invalidates the snapshot
+    file.setName("renamed");
+    io.getFileMapper().update(io, file);
+    Assert.assertEquals("Loaded from database.", "renamed", loadFileName(io));
+    io.close();
+  }
+
+  @Test
+  public void fileEventsTest()
+  {
+    final JdbcSerialization io = new JdbcSerialization();
+    io.setConfig(new AppConfig());
+    io.connect(null);
+    io.createTables();
+    final Volume vol = new Volume();
+    vol.setPath("/db/path");
+    io.getVolumeMapper().insert(io, vol);
+    final Directory root = new Directory();
+    root.setName("");
+    vol.setRoot(root);
+    for (int i = 0; i < 1500; i++)
+    {
+      final File file = new File();
+      file.setName("file" + i);
+      file.setByteSizeValue(i);
+      file.setState(FileState.New);
+      root.add(file);
+    }
+    final List<Volume> vols = new ArrayList<Volume>();
+    vols.add(vol);
+
+    final Run first = io.startRun("Check");
+    Assert.assertNotNull("Run stored.", first);
+    io.saveAll(vols);
+    io.finishRun();
+    final FileEventMapper mapper = io.getFileEventMapper();
+    Assert.assertEquals("One event per new file, more than one batch.", 1500, mapper.loadSinceRun(io, 0).size());
+
+    // one file disappears, another one was modified, the rest is unchanged
+    final File missing = root.getFile("file1");
+    missing.setState(FileState.Missing);
+    root.getFile("file2").setState(FileState.Modified);
+    for (final File file : root.getFilesView())
+    {
+      if (file.getState() == FileState.New)
+      {
+        file.setState(FileState.Identical);
+      }
+    }
+    final Run second = io.startRun("Check");
+    io.saveAll(vols);
+    io.finishRun();
+    final List<FileEvent> events = mapper.loadSinceRun(io, first.getId().longValue());
+    Assert.assertEquals("Two events since first run.", 2, events.size());
+    Assert.assertEquals("Event references run.", second.getId(), events.get(0).getRunRef());
+    Assert.assertEquals("Event references file.", missing.getId(), events.get(0).getFileRef());
+    Assert.assertEquals("Missing state.", FileState.Missing, events.get(0).getState());
+    Assert.assertEquals("Modified state.", FileState.Modified, events.get(1).getState());
+
+    // still missing in the next run is no new event
+    root.getFile("file2").setState(FileState.Identical);
+    final Run third = io.startRun("Check");
+    io.saveAll(vols);
+    io.finishRun();
+    Assert.assertTrue("No events in third run.", mapper.loadSinceRun(io, second.getId().longValue()).isEmpty());
+    final Run loaded = io.getRunMapper().loadByField(io, ModelMapper.ID, third.getId()).get(0);
+    Assert.assertNotNull("Run finished.", loaded.getFinished());
+    Assert.assertEquals("Run mode.", "Check", loaded.getMode());
+    Assert.assertEquals("Number of events.", 0, loaded.getNumEvents());
+    io.close();
+  }
+
+  @Test
+  public void finishRunWhileAddingEventsTest() throws InterruptedException
+  {
+    final JdbcSerialization io = new JdbcSerialization();
+    io.setConfig(new AppConfig());
+    io.connect(null);
+    io.createTables();
+    final Volume vol = new Volume();
+    vol.setPath("/db/path");
+    io.getVolumeMapper().insert(io, vol);
+    final Directory root = new Directory();
+    root.setName("");
+    vol.setRoot(root);
+    for (int i = 0; i < 100; i++)
+    {
+      final File file = new File();
+      file.setName("file" + i);
+      file.setState(FileState.Modified);
+      root.add(file);
+    }
+    final List<Volume> vols = new ArrayList<Volume>();
+    vols.add(vol);
+    io.saveAll(vols);
+
+    final Run run = io.startRun("Watch");
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread adder = new Thread(() ->
+    {
+      for (int i = 0; i < 50000; i++)
+      {
+        io.addEvent(root.getFilesView().get(i % 100));
+      }
+    });
+    adder.setUncaughtExceptionHandler((thread, e) -> failure.set(e));
+    adder.start();
+    Thread.sleep(20);
+    io.finishRun();
+    adder.join();
+    Assert.assertNull("Adding events after the run was finished is ignored.", failure.get());
+    Assert.assertEquals("All events of the run stored.", run.getNumEvents(),
+        io.getFileEventMapper().loadSinceRun(io, 0).size());
+    io.close();
+  }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+
+/**
+ * Test {@link HardLinks}.
+ *
+ * @author Marco Schmidt
+ */
+public class HardLinksTest
+{
+  private static File create(final String name, final String fileKey, final long size)
+  {
+    final File file = new File();
+    file.setName(name);
+    file.setFileKey(fileKey);
+    file.setByteSize(Long.valueOf(size));
+    return file;
+  }
+
+  @Test
+  public void testGroups()
+  {
+    final Directory root = new Directory();
+    final Directory sub = new Directory();
+    sub.setName("sub");
+    root.add(sub);
+    final File a = create("a", "(dev=1,ino=2)", 100);
+    final File b = create("b", "(dev=1,ino=2)", 100);
+    final File c = create("c", "(dev=1,ino=2)", 100);
+    final File d = create("d", "(dev=1,ino=3)", 10);
+    final File e = create("e", null, 1);
+    final File missing = create("f", "(dev=1,ino=2)", 100);
+    missing.setState(FileState.Missing);
+    root.add(a);
+    root.add(d);
+    sub.add(b);
+    sub.add(c);
+    sub.add(e);
+    sub.add(missing);
+    final HardLinks links = new HardLinks();
+    links.addAll(root);
+
+    Assert.assertEquals("Three links to the same file.", Arrays.asList(a, b, c), links.getLinks(b));
+    Assert.assertEquals("Single link.", Arrays.asList(d), links.getLinks(d));
+    Assert.assertEquals("No file key.", Arrays.asList(e), links.getLinks(e));
+    Assert.assertEquals("Missing files are not counted.", 5, links.getNumFiles());
+    Assert.assertEquals("Logical size.", 311, links.getNumBytes());
+    Assert.assertEquals("Physical files.", 3, links.getNumPhysicalFiles());
+    Assert.assertEquals("Physical size.", 111, links.getNumPhysicalBytes());
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final HardLinks links = new HardLinks();
+    links.addAll(null);
+    Assert.assertEquals("No files.", 0, links.getNumFiles());
+    Assert.assertEquals("No physical files.", 0, links.getNumPhysicalFiles());
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link IgnoreRules} class.
+ */
+public class IgnoreRulesTest
+{
+  @Test
+  public void testNames()
+  {
+    final IgnoreRules rules = IgnoreRules.compile(Arrays.asList("Thumbs.db", "*.tmp", ".~lock.*#", "file?.[ch]"));
+    Assert.assertFalse("Names only need no paths.", rules.hasPathRules());
+    Assert.assertTrue("Literal name matches.", rules.isIgnored(null, "Thumbs.db"));
+    Assert.assertFalse("Literal name is exact.", rules.isIgnored(null, "thumbs.db"));
+    Assert.assertTrue("Star matches any suffix.", rules.isIgnored(null, "a.b.tmp"));
+    Assert.assertFalse("Dot is not a wildcard.", rules.isIgnored(null, "atmp"));
+    Assert.assertTrue("Office lock file matches.", rules.isIgnored(null, ".~lock.report.odt#"));
+    Assert.assertTrue("Question mark and class match.", rules.isIgnored(null, "file1.c"));
+    Assert.assertFalse("Class restricts characters.", rules.isIgnored(null, "file1.o"));
+  }
+
+  @Test
+  public void testPaths()
+  {
+    final IgnoreRules rules = IgnoreRules.compile(Arrays.asList("**/node_modules", "/photos/cache/", "a/*/tmp", "**/target/classes"),
+        Collections.singletonList("volume/**"));
+    Assert.assertTrue("Path rules need relative paths.", rules.hasPathRules());
+    Assert.assertTrue("Double star matches top level.", rules.isIgnored("node_modules", "node_modules"));
+    Assert.assertTrue("Double star matches nested level.", rules.isIgnored("x/y/node_modules", "node_modules"));
+    Assert.assertTrue("Anchored rule matches at root.", rules.isIgnored("photos/cache", "cache"));
+    Assert.assertFalse("Anchored rule does not match below root.", rules.isIgnored("x/photos/cache", "cache"));
+    Assert.assertTrue("Single star matches one level.", rules.isIgnored("a/b/tmp", "tmp"));
+    Assert.assertFalse("Single star does not cross levels.", rules.isIgnored("a/b/c/tmp", "tmp"));
+    Assert.assertTrue("Path suffix matches at top level.", rules.isIgnored("target/classes", "classes"));
+    Assert.assertTrue("Path suffix matches nested.", rules.isIgnored("x/target/classes", "classes"));
+    Assert.assertFalse("Path suffix matches whole parts only.", rules.isIgnored("xtarget/classes", "classes"));
+    Assert.assertTrue("Second rule set is included.", rules.isIgnored("volume/deep/file", "file"));
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final IgnoreRules rules = IgnoreRules.compile(null, Collections.<String>emptySet());
+    Assert.assertTrue("No rules.", rules.isEmpty());
+    Assert.assertFalse("Nothing is ignored.", rules.isIgnored("a", "a"));
+  }
+}
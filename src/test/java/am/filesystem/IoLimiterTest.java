@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link IoLimiter} and {@link IoLimits} classes.
+ */
+public class IoLimiterTest
+{
+  @Test
+  public void testAcquireWithinBurst()
+  {
+    final IoLimiter limiter = new IoLimiter(1000, 100);
+    limiter.acquire(10, 500);
+    Assert.assertEquals("No throttling within one second's budget.", 0, limiter.getNumThrottled());
+    Assert.assertEquals("Bytes are counted.", 500, limiter.getNumBytes());
+    Assert.assertEquals("Operations are counted.", 10, limiter.getNumOperations());
+  }
+
+  @Test
+  public void testAcquireThrottles()
+  {
+    final IoLimiter limiter = new IoLimiter(0, 100);
+    final long millis = System.currentTimeMillis();
+    for (int i = 0; i < 130; i++)
+    {
+      limiter.acquire(1, 1024);
+    }
+    Assert.assertTrue("Exceeding the budget throttles.", limiter.getNumThrottled() > 0);
+    Assert.assertTrue("Throttling time is recorded.", limiter.getThrottledMillis() > 0);
+    Assert.assertTrue("Callers wait for refill.", System.currentTimeMillis() - millis >= 200);
+  }
+
+  @Test
+  public void testLimits()
+  {
+    final IoLimits limits = new IoLimits();
+    Assert.assertNull("No limits, no limiter.", limits.getLimiter(Long.valueOf(1)));
+    limits.setBytesPerSecond(Long.valueOf(2), IoLimits.parseAmount("64k"));
+    Assert.assertNull("Limit of other volume does not apply.", limits.getLimiter(Long.valueOf(1)));
+    final IoLimiter limiter = limits.getLimiter(Long.valueOf(2));
+    Assert.assertEquals("Suffix k is parsed.", 65536, limiter.getBytesPerSecond());
+    Assert.assertSame("Limiter is shared.", limiter, limits.getLimiter(Long.valueOf(2)));
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseAmountNegative()
+  {
+    IoLimits.parseAmount("-5");
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.app.AppConfig;
+import am.db.DirectoryMapper;
+import am.db.JdbcSerialization;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.Volume;
+
+/**
+ * Test {@link ScanCheckpoint} class.
+ */
+public class ScanCheckpointTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
+  private JdbcSerialization io;
+  private Volume vol;
+
+  @Before
+  public void setUp()
+  {
+    config = new AppConfig();
+    config.setIgnoreDirNames(new HashSet<String>());
+    config.setIgnoreFileNames(new HashSet<String>());
+    config.setScanCheckpointSeconds(60);
+    io = new JdbcSerialization();
+    io.setConfig(config);
+    io.connect(null);
+    io.createTables();
+    config.setDatabaseSerializer(io);
+    vol = new Volume();
+    vol.setPath(folder.getRoot().getAbsolutePath());
+    io.getVolumeMapper().insert(io, vol);
+  }
+
+  @After
+  public void tearDown()
+  {
+    io.close();
+  }
+
+  private static Directory createDirectory(final String name, final String fileName)
+  {
+    final Directory dir = new Directory();
+    dir.setName(name);
+    final File file = new File();
+    file.setName(fileName);
+    file.setByteSize(Long.valueOf(7));
+    file.setLastModified(new Date());
+    dir.add(file);
+    return dir;
+  }
+
+  @Test
+  public void testAttachCompletedSubtree()
+  {
+    final ScanCheckpoint checkpoint = new ScanCheckpoint(config, io, vol.getId(), 0);
+    final Directory sub = createDirectory("sub", "inner.txt");
+    checkpoint.completed("dir/sub", sub);
+    checkpoint.flush();
+    final Directory dir = createDirectory("dir", "outer.txt");
+    dir.add(sub);
+    checkpoint.completed("dir", dir);
+    checkpoint.flush();
+    Assert.assertEquals("Each directory is stored once.", 2,
+        io.getScanDirectoryMapper().loadByField(io, DirectoryMapper.TABLE_DIRS_VOLUME_REF, vol.getId()).size());
+    Assert.assertNull("Scanned directories do not get staging ids.", sub.getId());
+
+    final ScanCheckpoint resumed = new ScanCheckpoint(config, io, vol.getId(), 0);
+    Assert.assertEquals("Both directories are loaded.", 2, resumed.load());
+    Assert.assertNull("Attached subtree is no longer a root.", resumed.restore("dir/sub"));
+    final Directory restored = resumed.restore("dir");
+    Assert.assertNotNull("Completed subtree can be restored.", restored);
+    Assert.assertNotNull("Files are restored.", restored.getSubdirectory("sub").getFile("inner.txt"));
+  }
+
+  @Test
+  public void testResumeScan() throws IOException
+  {
+    folder.newFolder("a");
+    folder.newFile("a/new.txt");
+    folder.newFolder("b");
+    folder.newFile("b/real.txt");
+    // pretend an interrupted scan completed directory b, with a file name that does not exist on disk
+    final ScanCheckpoint checkpoint = new ScanCheckpoint(config, io, vol.getId(), 0);
+    checkpoint.completed("b", createDirectory("b", "checkpointed.txt"));
+    checkpoint.flush();
+
+    final VolumeScanner scanner = new VolumeScanner(config, vol);
+    scanner.scan();
+    final Directory root = vol.getRoot();
+    Assert.assertNotNull("Directory not in checkpoint is scanned.", root.getSubdirectory("a").getFile("new.txt"));
+    final Directory restored = root.getSubdirectory("b");
+    Assert.assertNotNull("Directory in checkpoint is restored.", restored.getFile("checkpointed.txt"));
+    Assert.assertNull("Directory in checkpoint is not scanned again.", restored.getFile("real.txt"));
+    Assert.assertTrue("Checkpoint is removed after complete scan.", io.getScanDirectoryMapper()
+        .loadByField(io, DirectoryMapper.TABLE_DIRS_VOLUME_REF, vol.getId()).isEmpty());
+  }
+}
@@ -16,11 +16,24 @@
 package am.filesystem;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import am.app.AppConfig;
+import am.filesystem.model.Directory;
 import am.filesystem.model.Volume;
 
 /**
@@ -28,12 +41,15 @@ import am.filesystem.model.Volume;
  */
 public class VolumeScannerTest
 {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
   private VolumeScanner scanner;
 
   @Before
   public void setUp()
   {
-    final AppConfig config = new AppConfig();
+    config = new AppConfig();
     config.setIgnoreDirNames(new HashSet<String>());
     config.setIgnoreFileNames(new HashSet<String>());
     final Volume vol = new Volume();
@@ -47,4 +63,264 @@ public class VolumeScannerTest
     scanner.scan();
     Assert.assertNull("Null array yields null result.", FileSystemHelper.findNewest((File[]) null));
   }
+
+  @Test
+  public void testScanParallelEqualsSequential() throws IOException
+  {
+    final File root = folder.getRoot();
+    for (int i = 0; i < 5; i++)
+    {
+      final File sub = folder.newFolder("dir" + i, "sub" + i);
+      for (int j = 0; j <= i; j++)
+      {
+        Files.write(new File(sub, "file" + j + ".txt").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    folder.newFolder("@eaDir");
+    folder.newFile("Thumbs.db");
+    folder.newFile("top.txt");
+    config.getIgnoreDirNames().add("@eaDir");
+    config.getIgnoreFileNames().add("Thumbs.db");
+
+    final Volume sequential = new Volume();
+    sequential.setPath(root.getAbsolutePath());
+    new VolumeScanner(config, sequential).scan();
+
+    config.setNumberOfThreads(Integer.valueOf(4));
+    final Volume parallel = new Volume();
+    parallel.setPath(root.getAbsolutePath());
+    new VolumeScanner(config, parallel).scan();
+
+    Assert.assertEquals("Parallel scan leads to same path.", sequential.getPath(), parallel.getPath());
+    Assert.assertEquals("Parallel scan leads to same tree.", describe("", sequential.getRoot()),
+        describe("", parallel.getRoot()));
+  }
+
+  /**
+   * Scanner deleting the other files named gone* of a directory when it gets to the first of them, so that those are
+   * listed but vanish before their attributes are read.
+   */
+  private static final class DeletingScanner extends VolumeScanner
+  {
+    private boolean deleted;
+
+    DeletingScanner(final AppConfig config, final Volume vol)
+    {
+      super(config, vol);
+    }
+
+    @Override
+    public boolean isIgnoredFile(final Path path, final String name)
+    {
+      if (!deleted && name.startsWith("gone"))
+      {
+        deleted = true;
+        for (int i = 0; i < 5; i++)
+        {
+          final Path other = path.resolveSibling("gone" + i + ".txt");
+          if (!other.equals(path))
+          {
+            try
+            {
+              Files.deleteIfExists(other);
+            }
+            catch (final IOException e)
+            {
+              throw new UncheckedIOException(e);
+            }
+          }
+        }
+      }
+      return super.isIgnoredFile(path, name);
+    }
+  }
+
+  private Volume scanVanishing(final String name) throws IOException
+  {
+    final File root = folder.newFolder(name);
+    final File race = new File(root, "race");
+    Assert.assertTrue("Directory created.", new File(race, "sub").mkdirs());
+    for (int i = 0; i < 5; i++)
+    {
+      Files.write(new File(race, "gone" + i + ".txt").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    }
+    Files.write(new File(race, "keep.txt").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(race, "sub/deep.txt").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    final Volume vol = new Volume();
+    vol.setPath(root.getAbsolutePath());
+    new DeletingScanner(config, vol).scan();
+    return vol;
+  }
+
+  @Test
+  public void testVanishedEntriesParallelEqualsSequential() throws IOException
+  {
+    final Volume sequential = scanVanishing("sequential");
+    config.setNumberOfThreads(Integer.valueOf(4));
+    final Volume parallel = scanVanishing("parallel");
+    for (final Volume vol : Arrays.asList(sequential, parallel))
+    {
+      Assert.assertNotNull("Scan completed.", vol.getRoot());
+      final Directory race = vol.getRoot().getSubdirectory("race");
+      Assert.assertNotNull("Other file kept.", race.getFile("keep.txt"));
+      Assert.assertNotNull("Scan continued below.", race.getSubdirectory("sub").getFile("deep.txt"));
+      Assert.assertEquals("Only the first file of those deleted.", 2, race.getFiles().size());
+    }
+    Assert.assertEquals("Parallel scan leads to same tree.", describe("", sequential.getRoot()),
+        describe("", parallel.getRoot()));
+  }
+
+  @Test
+  public void testMissingRoot()
+  {
+    for (final Integer numThreads : Arrays.asList(Integer.valueOf(1), Integer.valueOf(4)))
+    {
+      config.setNumberOfThreads(numThreads);
+      final Volume vol = new Volume();
+      vol.setPath(new File(folder.getRoot(), "missing").getAbsolutePath());
+      new VolumeScanner(config, vol).scan();
+      Assert.assertNull("No tree for a missing root with " + numThreads + " thread(s).", vol.getRoot());
+    }
+  }
+
+  @Test
+  public void testIgnoreRules() throws IOException
+  {
+    folder.newFolder("src", "node_modules");
+    folder.newFolder("cache", "keep");
+    folder.newFolder("keep", "cache");
+    folder.newFile("keep/data.tmp");
+    folder.newFile("keep/data.txt");
+    config.getIgnoreDirNames().add("**/node_modules");
+    config.getIgnoreFileNames().add("*.tmp");
+    config.setVolumeIgnoreDirNames(Long.valueOf(5), Collections.singleton("/cache"));
+
+    for (final Integer numThreads : Arrays.asList(Integer.valueOf(1), Integer.valueOf(4)))
+    {
+      config.setNumberOfThreads(numThreads);
+      final Volume vol = new Volume();
+      vol.setId(Long.valueOf(5));
+      vol.setPath(folder.getRoot().getAbsolutePath());
+      new VolumeScanner(config, vol).scan();
+      final Directory root = vol.getRoot();
+      Assert.assertNull("Glob rule skips nested directory.", root.getSubdirectory("src").getSubdirectory("node_modules"));
+      Assert.assertNull("Anchored volume rule skips top-level directory.", root.getSubdirectory("cache"));
+      final Directory keep = root.getSubdirectory("keep");
+      Assert.assertNotNull("Anchored volume rule keeps nested directory.", keep.getSubdirectory("cache"));
+      Assert.assertNull("Glob rule skips file.", keep.getFile("data.tmp"));
+      Assert.assertNotNull("Other file is kept.", keep.getFile("data.txt"));
+    }
+  }
+
+  @Test
+  public void testIncrementalScanReusesUnmodifiedDirectories() throws IOException
+  {
+    final File root = folder.getRoot();
+    final FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 3600000L);
+    for (int i = 0; i < 3; i++)
+    {
+      final File sub = folder.newFolder("dir" + i);
+      Files.write(new File(sub, "file.txt").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(sub.toPath(), old);
+    }
+    Files.setLastModifiedTime(root.toPath(), old);
+    final Volume catalog = new Volume();
+    catalog.setPath(root.getAbsolutePath());
+    new VolumeScanner(config, catalog).scan();
+
+    final Path modified = new File(root, "dir1").toPath();
+    Files.write(modified.resolve("new.txt"), "new".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(modified, FileTime.fromMillis(old.toMillis() + 1000L));
+
+    config.setIncrementalScan(true);
+    final Volume incremental = new Volume();
+    incremental.setPath(root.getAbsolutePath());
+    final VolumeScanner incrementalScanner = new VolumeScanner(config, incremental);
+    incrementalScanner.setCatalog(catalog);
+    incrementalScanner.scan();
+
+    config.setIncrementalScan(false);
+    final Volume full = new Volume();
+    full.setPath(root.getAbsolutePath());
+    new VolumeScanner(config, full).scan();
+
+    Assert.assertEquals("Incremental scan leads to same tree.", describe("", full.getRoot()),
+        describe("", incremental.getRoot()));
+    Assert.assertTrue("Unmodified root is reused.", incremental.getRoot().isReused());
+    Assert.assertTrue("Unmodified directory is reused.", incremental.getRoot().getSubdirectory("dir0").isReused());
+    Assert.assertSame("Reused directory contains catalog file.",
+        catalog.getRoot().getSubdirectory("dir0").getFile("file.txt"),
+        incremental.getRoot().getSubdirectory("dir0").getFile("file.txt"));
+    Assert.assertFalse("Modified directory is scanned.", incremental.getRoot().getSubdirectory("dir1").isReused());
+    Assert.assertEquals("Number of entries is recorded.", Long.valueOf(2),
+        incremental.getRoot().getSubdirectory("dir1").getNumEntries());
+  }
+
+  private long countFiles(final Volume catalog) throws IOException
+  {
+    final Volume vol = new Volume();
+    vol.setPath(folder.getRoot().getAbsolutePath());
+    final VolumeVisitor visitor = new VolumeVisitor(new VolumeScanner(config, vol), config);
+    if (catalog != null)
+    {
+      visitor.setCatalogRoot(catalog.getRoot());
+    }
+    Files.walkFileTree(folder.getRoot().toPath(), visitor);
+    return visitor.getNumFiles();
+  }
+
+  @Test
+  public void testIncrementalScanCountsLikeFullScan() throws IOException
+  {
+    final File root = folder.getRoot();
+    final File sub = folder.newFolder("dir");
+    folder.newFile("dir/data.tmp");
+    folder.newFile("dir/data.txt");
+    final FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 3600000L);
+    Files.setLastModifiedTime(sub.toPath(), old);
+    Files.setLastModifiedTime(root.toPath(), old);
+    final Volume catalog = new Volume();
+    catalog.setPath(root.getAbsolutePath());
+    new VolumeScanner(config, catalog).scan();
+
+    // files ignored now were part of the catalog, the reused directory must not count them
+    config.getIgnoreFileNames().add("*.tmp");
+    config.setIncrementalScan(true);
+    Assert.assertEquals("Incremental scan counts the same files as a full scan.", countFiles(null),
+        countFiles(catalog));
+    Assert.assertEquals("Ignored file not counted.", 1, countFiles(catalog));
+  }
+
+  @Test
+  public void testCreateFileFromAttributes() throws IOException
+  {
+    final File target = folder.newFile("target.txt");
+    Files.write(target.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    final Path link = new File(folder.getRoot(), "link.txt").toPath();
+    Files.createSymbolicLink(link, target.toPath());
+    final am.filesystem.model.File fromTarget = scanner.createFile(target.toPath(), "target.txt");
+    Assert.assertEquals("Size taken from attributes.", Long.valueOf(7), fromTarget.getByteSize());
+    Assert.assertEquals("Time of last modification taken from attributes.", target.lastModified(),
+        fromTarget.getLastModified().getTime());
+    final am.filesystem.model.File fromLink = scanner.createFile(link, "link.txt");
+    Assert.assertEquals("Symbolic link uses size of its target.", Long.valueOf(7), fromLink.getByteSize());
+    Assert.assertEquals("Symbolic link uses file key of its target.", fromTarget.getFileKey(), fromLink.getFileKey());
+  }
+
+  private static List<String> describe(final String parent, final Directory dir)
+  {
+    final List<String> result = new ArrayList<>();
+    final String path = parent + "/" + dir.getName();
+    result.add("d " + path);
+    for (final am.filesystem.model.File file : dir.getFiles())
+    {
+      result.add("f " + path + "/" + file.getName() + " " + file.getByteSize() + " " + file.getLastModified());
+    }
+    for (final Directory sub : dir.getSubdirectories())
+    {
+      result.addAll(describe(path, sub));
+    }
+    Collections.sort(result);
+    return result;
+  }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test {@link CatalogSnapshot}.
+ *
+ * @author Marco Schmidt
+ */
+public class CatalogSnapshotTest
+{
+  private static final String HASH = "0123456789abcdef0123456789abcdef";
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Volume createVolume(final long id, final String path)
+  {
+    final Volume vol = new Volume();
+    vol.setId(Long.valueOf(id));
+    vol.setPath(path);
+    vol.setValidator("movie");
+    final Directory root = new Directory();
+    root.setId(Long.valueOf(id * 10));
+    root.setName("");
+    vol.setRoot(root);
+    final Directory sub = new Directory();
+    sub.setId(Long.valueOf(id * 10 + 1));
+    sub.setName("Fotos äöü");
+    sub.setLastModified(new Date(1000));
+    root.add(sub);
+    final File file = new File();
+    file.setId(Long.valueOf(id * 100));
+    file.setName("b.jpg");
+    file.setByteSize(Long.valueOf(4096));
+    file.setLastModified(new Date(2000));
+    file.setHashValue(HASH);
+    file.setHashCreated(new Date(3000));
+    file.setMimeType("image/jpeg");
+    file.setFileKey("(dev=803,ino=42)");
+    file.setChecksum(0xe3069283L);
+    file.setFingerprint(0x123456789abcdefL);
+    file.setState(FileState.Identical);
+    sub.add(file);
+    return vol;
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException
+  {
+    final java.io.File file = new java.io.File(folder.getRoot(), "am.snapshot");
+    CatalogSnapshot.write(file, 17, Arrays.asList(createVolume(1, "/mnt/a"), createVolume(2, "/mnt/b")));
+    final List<Volume> vols = CatalogSnapshot.read(file, 17);
+    Assert.assertEquals("Two volumes.", 2, vols.size());
+    final Volume vol = vols.get(1);
+    Assert.assertEquals("Volume id.", Long.valueOf(2), vol.getId());
+    Assert.assertEquals("Volume path.", "/mnt/b", vol.getPath());
+    Assert.assertEquals("Validator.", "movie", vol.getValidator());
+    Assert.assertNull("No main reference.", vol.getMainRef());
+    final Directory sub = vol.getRoot().getSubdirectory("Fotos äöü");
+    Assert.assertNotNull("Non-ASCII name.", sub);
+    Assert.assertEquals("Directory id.", Long.valueOf(21), sub.getId());
+    Assert.assertEquals("Directory time.", new Date(1000), sub.getLastModified());
+    final File loaded = sub.getFile("b.jpg");
+    Assert.assertEquals("File id.", Long.valueOf(200), loaded.getId());
+    Assert.assertEquals("Size.", 4096L, loaded.getByteSizeValue());
+    Assert.assertEquals("Modified.", 2000L, loaded.getLastModifiedMillis());
+    Assert.assertEquals("Hash.", HASH, loaded.getHashValue());
+    Assert.assertEquals("Hash created.", 3000L, loaded.getHashCreatedMillis());
+    Assert.assertEquals("MIME type.", "image/jpeg", loaded.getMimeType());
+    Assert.assertEquals("File key.", "(dev=803,ino=42)", loaded.getFileKey());
+    Assert.assertEquals("Checksum.", 0xe3069283L, loaded.getChecksum());
+    Assert.assertEquals("Fingerprint.", 0x123456789abcdefL, loaded.getFingerprint());
+    Assert.assertEquals("State.", FileState.Identical, loaded.getState());
+    Assert.assertNull("No file group.", loaded.getFileGroup());
+
+    // loaded catalogs can be changed like other compact catalogs
+    loaded.setFileGroup("image");
+    Assert.assertEquals("New string added to pool.", "image", sub.getFile("b.jpg").getFileGroup());
+  }
+
+  @Test
+  public void testStamp() throws IOException
+  {
+    final java.io.File file = new java.io.File(folder.getRoot(), "am.snapshot");
+    Assert.assertNull("No file.", CatalogSnapshot.read(file, 1));
+    CatalogSnapshot.write(file, 1, Arrays.asList(createVolume(1, "/mnt/a")));
+    Assert.assertNull("Other stamp.", CatalogSnapshot.read(file, 2));
+    CatalogSnapshot.write(file, 2, Arrays.asList(createVolume(1, "/mnt/a")));
+    Assert.assertEquals("Replaced file.", 1, CatalogSnapshot.read(file, 2).size());
+    Assert.assertFalse("No temporary file left.", new java.io.File(folder.getRoot(), "am.snapshot.tmp").exists());
+  }
+}
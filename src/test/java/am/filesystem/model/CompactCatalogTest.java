@@ -0,0 +1,371 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link CompactCatalog}.
+ *
+ * @author Marco Schmidt
+ */
+public class CompactCatalogTest
+{
+  private static final String HASH = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+  private Volume source;
+  private Directory photos;
+
+  private static Directory createDirectory(final long id, final String name)
+  {
+    final Directory dir = new Directory();
+    dir.setId(Long.valueOf(id));
+    dir.setName(name);
+    return dir;
+  }
+
+  private static File createFile(final long id, final String name, final long size)
+  {
+    final File file = new File();
+    file.setId(Long.valueOf(id));
+    file.setName(name);
+    file.setByteSize(Long.valueOf(size));
+    file.setLastModified(new Date(1000 * id));
+    file.setState(FileState.Identical);
+    return file;
+  }
+
+  @Before
+  public void setUp()
+  {
+    source = new Volume();
+    source.setId(Long.valueOf(3));
+    source.setPath("/mnt/data");
+    source.setValidator("movie");
+    final Directory root = createDirectory(10, "");
+    source.setRoot(root);
+    photos = createDirectory(11, "photos");
+    root.add(createDirectory(12, "videos"));
+    root.add(photos);
+    photos.add(createDirectory(13, "2020"));
+    final File readme = createFile(100, "readme.txt", 10);
+    root.add(readme);
+    final File img = createFile(101, "b.jpg", 2000);
+    img.setHashValue(HASH);
+    img.setHashCreated(new Date(5000));
+    img.setMimeType("image/jpeg");
+    img.setFileGroup("image");
+    img.setFileType("jpeg");
+    img.setImageWidth(Long.valueOf(640));
+    img.setImageHeight(Long.valueOf(480));
+    img.setFileKey("(dev=803,ino=123456)");
+    img.setChecksum(0xe3069283L);
+    img.setFingerprint(0x123456789abcdefL);
+    photos.add(img);
+    photos.add(createFile(102, "a.jpg", 1000));
+  }
+
+  @Test
+  public void testTree()
+  {
+    final Volume vol = CompactCatalog.of(source).toVolume();
+    Assert.assertEquals("Volume id.", Long.valueOf(3), vol.getId());
+    Assert.assertEquals("Volume path.", "/mnt/data", vol.getPath());
+    Assert.assertEquals("Volume validator.", "movie", vol.getValidator());
+    final Directory root = vol.getRoot();
+    Assert.assertEquals("Root id.", Long.valueOf(10), root.getId());
+    Assert.assertNull("Root has no parent.", root.getParentRef());
+    final List<Directory> subs = root.getSubdirectories();
+    Assert.assertEquals("Two subdirectories.", 2, subs.size());
+    Assert.assertEquals("Subdirectories sorted by name.", "photos", subs.get(0).getName());
+    Assert.assertEquals("Subdirectories sorted by name.", "videos", subs.get(1).getName());
+    Assert.assertEquals("Subdirectory names.", new HashSet<>(Arrays.asList("photos", "videos")),
+        root.getSubdirectoryNames());
+    final Directory loadedPhotos = root.getSubdirectory("photos");
+    Assert.assertEquals("Parent reference.", Long.valueOf(10), loadedPhotos.getParentRef());
+    Assert.assertEquals("Volume reference.", Long.valueOf(3), loadedPhotos.getVolumeRef());
+    Assert.assertEquals("Nested subdirectory.", Long.valueOf(13), loadedPhotos.getSubdirectory("2020").getId());
+    Assert.assertNull("Unknown subdirectory.", root.getSubdirectory("music"));
+    final List<File> files = loadedPhotos.getFiles();
+    Assert.assertEquals("Two files.", 2, files.size());
+    Assert.assertEquals("Files sorted by name.", "a.jpg", files.get(0).getName());
+    Assert.assertEquals("Files sorted by name.", "b.jpg", files.get(1).getName());
+    Assert.assertEquals("Directory reference.", Long.valueOf(11), files.get(0).getDirectoryRef());
+    Assert.assertEquals("Root file.", Long.valueOf(100), root.getFile("readme.txt").getId());
+    Assert.assertNull("Unknown file.", root.getFile("b.jpg"));
+    Assert.assertEquals("Entry derived from names.", new java.io.File(new java.io.File("/mnt/data", "photos"), "a.jpg"),
+        files.get(0).getEntry());
+  }
+
+  @Test
+  public void testFileValues()
+  {
+    final File img = CompactCatalog.of(source).toVolume().getRoot().getSubdirectory("photos").getFile("b.jpg");
+    Assert.assertEquals("Id.", Long.valueOf(101), img.getId());
+    Assert.assertEquals("Size.", Long.valueOf(2000), img.getByteSize());
+    Assert.assertEquals("Last modified.", new Date(101000), img.getLastModified());
+    Assert.assertEquals("Last modified in milliseconds.", 101000L, img.getLastModifiedMillis());
+    Assert.assertEquals("Size as primitive.", 2000L, img.getByteSizeValue());
+    Assert.assertEquals("Hash value.", HASH, img.getHashValue());
+    Assert.assertEquals("Hash created.", new Date(5000), img.getHashCreated());
+    Assert.assertEquals("MIME type.", "image/jpeg", img.getMimeType());
+    Assert.assertEquals("File group.", "image", img.getFileGroup());
+    Assert.assertEquals("File type.", "jpeg", img.getFileType());
+    Assert.assertEquals("Width.", Long.valueOf(640), img.getImageWidth());
+    Assert.assertEquals("Height.", Long.valueOf(480), img.getImageHeight());
+    Assert.assertNull("Duration.", img.getDurationNanos());
+    Assert.assertNull("Wikidata.", img.getWikidataEntityId());
+    Assert.assertEquals("File key.", "(dev=803,ino=123456)", img.getFileKey());
+    Assert.assertEquals("Checksum.", 0xe3069283L, img.getChecksum());
+    Assert.assertEquals("Fingerprint.", 0x123456789abcdefL, img.getFingerprint());
+    Assert.assertEquals("State.", FileState.Identical, img.getState());
+
+    final File other = CompactCatalog.of(source).toVolume().getRoot().getSubdirectory("photos").getFile("a.jpg");
+    Assert.assertNull("No hash value.", other.getHashValue());
+    Assert.assertNull("No file key.", other.getFileKey());
+    Assert.assertEquals("No hash creation time.", File.UNKNOWN, other.getHashCreatedMillis());
+    Assert.assertEquals("No checksum.", File.UNKNOWN, other.getChecksum());
+    Assert.assertEquals("No fingerprint.", File.UNKNOWN, other.getFingerprint());
+  }
+
+  @Test
+  public void testWriteThrough()
+  {
+    final CompactCatalog catalog = CompactCatalog.of(source);
+    final Directory root = catalog.toVolume().getRoot();
+    final File file = root.getSubdirectory("photos").getFile("a.jpg");
+    file.setState(FileState.Missing);
+    file.setHashValue("ABC-not-hex");
+    file.setMimeType("image/jpeg");
+    file.setFileKey("(dev=1,ino=007)");
+    file.setDurationNanos(Long.valueOf(5));
+    file.setChecksum(42);
+    file.setFingerprint(43);
+    final File again = catalog.toVolume().getRoot().getSubdirectory("photos").getFile("a.jpg");
+    Assert.assertNotSame("Views are not kept.", file, again);
+    Assert.assertEquals("Views on the same file are equal.", file, again);
+    Assert.assertEquals("Equal hash codes.", file.hashCode(), again.hashCode());
+    Assert.assertNotEquals("Views on other files differ.", file, root.getSubdirectory("photos").getFile("b.jpg"));
+    Assert.assertEquals("State written.", FileState.Missing, again.getState());
+    Assert.assertEquals("Text hash written.", "ABC-not-hex", again.getHashValue());
+    Assert.assertEquals("MIME type written.", "image/jpeg", again.getMimeType());
+    Assert.assertEquals("Key with leading zeros written.", "(dev=1,ino=007)", again.getFileKey());
+    Assert.assertEquals("Duration written.", Long.valueOf(5), again.getDurationNanos());
+    Assert.assertEquals("Checksum written.", 42L, again.getChecksum());
+    Assert.assertEquals("Fingerprint written.", 43L, again.getFingerprint());
+
+    // longer hash value than before
+    final String longHash = HASH + HASH;
+    file.setHashValue(longHash);
+    Assert.assertEquals("Longer hash value written.", longHash, again.getHashValue());
+    Assert.assertEquals("Other hash values kept.", HASH, root.getSubdirectory("photos").getFile("b.jpg")
+        .getHashValue());
+    file.setHashValue("");
+    Assert.assertEquals("Empty hash value is not null.", "", again.getHashValue());
+    file.setHashValue(null);
+    Assert.assertNull("Hash value removed.", again.getHashValue());
+  }
+
+  @Test
+  public void testBuilder()
+  {
+    final Directory root = source.getRoot();
+    root.getSubdirectory("photos").remove(root.getSubdirectory("photos").getFile("a.jpg"));
+    final CompactCatalog.Builder builder = CompactCatalog.builder(source);
+    final File added = createFile(102, "a.jpg", 1000);
+    added.setDirectoryRef(Long.valueOf(11));
+    Assert.assertTrue("File added to known directory.", builder.add(added));
+    final File unknown = createFile(103, "c.jpg", 1000);
+    unknown.setDirectoryRef(Long.valueOf(99));
+    Assert.assertFalse("File of unknown directory ignored.", builder.add(unknown));
+    final CompactCatalog catalog = builder.build();
+    Assert.assertEquals("Directories.", 4, catalog.getNumDirectories());
+    Assert.assertEquals("Files.", 3, catalog.getNumFiles());
+    Assert.assertTrue("Memory estimate.", catalog.getNumBytes() > 0);
+    final List<File> files = catalog.toVolume().getRoot().getSubdirectory("photos").getFiles();
+    Assert.assertEquals("Added file sorted first.", "a.jpg", files.get(0).getName());
+  }
+
+  @Test
+  public void testRemove()
+  {
+    final Directory root = CompactCatalog.of(source).toVolume().getRoot();
+    final Directory dir = root.getSubdirectory("photos");
+    dir.remove(dir.getFile("a.jpg"));
+    root.remove(root.getSubdirectory("videos"));
+    Assert.assertNull("Removed file not found.", dir.getFile("a.jpg"));
+    Assert.assertEquals("One file left.", 1, root.getSubdirectory("photos").getFiles().size());
+    Assert.assertEquals("Removed file name.", new HashSet<>(Arrays.asList("b.jpg")), dir.getFileNames());
+    Assert.assertEquals("One subdirectory left.", 1, root.getSubdirectories().size());
+  }
+
+  @Test
+  public void testViews()
+  {
+    final CompactCatalog catalog = CompactCatalog.of(source);
+    final Directory root = catalog.toVolume().getRoot();
+    final Directory dir = root.getSubdirectoriesView().get(0);
+    Assert.assertNotSame("New subdirectory view.", dir, root.getSubdirectory("photos"));
+    Assert.assertEquals("Equal subdirectory views.", dir, root.getSubdirectory("photos"));
+    Assert.assertEquals("Equal subdirectory in copied list.", dir, root.getSubdirectories().get(0));
+    Assert.assertTrue("Found in set.", new HashSet<>(root.getSubdirectories()).contains(dir));
+    final List<File> files = dir.getFilesView();
+    final File img = files.get(1);
+    Assert.assertEquals("Equal file views.", img, dir.getFile("b.jpg"));
+
+    final VideoFileName name = new VideoFileName();
+    img.setVideoFileName(name);
+    Assert.assertSame("Video file name kept.", name,
+        catalog.toVolume().getRoot().getSubdirectory("photos").getFile("b.jpg").getVideoFileName());
+    Assert.assertNull("No video file name.", files.get(0).getVideoFileName());
+
+    dir.remove(files.get(0));
+    Assert.assertEquals("View skips removed file.", 1, files.size());
+    Assert.assertEquals("Remaining file.", img, files.get(0));
+  }
+
+  @Test
+  public void testSetReused()
+  {
+    final CompactCatalog catalog = CompactCatalog.of(source);
+    final Directory root = catalog.toVolume().getRoot();
+    Assert.assertFalse("Not reused after loading.", root.isReused());
+    root.getSubdirectory("photos").setReused(true);
+    Assert.assertTrue("Reused written.", catalog.toVolume().getRoot().getSubdirectory("photos").isReused());
+    Assert.assertFalse("Other directory not reused.", root.getSubdirectory("videos").isReused());
+    root.getSubdirectory("photos").setReused(false);
+    Assert.assertFalse("Reused reset.", root.getSubdirectory("photos").isReused());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testViewReadOnly()
+  {
+    CompactCatalog.of(source).toVolume().getRoot().getFilesView().add(new File());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadTooManyHashValues() throws IOException
+  {
+    // 100 million files with 32 bytes each overflow an int
+    final ByteBuffer in = ByteBuffer.allocate(12);
+    in.putInt(1).putInt(100_000_000).putInt(32).flip();
+    CompactCatalog.read(source, in);
+  }
+
+  @Test
+  public void testAdd()
+  {
+    final CompactCatalog catalog = CompactCatalog.of(source);
+    final Directory photos = catalog.toVolume().getRoot().getSubdirectory("photos");
+    final File added = createFile(103, "c.jpg", 3000);
+    photos.add(added);
+    final Directory created = photos.findOrCreateSubdirectory("2021");
+    Assert.assertEquals("Existing subdirectory found.", Long.valueOf(13), photos.findOrCreateSubdirectory("2020")
+        .getId());
+
+    final Directory again = catalog.toVolume().getRoot().getSubdirectory("photos");
+    Assert.assertSame("Added file found.", added, again.getFile("c.jpg"));
+    Assert.assertEquals("Loaded file still found.", Long.valueOf(101), again.getFile("b.jpg").getId());
+    Assert.assertEquals("Three files.", 3, again.getFilesView().size());
+    Assert.assertSame("Created subdirectory found.", created, again.getSubdirectory("2021"));
+    Assert.assertEquals("Subdirectory names.", new HashSet<>(Arrays.asList("2020", "2021")),
+        again.getSubdirectoryNames());
+    Assert.assertEquals("Values still in arrays.", Long.valueOf(11), again.getId());
+
+    again.remove(again.getFile("a.jpg"));
+    again.remove(added);
+    Assert.assertEquals("Removed from copy.", new HashSet<>(Arrays.asList("b.jpg")), photos.getFileNames());
+    final List<File> files = new ArrayList<>();
+    catalog.toVolume().getRoot().accept(DirectoryVisitor.ofFiles(files::add));
+    Assert.assertEquals("Traversal sees changes.", 2, files.size());
+  }
+
+  @Test
+  public void testRename()
+  {
+    final CompactCatalog catalog = CompactCatalog.of(source);
+    final Directory root = catalog.toVolume().getRoot();
+    root.getSubdirectory("photos").getFile("a.jpg").setName("z.jpg");
+    root.getSubdirectory("videos").setName("movies");
+    final Directory again = catalog.toVolume().getRoot();
+    final Directory photos = again.getSubdirectory("photos");
+    Assert.assertEquals("File found by old name like in a regular directory.", "z.jpg", photos.getFile("a.jpg")
+        .getName());
+    Assert.assertEquals("Entry derived from new name.", new java.io.File(new java.io.File("/mnt/data", "photos"),
+        "z.jpg"), photos.getFile("a.jpg").getEntry());
+    photos.sortByName();
+    Assert.assertEquals("Sorted by new name.", "z.jpg", photos.getFilesView().get(1).getName());
+    Assert.assertEquals("Directory renamed.", "movies", again.getSubdirectory("videos").getName());
+    Assert.assertEquals("Values kept.", Long.valueOf(102), photos.getFile("a.jpg").getId());
+  }
+
+  private static String hashOf(final int i)
+  {
+    // lengths of 16, 32 and 64 bytes make the first writes of each length widen the array
+    final StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%08x", Integer.valueOf(i)));
+    final int length = 32 << (i % 3);
+    while (sb.length() < length)
+    {
+      sb.append(HASH);
+    }
+    return sb.substring(0, length);
+  }
+
+  @Test
+  public void testConcurrentHashValues() throws InterruptedException
+  {
+    final Volume vol = new Volume();
+    vol.setPath("/mnt/data");
+    final Directory root = createDirectory(1, "");
+    vol.setRoot(root);
+    final int numFiles = 20000;
+    for (int i = 0; i < numFiles; i++)
+    {
+      root.add(createFile(i + 10, String.format(Locale.ROOT, "f%05d", Integer.valueOf(i)), 1));
+    }
+    final List<File> files = CompactCatalog.of(vol).toVolume().getRoot().getFiles();
+    final ExecutorService pool = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++)
+    {
+      final int first = t;
+      pool.execute(() ->
+      {
+        for (int i = first; i < numFiles; i += 8)
+        {
+          files.get(i).setHashValue(hashOf(i));
+        }
+      });
+    }
+    pool.shutdown();
+    Assert.assertTrue("Writers done.", pool.awaitTermination(1, TimeUnit.MINUTES));
+    for (int i = 0; i < numFiles; i++)
+    {
+      Assert.assertEquals("Hash value of file " + i + ".", hashOf(i), files.get(i).getHashValue());
+    }
+  }
+}
@@ -15,6 +15,12 @@
  */
 package am.filesystem.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -40,4 +46,129 @@ public class DirectoryTest
     Assert.assertEquals("Number of subdirectories is now two.", 2, dir.getSubdirectories().size());
     Assert.assertEquals("New dir has given name.", "new", newDir.getName());
   }
+
+  private static Directory createTree()
+  {
+    final Directory root = new Directory();
+    root.setName("root");
+    final Directory a = root.findOrCreateSubdirectory("a");
+    a.findOrCreateSubdirectory("a1");
+    root.findOrCreateSubdirectory("b");
+    final File rootFile = new File();
+    rootFile.setName("root.txt");
+    root.add(rootFile);
+    final File aFile = new File();
+    aFile.setName("a.txt");
+    a.add(aFile);
+    return root;
+  }
+
+  @Test
+  public void testViews()
+  {
+    final Directory root = createTree();
+    final List<Directory> view = root.getSubdirectoriesView();
+    Assert.assertSame("View is not copied.", view, root.getSubdirectoriesView());
+    Assert.assertEquals("View has all subdirectories.", 2, view.size());
+    root.remove(root.getSubdirectory("b"));
+    Assert.assertEquals("View reflects changes.", 1, view.size());
+    Assert.assertEquals("File view.", "root.txt", root.getFilesView().get(0).getName());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testViewReadOnly()
+  {
+    createTree().getFilesView().clear();
+  }
+
+  @Test
+  public void testAccept()
+  {
+    final List<String> events = new ArrayList<>();
+    createTree().accept(new DirectoryVisitor()
+    {
+      @Override
+      public boolean enterDirectory(final Directory dir)
+      {
+        events.add("+" + dir.getName());
+        return !"a1".equals(dir.getName());
+      }
+
+      @Override
+      public void visitFile(final File file)
+      {
+        events.add(file.getName());
+      }
+
+      @Override
+      public void leaveDirectory(final Directory dir)
+      {
+        events.add("-" + dir.getName());
+      }
+    });
+    Assert.assertEquals("Pre-order, files first, skipped directory not left.",
+        Arrays.asList("+root", "root.txt", "+a", "a.txt", "+a1", "-a", "+b", "-b", "-root"), events);
+  }
+
+  @Test
+  public void testOfFiles()
+  {
+    final List<String> names = new ArrayList<>();
+    createTree().accept(DirectoryVisitor.ofFiles(f -> names.add(f.getName())));
+    Assert.assertEquals("All files.", Arrays.asList("root.txt", "a.txt"), names);
+  }
+
+  @Test
+  public void testParallelTraversal()
+  {
+    final List<String> left = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger numFiles = new AtomicInteger();
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try
+    {
+      ParallelTraversal.accept(createTree(), new DirectoryVisitor()
+      {
+        @Override
+        public void visitFile(final File file)
+        {
+          numFiles.incrementAndGet();
+        }
+
+        @Override
+        public void leaveDirectory(final Directory dir)
+        {
+          left.add(dir.getName());
+        }
+      }, pool);
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+    Assert.assertEquals("All files visited.", 2, numFiles.get());
+    Assert.assertEquals("All directories left.", 4, left.size());
+    Assert.assertEquals("Root left last.", "root", left.get(3));
+    Assert.assertTrue("Subdirectory left before parent.", left.indexOf("a1") < left.indexOf("a"));
+  }
+
+  @Test
+  public void testSortByName()
+  {
+    final Directory dir = new Directory();
+    for (final String name : new String[]
+    {
+        "b", "a", "c"
+    })
+    {
+      dir.findOrCreateSubdirectory(name);
+      final File file = new File();
+      file.setName(name + ".txt");
+      dir.add(file);
+    }
+    dir.sortByName();
+    Assert.assertEquals("Subdirectories sorted.", "a", dir.getSubdirectoriesView().get(0).getName());
+    Assert.assertEquals("Subdirectories sorted.", "c", dir.getSubdirectoriesView().get(2).getName());
+    Assert.assertEquals("Files sorted.", "a.txt", dir.getFilesView().get(0).getName());
+    Assert.assertEquals("Lookup by name still works.", "b.txt", dir.getFile("b.txt").getName());
+  }
 }
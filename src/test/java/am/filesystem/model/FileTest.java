@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.filesystem.model;
+
+import java.util.Date;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class {@link File}.
+ *
+ * @author Marco Schmidt
+ */
+public class FileTest
+{
+  @Test
+  public void testUnknownValues()
+  {
+    final File file = new File();
+    Assert.assertNull("No size.", file.getByteSize());
+    Assert.assertEquals("Unknown size.", File.UNKNOWN, file.getByteSizeValue());
+    Assert.assertNull("No modification time.", file.getLastModified());
+    Assert.assertEquals("Unknown modification time.", File.UNKNOWN, file.getLastModifiedMillis());
+    Assert.assertNull("No hash creation time.", file.getHashCreated());
+    Assert.assertEquals("Unknown hash creation time.", File.UNKNOWN, file.getHashCreatedMillis());
+  }
+
+  @Test
+  public void testPrimitiveAndObjectAccessors()
+  {
+    final File file = new File();
+    file.setByteSize(Long.valueOf(123456));
+    Assert.assertEquals("Size from object.", 123456L, file.getByteSizeValue());
+    file.setByteSizeValue(0);
+    Assert.assertEquals("Size from primitive.", Long.valueOf(0), file.getByteSize());
+    final Date date = new Date(1600000000000L);
+    file.setLastModified(date);
+    Assert.assertEquals("Modification time from date.", 1600000000000L, file.getLastModifiedMillis());
+    date.setTime(0);
+    Assert.assertEquals("Date argument not kept.", new Date(1600000000000L), file.getLastModified());
+    file.setHashCreatedMillis(1700000000000L);
+    Assert.assertEquals("Hash creation time from primitive.", new Date(1700000000000L), file.getHashCreated());
+    file.setHashCreated(null);
+    Assert.assertEquals("Hash creation time removed.", File.UNKNOWN, file.getHashCreatedMillis());
+  }
+}
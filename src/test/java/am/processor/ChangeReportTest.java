@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.app.AppConfig;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+
+/**
+ * Test {@link ChangeReport}.
+ *
+ * @author Marco Schmidt
+ */
+public class ChangeReportTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static File createFile(final String path, final FileState state)
+  {
+    final File file = new File();
+    file.setVolumeRef(Long.valueOf(2));
+    file.setEntry(new java.io.File(path));
+    file.setState(state);
+    file.setByteSizeValue(100);
+    file.setLastModifiedMillis(5000);
+    return file;
+  }
+
+  @Test
+  public void testCreateWithoutDirectory()
+  {
+    Assert.assertNull("No directory, no report.", ChangeReport.create(new AppConfig()));
+  }
+
+  @Test
+  public void testReport() throws IOException
+  {
+    final AppConfig config = new AppConfig();
+    config.setTsvDirectory(folder.getRoot());
+    final ChangeReport report = ChangeReport.create(config);
+    Assert.assertNotNull("Report created.", report);
+    final File modified = createFile("/data/a.txt", FileState.Modified);
+    modified.setId(Long.valueOf(7));
+    report.add(modified);
+    report.add(createFile("/data/b.txt", FileState.Identical));
+    final File created = createFile("/data/tab\there.txt", FileState.New);
+    created.setLastModifiedMillis(File.UNKNOWN);
+    report.add(created);
+    // enough lines for several chunks
+    for (int i = 0; i < 5000; i++)
+    {
+      report.add(createFile("/data/dir/missing" + i + ".jpg", FileState.Missing));
+    }
+    report.close();
+    report.add(createFile("/data/late.txt", FileState.New));
+
+    final List<String> lines = Files.readAllLines(report.getFile().toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals("Header and one line per changed file.", 1 + 2 + 5000, lines.size());
+    Assert.assertEquals("Header.", ChangeReport.HEADER.trim(), lines.get(0));
+    Assert.assertEquals("Modified file.", "2\t7\tModified\t100\t5000\t" + new java.io.File("/data/a.txt")
+        .getAbsolutePath(), lines.get(1));
+    Assert.assertTrue("New file without id and time, tab escaped.", lines.get(2).startsWith("2\t\tNew\t100\t\t"));
+    Assert.assertTrue("Tab escaped.", lines.get(2).endsWith("tab\\there.txt"));
+    Assert.assertTrue("Order kept.", lines.get(5002).endsWith("missing4999.jpg"));
+    Assert.assertEquals("Modified count.", 1, report.getCount(FileState.Modified));
+    Assert.assertEquals("New count.", 1, report.getCount(FileState.New));
+    Assert.assertEquals("Missing count.", 5000, report.getCount(FileState.Missing));
+    Assert.assertEquals("Identical files are not reported.", 0, report.getCount(FileState.Identical));
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link MergeJoin}.
+ *
+ * @author Marco Schmidt
+ */
+public class MergeJoinTest
+{
+  private static List<String> join(final List<String> scanned, final List<String> loaded)
+  {
+    final List<String> result = new ArrayList<>();
+    MergeJoin.join(scanned, loaded, Function.identity(), (s, l) -> result.add(s + "/" + l));
+    return result;
+  }
+
+  @Test
+  public void testJoin()
+  {
+    Assert.assertEquals("Pairs in name order.", Arrays.asList("a/null", "b/b", "null/c", "d/d", "null/e"),
+        join(Arrays.asList("a", "b", "d"), Arrays.asList("b", "c", "d", "e")));
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    Assert.assertEquals("Only scanned.", Arrays.asList("a/null", "b/null"),
+        join(Arrays.asList("a", "b"), Collections.emptyList()));
+    Assert.assertEquals("Only loaded.", Arrays.asList("null/a"), join(Collections.emptyList(), Arrays.asList("a")));
+    Assert.assertTrue("Both empty.", join(Collections.emptyList(), Collections.emptyList()).isEmpty());
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.app.AppConfig;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+import am.processor.hashes.HashCreation;
+import am.processor.hashes.QuickFingerprint;
+
+/**
+ * Test {@link MoveDetection}.
+ *
+ * @author Marco Schmidt
+ */
+public class MoveDetectionTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
+  private Volume vol;
+  private Directory oldDir;
+  private Directory newDir;
+
+  @Before
+  public void setUp()
+  {
+    config = new AppConfig();
+    vol = new Volume();
+    vol.setPath(folder.getRoot().getAbsolutePath());
+    final Directory root = new Directory();
+    root.setName("");
+    oldDir = new Directory();
+    oldDir.setName("old");
+    newDir = new Directory();
+    newDir.setName("new");
+    root.add(oldDir);
+    root.add(newDir);
+    vol.setRoot(root);
+  }
+
+  private static File create(final String name, final FileState state, final long size, final long lastModified)
+  {
+    final File file = new File();
+    file.setName(name);
+    file.setState(state);
+    file.setByteSize(Long.valueOf(size));
+    file.setLastModified(new Date(lastModified));
+    return file;
+  }
+
+  private static File createMissing(final String name, final long size, final long lastModified)
+  {
+    final File file = create(name, FileState.Missing, size, lastModified);
+    file.setId(Long.valueOf(17));
+    file.setMimeType("image/jpeg");
+    file.setImageWidth(Long.valueOf(640));
+    return file;
+  }
+
+  @Test
+  public void testMoveByFileKey()
+  {
+    final File missing = createMissing("a.jpg", 100, 5000);
+    missing.setFileKey("(dev=1,ino=2)");
+    oldDir.add(missing);
+    final File moved = create("b.jpg", FileState.New, 100, 5000);
+    moved.setFileKey("(dev=1,ino=2)");
+    newDir.add(moved);
+    // same size and time but another key, must not be paired
+    final File other = create("c.jpg", FileState.New, 100, 5000);
+    other.setFileKey("(dev=1,ino=3)");
+    newDir.add(other);
+
+    Assert.assertEquals("One file moved.", 1, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State is moved.", FileState.Moved, moved.getState());
+    Assert.assertEquals("Id was taken over.", Long.valueOf(17), moved.getId());
+    Assert.assertEquals("Metadata was taken over.", "image/jpeg", moved.getMimeType());
+    Assert.assertEquals("Metadata was taken over.", Long.valueOf(640), moved.getImageWidth());
+    Assert.assertTrue("Missing file was removed.", oldDir.getFiles().isEmpty());
+    Assert.assertEquals("Other file remains new.", FileState.New, other.getState());
+    Assert.assertNull("Other file has no id.", other.getId());
+  }
+
+  @Test
+  public void testModifiedFileKeyNotMoved()
+  {
+    final File missing = createMissing("a.jpg", 100, 5000);
+    missing.setFileKey("(dev=1,ino=2)");
+    oldDir.add(missing);
+    final File file = create("a.jpg", FileState.New, 101, 5000);
+    file.setFileKey("(dev=1,ino=2)");
+    newDir.add(file);
+
+    Assert.assertEquals("Changed size is no move.", 0, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State remains new.", FileState.New, file.getState());
+    Assert.assertEquals("Missing file was kept.", 1, oldDir.getFiles().size());
+  }
+
+  @Test
+  public void testMoveBySizeAndTimeWithoutHash()
+  {
+    oldDir.add(createMissing("a.jpg", 100, 5000));
+    final File renamed = create("b.jpg", FileState.New, 100, 5000);
+    newDir.add(renamed);
+    Assert.assertEquals("Without hash and key a rename is not detected.", 0, new MoveDetection(config).detect(vol));
+
+    final File moved = create("a.jpg", FileState.New, 100, 5000);
+    newDir.remove(renamed);
+    newDir.add(moved);
+    Assert.assertEquals("Same name, size and time is a move.", 1, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State is moved.", FileState.Moved, moved.getState());
+  }
+
+  @Test
+  public void testAmbiguousSizeAndTime()
+  {
+    oldDir.add(createMissing("a.jpg", 100, 5000));
+    final File first = create("a.jpg", FileState.New, 100, 5000);
+    newDir.add(first);
+    final Directory third = new Directory();
+    third.setName("third");
+    vol.getRoot().add(third);
+    final File second = create("a.jpg", FileState.New, 100, 5000);
+    third.add(second);
+    Assert.assertEquals("Two candidates are ambiguous.", 0, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State remains new.", FileState.New, first.getState());
+    Assert.assertEquals("State remains new.", FileState.New, second.getState());
+  }
+
+  @Test
+  public void testMoveBySizeAndTimeWithHash() throws IOException
+  {
+    final java.io.File entry = folder.newFile("renamed.txt");
+    Files.write(entry.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    final File reference = new File();
+    reference.setEntry(entry);
+    new HashCreation().update(config, reference);
+    Assert.assertNotNull("Hash value was computed.", reference.getHashValue());
+
+    final File missing = createMissing("original.txt", entry.length(), 5000);
+    missing.setHashValue(reference.getHashValue());
+    oldDir.add(missing);
+    final File renamed = create("renamed.txt", FileState.New, entry.length(), 5000);
+    renamed.setEntry(entry);
+    newDir.add(renamed);
+    Assert.assertEquals("Equal hash value is a move.", 1, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State is moved.", FileState.Moved, renamed.getState());
+
+    final File other = createMissing("other.txt", entry.length(), 6000);
+    other.setHashValue("0123");
+    oldDir.add(other);
+    final File candidate = create("renamed.txt", FileState.New, entry.length(), 6000);
+    candidate.setEntry(entry);
+    newDir.add(candidate);
+    Assert.assertEquals("Different hash value is no move.", 0, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State remains new.", FileState.New, candidate.getState());
+  }
+
+  @Test
+  public void testMoveBySizeAndTimeWithFingerprint() throws IOException
+  {
+    final java.io.File entry = folder.newFile("renamed.txt");
+    Files.write(entry.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    final long fingerprint = new QuickFingerprint().compute(entry, entry.length(), null);
+
+    final File missing = createMissing("original.txt", entry.length(), 5000);
+    missing.setFingerprint(fingerprint);
+    // a fingerprint decides, the hash value is not checked
+    missing.setHashValue("0123");
+    oldDir.add(missing);
+    final File renamed = create("renamed.txt", FileState.New, entry.length(), 5000);
+    renamed.setEntry(entry);
+    newDir.add(renamed);
+    Assert.assertEquals("Equal fingerprint is a move.", 1, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State is moved.", FileState.Moved, renamed.getState());
+    Assert.assertEquals("Fingerprint kept.", fingerprint, renamed.getFingerprint());
+    Assert.assertEquals("Hash value taken over.", "0123", renamed.getHashValue());
+
+    final File other = createMissing("other.txt", entry.length(), 6000);
+    other.setFingerprint(fingerprint + 1);
+    oldDir.add(other);
+    final File candidate = create("renamed.txt", FileState.New, entry.length(), 6000);
+    candidate.setEntry(entry);
+    newDir.add(candidate);
+    Assert.assertEquals("Different fingerprint is no move.", 0, new MoveDetection(config).detect(vol));
+    Assert.assertEquals("State remains new.", FileState.New, candidate.getState());
+    Assert.assertEquals("Fingerprint of new file computed.", fingerprint, candidate.getFingerprint());
+  }
+}
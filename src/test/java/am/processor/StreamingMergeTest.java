@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.app.AppConfig;
+import am.db.JdbcSerialization;
+import am.filesystem.model.Directory;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+import am.processor.hashes.HashStrategy;
+
+/**
+ * Test {@link StreamingMerge} class.
+ */
+public class StreamingMergeTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
+  private JdbcSerialization io;
+
+  @Before
+  public void setUp()
+  {
+    config = new AppConfig();
+    config.setIgnoreDirNames(new HashSet<String>());
+    config.setIgnoreFileNames(new HashSet<String>());
+    config.getHashConfig().setStrategy(HashStrategy.None);
+    io = new JdbcSerialization();
+    io.setConfig(config);
+    io.connect(null);
+    io.createTables();
+  }
+
+  @After
+  public void tearDown()
+  {
+    io.close();
+  }
+
+  private void process()
+  {
+    final CatalogWriter writer = new CatalogWriter(config, io);
+    new StreamingMerge(config, io, writer).process();
+    writer.close();
+  }
+
+  @Test
+  public void testProcess() throws IOException
+  {
+    final File sub = folder.newFolder("b", "sub");
+    new File(sub, "gone.txt").createNewFile();
+    new File(sub, "kept.txt").createNewFile();
+    folder.newFolder("a");
+    final Volume vol = new Volume();
+    vol.setPath(folder.getRoot().getAbsolutePath());
+    io.getVolumeMapper().insert(io, vol);
+
+    process();
+    Directory loadedSub = io.loadAll().get(0).getRoot().getSubdirectory("b").getSubdirectory("sub");
+    Assert.assertEquals("First merge stores new files.", FileState.New, loadedSub.getFile("kept.txt").getState());
+
+    Files.delete(new File(sub, "gone.txt").toPath());
+    new File(sub, "added.txt").createNewFile();
+    process();
+    final Volume loaded = io.loadAll().get(0);
+    Assert.assertEquals("Directories are not duplicated.", 2, loaded.getRoot().getSubdirectories().size());
+    loadedSub = loaded.getRoot().getSubdirectory("b").getSubdirectory("sub");
+    Assert.assertEquals("Unchanged file is identical.", FileState.Identical, loadedSub.getFile("kept.txt").getState());
+    Assert.assertEquals("Deleted file is missing.", FileState.Missing, loadedSub.getFile("gone.txt").getState());
+    Assert.assertEquals("Added file is new.", FileState.New, loadedSub.getFile("added.txt").getState());
+  }
+}
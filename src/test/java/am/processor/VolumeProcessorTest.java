@@ -16,11 +16,17 @@
 package am.processor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Assert;
 import org.junit.Test;
+import am.app.AppConfig;
+import am.filesystem.model.CompactCatalog;
 import am.filesystem.model.Directory;
+import am.filesystem.model.DirectoryVisitor;
 import am.filesystem.model.File;
 import am.filesystem.model.FileState;
 import am.filesystem.model.Volume;
@@ -68,6 +74,24 @@ public class VolumeProcessorTest
         state);
   }
 
+  @Test
+  public void testMergeFileReusedView()
+  {
+    final Volume vol = new Volume();
+    vol.setPath("/mnt/data");
+    final Directory root = new Directory();
+    root.setName("");
+    vol.setRoot(root);
+    final File file = new File();
+    file.setName("a.txt");
+    root.add(file);
+    final Directory loaded = CompactCatalog.of(vol).toVolume().getRoot();
+    final File loadedFile = loaded.getFile("a.txt");
+    final File result = new VolumeProcessor().mergeFile(loaded.getFile("a.txt"), loadedFile);
+    Assert.assertSame("File taken over by an incremental scan is kept.", loadedFile, result);
+    Assert.assertEquals("Taken over file is identical.", FileState.Identical, result.getState());
+  }
+
   @Test
   public void testMergeVolume()
   {
@@ -129,4 +153,115 @@ public class VolumeProcessorTest
     Assert.assertNotNull("Merge of two non-null input values yields non-null result.", result);
     Assert.assertEquals("Merged volume list has three elements.", 3, result.size());
   }
+
+  private static File createFile(final boolean scanned, final int dirIndex, final int fileIndex)
+  {
+    final File file = new File();
+    file.setName("file" + fileIndex);
+    if (!scanned)
+    {
+      file.setId(Long.valueOf(dirIndex * 100 + fileIndex));
+    }
+    file.setByteSizeValue(fileIndex);
+    file.setLastModifiedMillis(scanned && fileIndex == 5 ? 2000 : 1000);
+    return file;
+  }
+
+  private static Volume createVolume(final boolean scanned)
+  {
+    final Volume vol = new Volume();
+    vol.setId(Long.valueOf(1));
+    vol.setPath("/data");
+    final Directory root = new Directory();
+    root.setName("");
+    vol.setRoot(root);
+    for (int d = 0; d < 20; d++)
+    {
+      // directories 0 and 1 only exist on one side
+      if ((scanned && d == 0) || (!scanned && d == 1))
+      {
+        continue;
+      }
+      final Directory dir = root.findOrCreateSubdirectory("dir" + d);
+      final Directory sub = dir.findOrCreateSubdirectory("sub");
+      for (int f = 0; f < 30; f++)
+      {
+        if ((scanned && f == 3) || (!scanned && f == 4))
+        {
+          continue;
+        }
+        final File file = createFile(scanned, d, f);
+        (f % 2 == 0 ? dir : sub).add(file);
+      }
+    }
+    return vol;
+  }
+
+  private static String describe(final Volume vol)
+  {
+    final StringBuilder sb = new StringBuilder();
+    vol.getRoot().accept(DirectoryVisitor.ofFiles(
+        file -> sb.append(file.getEntry().getPath()).append(' ').append(file.getState()).append('\n')));
+    return sb.toString();
+  }
+
+  private static String mergeParallel(final int numThreads)
+  {
+    final VolumeProcessor processor = new VolumeProcessor();
+    processor.setConfig(new AppConfig());
+    final ForkJoinPool pool = new ForkJoinPool(numThreads);
+    try
+    {
+      final List<Volume> result = processor.processVolumes(Collections.singletonList(createVolume(true)),
+          Collections.singletonList(createVolume(false)), pool);
+      return describe(result.get(0));
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelMerge()
+  {
+    final String single = mergeParallel(1);
+    Assert.assertEquals("Result does not depend on number of threads.", single, mergeParallel(4));
+
+    final VolumeProcessor processor = new VolumeProcessor();
+    processor.setConfig(new AppConfig());
+    final List<Volume> sequential = processor.processVolumes(Collections.singletonList(createVolume(true)),
+        Collections.singletonList(createVolume(false)), null);
+    final String[] expected = describe(sequential.get(0)).split("\n");
+    final String[] actual = single.split("\n");
+    Arrays.sort(expected);
+    Arrays.sort(actual);
+    Assert.assertArrayEquals("Same files and states as single-threaded merge.", expected, actual);
+    Assert.assertTrue("New files.", single.contains("/data/dir2/file4 New"));
+    Assert.assertTrue("Missing files.", single.contains("/data/dir2/sub/file3 Missing"));
+    Assert.assertTrue("Moved files.", single.contains("/data/dir1/file0 Moved"));
+    Assert.assertTrue("Modified files.", single.contains("/data/dir2/sub/file5 Modified"));
+    Assert.assertTrue("Identical files.", single.contains("/data/dir2/file2 Identical"));
+  }
+
+  @Test
+  public void testMergeTaskCounts()
+  {
+    final Volume scanned = createVolume(true);
+    final Volume loaded = createVolume(false);
+    final MergeTask task = new MergeTask(new VolumeProcessor(), scanned.getRoot(), loaded.getRoot(),
+        new java.io.File("/data"), Long.valueOf(1));
+    final Directory root = ForkJoinPool.commonPool().invoke(task);
+    Assert.assertEquals("Subdirectories in name order.", "dir0", root.getSubdirectoriesView().get(0).getName());
+    Assert.assertEquals("Subdirectories in name order.", "dir1", root.getSubdirectoriesView().get(1).getName());
+    Assert.assertEquals("Subdirectories in name order.", "dir10", root.getSubdirectoriesView().get(2).getName());
+    // dir1 and file4 in 18 other directories are new, dir0 and file3 in 18 other directories are missing
+    Assert.assertEquals("New files.", 29 + 18, task.getCount(FileState.New));
+    Assert.assertEquals("Missing files.", 29 + 18, task.getCount(FileState.Missing));
+    Assert.assertEquals("Modified files.", 18, task.getCount(FileState.Modified));
+    Assert.assertEquals("Identical files.", 18 * 27, task.getCount(FileState.Identical));
+    Assert.assertEquals("Changed files.", 47 + 47 + 18, task.getChangedFiles().size());
+    Assert.assertEquals("Volume reference assigned.", Long.valueOf(1),
+        task.getChangedFiles().get(0).getVolumeRef());
+  }
 }
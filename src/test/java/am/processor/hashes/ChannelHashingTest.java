@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.filesystem.IoLimiter;
+
+/**
+ * Test {@link ChannelHashing}.
+ *
+ * @author Marco Schmidt
+ */
+public class ChannelHashingTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSelect()
+  {
+    Assert.assertEquals("Small file read.", ChannelHashing.Mode.Read, ChannelHashing.select(1000, false));
+    Assert.assertEquals("Larger file prefetched.", ChannelHashing.Mode.Prefetch,
+        ChannelHashing.select(ChannelHashing.PREFETCH_MIN_SIZE, false));
+    Assert.assertEquals("Large file mapped.", ChannelHashing.Mode.Map,
+        ChannelHashing.select(ChannelHashing.MAP_MIN_SIZE, false));
+    Assert.assertEquals("Large file on rotating disk prefetched.", ChannelHashing.Mode.Prefetch,
+        ChannelHashing.select(ChannelHashing.MAP_MIN_SIZE, true));
+  }
+
+  private static long update(final Path path, final ChannelHashing.Mode mode, final MessageDigest digest,
+      final Checksum checksum, final IoLimiter limiter) throws IOException
+  {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try
+    {
+      return ChannelHashing.update(channel, mode, digest, checksum, limiter, null);
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  private static byte[] hash(final Path path, final ChannelHashing.Mode mode, final IoLimiter limiter)
+      throws IOException, NoSuchAlgorithmException
+  {
+    final MessageDigest digest = MessageDigest.getInstance(HashConfig.DEFAULT_HASH_ALGORITHM);
+    update(path, mode, digest, null, limiter);
+    return digest.digest();
+  }
+
+  @Test
+  public void testModes() throws IOException, NoSuchAlgorithmException
+  {
+    // not a multiple of the buffer size so that the last buffer is partially filled
+    final byte[] data = new byte[ChannelHashing.BUFFER_SIZE * 3 + 12345];
+    new Random(7).nextBytes(data);
+    final Path path = folder.newFile("data.bin").toPath();
+    Files.write(path, data);
+    final byte[] expected = MessageDigest.getInstance(HashConfig.DEFAULT_HASH_ALGORITHM).digest(data);
+    for (final ChannelHashing.Mode mode : ChannelHashing.Mode.values())
+    {
+      Assert.assertArrayEquals("Same digest with mode " + mode + ".", expected, hash(path, mode, null));
+    }
+    final IoLimiter limiter = new IoLimiter(0, 0);
+    Assert.assertArrayEquals("Same digest with limiter.", expected, hash(path, ChannelHashing.Mode.Prefetch, limiter));
+    Assert.assertEquals("All bytes counted by limiter.", data.length, limiter.getNumBytes());
+  }
+
+  @Test
+  public void testEmpty() throws IOException, NoSuchAlgorithmException
+  {
+    final Path path = folder.newFile("empty.bin").toPath();
+    final byte[] expected = MessageDigest.getInstance(HashConfig.DEFAULT_HASH_ALGORITHM).digest();
+    for (final ChannelHashing.Mode mode : ChannelHashing.Mode.values())
+    {
+      Assert.assertArrayEquals("Empty digest with mode " + mode + ".", expected, hash(path, mode, null));
+    }
+  }
+
+  @Test
+  public void testChecksum() throws IOException, NoSuchAlgorithmException
+  {
+    final byte[] data = new byte[ChannelHashing.BUFFER_SIZE * 2 + 7];
+    new Random(11).nextBytes(data);
+    final Path path = folder.newFile("checksum.bin").toPath();
+    Files.write(path, data);
+    final byte[] expectedHash = MessageDigest.getInstance(HashConfig.DEFAULT_HASH_ALGORITHM).digest(data);
+    final CRC32C expected = new CRC32C();
+    expected.update(data, 0, data.length);
+    for (final ChannelHashing.Mode mode : ChannelHashing.Mode.values())
+    {
+      final MessageDigest digest = MessageDigest.getInstance(HashConfig.DEFAULT_HASH_ALGORITHM);
+      final CRC32C checksum = new CRC32C();
+      Assert.assertEquals("All bytes read with mode " + mode + ".", data.length,
+          update(path, mode, digest, checksum, null));
+      Assert.assertEquals("Same checksum with mode " + mode + ".", expected.getValue(), checksum.getValue());
+      Assert.assertArrayEquals("Same digest next to checksum with mode " + mode + ".", expectedHash, digest.digest());
+      checksum.reset();
+      update(path, mode, null, checksum, null);
+      Assert.assertEquals("Checksum without digest with mode " + mode + ".", expected.getValue(), checksum.getValue());
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.app.AppConfig;
+import am.db.ChunkHashes;
+import am.db.ChunkHashesMapper;
+import am.db.JdbcSerialization;
+import am.db.ModelMapper;
+import am.filesystem.model.Directory;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+import am.filesystem.model.Volume;
+
+/**
+ * Test {@link ChunkStore}.
+ *
+ * @author Marco Schmidt
+ */
+public class ChunkStoreTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
+  private HashConfig hashConfig;
+  private JdbcSerialization io;
+  private List<Volume> vols;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    config = new AppConfig();
+    hashConfig = new HashConfig();
+    hashConfig.setAlgorithm(HashConfig.DEFAULT_HASH_ALGORITHM);
+    hashConfig.setChunkSize(4);
+    config.setHashConfig(hashConfig);
+    io = new JdbcSerialization();
+    io.setConfig(config);
+    io.connect(null);
+    io.createTables();
+    final Volume vol = new Volume();
+    vol.setPath(folder.getRoot().getAbsolutePath());
+    io.getVolumeMapper().insert(io, vol);
+    final Directory root = new Directory();
+    root.setName("");
+    vol.setRoot(root);
+    final java.io.File entry = folder.newFile("data.bin");
+    Files.write(entry.toPath(), "0123456789".getBytes(StandardCharsets.US_ASCII));
+    file = new File();
+    file.setName(entry.getName());
+    file.setEntry(entry);
+    file.setByteSizeValue(10);
+    file.setState(FileState.New);
+    root.add(file);
+    vols = new ArrayList<>();
+    vols.add(vol);
+  }
+
+  @After
+  public void tearDown()
+  {
+    io.close();
+  }
+
+  @Test
+  public void testSaveAndLoad()
+  {
+    // a new file is hashed before it has an id
+    final ChunkStore store = new ChunkStore();
+    config.setChunkStore(store);
+    Assert.assertNotNull("Hash value computed.", new HashCreation().update(config, file));
+    Assert.assertNull("No id yet.", store.get(hashConfig, file));
+    io.saveAll(vols);
+    Assert.assertEquals("One row written after the file was saved.", 1, store.save(config, io));
+
+    final ChunkHashes loaded = ChunkStore.load(config, io).get(hashConfig, file);
+    Assert.assertNotNull("Chunk hash values loaded.", loaded);
+    Assert.assertEquals("Three chunks.", 3, loaded.getNumChunks());
+    Assert.assertEquals("Three hash values.", 3 * 32, loaded.getHashes().length);
+    Assert.assertEquals("File referenced.", file.getId(), loaded.getFileRef());
+
+    hashConfig.setChunkSize(5);
+    Assert.assertNull("Other chunk size.", ChunkStore.load(config, io).get(hashConfig, file));
+    hashConfig.setChunkSize(4);
+    file.setHashValue("00");
+    Assert.assertNull("Other hash value.", ChunkStore.load(config, io).get(hashConfig, file));
+  }
+
+  @Test
+  public void testRootDiffers()
+  {
+    final ChunkStore store = new ChunkStore();
+    config.setChunkStore(store);
+    new HashCreation().update(config, file);
+    io.saveAll(vols);
+    store.save(config, io);
+    final ChunkHashesMapper mapper = io.getChunkHashesMapper();
+    final ChunkHashes chunks = mapper.loadAll(io).get(0);
+    final byte[] hashes = chunks.getHashes();
+    hashes[0] ^= 1;
+    mapper.upsert(io, chunks);
+    Assert.assertNull("Damaged row dropped.", ChunkStore.load(config, io).get(hashConfig, file));
+  }
+
+  @Test
+  public void testDeleteOrphans()
+  {
+    final ChunkStore store = new ChunkStore();
+    config.setChunkStore(store);
+    new HashCreation().update(config, file);
+    io.saveAll(vols);
+    store.save(config, io);
+    io.getFileMapper().deleteByField(io, ModelMapper.ID, file.getId());
+    Assert.assertEquals("Nothing left to write.", 0, store.save(config, io));
+    Assert.assertTrue("Row of deleted file removed.", io.getChunkHashesMapper().loadAll(io).isEmpty());
+  }
+
+  @Test
+  public void testGetBytesToRead()
+  {
+    final ChunkStore store = new ChunkStore();
+    config.setChunkStore(store);
+    file.setId(Long.valueOf(1));
+    Assert.assertEquals("Whole file without chunk hash values.", 10, store.getBytesToRead(hashConfig, file));
+    new HashCreation().update(config, file);
+    hashConfig.setChunksPerRun(2);
+    Assert.assertEquals("Two chunks.", 8, store.getBytesToRead(hashConfig, file));
+    store.get(hashConfig, file).setNextChunk(2);
+    Assert.assertEquals("Last chunk is shorter.", 2, store.getBytesToRead(hashConfig, file));
+    hashConfig.setChunksPerRun(0);
+    Assert.assertEquals("Whole file without limit per run.", 10, store.getBytesToRead(hashConfig, file));
+  }
+}
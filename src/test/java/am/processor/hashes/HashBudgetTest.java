@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import am.filesystem.model.File;
+
+/**
+ * Test {@link HashBudget}.
+ *
+ * @author Marco Schmidt
+ */
+public class HashBudgetTest
+{
+  private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+  private final List<File> files = new ArrayList<>();
+  private final HashConfig hashConfig = new HashConfig();
+
+  @Before
+  public void setUp()
+  {
+    for (int i = 1; i <= 4; i++)
+    {
+      final File file = new File();
+      file.setByteSizeValue(i * 100L);
+      files.add(file);
+    }
+  }
+
+  @Test
+  public void testPercentage()
+  {
+    hashConfig.setStrategy(HashStrategy.Percentage);
+    hashConfig.setPercentage(Double.valueOf(30));
+    final HashBudget budget = HashBudget.create(hashConfig, 1000, files.size(), 0);
+    Assert.assertEquals("Prefix reaching 300 of 1000 bytes.", 2, budget.select(files));
+    hashConfig.setPercentage(Double.valueOf(35));
+    Assert.assertEquals("File crossing 350 of 1000 bytes included.", 3,
+        HashBudget.create(hashConfig, 1000, files.size(), 0).select(files));
+    hashConfig.setPercentage(Double.valueOf(0));
+    Assert.assertEquals("At least one file.", 1, HashBudget.create(hashConfig, 1000, files.size(), 0).select(files));
+  }
+
+  @Test
+  public void testData()
+  {
+    hashConfig.setStrategy(HashStrategy.Data);
+    hashConfig.setMaxBytes(350);
+    final HashBudget budget = HashBudget.create(hashConfig, 1000, files.size(), 0);
+    Assert.assertEquals("File crossing the limit excluded.", 2, budget.select(files));
+    budget.hashed(100);
+    budget.hashed(200);
+    Assert.assertEquals("Utilization below limit.", 300d / 350d, budget.getUtilization(), 1e-9);
+    Assert.assertEquals("Files counted.", 2, budget.getNumFiles());
+    Assert.assertEquals("Bytes counted.", 300, budget.getNumBytes());
+    hashConfig.setMaxBytes(300);
+    Assert.assertEquals("File reaching the limit exactly included.", 2,
+        HashBudget.create(hashConfig, 1000, files.size(), 0).select(files));
+    hashConfig.setMaxBytes(50);
+    Assert.assertEquals("First file larger than the limit excluded.", 0,
+        HashBudget.create(hashConfig, 1000, files.size(), 0).select(files));
+  }
+
+  @Test
+  public void testFiles()
+  {
+    hashConfig.setStrategy(HashStrategy.Files);
+    hashConfig.setMaxFiles(3);
+    HashBudget budget = HashBudget.create(hashConfig, 1000, files.size(), 0);
+    Assert.assertEquals("Three files.", 3, budget.select(files));
+    budget.hashed(100);
+    Assert.assertEquals("One of three files.", 1d / 3d, budget.getUtilization(), 1e-9);
+    hashConfig.setMaxFiles(10);
+    budget = HashBudget.create(hashConfig, 1000, files.size(), 0);
+    Assert.assertEquals("No more than available.", 4, budget.select(files));
+    hashConfig.setStrategy(HashStrategy.All);
+    Assert.assertEquals("All files.", 4, HashBudget.create(hashConfig, 1000, files.size(), 0).select(files));
+  }
+
+  @Test
+  public void testTime()
+  {
+    final AtomicLong now = new AtomicLong(1000);
+    final HashBudget budget = new HashBudget.TimeBudget(1000, 2000, now::get);
+    Assert.assertEquals("All files selected.", 4, budget.select(files));
+    Assert.assertTrue("Before deadline.", budget.canStart());
+    Assert.assertFalse("Not exhausted.", budget.isExhausted());
+    now.set(1500);
+    Assert.assertEquals("Half of the time used.", 0.5d, budget.getUtilization(), 1e-9);
+    now.set(2000);
+    Assert.assertFalse("Deadline reached.", budget.canStart());
+    Assert.assertTrue("Exhausted.", budget.isExhausted());
+  }
+
+  @Test
+  public void testNextOccurrence()
+  {
+    final ZonedDateTime evening = ZonedDateTime.of(2022, 6, 10, 23, 0, 0, 0, ZONE);
+    final long next = HashBudget.getNextOccurrence(LocalTime.of(2, 0), evening.toInstant().toEpochMilli(), ZONE);
+    Assert.assertEquals("Next day.", ZonedDateTime.of(2022, 6, 11, 2, 0, 0, 0, ZONE).toInstant().toEpochMilli(), next);
+    final ZonedDateTime night = ZonedDateTime.of(2022, 6, 11, 1, 0, 0, 0, ZONE);
+    Assert.assertEquals("Same day, one hour later.", night.toInstant().toEpochMilli() + 3_600_000L,
+        HashBudget.getNextOccurrence(LocalTime.of(2, 0), night.toInstant().toEpochMilli(), ZONE));
+  }
+}
@@ -16,16 +16,29 @@
 package am.processor.hashes;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import am.app.AppConfig;
+import am.db.ChunkHashes;
 import am.filesystem.model.File;
+import am.filesystem.model.FileState;
 
 public class HashCreationTest
 {
+  private static final String ABC_HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+  private static final long ABC_CRC32C = 0x364b3fb7L;
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
   private AppConfig config;
   private HashConfig hashConfig;
   private HashCreation creation;
@@ -124,4 +137,239 @@ public class HashCreationTest
         "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", hashValue);
     Assert.assertNotNull("After update we do have a hash date.", file.getHashCreated());
   }
+
+  @Test
+  public void testUpdateInputs() throws IOException
+  {
+    final java.io.File entry = folder.newFile("abc.txt");
+    Files.write(entry.toPath(), "abc".getBytes(StandardCharsets.US_ASCII));
+    for (final HashInput input : HashInput.values())
+    {
+      hashConfig.setInput(input);
+      final File file = new File();
+      file.setEntry(entry);
+      file.setByteSize(Long.valueOf(3));
+      Assert.assertEquals("SHA-256 of abc with input " + input + ".",
+          "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", creation.update(config, file));
+    }
+  }
+
+  @Test
+  public void testUpdateChannelMissing()
+  {
+    hashConfig.setInput(HashInput.Channel);
+    final File file = new File();
+    file.setEntry(new java.io.File(folder.getRoot(), "missing.txt"));
+    Assert.assertNull("Missing file leads to null hash value.", creation.update(config, file));
+  }
+
+  private File createAbcFile() throws IOException
+  {
+    final java.io.File entry = new java.io.File(folder.getRoot(), "abc.txt");
+    Files.write(entry.toPath(), "abc".getBytes(StandardCharsets.US_ASCII));
+    final File file = new File();
+    file.setEntry(entry);
+    file.setByteSize(Long.valueOf(3));
+    return file;
+  }
+
+  @Test
+  public void testChecksum() throws IOException
+  {
+    hashConfig.setChecksumAlgorithm("CRC32C");
+    for (final HashInput input : HashInput.values())
+    {
+      hashConfig.setInput(input);
+      final File file = createAbcFile();
+      Assert.assertEquals("Hash value next to checksum.", ABC_HASH, creation.update(config, file));
+      Assert.assertEquals("CRC32C of abc with input " + input + ".", ABC_CRC32C, file.getChecksum());
+    }
+  }
+
+  @Test
+  public void testVerifyChecksum() throws IOException
+  {
+    hashConfig.setChecksumAlgorithm("CRC32C");
+    hashConfig.setVerifyChecksum(true);
+    final File file = createAbcFile();
+    // a hash value that does not match the content shows that only the checksum was computed
+    file.setHashValue("00");
+    file.setChecksum(ABC_CRC32C);
+    Assert.assertEquals("Stored hash value returned.", "00", creation.update(config, file));
+    Assert.assertNotNull("Verification time stored.", file.getHashCreated());
+    Assert.assertEquals("File not modified.", FileState.Unknown, file.getState());
+
+    file.setChecksum(1);
+    file.setHashValue(ABC_HASH);
+    Assert.assertEquals("Hash value computed after checksum mismatch.", ABC_HASH, creation.update(config, file));
+    Assert.assertEquals("Checksum corrected when hash values are identical.", ABC_CRC32C, file.getChecksum());
+
+    file.setChecksum(1);
+    file.setHashValue("00");
+    creation.update(config, file);
+    Assert.assertEquals("Modified when both differ.", FileState.Modified, file.getState());
+    Assert.assertEquals("Stored checksum kept for modified file.", 1L, file.getChecksum());
+  }
+
+  @Test
+  public void testCreateChecksum()
+  {
+    for (final String name : HashConfig.CHECKSUM_ALGORITHMS)
+    {
+      Assert.assertNotNull("Known checksum algorithm " + name + ".", HashCreation.createChecksum(name));
+    }
+    Assert.assertNull("Unknown checksum algorithm.", HashCreation.createChecksum("MD5"));
+    Assert.assertEquals("Formatted checksum.", "0000002a", HashCreation.formatChecksum(42));
+  }
+
+  @Test
+  public void testCancel() throws IOException
+  {
+    hashConfig.setChecksumAlgorithm("CRC32C");
+    for (final HashInput input : HashInput.values())
+    {
+      hashConfig.setInput(input);
+      final File file = createAbcFile();
+      creation.setCancel(() -> true);
+      Assert.assertNull("No hash value when cancelled.", creation.update(config, file));
+      Assert.assertTrue("Cancellation reported.", creation.isCancelled());
+      Assert.assertNull("No partial hash value stored.", file.getHashValue());
+      Assert.assertNull("No hash creation time stored.", file.getHashCreated());
+      Assert.assertEquals("No checksum stored.", File.UNKNOWN, file.getChecksum());
+      Assert.assertEquals("State unchanged.", FileState.Unknown, file.getState());
+      creation.setCancel(null);
+      Assert.assertEquals("Hash value without cancel condition.", ABC_HASH, creation.update(config, file));
+      Assert.assertFalse("No cancellation.", creation.isCancelled());
+    }
+  }
+
+  private File createChunkedFile(final ChunkStore store) throws IOException
+  {
+    hashConfig.setChunkSize(4);
+    config.setChunkStore(store);
+    final java.io.File entry = new java.io.File(folder.getRoot(), "data.bin");
+    Files.write(entry.toPath(), "0123456789".getBytes(StandardCharsets.US_ASCII));
+    final File file = new File();
+    file.setId(Long.valueOf(1));
+    file.setEntry(entry);
+    file.setByteSize(Long.valueOf(10));
+    return file;
+  }
+
+  private static byte[] sha256(final String s) throws NoSuchAlgorithmException
+  {
+    return MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void testChunks() throws IOException, NoSuchAlgorithmException
+  {
+    for (final HashInput input : HashInput.values())
+    {
+      hashConfig.setInput(input);
+      final ChunkStore store = new ChunkStore();
+      final File file = createChunkedFile(store);
+      Assert.assertEquals("Hash value of complete file.", creation.toString(sha256("0123456789")),
+          creation.update(config, file));
+      final ChunkHashes chunks = store.get(hashConfig, file);
+      Assert.assertNotNull("Chunk hash values recorded with input " + input + ".", chunks);
+      final byte[] hashes = chunks.getHashes();
+      Assert.assertArrayEquals("First chunk.", sha256("0123"), Arrays.copyOfRange(hashes, 0, 32));
+      Assert.assertArrayEquals("Second chunk.", sha256("4567"), Arrays.copyOfRange(hashes, 32, 64));
+      Assert.assertArrayEquals("Last chunk is shorter.", sha256("89"), Arrays.copyOfRange(hashes, 64, 96));
+      Assert.assertEquals("Root.", creation.toString(
+          ChunkDigest.getMerkleRoot(hashes, MessageDigest.getInstance("SHA-256"))), chunks.getRoot());
+      Assert.assertEquals("Bytes read.", 10, creation.getNumBytesRead());
+    }
+
+    final ChunkStore store = new ChunkStore();
+    final File file = createChunkedFile(store);
+    hashConfig.setChunkSize(10);
+    creation.update(config, file);
+    Assert.assertNull("No chunk hash values for a file of one chunk.", store.get(hashConfig, file));
+  }
+
+  @Test
+  public void testMerkleRoot() throws NoSuchAlgorithmException
+  {
+    final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    final byte[] a = sha256("a");
+    final byte[] b = sha256("b");
+    final byte[] c = sha256("c");
+    Assert.assertArrayEquals("Single leaf is the root.", a, ChunkDigest.getMerkleRoot(a, digest));
+    digest.update((byte) 1);
+    digest.update(a);
+    digest.update(b);
+    final byte[] ab = digest.digest();
+    final byte[] leaves = new byte[96];
+    System.arraycopy(a, 0, leaves, 0, 32);
+    System.arraycopy(b, 0, leaves, 32, 32);
+    System.arraycopy(c, 0, leaves, 64, 32);
+    digest.update((byte) 1);
+    digest.update(ab);
+    digest.update(c);
+    Assert.assertArrayEquals("Odd leaf moves up.", digest.digest(), ChunkDigest.getMerkleRoot(leaves, digest));
+  }
+
+  @Test
+  public void testVerifyChunksAcrossRuns() throws IOException
+  {
+    final ChunkStore store = new ChunkStore();
+    final File file = createChunkedFile(store);
+    final String hashValue = creation.update(config, file);
+    hashConfig.setChunksPerRun(2);
+    file.setHashCreated(null);
+    Assert.assertNull("Two of three chunks verified.", creation.update(config, file));
+    Assert.assertFalse("Not cancelled.", creation.isCancelled());
+    Assert.assertEquals("Bytes of two chunks read.", 8, creation.getNumBytesRead());
+    Assert.assertEquals("Cursor after second chunk.", 2, store.get(hashConfig, file).getNextChunk());
+    Assert.assertNull("Verification time not stored.", file.getHashCreated());
+    Assert.assertEquals("Last chunk completes verification.", hashValue, creation.update(config, file));
+    Assert.assertEquals("Bytes of last chunk read.", 2, creation.getNumBytesRead());
+    Assert.assertEquals("Cursor back at start.", 0, store.get(hashConfig, file).getNextChunk());
+    Assert.assertNotNull("Verification time stored.", file.getHashCreated());
+    Assert.assertEquals("File not modified.", FileState.Unknown, file.getState());
+  }
+
+  @Test
+  public void testNumBytesReadFromFile() throws IOException
+  {
+    final java.io.File entry = new java.io.File(folder.getRoot(), "grown.bin");
+    Files.write(entry.toPath(), "0123456789".getBytes(StandardCharsets.US_ASCII));
+    final File file = new File();
+    file.setEntry(entry);
+    // size as recorded before the file changed
+    file.setByteSize(Long.valueOf(4));
+    for (final HashInput input : HashInput.values())
+    {
+      hashConfig.setInput(input);
+      Assert.assertNotNull("Hash value computed with input " + input + ".", creation.update(config, file));
+      Assert.assertEquals("Bytes actually read with input " + input + ".", 10, creation.getNumBytesRead());
+    }
+    final InputStream stream = Files.newInputStream(entry.toPath());
+    try
+    {
+      Assert.assertNotNull("Hash value of stream.",
+          creation.update(config, file, creation.createDigest(config, hashConfig), stream, entry.getName()));
+    }
+    finally
+    {
+      stream.close();
+    }
+    Assert.assertEquals("Bytes of stream read.", 10, creation.getNumBytesRead());
+  }
+
+  @Test
+  public void testVerifyChunksCorrupted() throws IOException
+  {
+    final ChunkStore store = new ChunkStore();
+    final File file = createChunkedFile(store);
+    final String hashValue = creation.update(config, file);
+    Files.write(file.getEntry().toPath(), "0123456x89".getBytes(StandardCharsets.US_ASCII));
+    Assert.assertNull("No hash value for a corrupted file.", creation.update(config, file));
+    Assert.assertEquals("Modified state.", FileState.Modified, file.getState());
+    Assert.assertEquals("Reading stopped at the second chunk.", 8, creation.getNumBytesRead());
+    Assert.assertEquals("Cursor stays at the chunk that differs.", 1, store.get(hashConfig, file).getNextChunk());
+    Assert.assertEquals("Stored hash value kept.", hashValue, file.getHashValue());
+  }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.app.AppConfig;
+import am.filesystem.HardLinks;
+import am.filesystem.model.File;
+
+/**
+ * Test {@link HashEngine}.
+ *
+ * @author Marco Schmidt
+ */
+public class HashEngineTest
+{
+  private static final String ABC_HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
+
+  @Before
+  public void setUp()
+  {
+    config = new AppConfig();
+    final HashConfig hashConfig = new HashConfig();
+    hashConfig.setAlgorithm(HashConfig.DEFAULT_HASH_ALGORITHM);
+    hashConfig.setStrategy(HashStrategy.All);
+    config.setHashConfig(hashConfig);
+  }
+
+  private File createFile(final String name, final String content) throws IOException
+  {
+    final java.io.File entry = new java.io.File(folder.getRoot(), name);
+    Files.write(entry.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    final File file = new File();
+    file.setName(name);
+    file.setEntry(entry);
+    file.setByteSize(Long.valueOf(entry.length()));
+    return file;
+  }
+
+  @Test
+  public void testHash() throws IOException
+  {
+    final List<File> files = new ArrayList<>();
+    for (int i = 0; i < 20; i++)
+    {
+      files.add(createFile("file" + i + ".txt", i % 2 == 0 ? "abc" : "abc" + i));
+    }
+    final File missing = new File();
+    missing.setEntry(new java.io.File(folder.getRoot(), "missing.txt"));
+    missing.setByteSize(Long.valueOf(3));
+    files.add(missing);
+    new HashEngine(config, new HardLinks(), 4).hash(files, new HashBudget.FileBudget(0, files.size()));
+
+    final HashCreation creation = new HashCreation();
+    for (int i = 0; i < 20; i++)
+    {
+      final File file = files.get(i);
+      Assert.assertNotNull("Hash created.", file.getHashCreated());
+      if (i % 2 == 0)
+      {
+        Assert.assertEquals("Known hash value.", ABC_HASH, file.getHashValue());
+      }
+      else
+      {
+        final File again = createFile("again.txt", "abc" + i);
+        Assert.assertEquals("Same hash value as with a single thread.", creation.update(config, again),
+            file.getHashValue());
+      }
+    }
+    Assert.assertNull("Missing file has no hash value.", missing.getHashValue());
+  }
+
+  @Test
+  public void testThreadsPerStore() throws IOException
+  {
+    config.setHashThreadsPerStore(1);
+    final List<File> files = new ArrayList<>();
+    files.add(createFile("a.txt", "abc"));
+    files.add(createFile("b.txt", "abc"));
+    new HashEngine(config, new HardLinks(), 2).hash(files, new HashBudget.FileBudget(0, files.size()));
+    Assert.assertEquals("First file hashed.", ABC_HASH, files.get(0).getHashValue());
+    Assert.assertEquals("Second file hashed.", ABC_HASH, files.get(1).getHashValue());
+  }
+
+  /**
+   * Store without a file system, only its name matters.
+   */
+  private static final class FakeStore extends FileStore
+  {
+    private final String name;
+
+    FakeStore(final String name)
+    {
+      this.name = name;
+    }
+
+    @Override
+    public String name()
+    {
+      return name;
+    }
+
+    @Override
+    public String type()
+    {
+      return "fake";
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+      return true;
+    }
+
+    @Override
+    public long getTotalSpace()
+    {
+      return 0;
+    }
+
+    @Override
+    public long getUsableSpace()
+    {
+      return 0;
+    }
+
+    @Override
+    public long getUnallocatedSpace()
+    {
+      return 0;
+    }
+
+    @Override
+    public boolean supportsFileAttributeView(final Class<? extends FileAttributeView> type)
+    {
+      return false;
+    }
+
+    @Override
+    public boolean supportsFileAttributeView(final String viewName)
+    {
+      return false;
+    }
+
+    @Override
+    public <V extends FileStoreAttributeView> V getFileStoreAttributeView(final Class<V> type)
+    {
+      return null;
+    }
+
+    @Override
+    public Object getAttribute(final String attribute)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Files named ssd* are on a solid state disk, all others on a rotating hard disk.
+   */
+  private static final class FakeStores extends FileStores
+  {
+    private final FileStore ssd = new FakeStore("ssd");
+    private final FileStore hdd = new FakeStore("hdd");
+
+    @Override
+    FileStore get(final File file)
+    {
+      return file.getName().startsWith("ssd") ? ssd : hdd;
+    }
+
+    @Override
+    boolean isRotational(final FileStore store)
+    {
+      return store == hdd;
+    }
+  }
+
+  /**
+   * Budget whose files of one store only complete once a file of the other store was hashed as well.
+   */
+  private static final class MeetingBudget extends HashBudget
+  {
+    private final CountDownLatch ssdHashed = new CountDownLatch(1);
+    private final CountDownLatch hddHashed = new CountDownLatch(1);
+    private volatile boolean met = true;
+
+    MeetingBudget()
+    {
+      super(0);
+    }
+
+    @Override
+    int select(final List<File> files, final ToLongFunction<File> bytes)
+    {
+      return files.size();
+    }
+
+    @Override
+    double getUtilization()
+    {
+      return 0;
+    }
+
+    @Override
+    void hashed(final long bytes)
+    {
+      super.hashed(bytes);
+      // the hard disk file is longer than the others
+      final boolean hdd = bytes > 3;
+      (hdd ? hddHashed : ssdHashed).countDown();
+      try
+      {
+        if (!(hdd ? ssdHashed : hddHashed).await(5, TimeUnit.SECONDS))
+        {
+          met = false;
+        }
+      }
+      catch (final InterruptedException e)
+      {
+        met = false;
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Test
+  public void testStoresReadConcurrently() throws IOException
+  {
+    final List<File> files = new ArrayList<>();
+    for (int i = 0; i < 4; i++)
+    {
+      files.add(createFile("ssd" + i + ".txt", "abc"));
+    }
+    files.add(createFile("hdd.txt", "abcd"));
+    final MeetingBudget budget = new MeetingBudget();
+    new HashEngine(config, new HardLinks(), 2, new FakeStores()).hash(files, budget);
+    Assert.assertTrue("Both stores read at the same time.", budget.met);
+    Assert.assertEquals("All files hashed.", 5, budget.getNumFiles());
+  }
+}
@@ -15,19 +15,28 @@
  */
 package am.processor.hashes;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import am.app.AppConfig;
 import am.filesystem.model.Directory;
 import am.filesystem.model.File;
+import am.filesystem.model.FileState;
 import am.filesystem.model.Volume;
 
 public class HashProcessorTest
 {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
   private AppConfig config;
   private HashConfig hashConfig;
   private HashProcessor proc;
@@ -81,4 +90,65 @@ public class HashProcessorTest
     Assert.assertEquals("After sorting file 2 is first.", file2, f1);
     Assert.assertEquals("After sorting file 1 is second.", file1, f2);
   }
+
+  @Test
+  public void testUpdateHardLinks() throws IOException
+  {
+    final java.io.File entry = folder.newFile("linked");
+    Files.write(entry.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+    final Volume vol = new Volume();
+    final Directory root = new Directory();
+    vol.setRoot(root);
+    final List<File> links = new ArrayList<>();
+    for (int i = 0; i < 3; i++)
+    {
+      final File link = new File();
+      link.setName("link" + i);
+      link.setByteSize(Long.valueOf(entry.length()));
+      link.setEntry(entry);
+      link.setFileKey("(dev=1,ino=2)");
+      link.setState(FileState.New);
+      root.add(link);
+      links.add(link);
+    }
+    hashConfig.setStrategy(HashStrategy.All);
+    proc.update(config, Collections.singletonList(vol));
+    Assert.assertEquals("Only one link is hashed.", 1, proc.getFiles().size());
+    final String hashValue = links.get(0).getHashValue();
+    Assert.assertNotNull("Hash value was computed.", hashValue);
+    for (final File link : links)
+    {
+      Assert.assertEquals("All links get the hash value.", hashValue, link.getHashValue());
+      Assert.assertNotNull("All links get the hash creation time.", link.getHashCreated());
+    }
+  }
+
+  @Test
+  public void testUpdateStrategyFiles() throws IOException
+  {
+    final Volume vol = new Volume();
+    final Directory root = new Directory();
+    vol.setRoot(root);
+    for (int i = 0; i < 3; i++)
+    {
+      final java.io.File entry = folder.newFile("file" + i);
+      Files.write(entry.toPath(), ("content" + i).getBytes(StandardCharsets.UTF_8));
+      final File file = new File();
+      file.setName(entry.getName());
+      file.setByteSize(Long.valueOf(entry.length()));
+      file.setEntry(entry);
+      file.setState(FileState.New);
+      // older hash values come first
+      file.setHashCreated(new Date(1000 * (i + 1)));
+      file.setHashValue(i == 0 ? null : "00");
+      root.add(file);
+    }
+    hashConfig.setStrategy(HashStrategy.Files);
+    hashConfig.setMaxFiles(2);
+    proc.update(config, Collections.singletonList(vol));
+    final List<File> files = proc.getFiles();
+    Assert.assertNotNull("File without hash value is hashed.", root.getFile("file0").getHashValue());
+    Assert.assertEquals("Second file hashed and found modified.", FileState.Modified, files.get(1).getState());
+    Assert.assertEquals("Third file not hashed.", FileState.New, files.get(2).getState());
+  }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019, 2020, 2021, 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package am.processor.hashes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import am.app.AppConfig;
+import am.filesystem.model.File;
+import am.filesystem.model.FileState;
+
+/**
+ * Test {@link QuickFingerprint}.
+ *
+ * @author Marco Schmidt
+ */
+public class QuickFingerprintTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private AppConfig config;
+  private HashConfig hashConfig;
+  private QuickFingerprint fingerprint;
+
+  @Before
+  public void setUp()
+  {
+    config = new AppConfig();
+    hashConfig = new HashConfig();
+    config.setHashConfig(hashConfig);
+    fingerprint = new QuickFingerprint();
+  }
+
+  private java.io.File write(final String name, final byte[] data) throws IOException
+  {
+    final java.io.File entry = new java.io.File(folder.getRoot(), name);
+    Files.write(entry.toPath(), data);
+    return entry;
+  }
+
+  private File create(final java.io.File entry, final FileState state)
+  {
+    final File file = new File();
+    file.setEntry(entry);
+    file.setByteSize(Long.valueOf(entry.length()));
+    file.setState(state);
+    return file;
+  }
+
+  @Test
+  public void testSmallFile() throws IOException
+  {
+    final java.io.File abc = write("abc.txt", "abc".getBytes(StandardCharsets.US_ASCII));
+    final long value = fingerprint.compute(abc, 3, null);
+    Assert.assertTrue("Non-negative value.", value >= 0);
+    Assert.assertEquals("Same content, same value.", value,
+        fingerprint.compute(write("copy.txt", "abc".getBytes(StandardCharsets.US_ASCII)), 3, null));
+    Assert.assertNotEquals("Other content, other value.", value,
+        fingerprint.compute(write("abd.txt", "abd".getBytes(StandardCharsets.US_ASCII)), 3, null));
+    Assert.assertNotEquals("Size is part of the value.", value, fingerprint.compute(abc, 4, null));
+    Assert.assertEquals("Formatted value.", 16, QuickFingerprint.format(value).length());
+    Assert.assertEquals("Formatted unknown value.", "-", QuickFingerprint.format(File.UNKNOWN));
+  }
+
+  @Test
+  public void testSampledBlocks() throws IOException
+  {
+    final int size = 16 * QuickFingerprint.BLOCK_SIZE;
+    final byte[] data = new byte[size];
+    final java.io.File entry = write("large.bin", data);
+    final long value = fingerprint.compute(entry, size, null);
+
+    // change in the middle block
+    data[size / 2] = 1;
+    Assert.assertNotEquals("Middle block is read.", value, fingerprint.compute(write("middle.bin", data), size, null));
+    data[size / 2] = 0;
+
+    // change in the last byte
+    data[size - 1] = 1;
+    Assert.assertNotEquals("Tail block is read.", value, fingerprint.compute(write("tail.bin", data), size, null));
+    data[size - 1] = 0;
+
+    // change between the first and second block
+    data[2 * QuickFingerprint.BLOCK_SIZE] = 1;
+    Assert.assertEquals("Bytes between blocks are not read.", value,
+        fingerprint.compute(write("between.bin", data), size, null));
+  }
+
+  @Test
+  public void testUpdate() throws IOException
+  {
+    final java.io.File entry = write("a.txt", "abc".getBytes(StandardCharsets.US_ASCII));
+    final File file = create(entry, FileState.New);
+    Assert.assertFalse("New file is not modified.", fingerprint.update(config, file));
+    final long value = file.getFingerprint();
+    Assert.assertNotEquals("Fingerprint of new file computed.", File.UNKNOWN, value);
+
+    // same size and time of last modification, different content
+    Files.write(entry.toPath(), "abd".getBytes(StandardCharsets.US_ASCII));
+    file.setState(FileState.Identical);
+    Assert.assertFalse("Identical files are not verified by default.", fingerprint.update(config, file));
+    Assert.assertEquals("State unchanged.", FileState.Identical, file.getState());
+
+    hashConfig.setVerifyFingerprint(true);
+    Assert.assertTrue("Different content found.", fingerprint.update(config, file));
+    Assert.assertEquals("State is modified.", FileState.Modified, file.getState());
+    Assert.assertEquals("Stored value kept.", value, file.getFingerprint());
+    Assert.assertFalse("Modified file with fingerprint is left alone.", fingerprint.update(config, file));
+  }
+
+  @Test
+  public void testUpdateDisabled() throws IOException
+  {
+    hashConfig.setFingerprint(false);
+    final File file = create(write("a.txt", "abc".getBytes(StandardCharsets.US_ASCII)), FileState.New);
+    fingerprint.update(config, file);
+    Assert.assertEquals("Nothing computed.", File.UNKNOWN, file.getFingerprint());
+
+    hashConfig.setFingerprint(true);
+    final File missing = create(new java.io.File(folder.getRoot(), "missing.txt"), FileState.New);
+    fingerprint.update(config, missing);
+    Assert.assertEquals("Nothing computed for a file that does not exist.", File.UNKNOWN, missing.getFingerprint());
+  }
+}